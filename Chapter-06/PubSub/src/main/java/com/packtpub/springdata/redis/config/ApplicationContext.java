@@ -1,20 +1,39 @@
 package com.packtpub.springdata.redis.config;
 
+import com.packtpub.springdata.redis.messaging.ContactCacheInvalidationListener;
+import com.packtpub.springdata.redis.messaging.ContactChangeLog;
+import com.packtpub.springdata.redis.messaging.ContactDelta;
+import com.packtpub.springdata.redis.messaging.ContactDeltaPublisher;
+import com.packtpub.springdata.redis.messaging.ContactEventBus;
+import com.packtpub.springdata.redis.messaging.ContactEventMessageListener;
+import com.packtpub.springdata.redis.messaging.ContactEventPublisher;
+import com.packtpub.springdata.redis.messaging.ContactMessageDispatcher;
 import com.packtpub.springdata.redis.messaging.ContactMessageListener;
 import com.packtpub.springdata.redis.messaging.ContactPOJOMessageListener;
 import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import com.packtpub.springdata.redis.serializer.ContactBinaryRedisSerializer;
+import com.packtpub.springdata.redis.service.BatchWriter;
+import com.packtpub.springdata.redis.service.BlockIdAllocator;
+import com.packtpub.springdata.redis.service.ContactNameIndex;
+import com.packtpub.springdata.redis.service.ContactNearCache;
 import com.packtpub.springdata.redis.service.RedisContactService;
+import com.packtpub.springdata.redis.service.RedisScript;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.*;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
-import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.support.atomic.RedisAtomicLong;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
@@ -26,7 +45,9 @@ import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
 import javax.annotation.Resource;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -54,6 +75,31 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
 
     private static final String PROPERTY_NAME_REDIS_HOST = "redis.host";
     private static final String PROPERTY_NAME_REDIS_PORT = "redis.port";
+    private static final String PROPERTY_NAME_REDIS_ID_BLOCK_SIZE = "redis.id.block.size";
+    private static final String PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE = "redis.bulk.write.batch.size";
+    private static final String PROPERTY_NAME_REDIS_NEAR_CACHE_ENABLED = "redis.near.cache.enabled";
+    private static final String PROPERTY_NAME_REDIS_NEAR_CACHE_MAX_SIZE = "redis.near.cache.max.size";
+    private static final String PROPERTY_NAME_REDIS_NEAR_CACHE_TTL_SECONDS = "redis.near.cache.ttl.seconds";
+    private static final String PROPERTY_NAME_REDIS_CONTACT_SERIALIZER = "redis.contact.serializer";
+    private static final String PROPERTY_NAME_REDIS_PUBLISH_BATCH_ENABLED = "redis.publish.batch.enabled";
+    private static final String PROPERTY_NAME_REDIS_PUBLISH_BATCH_MAX_SIZE = "redis.publish.batch.max.size";
+    private static final String PROPERTY_NAME_REDIS_PUBLISH_BATCH_INTERVAL_MILLIS = "redis.publish.batch.interval.millis";
+    private static final String PROPERTY_NAME_REDIS_EVENT_BUS_ENABLED = "redis.event.bus.enabled";
+    private static final String PROPERTY_NAME_REDIS_PUBLISH_DELTAS_ENABLED = "redis.publish.deltas.enabled";
+    private static final String PROPERTY_NAME_REDIS_CHANGE_LOG_ENABLED = "redis.change.log.enabled";
+    private static final String PROPERTY_NAME_REDIS_CHANGE_LOG_MAX_LENGTH = "redis.change.log.max.length";
+    private static final String PROPERTY_NAME_REDIS_CHANGE_LOG_TRIM_SLACK = "redis.change.log.trim.slack";
+    private static final String PROPERTY_NAME_REDIS_LISTENER_DISPATCH_ENABLED = "redis.listener.dispatch.enabled";
+    private static final String PROPERTY_NAME_REDIS_LISTENER_DISPATCH_PARTITIONS = "redis.listener.dispatch.partitions";
+    private static final String PROPERTY_NAME_REDIS_LISTENER_DISPATCH_QUEUE_CAPACITY = "redis.listener.dispatch.queue.capacity";
+    private static final String PROPERTY_NAME_REDIS_LISTENER_DISPATCH_BACKPRESSURE = "redis.listener.dispatch.backpressure";
+
+    private static final String SCRIPT_LOCATION_FIND_NAME_PREFIX = "scripts/find-name-prefix.lua";
+
+    private static final String CONTACT_SERIALIZER_BINARY = "binary";
+    private static final String CONTACT_SERIALIZER_JSON = "json";
+
+    private static final long MILLIS_PER_SECOND = 1000;
 
     @Resource
     private Environment environment;
@@ -77,6 +123,111 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
         configurer.enable();
     }
 
+    /**
+     * Configures the writer which is used to write multiple contacts in batches.
+     * @return
+     */
+    @Bean
+    public BatchWriter batchWriter() {
+        int batchSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE));
+        return new BatchWriter(redisTemplate(), batchSize);
+    }
+
+    /**
+     * Configures the allocator which hands out the ids of new contacts from blocks
+     * reserved from the contact id counter.
+     * @return
+     */
+    @Bean
+    public BlockIdAllocator contactIdAllocator() {
+        int blockSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_ID_BLOCK_SIZE));
+        return new BlockIdAllocator(redisAtomicLong(), blockSize);
+    }
+
+    /**
+     * Configures the durable log of the contact change events. The events are appended to
+     * the log only if it is enabled in the application properties.
+     * @return
+     */
+    @Bean
+    public ContactChangeLog contactChangeLog() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_REDIS_CHANGE_LOG_ENABLED));
+        long maxLength = Long.parseLong(environment.getRequiredProperty(PROPERTY_NAME_REDIS_CHANGE_LOG_MAX_LENGTH));
+        long trimSlack = Long.parseLong(environment.getRequiredProperty(PROPERTY_NAME_REDIS_CHANGE_LOG_TRIM_SLACK));
+        return new ContactChangeLog(redisTemplate(), maxLength, trimSlack, enabled);
+    }
+
+    /**
+     * Configures the publisher of the contact deltas. The changed fields of an updated contact
+     * are published instead of the whole contact only if it is enabled in the application properties.
+     * @return
+     */
+    @Bean
+    public ContactDeltaPublisher contactDeltaPublisher() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_REDIS_PUBLISH_DELTAS_ENABLED));
+        return new ContactDeltaPublisher(redisTemplate(), contactDeltaSerializer(), enabled);
+    }
+
+    /**
+     * Configures the bus which delivers the contact change events to the local listeners
+     * without sending them through Redis. The events are delivered directly only if it is
+     * enabled in the application properties.
+     * @return
+     */
+    @Bean
+    public ContactEventBus contactEventBus() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_REDIS_EVENT_BUS_ENABLED));
+        ContactEventBus eventBus = new ContactEventBus(contactBatchSerializer(), enabled);
+
+        List<String> channels = Arrays.asList(
+                RedisContactService.CHANNEL_NEW_CONTACTS,
+                RedisContactService.CHANNEL_UPDATED_CONTACTS,
+                RedisContactService.CHANNEL_REMOVED_CONTACTS
+        );
+        eventBus.addListener(contactPOJOMessageListener(), channels);
+        eventBus.addListener(contactMessageListener(), channels);
+
+        return eventBus;
+    }
+
+    /**
+     * Configures the publisher of the contact change events. The events are published in
+     * batches only if batching is enabled in the application properties.
+     * @return
+     */
+    @Bean
+    public ContactEventPublisher contactEventPublisher() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_REDIS_PUBLISH_BATCH_ENABLED));
+        int maxBatchSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_PUBLISH_BATCH_MAX_SIZE));
+        long flushInterval = Long.parseLong(environment.getRequiredProperty(PROPERTY_NAME_REDIS_PUBLISH_BATCH_INTERVAL_MILLIS));
+        return new ContactEventPublisher(redisTemplate(), contactEventBus(), maxBatchSize, flushInterval, enabled);
+    }
+
+    /**
+     * Configures the name indexes which are used to sort and search contacts. The contacts
+     * whose names start with a search term are found by a Lua script.
+     * @return
+     * @throws IOException
+     */
+    @Bean
+    public ContactNameIndex contactNameIndex() throws IOException {
+        RedisScript script = new RedisScript(new ClassPathResource(SCRIPT_LOCATION_FIND_NAME_PREFIX));
+        return new ContactNameIndex(stringRedisTemplate(), script);
+    }
+
+    /**
+     * Configures the near cache which holds recently read contacts in memory. The near cache
+     * is used only if it is enabled in the application properties.
+     * @return
+     */
+    @Bean
+    public ContactNearCache contactNearCache() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_REDIS_NEAR_CACHE_ENABLED));
+        int maxSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_NEAR_CACHE_MAX_SIZE));
+        long timeToLive = Long.parseLong(environment.getRequiredProperty(PROPERTY_NAME_REDIS_NEAR_CACHE_TTL_SECONDS)) * MILLIS_PER_SECOND;
+        return new ContactNearCache(maxSize, timeToLive, enabled);
+    }
+
     @Bean
     public RedisAtomicLong redisAtomicLong() {
         return new RedisAtomicLong("contact", redisConnectionFactory());
@@ -97,12 +248,44 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
     }
 
     /**
-     * Configures contact serializer
+     * Configures contact serializer. The used serializer is selected by the value of the
+     * 'redis.contact.serializer' property which can be either 'json' or 'binary'. The same
+     * serializer is used to store contacts and to publish them, which means that all nodes
+     * must use the same serializer. The formats are not compatible, which means that the
+     * existing contacts must be removed when the serializer is changed.
      * @return
      */
     @Bean
-    public JacksonJsonRedisSerializer<Contact> contactSerializer() {
-        return new JacksonJsonRedisSerializer<Contact>(Contact.class);
+    public RedisSerializer<Contact> contactSerializer() {
+        String serializer = environment.getRequiredProperty(PROPERTY_NAME_REDIS_CONTACT_SERIALIZER);
+
+        if (CONTACT_SERIALIZER_BINARY.equals(serializer)) {
+            return new ContactBinaryRedisSerializer();
+        }
+        if (CONTACT_SERIALIZER_JSON.equals(serializer)) {
+            return new JacksonJsonRedisSerializer<Contact>(Contact.class);
+        }
+
+        throw new IllegalStateException("Unknown contact serializer: " + serializer);
+    }
+
+    /**
+     * Configures the serializer of the messages which are published to the contact channels.
+     * A message contains either a single contact or a batch of contacts.
+     * @return
+     */
+    @Bean
+    public ContactBatchRedisSerializer contactBatchSerializer() {
+        return new ContactBatchRedisSerializer(contactSerializer());
+    }
+
+    /**
+     * Configures the serializer of the messages which are published to the contact delta channel.
+     * @return
+     */
+    @Bean
+    public RedisSerializer<ContactDelta> contactDeltaSerializer() {
+        return new JacksonJsonRedisSerializer<ContactDelta>(ContactDelta.class);
     }
 
     /**
@@ -120,14 +303,38 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
     }
 
     /**
-     * Configures the Redis message listener adapter
+     * Configures the message listener which decodes the received contacts and hands them
+     * to the contact POJO message listener.
+     * @return
+     */
+    @Bean
+    public ContactEventMessageListener contactEventMessageListener() {
+        return new ContactEventMessageListener(contactPOJOMessageListener(), contactBatchSerializer());
+    }
+
+    /**
+     * Configures the listener which invalidates the contacts cached in the near cache.
+     * @return
+     */
+    @Bean
+    public ContactCacheInvalidationListener contactCacheInvalidationListener() {
+        return new ContactCacheInvalidationListener(contactNearCache(), contactBatchSerializer(), contactDeltaSerializer());
+    }
+
+    /**
+     * Configures the dispatcher which hands the received messages to the message listeners
+     * by using a bounded pool of workers partitioned by contact id. The dispatcher is used
+     * only if it is enabled in the application properties.
      * @return
      */
     @Bean
-    public MessageListenerAdapter messageListenerAdapter() {
-        MessageListenerAdapter messageListenerAdapter = new MessageListenerAdapter(contactPOJOMessageListener());
-        messageListenerAdapter.setSerializer(contactSerializer());
-        return messageListenerAdapter;
+    public ContactMessageDispatcher contactMessageDispatcher() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_REDIS_LISTENER_DISPATCH_ENABLED));
+        int partitions = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_LISTENER_DISPATCH_PARTITIONS));
+        int queueCapacity = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_LISTENER_DISPATCH_QUEUE_CAPACITY));
+        ContactMessageDispatcher.BackpressurePolicy backpressurePolicy = ContactMessageDispatcher.BackpressurePolicy.valueOf(
+                environment.getRequiredProperty(PROPERTY_NAME_REDIS_LISTENER_DISPATCH_BACKPRESSURE).toUpperCase());
+        return new ContactMessageDispatcher(contactBatchSerializer(), contactDeltaSerializer(), partitions, queueCapacity, backpressurePolicy, enabled);
     }
 
     /**
@@ -148,7 +355,10 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
     }
 
     /**
-     * Configures the Redis message listener container.
+     * Configures the Redis message listener container. If the contact message dispatcher is
+     * enabled, the container hands the received messages to the dispatcher on the subscription
+     * thread, which keeps them in the order in which they were received. If the contact event
+     * bus is enabled, the local listeners ignore the messages which were published by this node.
      * @return
      */
     @Bean
@@ -157,21 +367,47 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
 
         container.setConnectionFactory(redisConnectionFactory());
 
-        container.addMessageListener(messageListenerAdapter(), Arrays.asList(
+        ContactMessageDispatcher dispatcher = contactMessageDispatcher();
+        if (dispatcher.isEnabled()) {
+            container.setTaskExecutor(new SyncTaskExecutor());
+            container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor());
+        }
+
+        ContactEventBus eventBus = contactEventBus();
+
+        container.addMessageListener(eventBus.suppressEcho(dispatcher.wrap(contactEventMessageListener())), Arrays.asList(
                 new ChannelTopic(RedisContactService.CHANNEL_NEW_CONTACTS),
                 new ChannelTopic(RedisContactService.CHANNEL_UPDATED_CONTACTS),
                 new ChannelTopic(RedisContactService.CHANNEL_REMOVED_CONTACTS)
         ));
 
-        container.addMessageListener(contactMessageListener(), Arrays.asList(
+        container.addMessageListener(eventBus.suppressEcho(dispatcher.wrap(contactMessageListener())), Arrays.asList(
                 new ChannelTopic(RedisContactService.CHANNEL_NEW_CONTACTS),
                 new ChannelTopic(RedisContactService.CHANNEL_UPDATED_CONTACTS),
-                new ChannelTopic(RedisContactService.CHANNEL_REMOVED_CONTACTS)
+                new ChannelTopic(RedisContactService.CHANNEL_REMOVED_CONTACTS),
+                new ChannelTopic(RedisContactService.CHANNEL_CONTACT_DELTAS)
         ));
 
+        if (contactNearCache().isEnabled()) {
+            container.addMessageListener(dispatcher.wrap(contactCacheInvalidationListener()), Arrays.asList(
+                    new ChannelTopic(RedisContactService.CHANNEL_UPDATED_CONTACTS),
+                    new ChannelTopic(RedisContactService.CHANNEL_REMOVED_CONTACTS),
+                    new ChannelTopic(RedisContactService.CHANNEL_CONTACT_DELTAS)
+            ));
+        }
+
         return container;
     }
 
+    /**
+     * Configures the Redis template which is used to access the string based indexes.
+     * @return
+     */
+    @Bean
+    public StringRedisTemplate stringRedisTemplate() {
+        return new StringRedisTemplate(redisConnectionFactory());
+    }
+
     /**
      * Configures the exception resolver.
      * @return
@@ -42,8 +42,13 @@ public class ContactController {
 
     protected static final String MODEL_ATTRIBUTE_CONTACT = "contact";
     protected static final String MODEL_ATTRIBUTE_CONTACTS = "contacts";
+    protected static final String MODEL_ATTRIBUTE_PAGE_COUNT = "pageCount";
+    protected static final String MODEL_ATTRIBUTE_PAGE_INDEX = "pageIndex";
+
+    protected static final int HOME_PAGE_SIZE = 10;
 
     protected static final String PARAMETER_CONTACT_ID = "id";
+    protected static final String PARAMETER_PAGE_INDEX = "page";
 
     protected static final String REQUEST_MAPPING_VIEW_CONTACT = "/contact/{id}";
 
@@ -130,15 +135,21 @@ public class ContactController {
 
     /**
      * Shows the home page.
+     * @param pageIndex The index of the shown page.
      * @param model The model.
      * @return  The name of the home page view.
      */
     @RequestMapping(value = "/", method = RequestMethod.GET)
-    public String showHomePage(Model model) {
-        LOGGER.debug("Rendering home page");
+    public String showHomePage(@RequestParam(value = PARAMETER_PAGE_INDEX, defaultValue = "0") int pageIndex, Model model) {
+        LOGGER.debug("Rendering home page {}", pageIndex);
+
+        long pageCount = countPages(service.count());
+        pageIndex = Math.max(0, pageIndex);
 
-        List<Contact> contacts = service.findAll();
+        List<Contact> contacts = service.findAllForPage(pageIndex, HOME_PAGE_SIZE);
         model.addAttribute(MODEL_ATTRIBUTE_CONTACTS, contacts);
+        model.addAttribute(MODEL_ATTRIBUTE_PAGE_COUNT, pageCount);
+        model.addAttribute(MODEL_ATTRIBUTE_PAGE_INDEX, pageIndex);
 
         return HOME_VIEW;
     }
@@ -213,6 +224,15 @@ public class ContactController {
         return messageSource.getMessage(code, params, current);
     }
 
+    /**
+     * Counts the number of pages shown on the home page.
+     * @param contactCount  The number of contacts.
+     * @return  The number of pages.
+     */
+    private long countPages(long contactCount) {
+        return (contactCount + HOME_PAGE_SIZE - 1) / HOME_PAGE_SIZE;
+    }
+
     /**
      * Creates a redirect view path.
      * @param requestMapping    The request mapping of target controller method.
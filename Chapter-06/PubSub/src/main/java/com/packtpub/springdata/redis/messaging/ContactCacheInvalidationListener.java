@@ -0,0 +1,74 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.service.ContactNearCache;
+import com.packtpub.springdata.redis.service.RedisContactService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Invalidates the contacts which are cached in the near cache when a contact is updated
+ * or removed on any application node. A message can contain a single contact or a batch
+ * of contacts. The messages of the contact delta channel contain a contact delta.
+ * @author Petri Kainulainen
+ */
+public class ContactCacheInvalidationListener implements MessageListener {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ContactCacheInvalidationListener.class);
+
+    private ContactNearCache contactNearCache;
+
+    private RedisSerializer<List<Contact>> contactBatchSerializer;
+
+    private RedisSerializer<ContactDelta> contactDeltaSerializer;
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    public ContactCacheInvalidationListener(ContactNearCache contactNearCache, RedisSerializer<List<Contact>> contactBatchSerializer,
+                                            RedisSerializer<ContactDelta> contactDeltaSerializer) {
+        this.contactNearCache = contactNearCache;
+        this.contactBatchSerializer = contactBatchSerializer;
+        this.contactDeltaSerializer = contactDeltaSerializer;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        int invalidated = 0;
+
+        for (Long changedId: readContactIds(message)) {
+            if (changedId == null) {
+                LOGGER.debug("Ignoring contact without a contact id");
+                continue;
+            }
+
+            contactNearCache.invalidate(changedId);
+            invalidated++;
+        }
+
+        if (invalidated > 0) {
+            LOGGER.debug("Near cache statistics: {}", contactNearCache.getStatistics());
+        }
+    }
+
+    private List<Long> readContactIds(Message message) {
+        List<Long> ids = new ArrayList<Long>();
+
+        String channel = stringSerializer.deserialize(message.getChannel());
+        if (RedisContactService.CHANNEL_CONTACT_DELTAS.equals(channel)) {
+            ids.add(contactDeltaSerializer.deserialize(message.getBody()).getId());
+            return ids;
+        }
+
+        for (Contact changed: contactBatchSerializer.deserialize(message.getBody())) {
+            ids.add(changed.getId());
+        }
+        return ids;
+    }
+}
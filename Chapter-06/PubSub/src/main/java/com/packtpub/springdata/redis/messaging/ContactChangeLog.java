@@ -0,0 +1,519 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An append-only log of the contact change events which is stored in Redis. The events
+ * are appended to the log beside publishing them to the contact channels, which means that
+ * a consumer which was down can read the events which it missed.
+ * <p>
+ * The log is a Redis list whose entries contain the channel and the contact of an event.
+ * The offset of an entry is its index in the list plus the number of entries which have
+ * been trimmed from the head of the list. The number of trimmed entries is stored in the
+ * base key, and it is changed in the same transaction which trims the list.
+ * <p>
+ * A consumer group reads every entry once, and the entries are shared by the consumers of
+ * the group. The group stores the offset of the last delivered entry, and it is advanced in
+ * a WATCH/MULTI/EXEC transaction, which means that two consumers never receive the same new
+ * entry. A delivered entry stays pending until it is acknowledged. A pending entry which is
+ * not acknowledged in time can be claimed by another consumer, which means that the entries
+ * are delivered at least once.
+ * <p>
+ * The log is trimmed to its maximum length when it has grown past the maximum length by
+ * more than the trim slack. Trimming the log in batches keeps the extra round trips rare
+ * and changes the base key only once per batch, which means that the transactions of the
+ * consumer groups which watch it are seldom discarded. An entry which is trimmed before
+ * a group has read it is lost for that group.
+ * <p>
+ * The base key is watched by every read which converts list indexes into offsets, and a
+ * read is retried if the log is trimmed while it is in progress. This means that the offset
+ * of a read entry is always correct.
+ * @author Petri Kainulainen
+ */
+public class ContactChangeLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactChangeLog.class);
+
+    protected static final String KEY_LOG = "contactlog";
+    protected static final String KEY_BASE = "contactlog:base";
+    protected static final String KEY_GROUP_PREFIX = "contactlog:group:";
+    protected static final String KEY_PENDING_PREFIX = "contactlog:pending:";
+
+    protected static final int MAX_ATTEMPTS = 5;
+
+    private final RedisTemplate<String, Contact> redisTemplate;
+
+    private final long maxLength;
+
+    private final long trimSlack;
+
+    private final boolean enabled;
+
+    /**
+     * Creates a new contact change log.
+     * @param redisTemplate The template which is used to access the log.
+     * @param maxLength The maximum number of entries which are kept in the log.
+     * @param trimSlack The number of entries by which the log can exceed its maximum length
+     *                  before it is trimmed.
+     * @param enabled   Are the events appended to the log.
+     */
+    public ContactChangeLog(RedisTemplate<String, Contact> redisTemplate, long maxLength, long trimSlack, boolean enabled) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("Max length must be greater than zero. Was: " + maxLength);
+        }
+        if (trimSlack < 0) {
+            throw new IllegalArgumentException("Trim slack cannot be negative. Was: " + trimSlack);
+        }
+        this.redisTemplate = redisTemplate;
+        this.maxLength = maxLength;
+        this.trimSlack = trimSlack;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns true if the events are appended to the log.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends an event to the log and trims the log if it has exceeded its maximum length
+     * by more than the trim slack.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    public void append(String channel, Contact contact) {
+        if (!enabled) {
+            return;
+        }
+
+        final byte[] entry = serializeEntry(channel, contact);
+        Long length = redisTemplate.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.rPush(serializeString(KEY_LOG), entry);
+            }
+        });
+
+        if (length != null && length > maxLength + trimSlack) {
+            trim();
+        }
+    }
+
+    /**
+     * Appends an event to the log by using the given connection, which means that it can
+     * be a part of a pipeline. The log is not trimmed, and the caller must call {@link #trim()}
+     * after the pipeline has been executed.
+     * @param connection    The used Redis connection.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    public void append(RedisConnection connection, String channel, Contact contact) {
+        if (!enabled) {
+            return;
+        }
+        connection.rPush(serializeString(KEY_LOG), serializeEntry(channel, contact));
+    }
+
+    /**
+     * Reads entries from the log without using a consumer group.
+     * @param fromOffset    The offset of the first read entry. If the entry has been trimmed, the
+     *                      reading starts from the oldest entry of the log.
+     * @param count The maximum number of read entries.
+     * @return  The read entries.
+     * @throws OptimisticLockingFailureException if the entries could not be read because
+     *          the log was trimmed concurrently too many times.
+     */
+    public List<ContactLogEntry> read(long fromOffset, int count) {
+        LOGGER.debug("Reading {} entries from offset {}", count, fromOffset);
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            List<ContactLogEntry> entries = tryRead(fromOffset, count);
+            if (entries != null) {
+                return entries;
+            }
+            LOGGER.debug("Log was trimmed concurrently. Read attempt {} of {} failed.", attempt, MAX_ATTEMPTS);
+        }
+
+        throw new OptimisticLockingFailureException("Could not read entries from offset: " + fromOffset
+                + " because the log was trimmed concurrently " + MAX_ATTEMPTS + " times");
+    }
+
+    /**
+     * Reads the next entries which have not been delivered to the consumer group. The read
+     * entries are pending until they are acknowledged.
+     * @param group The name of the consumer group.
+     * @param count The maximum number of read entries.
+     * @return  The read entries. If no new entries are found, this method returns an empty list.
+     * @throws OptimisticLockingFailureException if the entries could not be read because
+     *          the group or the log was changed concurrently too many times.
+     */
+    public List<ContactLogEntry> readGroup(String group, int count) {
+        LOGGER.debug("Reading {} entries for group: {}", count, group);
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            List<ContactLogEntry> entries = tryReadGroup(group, count);
+            if (entries != null) {
+                return entries;
+            }
+            LOGGER.debug("Group: {} was changed concurrently. Read attempt {} of {} failed.",
+                    new Object[] {group, attempt, MAX_ATTEMPTS});
+        }
+
+        throw new OptimisticLockingFailureException("Could not read entries for group: " + group
+                + " because it was changed concurrently " + MAX_ATTEMPTS + " times");
+    }
+
+    /**
+     * Claims the pending entries of the consumer group which have not been acknowledged
+     * in time. The claimed entries stay pending, and they can be claimed again if they are
+     * not acknowledged.
+     * @param group The name of the consumer group.
+     * @param minIdleMillis The minimum time in milliseconds since the entry was delivered.
+     * @param count The maximum number of claimed entries.
+     * @return  The claimed entries.
+     * @throws OptimisticLockingFailureException if the entries could not be claimed because
+     *          the pending entries or the log were changed concurrently too many times.
+     */
+    public List<ContactLogEntry> claimPending(String group, long minIdleMillis, int count) {
+        LOGGER.debug("Claiming {} pending entries of group: {}", count, group);
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            List<ContactLogEntry> entries = tryClaimPending(group, minIdleMillis, count);
+            if (entries != null) {
+                return entries;
+            }
+            LOGGER.debug("Pending entries of group: {} were changed concurrently. Claim attempt {} of {} failed.",
+                    new Object[] {group, attempt, MAX_ATTEMPTS});
+        }
+
+        throw new OptimisticLockingFailureException("Could not claim pending entries of group: " + group
+                + " because they were changed concurrently " + MAX_ATTEMPTS + " times");
+    }
+
+    /**
+     * Acknowledges an entry which was delivered to the consumer group.
+     * @param group The name of the consumer group.
+     * @param offset    The offset of the acknowledged entry.
+     */
+    public void acknowledge(final String group, final long offset) {
+        LOGGER.debug("Acknowledging entry {} of group: {}", offset, group);
+
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.zRem(serializeString(KEY_PENDING_PREFIX + group), serializeString(Long.toString(offset)));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gets the number of entries which have been delivered to the consumer group but have
+     * not been acknowledged.
+     * @param group The name of the consumer group.
+     * @return
+     */
+    public long getPendingCount(final String group) {
+        return redisTemplate.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.zCard(serializeString(KEY_PENDING_PREFIX + group));
+            }
+        });
+    }
+
+    /**
+     * Moves the position of the consumer group. The next read of the group starts from the
+     * given offset, which means that the entries after it are delivered again.
+     * @param group The name of the consumer group.
+     * @param offset    The offset of the next entry which is delivered to the group.
+     */
+    public void seekGroup(final String group, final long offset) {
+        LOGGER.debug("Moving group: {} to offset {}", group, offset);
+
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.set(serializeString(KEY_GROUP_PREFIX + group), serializeString(Long.toString(offset - 1)));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Removes the oldest entries of the log which exceed the maximum length of the log. The
+     * log is trimmed only if it has exceeded its maximum length by more than the trim slack.
+     * @return  The number of removed entries.
+     */
+    public long trim() {
+        if (!enabled) {
+            return 0;
+        }
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Long trimmed = tryTrim();
+            if (trimmed != null) {
+                return trimmed;
+            }
+            LOGGER.debug("Log was changed concurrently. Trim attempt {} of {} failed.", attempt, MAX_ATTEMPTS);
+        }
+
+        LOGGER.debug("Could not trim the log. It is trimmed again when the next entry is appended.");
+        return 0;
+    }
+
+    /**
+     * Tries to read entries from the log in a transaction which is discarded if the log is
+     * trimmed after its base was read.
+     * @param fromOffset    The offset of the first read entry.
+     * @param count The maximum number of read entries.
+     * @return  The read entries or null if the transaction was discarded.
+     */
+    private List<ContactLogEntry> tryRead(final long fromOffset, final int count) {
+        return redisTemplate.execute(new RedisCallback<List<ContactLogEntry>>() {
+            @Override
+            public List<ContactLogEntry> doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.watch(serializeString(KEY_BASE));
+
+                long base = getLong(connection, KEY_BASE, 0);
+                long from = Math.max(fromOffset, base);
+                long start = from - base;
+
+                connection.multi();
+                connection.lRange(serializeString(KEY_LOG), start, start + count - 1);
+
+                List<Object> results = connection.exec();
+                if (results == null) {
+                    return null;
+                }
+                return toEntries(from, (List<byte[]>) results.get(0));
+            }
+        });
+    }
+
+    /**
+     * Tries to read the next entries of the consumer group in a transaction which is discarded
+     * if the group or the log base is changed while the entries are read.
+     * @param group The name of the consumer group.
+     * @param count The maximum number of read entries.
+     * @return  The read entries or null if the transaction was discarded.
+     */
+    private List<ContactLogEntry> tryReadGroup(final String group, final int count) {
+        final long now = getCurrentTime();
+
+        return redisTemplate.execute(new RedisCallback<List<ContactLogEntry>>() {
+            @Override
+            public List<ContactLogEntry> doInRedis(RedisConnection connection) throws DataAccessException {
+                byte[] groupKey = serializeString(KEY_GROUP_PREFIX + group);
+                connection.watch(groupKey, serializeString(KEY_BASE));
+
+                long delivered = getLong(connection, KEY_GROUP_PREFIX + group, -1);
+                long base = getLong(connection, KEY_BASE, 0);
+                if (delivered + 1 < base) {
+                    LOGGER.debug("{} entries were trimmed before group: {} read them", base - delivered - 1, group);
+                }
+
+                List<ContactLogEntry> entries = readEntries(connection, base, Math.max(delivered + 1, base), count);
+                if (entries.isEmpty()) {
+                    connection.unwatch();
+                    return entries;
+                }
+
+                connection.multi();
+                connection.set(groupKey, serializeString(Long.toString(entries.get(entries.size() - 1).getOffset())));
+                byte[] pendingKey = serializeString(KEY_PENDING_PREFIX + group);
+                for (ContactLogEntry entry: entries) {
+                    connection.zAdd(pendingKey, now, serializeString(Long.toString(entry.getOffset())));
+                }
+
+                if (connection.exec() == null) {
+                    return null;
+                }
+                return entries;
+            }
+        });
+    }
+
+    /**
+     * Tries to claim the pending entries of the consumer group in a transaction which is
+     * discarded if the pending entries are changed or the log is trimmed while the entries
+     * are read. This means that an entry is claimed by one consumer at a time.
+     * @param group The name of the consumer group.
+     * @param minIdleMillis The minimum time in milliseconds since the entry was delivered.
+     * @param count The maximum number of claimed entries.
+     * @return  The claimed entries or null if the transaction was discarded.
+     */
+    private List<ContactLogEntry> tryClaimPending(final String group, final long minIdleMillis, final int count) {
+        final long now = getCurrentTime();
+
+        return redisTemplate.execute(new RedisCallback<List<ContactLogEntry>>() {
+            @Override
+            public List<ContactLogEntry> doInRedis(RedisConnection connection) throws DataAccessException {
+                byte[] pendingKey = serializeString(KEY_PENDING_PREFIX + group);
+                connection.watch(pendingKey, serializeString(KEY_BASE));
+
+                Set<byte[]> offsets = connection.zRangeByScore(pendingKey, 0, now - minIdleMillis, 0, count);
+                if (offsets.isEmpty()) {
+                    connection.unwatch();
+                    return Collections.emptyList();
+                }
+
+                long base = getLong(connection, KEY_BASE, 0);
+                List<ContactLogEntry> entries = new ArrayList<ContactLogEntry>(offsets.size());
+                List<byte[]> trimmedOffsets = new ArrayList<byte[]>();
+
+                for (byte[] rawOffset: offsets) {
+                    long offset = Long.parseLong(deserializeString(rawOffset));
+                    byte[] entry = offset >= base ? connection.lIndex(serializeString(KEY_LOG), offset - base) : null;
+
+                    if (entry == null) {
+                        LOGGER.debug("Pending entry {} of group: {} has been trimmed", offset, group);
+                        trimmedOffsets.add(rawOffset);
+                    }
+                    else {
+                        entries.add(deserializeEntry(offset, entry));
+                    }
+                }
+
+                connection.multi();
+                for (byte[] rawOffset: trimmedOffsets) {
+                    connection.zRem(pendingKey, rawOffset);
+                }
+                for (ContactLogEntry entry: entries) {
+                    connection.zAdd(pendingKey, now, serializeString(Long.toString(entry.getOffset())));
+                }
+
+                if (connection.exec() == null) {
+                    return null;
+                }
+                return entries;
+            }
+        });
+    }
+
+    /**
+     * Tries to trim the log in a transaction which is discarded if the log is changed
+     * before the transaction is executed.
+     * @return  The number of removed entries or null if the transaction was discarded.
+     */
+    private Long tryTrim() {
+        return redisTemplate.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                byte[] logKey = serializeString(KEY_LOG);
+                connection.watch(logKey, serializeString(KEY_BASE));
+
+                long excess = connection.lLen(logKey) - maxLength;
+                if (excess <= trimSlack) {
+                    connection.unwatch();
+                    return 0L;
+                }
+
+                connection.multi();
+                connection.lTrim(logKey, excess, -1);
+                connection.incrBy(serializeString(KEY_BASE), excess);
+
+                if (connection.exec() == null) {
+                    return null;
+                }
+
+                LOGGER.debug("Trimmed {} entries from the log", excess);
+                return excess;
+            }
+        });
+    }
+
+    private List<ContactLogEntry> readEntries(RedisConnection connection, long base, long fromOffset, int count) {
+        long start = fromOffset - base;
+        return toEntries(fromOffset, connection.lRange(serializeString(KEY_LOG), start, start + count - 1));
+    }
+
+    private List<ContactLogEntry> toEntries(long fromOffset, List<byte[]> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<ContactLogEntry> entries = new ArrayList<ContactLogEntry>(values.size());
+        for (int index = 0; index < values.size(); index++) {
+            entries.add(deserializeEntry(fromOffset + index, values.get(index)));
+        }
+        return entries;
+    }
+
+    private long getLong(RedisConnection connection, String key, long defaultValue) {
+        byte[] value = connection.get(serializeString(key));
+        if (value == null) {
+            return defaultValue;
+        }
+        return Long.parseLong(deserializeString(value));
+    }
+
+    /**
+     * Serializes an entry of the log. An entry contains the length of the channel name
+     * (one byte), the channel name and the contact.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     * @return  The serialized entry.
+     */
+    private byte[] serializeEntry(String channel, Contact contact) {
+        byte[] rawChannel = serializeString(channel);
+        byte[] rawContact = serializeValue(contact);
+
+        byte[] entry = new byte[1 + rawChannel.length + rawContact.length];
+        entry[0] = (byte) rawChannel.length;
+        System.arraycopy(rawChannel, 0, entry, 1, rawChannel.length);
+        System.arraycopy(rawContact, 0, entry, 1 + rawChannel.length, rawContact.length);
+        return entry;
+    }
+
+    private ContactLogEntry deserializeEntry(long offset, byte[] entry) {
+        int channelLength = entry.length > 0 ? entry[0] & 0xFF : -1;
+        if (channelLength < 0 || 1 + channelLength > entry.length) {
+            throw new SerializationException("Cannot deserialize log entry " + offset + ". Unexpected end of data.");
+        }
+
+        String channel = deserializeString(Arrays.copyOfRange(entry, 1, 1 + channelLength));
+        Contact contact = deserializeValue(Arrays.copyOfRange(entry, 1 + channelLength, entry.length));
+        return new ContactLogEntry(offset, channel, contact);
+    }
+
+    protected long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private byte[] serializeString(String value) {
+        return redisTemplate.getStringSerializer().serialize(value);
+    }
+
+    private String deserializeString(byte[] value) {
+        return redisTemplate.getStringSerializer().deserialize(value);
+    }
+
+    private byte[] serializeValue(Contact value) {
+        RedisSerializer serializer = redisTemplate.getValueSerializer();
+        return serializer.serialize(value);
+    }
+
+    private Contact deserializeValue(byte[] value) {
+        RedisSerializer serializer = redisTemplate.getValueSerializer();
+        return (Contact) serializer.deserialize(value);
+    }
+}
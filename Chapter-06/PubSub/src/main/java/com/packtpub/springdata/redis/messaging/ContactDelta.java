@@ -0,0 +1,212 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Address;
+import com.packtpub.springdata.redis.model.Contact;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Describes the changed fields of a contact. The fields are identified by their names and
+ * the fields of the address are prefixed with 'address.'. A field whose value is null was
+ * cleared.
+ * <p>
+ * The version of a contact grows by one every time when a delta is published. A consumer
+ * which holds a contact of version N can apply the delta of version N + 1. A delta whose
+ * version is not greater than the version of the consumer can be ignored, and if a consumer
+ * notices a gap in the versions, it must replace its copy with a snapshot. A snapshot is
+ * a delta which contains all fields of the contact.
+ * @author Petri Kainulainen
+ */
+public class ContactDelta {
+
+    public static final String FIELD_EMAIL_ADDRESS = "emailAddress";
+    public static final String FIELD_FIRST_NAME = "firstName";
+    public static final String FIELD_LAST_NAME = "lastName";
+    public static final String FIELD_PHONE_NUMBER = "phoneNumber";
+    public static final String FIELD_STREET_ADDRESS = "address.streetAddress";
+    public static final String FIELD_POST_CODE = "address.postCode";
+    public static final String FIELD_POST_OFFICE = "address.postOffice";
+    public static final String FIELD_STATE = "address.state";
+    public static final String FIELD_COUNTRY = "address.country";
+
+    private Long id;
+
+    private long version;
+
+    private boolean snapshot;
+
+    private Map<String, String> fields = new LinkedHashMap<String, String>();
+
+    public ContactDelta() {
+
+    }
+
+    /**
+     * Creates a delta which contains the fields whose values differ between the given contacts.
+     * @param old   The old information of the contact.
+     * @param updated   The updated information of the contact.
+     * @return  The created delta. The version of the delta is not set.
+     */
+    public static ContactDelta between(Contact old, Contact updated) {
+        Map<String, String> oldFields = readFields(old);
+
+        ContactDelta delta = new ContactDelta();
+        delta.setId(updated.getId());
+
+        for (Map.Entry<String, String> field: readFields(updated).entrySet()) {
+            if (!ObjectUtils.equals(oldFields.get(field.getKey()), field.getValue())) {
+                delta.fields.put(field.getKey(), field.getValue());
+            }
+        }
+
+        return delta;
+    }
+
+    /**
+     * Creates a snapshot which contains all fields of the contact.
+     * @param contact   The contact.
+     * @param version   The version of the contact.
+     * @return  The created snapshot.
+     */
+    public static ContactDelta snapshot(Contact contact, long version) {
+        ContactDelta snapshot = new ContactDelta();
+
+        snapshot.setId(contact.getId());
+        snapshot.setVersion(version);
+        snapshot.setSnapshot(true);
+        snapshot.setFields(readFields(contact));
+
+        return snapshot;
+    }
+
+    /**
+     * Writes the changed fields to the given contact.
+     * @param target    The contact which is updated.
+     * @return  The updated contact.
+     */
+    public Contact applyTo(Contact target) {
+        target.setId(id);
+
+        for (Map.Entry<String, String> field: fields.entrySet()) {
+            writeField(target, field.getKey(), field.getValue());
+        }
+
+        return target;
+    }
+
+    /**
+     * Returns true if no field was changed.
+     * @return
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return fields.isEmpty();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns true if the delta contains all fields of the contact.
+     * @return
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public void setFields(Map<String, String> fields) {
+        this.fields = fields;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+
+    private static Map<String, String> readFields(Contact contact) {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+
+        fields.put(FIELD_EMAIL_ADDRESS, contact.getEmailAddress());
+        fields.put(FIELD_FIRST_NAME, contact.getFirstName());
+        fields.put(FIELD_LAST_NAME, contact.getLastName());
+        fields.put(FIELD_PHONE_NUMBER, contact.getPhoneNumber());
+
+        Address address = contact.getAddress();
+        if (address == null) {
+            address = new Address();
+        }
+
+        fields.put(FIELD_STREET_ADDRESS, address.getStreetAddress());
+        fields.put(FIELD_POST_CODE, address.getPostCode());
+        fields.put(FIELD_POST_OFFICE, address.getPostOffice());
+        fields.put(FIELD_STATE, address.getState());
+        fields.put(FIELD_COUNTRY, address.getCountry());
+
+        return fields;
+    }
+
+    private static void writeField(Contact target, String field, String value) {
+        if (FIELD_EMAIL_ADDRESS.equals(field)) {
+            target.setEmailAddress(value);
+        }
+        else if (FIELD_FIRST_NAME.equals(field)) {
+            target.setFirstName(value);
+        }
+        else if (FIELD_LAST_NAME.equals(field)) {
+            target.setLastName(value);
+        }
+        else if (FIELD_PHONE_NUMBER.equals(field)) {
+            target.setPhoneNumber(value);
+        }
+        else if (FIELD_STREET_ADDRESS.equals(field)) {
+            getAddress(target).setStreetAddress(value);
+        }
+        else if (FIELD_POST_CODE.equals(field)) {
+            getAddress(target).setPostCode(value);
+        }
+        else if (FIELD_POST_OFFICE.equals(field)) {
+            getAddress(target).setPostOffice(value);
+        }
+        else if (FIELD_STATE.equals(field)) {
+            getAddress(target).setState(value);
+        }
+        else if (FIELD_COUNTRY.equals(field)) {
+            getAddress(target).setCountry(value);
+        }
+        else {
+            throw new IllegalArgumentException("Unknown contact field: " + field);
+        }
+    }
+
+    private static Address getAddress(Contact target) {
+        if (target.getAddress() == null) {
+            target.setAddress(new Address());
+        }
+        return target.getAddress();
+    }
+}
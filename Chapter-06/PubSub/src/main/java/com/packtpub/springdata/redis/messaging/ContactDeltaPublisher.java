@@ -0,0 +1,140 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.service.RedisContactService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Publishes the changed fields of updated contacts to the contact delta channel, which keeps
+ * the messages small when only a few fields are changed. The deltas replace the update events
+ * which contain the whole contact, and a consumer which needs the whole contact reads a snapshot.
+ * <p>
+ * The version of each contact is kept in Redis and it is incremented every time when the
+ * fields of the contact are changed. The version must be incremented in the same transaction
+ * in which the contact is stored, which means that the versions are given in the order in
+ * which the updates were stored and that a snapshot whose version is read before the contact
+ * is never older than its version. The deltas contain the new values of the changed fields,
+ * which means that applying a delta to a contact which already contains the change does no harm.
+ * @author Petri Kainulainen
+ */
+public class ContactDeltaPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactDeltaPublisher.class);
+
+    protected static final String KEY_VERSION_PREFIX = "contactversion";
+
+    private final RedisTemplate<String, Contact> redisTemplate;
+
+    private final RedisSerializer<ContactDelta> deltaSerializer;
+
+    private final boolean enabled;
+
+    /**
+     * Creates a new contact delta publisher.
+     * @param redisTemplate The template which is used to access Redis.
+     * @param deltaSerializer   The serializer which is used to write the published deltas.
+     * @param enabled   Are the deltas published.
+     */
+    public ContactDeltaPublisher(RedisTemplate<String, Contact> redisTemplate, RedisSerializer<ContactDelta> deltaSerializer,
+                                 boolean enabled) {
+        this.redisTemplate = redisTemplate;
+        this.deltaSerializer = deltaSerializer;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns true if the deltas are published.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Increments the version of a contact by using the given connection. If the connection
+     * is in a transaction, the new version is returned as the result of the command when
+     * the transaction is executed.
+     * @param connection    The used Redis connection.
+     * @param contactId The id of the changed contact.
+     */
+    public void incrementVersion(RedisConnection connection, Long contactId) {
+        connection.incr(serializeKey(buildVersionKey(contactId)));
+    }
+
+    /**
+     * Publishes a delta whose version has been set.
+     * @param delta The published delta.
+     */
+    public void publish(ContactDelta delta) {
+        LOGGER.debug("Publishing contact delta: {}", delta);
+
+        final byte[] channel = serializeString(RedisContactService.CHANNEL_CONTACT_DELTAS);
+        final byte[] message = deltaSerializer.serialize(delta);
+
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.publish(channel, message);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gets the current version of a contact.
+     * @param contactId The id of the contact.
+     * @return  The version of the contact or 0 if no delta has been published for it.
+     */
+    public long getVersion(Long contactId) {
+        final byte[] key = serializeKey(buildVersionKey(contactId));
+
+        byte[] version = redisTemplate.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.get(key);
+            }
+        });
+
+        if (version == null) {
+            return 0;
+        }
+        return Long.parseLong(redisTemplate.getStringSerializer().deserialize(version));
+    }
+
+    /**
+     * Removes the version of a removed contact.
+     * @param contactId The id of the removed contact.
+     */
+    public void removeVersion(Long contactId) {
+        redisTemplate.delete(buildVersionKey(contactId));
+    }
+
+    /**
+     * Removes the version of a removed contact by using the given connection.
+     * @param connection    The used Redis connection.
+     * @param contactId The id of the removed contact.
+     */
+    public void removeVersion(RedisConnection connection, Long contactId) {
+        connection.del(serializeKey(buildVersionKey(contactId)));
+    }
+
+    private String buildVersionKey(Long contactId) {
+        return KEY_VERSION_PREFIX + contactId;
+    }
+
+    private byte[] serializeKey(String key) {
+        RedisSerializer serializer = redisTemplate.getKeySerializer();
+        return serializer.serialize(key);
+    }
+
+    private byte[] serializeString(String value) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        return serializer.serialize(value);
+    }
+}
@@ -0,0 +1,37 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A contact change event which is delivered to a contact event listener.
+ * @author Petri Kainulainen
+ */
+public class ContactEvent {
+
+    private final String channel;
+
+    private final Contact contact;
+
+    public ContactEvent(String channel, Contact contact) {
+        this.channel = channel;
+        this.contact = contact;
+    }
+
+    /**
+     * Returns the channel to which the event was published.
+     * @return
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    public Contact getContact() {
+        return contact;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
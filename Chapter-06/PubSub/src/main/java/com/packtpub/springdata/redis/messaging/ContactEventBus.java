@@ -0,0 +1,153 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the contact change events to the listeners which run on the node which published
+ * the events without sending them through Redis.
+ * <p>
+ * The local listeners receive the published contact objects on the publishing thread. The
+ * events are still published to Redis for the other nodes, and the messages are marked with
+ * the id of this node. The listener container must hand the messages to the local listeners
+ * through {@link #suppressEcho(MessageListener)}, which ignores the messages published by
+ * this node because the local listeners have already received them.
+ * @author Petri Kainulainen
+ */
+public class ContactEventBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactEventBus.class);
+
+    private final ContactBatchRedisSerializer contactBatchSerializer;
+
+    private final boolean enabled;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, List<ContactEventListener>> listeners = new ConcurrentHashMap<String, List<ContactEventListener>>();
+
+    /**
+     * Creates a new contact event bus.
+     * @param contactBatchSerializer    The serializer which is used to write and read the origin of the messages.
+     * @param enabled   Are the events delivered to the local listeners directly.
+     */
+    public ContactEventBus(ContactBatchRedisSerializer contactBatchSerializer, boolean enabled) {
+        this.contactBatchSerializer = contactBatchSerializer;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns true if the events are delivered to the local listeners directly.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the id which identifies the messages published by this node.
+     * @return
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Registers a local listener.
+     * @param listener  The listener.
+     * @param channels  The channels whose events are delivered to the listener.
+     */
+    public synchronized void addListener(ContactEventListener listener, Collection<String> channels) {
+        for (String channel: channels) {
+            List<ContactEventListener> channelListeners = listeners.get(channel);
+            if (channelListeners == null) {
+                channelListeners = new CopyOnWriteArrayList<ContactEventListener>();
+                listeners.put(channel, channelListeners);
+            }
+            channelListeners.add(listener);
+        }
+    }
+
+    /**
+     * Delivers a contact change event to the local listeners of the channel. Nothing is
+     * delivered if the bus is disabled.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    public void deliver(String channel, Contact contact) {
+        if (!enabled) {
+            return;
+        }
+
+        List<ContactEventListener> channelListeners = listeners.get(channel);
+        if (channelListeners == null) {
+            return;
+        }
+
+        List<ContactEvent> events = Collections.singletonList(new ContactEvent(channel, contact));
+        for (ContactEventListener listener: channelListeners) {
+            try {
+                listener.onContacts(events);
+            }
+            catch (RuntimeException ex) {
+                LOGGER.debug("Local listener failed to handle event on channel: {}", channel, ex);
+            }
+        }
+    }
+
+    /**
+     * Serializes the contacts of a message which is published to Redis. If the bus is
+     * enabled, the message is marked with the id of this node.
+     * @param contacts  The published contacts.
+     * @return  The serialized message.
+     */
+    public byte[] serialize(List<Contact> contacts) {
+        return contactBatchSerializer.serialize(contacts, enabled ? nodeId : null);
+    }
+
+    /**
+     * Wraps a message listener so that it ignores the messages which were published by
+     * this node. If the bus is disabled, the listener is returned as it is.
+     * @param listener  The wrapped listener.
+     * @return  The listener which must be registered to the listener container.
+     */
+    public MessageListener suppressEcho(final MessageListener listener) {
+        if (!enabled) {
+            return listener;
+        }
+
+        return new MessageListener() {
+            @Override
+            public void onMessage(Message message, byte[] pattern) {
+                if (isEcho(message)) {
+                    LOGGER.debug("Ignoring message published by this node");
+                    return;
+                }
+                listener.onMessage(message, pattern);
+            }
+        };
+    }
+
+    private boolean isEcho(Message message) {
+        try {
+            return nodeId.equals(contactBatchSerializer.readOrigin(message.getBody()));
+        }
+        catch (SerializationException ex) {
+            LOGGER.debug("Cannot read the origin of the message", ex);
+            return false;
+        }
+    }
+}
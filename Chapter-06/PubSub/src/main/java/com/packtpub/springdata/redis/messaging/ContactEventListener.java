@@ -0,0 +1,19 @@
+package com.packtpub.springdata.redis.messaging;
+
+import java.util.List;
+
+/**
+ * Specifies the method of a listener which receives decoded contact change events. The
+ * events are received from the contact event bus of the node which published them, or
+ * from Redis through a {@link ContactEventMessageListener}.
+ * @author Petri Kainulainen
+ */
+public interface ContactEventListener {
+
+    /**
+     * Handles a batch of contact change events. The events of a batch were published to
+     * the same channel, and the listener must not modify the contacts of the events.
+     * @param events    The events. The list is never empty.
+     */
+    public void onContacts(List<ContactEvent> events);
+}
@@ -0,0 +1,47 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the contacts of a message received from a contact channel and hands them to a
+ * contact event listener as one batch. The message is decoded once and the listener is
+ * invoked directly, which means that no reflection is used when a message is handled.
+ * @author Petri Kainulainen
+ */
+public class ContactEventMessageListener implements MessageListener {
+
+    private final ContactEventListener listener;
+
+    private final RedisSerializer<List<Contact>> contactBatchSerializer;
+
+    private final RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    public ContactEventMessageListener(ContactEventListener listener, RedisSerializer<List<Contact>> contactBatchSerializer) {
+        this.listener = listener;
+        this.contactBatchSerializer = contactBatchSerializer;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        List<Contact> contacts = contactBatchSerializer.deserialize(message.getBody());
+        if (contacts.isEmpty()) {
+            return;
+        }
+
+        String channel = stringSerializer.deserialize(message.getChannel());
+
+        List<ContactEvent> events = new ArrayList<ContactEvent>(contacts.size());
+        for (Contact contact: contacts) {
+            events.add(new ContactEvent(channel, contact));
+        }
+
+        listener.onContacts(events);
+    }
+}
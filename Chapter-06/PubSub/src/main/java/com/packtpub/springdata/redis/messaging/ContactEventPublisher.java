@@ -0,0 +1,301 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the contact change events to the contact channels.
+ * <p>
+ * If batching is disabled, each event is published right away by using the connection of
+ * the caller. If batching is enabled, the events are buffered per channel and published
+ * by a background thread which sends one message per channel when the flush interval has
+ * passed or when the buffer of a channel is full. The messages are published through a
+ * dedicated connection, which means that the writes of the contact service do not pay for
+ * the serialization and the round trip of the published message.
+ * <p>
+ * A batched message is written by using the {@link com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer}
+ * and the subscribers must read the messages by using the same serializer. The order of
+ * the events is preserved within a channel but not between channels, and the subscribers
+ * receive an event at most one flush interval after it was published. Buffered events are
+ * lost if they cannot be published, which is no worse than Redis pub/sub itself.
+ * <p>
+ * Every event is also handed to the contact event bus, which delivers it to the local
+ * listeners right away if the bus is enabled. An event which is published as a part of a
+ * transaction is handed to the bus only after the transaction has been executed. If the bus
+ * is enabled, the published messages are marked with the id of this node so that the local
+ * listeners can ignore their echo.
+ * @author Petri Kainulainen
+ */
+public class ContactEventPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactEventPublisher.class);
+
+    private static final String THREAD_NAME = "contact-event-publisher";
+
+    private final RedisTemplate<String, Contact> redisTemplate;
+
+    private final ContactEventBus eventBus;
+
+    private final int maxBatchSize;
+
+    private final boolean enabled;
+
+    private final Map<String, List<Contact>> buffers = new LinkedHashMap<String, List<Contact>>();
+
+    private final Object publishLock = new Object();
+
+    private ScheduledExecutorService executor;
+
+    private RedisConnection connection;
+
+    private boolean flushRequested;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a new contact event publisher.
+     * @param redisTemplate The template which is used to publish events when batching is disabled.
+     * @param eventBus  The bus which delivers the events to the local listeners and serializes the published messages.
+     * @param maxBatchSize  The maximum number of events which are published in one message.
+     * @param flushIntervalMillis   The time in milliseconds after which the buffered events are published.
+     * @param enabled   Are the events batched.
+     */
+    public ContactEventPublisher(RedisTemplate<String, Contact> redisTemplate, ContactEventBus eventBus,
+                                 int maxBatchSize, long flushIntervalMillis, boolean enabled) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be greater than zero. Was: " + maxBatchSize);
+        }
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush interval must be greater than zero. Was: " + flushIntervalMillis);
+        }
+
+        this.redisTemplate = redisTemplate;
+        this.eventBus = eventBus;
+        this.maxBatchSize = maxBatchSize;
+        this.enabled = enabled;
+
+        if (enabled) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.scheduleWithFixedDelay(flushTask, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns true if the events are batched.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Publishes a contact change event.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    public void publish(String channel, final Contact contact) {
+        eventBus.deliver(channel, contact);
+
+        if (enabled) {
+            buffer(channel, contact);
+        }
+        else if (eventBus.isEnabled()) {
+            final byte[] rawChannel = serializeChannel(channel);
+            redisTemplate.execute(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    connection.publish(rawChannel, serializeMessage(contact));
+                    return null;
+                }
+            });
+        }
+        else {
+            redisTemplate.convertAndSend(channel, contact);
+        }
+    }
+
+    /**
+     * Publishes a contact change event by using the given connection, which means that it
+     * can be a part of a transaction. If batching is enabled, nothing is written to the
+     * connection. The event is handed to the local listeners and buffered only when
+     * {@link #deliver(String, Contact)} is called after the transaction has been executed.
+     * @param connection    The used Redis connection.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    public void publish(RedisConnection connection, String channel, Contact contact) {
+        if (!enabled) {
+            connection.publish(serializeChannel(channel), serializeMessage(contact));
+        }
+    }
+
+    /**
+     * Hands an event which was published by using a connection to the local listeners and
+     * buffers it if batching is enabled. This method must be called after the transaction
+     * which contains the event has been executed, which means that the local listeners and
+     * the subscribers never receive an event whose change was not written.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    public void deliver(String channel, Contact contact) {
+        eventBus.deliver(channel, contact);
+
+        if (enabled) {
+            buffer(channel, contact);
+        }
+    }
+
+    /**
+     * Publishes the buffered events. One message is published per channel for every
+     * full batch of events.
+     */
+    public void flush() {
+        Map<String, List<Contact>> flushed;
+        synchronized (buffers) {
+            if (buffers.isEmpty()) {
+                flushRequested = false;
+                return;
+            }
+            flushed = new LinkedHashMap<String, List<Contact>>(buffers);
+            buffers.clear();
+            flushRequested = false;
+        }
+
+        synchronized (publishLock) {
+            for (Map.Entry<String, List<Contact>> buffer: flushed.entrySet()) {
+                publishBatches(buffer.getKey(), buffer.getValue());
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread and publishes the buffered events.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+
+        LOGGER.debug("Shutting down contact event publisher");
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+
+        synchronized (publishLock) {
+            closeConnection();
+        }
+    }
+
+    private void buffer(String channel, Contact contact) {
+        boolean full;
+        synchronized (buffers) {
+            List<Contact> buffer = buffers.get(channel);
+            if (buffer == null) {
+                buffer = new ArrayList<Contact>();
+                buffers.put(channel, buffer);
+            }
+            buffer.add(contact);
+
+            full = buffer.size() >= maxBatchSize && !flushRequested;
+            if (full) {
+                flushRequested = true;
+            }
+        }
+
+        if (full) {
+            LOGGER.debug("Event buffer of channel: {} is full. Requesting flush.", channel);
+            executor.execute(flushTask);
+        }
+    }
+
+    private void publishBatches(String channel, List<Contact> events) {
+        byte[] rawChannel = serializeChannel(channel);
+
+        for (int from = 0; from < events.size(); from += maxBatchSize) {
+            List<Contact> batch = events.subList(from, Math.min(from + maxBatchSize, events.size()));
+            LOGGER.debug("Publishing {} events to channel: {}", batch.size(), channel);
+
+            try {
+                getConnection().publish(rawChannel, eventBus.serialize(batch));
+            }
+            catch (RuntimeException ex) {
+                LOGGER.debug("Could not publish {} events to channel: {}", new Object[] {batch.size(), channel, ex});
+                closeConnection();
+            }
+        }
+    }
+
+    private RedisConnection getConnection() {
+        if (connection == null || connection.isClosed()) {
+            RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+            connection = connectionFactory.getConnection();
+        }
+        return connection;
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        }
+        catch (RuntimeException ex) {
+            LOGGER.debug("Could not close the publisher connection", ex);
+        }
+        connection = null;
+    }
+
+    private byte[] serializeChannel(String channel) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        return serializer.serialize(channel);
+    }
+
+    private byte[] serializeMessage(Contact contact) {
+        if (eventBus.isEnabled()) {
+            return eventBus.serialize(Collections.singletonList(contact));
+        }
+
+        RedisSerializer serializer = redisTemplate.getValueSerializer();
+        return serializer.serialize(contact);
+    }
+}
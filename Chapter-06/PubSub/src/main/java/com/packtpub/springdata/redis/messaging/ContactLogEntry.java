@@ -0,0 +1,49 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * An entry of the contact change log.
+ * @author Petri Kainulainen
+ */
+public class ContactLogEntry {
+
+    private final long offset;
+
+    private final String channel;
+
+    private final Contact contact;
+
+    public ContactLogEntry(long offset, String channel, Contact contact) {
+        this.offset = offset;
+        this.channel = channel;
+        this.contact = contact;
+    }
+
+    /**
+     * Returns the position of the entry in the change log. The offsets of the entries
+     * grow by one and they do not change when the log is trimmed.
+     * @return
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the channel to which the change was published.
+     * @return
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    public Contact getContact() {
+        return contact;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,336 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.service.RedisContactService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches the messages received from the contact channels to the message listeners by
+ * using a bounded pool of worker threads.
+ * <p>
+ * The workers are partitioned by contact id. Each partition has one worker thread and a
+ * bounded queue, and the messages of a contact are always handled by the same partition,
+ * which means that the messages of one contact are handled in the order in which they were
+ * received. A batch which contains contacts of several partitions is split into one message
+ * per partition. A message of the contact delta channel contains one contact delta and it is
+ * handled by the partition of its contact id. A message whose contacts cannot be read is handled
+ * by the first partition.
+ * <p>
+ * The listener container must hand the messages to the dispatcher in the order in which
+ * they were received, which means that it must use a synchronous task executor.
+ * <p>
+ * When the queue of a partition is full, the backpressure policy decides what happens to
+ * a new message. The {@link BackpressurePolicy#BLOCK} policy blocks the subscription thread
+ * until the queue has room, which lets Redis buffer the messages. The {@link BackpressurePolicy#DISCARD}
+ * policy drops the message and counts it in the statistics.
+ * @author Petri Kainulainen
+ */
+public class ContactMessageDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactMessageDispatcher.class);
+
+    private static final String THREAD_NAME_PREFIX = "contact-listener-";
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Specifies what happens to a message when the queue of its partition is full.
+     */
+    public enum BackpressurePolicy {
+        BLOCK,
+        DISCARD
+    }
+
+    private final RedisSerializer<List<Contact>> contactBatchSerializer;
+
+    private final RedisSerializer<ContactDelta> contactDeltaSerializer;
+
+    private final RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    private final boolean enabled;
+
+    private final ThreadPoolExecutor[] partitions;
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong handledCount = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong queueNanosTotal = new AtomicLong();
+    private final AtomicLong handlingNanosTotal = new AtomicLong();
+    private final AtomicLong handlingNanosMax = new AtomicLong();
+
+    /**
+     * Creates a new contact message dispatcher.
+     * @param contactBatchSerializer    The serializer which is used to read the contacts of a message.
+     * @param contactDeltaSerializer    The serializer which is used to read the messages of the contact delta channel.
+     * @param partitionCount    The number of partitions.
+     * @param queueCapacity The maximum number of messages which are waiting in the queue of one partition.
+     * @param backpressurePolicy    The policy which is used when the queue of a partition is full.
+     * @param enabled   Are the messages dispatched by using the partitions.
+     */
+    public ContactMessageDispatcher(RedisSerializer<List<Contact>> contactBatchSerializer,
+                                    RedisSerializer<ContactDelta> contactDeltaSerializer, int partitionCount,
+                                    int queueCapacity, BackpressurePolicy backpressurePolicy, boolean enabled) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Partition count must be greater than zero. Was: " + partitionCount);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be greater than zero. Was: " + queueCapacity);
+        }
+
+        this.contactBatchSerializer = contactBatchSerializer;
+        this.contactDeltaSerializer = contactDeltaSerializer;
+        this.enabled = enabled;
+        this.partitions = new ThreadPoolExecutor[enabled ? partitionCount : 0];
+
+        RejectedExecutionHandler rejectedExecutionHandler = createRejectedExecutionHandler(backpressurePolicy);
+        for (int index = 0; index < partitions.length; index++) {
+            partitions[index] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity), createThreadFactory(index), rejectedExecutionHandler);
+        }
+    }
+
+    /**
+     * Returns true if the messages are dispatched by using the partitions.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Wraps a message listener so that the messages are handed to it by the workers of
+     * this dispatcher. If the dispatcher is disabled, the listener is returned as it is.
+     * @param listener  The wrapped listener.
+     * @return  The listener which must be registered to the listener container.
+     */
+    public MessageListener wrap(final MessageListener listener) {
+        if (!enabled) {
+            return listener;
+        }
+
+        return new MessageListener() {
+            @Override
+            public void onMessage(Message message, byte[] pattern) {
+                dispatch(listener, message, pattern);
+            }
+        };
+    }
+
+    /**
+     * Gets the statistics of the dispatcher.
+     * @return
+     */
+    public DispatchStatistics getStatistics() {
+        int queueDepth = 0;
+        int maxPartitionQueueDepth = 0;
+        for (ThreadPoolExecutor partition: partitions) {
+            int depth = partition.getQueue().size();
+            queueDepth += depth;
+            maxPartitionQueueDepth = Math.max(maxPartitionQueueDepth, depth);
+        }
+
+        return new DispatchStatistics(queueDepth, maxPartitionQueueDepth, dispatchedCount.get(), handledCount.get(),
+                discardedCount.get(), failedCount.get(), queueNanosTotal.get(), handlingNanosTotal.get(),
+                handlingNanosMax.get());
+    }
+
+    /**
+     * Stops the workers after the queued messages have been handled.
+     */
+    @PreDestroy
+    public void shutdown() {
+        LOGGER.debug("Shutting down contact message dispatcher");
+
+        for (ThreadPoolExecutor partition: partitions) {
+            partition.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor partition: partitions) {
+                partition.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(MessageListener listener, Message message, byte[] pattern) {
+        if (isDeltaMessage(message)) {
+            submit(getPartition(readDeltaContactId(message)), new DispatchTask(listener, message, pattern));
+            return;
+        }
+
+        Map<Integer, List<Contact>> contactsByPartition = groupByPartition(readContacts(message));
+
+        if (contactsByPartition.size() <= 1) {
+            int partition = contactsByPartition.isEmpty() ? 0 : contactsByPartition.keySet().iterator().next();
+            submit(partition, new DispatchTask(listener, message, pattern));
+            return;
+        }
+
+        for (Map.Entry<Integer, List<Contact>> contacts: contactsByPartition.entrySet()) {
+            Message partitionMessage = new DefaultMessage(message.getChannel(), contactBatchSerializer.serialize(contacts.getValue()));
+            submit(contacts.getKey(), new DispatchTask(listener, partitionMessage, pattern));
+        }
+    }
+
+    private void submit(int partition, DispatchTask task) {
+        dispatchedCount.incrementAndGet();
+        partitions[partition].execute(task);
+    }
+
+    private boolean isDeltaMessage(Message message) {
+        String channel = stringSerializer.deserialize(message.getChannel());
+        return RedisContactService.CHANNEL_CONTACT_DELTAS.equals(channel);
+    }
+
+    private Long readDeltaContactId(Message message) {
+        try {
+            ContactDelta delta = contactDeltaSerializer.deserialize(message.getBody());
+            return delta != null ? delta.getId() : null;
+        }
+        catch (SerializationException ex) {
+            LOGGER.debug("Cannot read the contact delta of the message: {}. Using the first partition.", ex.getMessage());
+            return null;
+        }
+    }
+
+    private List<Contact> readContacts(Message message) {
+        try {
+            return contactBatchSerializer.deserialize(message.getBody());
+        }
+        catch (SerializationException ex) {
+            LOGGER.debug("Cannot read the contacts of the message: {}. Using the first partition.", ex.getMessage());
+            return new ArrayList<Contact>();
+        }
+    }
+
+    private Map<Integer, List<Contact>> groupByPartition(List<Contact> contacts) {
+        Map<Integer, List<Contact>> contactsByPartition = new LinkedHashMap<Integer, List<Contact>>();
+
+        for (Contact contact: contacts) {
+            int partition = getPartition(contact.getId());
+
+            List<Contact> partitionContacts = contactsByPartition.get(partition);
+            if (partitionContacts == null) {
+                partitionContacts = new ArrayList<Contact>();
+                contactsByPartition.put(partition, partitionContacts);
+            }
+            partitionContacts.add(contact);
+        }
+
+        return contactsByPartition;
+    }
+
+    private int getPartition(Long contactId) {
+        if (contactId == null) {
+            return 0;
+        }
+        return (contactId.hashCode() & Integer.MAX_VALUE) % partitions.length;
+    }
+
+    private void recordHandled(long queueNanos, long handlingNanos) {
+        handledCount.incrementAndGet();
+        queueNanosTotal.addAndGet(queueNanos);
+        handlingNanosTotal.addAndGet(handlingNanos);
+
+        long max = handlingNanosMax.get();
+        while (handlingNanos > max && !handlingNanosMax.compareAndSet(max, handlingNanos)) {
+            max = handlingNanosMax.get();
+        }
+    }
+
+    private ThreadFactory createThreadFactory(final int partition) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + partition);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private RejectedExecutionHandler createRejectedExecutionHandler(BackpressurePolicy backpressurePolicy) {
+        if (backpressurePolicy == BackpressurePolicy.BLOCK) {
+            return new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                    if (executor.isShutdown()) {
+                        discard();
+                        return;
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        discard();
+                    }
+                }
+            };
+        }
+
+        return new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                discard();
+            }
+        };
+    }
+
+    private void discard() {
+        long discarded = discardedCount.incrementAndGet();
+        LOGGER.debug("Partition queue is full. Discarded {} messages.", discarded);
+    }
+
+    private class DispatchTask implements Runnable {
+
+        private final MessageListener listener;
+        private final Message message;
+        private final byte[] pattern;
+        private final long receivedAt;
+
+        private DispatchTask(MessageListener listener, Message message, byte[] pattern) {
+            this.listener = listener;
+            this.message = message;
+            this.pattern = pattern;
+            this.receivedAt = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long started = System.nanoTime();
+            try {
+                listener.onMessage(message, pattern);
+            }
+            catch (RuntimeException ex) {
+                failedCount.incrementAndGet();
+                LOGGER.debug("Listener failed to handle message", ex);
+            }
+            finally {
+                recordHandled(started - receivedAt, System.nanoTime() - started);
+            }
+        }
+    }
+}
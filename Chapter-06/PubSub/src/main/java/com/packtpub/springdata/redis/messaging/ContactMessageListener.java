@@ -8,10 +8,12 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * @author Petri Kainulainen
  */
-public class ContactMessageListener implements MessageListener {
+public class ContactMessageListener implements MessageListener, ContactEventListener {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(ContactMessageListener.class);
 
@@ -23,4 +25,9 @@ public class ContactMessageListener implements MessageListener {
                 stringSerializer.deserialize(message.getBody()),
                 stringSerializer.deserialize(message.getChannel()));
     }
+
+    @Override
+    public void onContacts(List<ContactEvent> events) {
+        LOGGER.debug("Received events: {}", events);
+    }
 }
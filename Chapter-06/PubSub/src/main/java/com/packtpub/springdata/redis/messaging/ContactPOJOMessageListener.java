@@ -1,17 +1,21 @@
 package com.packtpub.springdata.redis.messaging;
 
-import com.packtpub.springdata.redis.model.Contact;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 /**
  * @author Petri Kainulainen
  */
-public class ContactPOJOMessageListener {
+public class ContactPOJOMessageListener implements ContactEventListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ContactPOJOMessageListener.class);
 
-    public void handleMessage(Contact contact, String channel) {
-        LOGGER.debug("Received contact: {} on channel: {}", contact, channel);
+    @Override
+    public void onContacts(List<ContactEvent> events) {
+        for (ContactEvent event: events) {
+            LOGGER.debug("Received contact: {} on channel: {}", event.getContact(), event.getChannel());
+        }
     }
 }
@@ -0,0 +1,101 @@
+package com.packtpub.springdata.redis.messaging;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A snapshot of the statistics of the contact message dispatcher. The queue time of a
+ * message is the time which passes between receiving the message and starting to handle
+ * it, and the handling time is the time which is used by the listener.
+ * @author Petri Kainulainen
+ */
+public class DispatchStatistics {
+
+    private final int queueDepth;
+    private final int maxPartitionQueueDepth;
+
+    private final long dispatchedCount;
+    private final long handledCount;
+    private final long discardedCount;
+    private final long failedCount;
+
+    private final long queueNanosTotal;
+    private final long handlingNanosTotal;
+    private final long handlingNanosMax;
+
+    public DispatchStatistics(int queueDepth, int maxPartitionQueueDepth, long dispatchedCount, long handledCount,
+                              long discardedCount, long failedCount, long queueNanosTotal, long handlingNanosTotal,
+                              long handlingNanosMax) {
+        this.queueDepth = queueDepth;
+        this.maxPartitionQueueDepth = maxPartitionQueueDepth;
+        this.dispatchedCount = dispatchedCount;
+        this.handledCount = handledCount;
+        this.discardedCount = discardedCount;
+        this.failedCount = failedCount;
+        this.queueNanosTotal = queueNanosTotal;
+        this.handlingNanosTotal = handlingNanosTotal;
+        this.handlingNanosMax = handlingNanosMax;
+    }
+
+    /**
+     * Returns the number of messages which are waiting in the queues of all partitions.
+     * @return
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the number of messages which are waiting in the longest partition queue.
+     * @return
+     */
+    public int getMaxPartitionQueueDepth() {
+        return maxPartitionQueueDepth;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    public long getHandledCount() {
+        return handledCount;
+    }
+
+    public long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Returns the average time which a message has waited in a partition queue.
+     * @return  The average queue time in nanoseconds.
+     */
+    public long getAverageQueueNanos() {
+        if (handledCount == 0) {
+            return 0;
+        }
+        return queueNanosTotal / handledCount;
+    }
+
+    /**
+     * Returns the average time which was used to handle a message.
+     * @return  The average handling time in nanoseconds.
+     */
+    public long getAverageHandlingNanos() {
+        if (handledCount == 0) {
+            return 0;
+        }
+        return handlingNanosTotal / handledCount;
+    }
+
+    public long getMaxHandlingNanos() {
+        return handlingNanosMax;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,184 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A serializer for the messages which are published to the contact channels. A message
+ * contains either a single contact or a batch of contacts.
+ * <p>
+ * A single contact is written by using the contact serializer as it is, which means that
+ * the message is identical to a message which is published without batching. A batch
+ * starts with {@link #HEADER_BATCH} which is followed by the number of contacts (four
+ * bytes), and each contact is written as its length (four bytes) followed by the contact
+ * which is written by using the contact serializer.
+ * <p>
+ * A message which does not start with the batch header is read as a single contact. This
+ * works as long as the contacts written by the contact serializer never start with the
+ * batch header, which is true for JSON and for the binary contact format.
+ * <p>
+ * A message can also start with {@link #HEADER_ORIGIN} which is followed by the length
+ * of the origin (one byte) and the origin itself. The origin identifies the node which
+ * published the message and the rest of the message is written as described above.
+ * @author Petri Kainulainen
+ */
+public class ContactBatchRedisSerializer implements RedisSerializer<List<Contact>> {
+
+    protected static final byte HEADER_BATCH = 0x1D;
+    protected static final byte HEADER_ORIGIN = 0x1E;
+
+    private static final Charset ORIGIN_CHARSET = Charset.forName("UTF-8");
+    private static final int MAX_ORIGIN_LENGTH = 255;
+
+    private static final int HEADER_LENGTH = 1;
+    private static final int INT_LENGTH = 4;
+
+    private final RedisSerializer<Contact> contactSerializer;
+
+    public ContactBatchRedisSerializer(RedisSerializer<Contact> contactSerializer) {
+        this.contactSerializer = contactSerializer;
+    }
+
+    @Override
+    public byte[] serialize(List<Contact> contacts) throws SerializationException {
+        if (contacts == null || contacts.isEmpty()) {
+            return new byte[0];
+        }
+        if (contacts.size() == 1) {
+            return contactSerializer.serialize(contacts.get(0));
+        }
+
+        byte[][] values = new byte[contacts.size()][];
+        int length = HEADER_LENGTH + INT_LENGTH;
+        for (int index = 0; index < contacts.size(); index++) {
+            values[index] = contactSerializer.serialize(contacts.get(index));
+            length += INT_LENGTH + values[index].length;
+        }
+
+        byte[] bytes = new byte[length];
+        bytes[0] = HEADER_BATCH;
+        int position = writeInt(bytes, HEADER_LENGTH, values.length);
+        for (byte[] value: values) {
+            position = writeInt(bytes, position, value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Serializes the contacts and marks the message with the given origin.
+     * @param contacts  The serialized contacts.
+     * @param origin    The origin of the message. If it is null, the message is not marked.
+     * @return  The serialized message.
+     * @throws SerializationException
+     */
+    public byte[] serialize(List<Contact> contacts, String origin) throws SerializationException {
+        byte[] message = serialize(contacts);
+        if (origin == null) {
+            return message;
+        }
+
+        byte[] rawOrigin = origin.getBytes(ORIGIN_CHARSET);
+        if (rawOrigin.length > MAX_ORIGIN_LENGTH) {
+            throw new SerializationException("Cannot serialize contacts. Origin is too long: " + origin);
+        }
+
+        byte[] bytes = new byte[HEADER_LENGTH + 1 + rawOrigin.length + message.length];
+        bytes[0] = HEADER_ORIGIN;
+        bytes[HEADER_LENGTH] = (byte) rawOrigin.length;
+        System.arraycopy(rawOrigin, 0, bytes, HEADER_LENGTH + 1, rawOrigin.length);
+        System.arraycopy(message, 0, bytes, HEADER_LENGTH + 1 + rawOrigin.length, message.length);
+
+        return bytes;
+    }
+
+    /**
+     * Reads the origin of a message.
+     * @param bytes The message.
+     * @return  The origin of the message or null if the message is not marked with an origin.
+     */
+    public String readOrigin(byte[] bytes) {
+        if (bytes == null || bytes.length == 0 || bytes[0] != HEADER_ORIGIN) {
+            return null;
+        }
+        return new String(bytes, HEADER_LENGTH + 1, readOriginLength(bytes), ORIGIN_CHARSET);
+    }
+
+    @Override
+    public List<Contact> deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return Collections.emptyList();
+        }
+        if (bytes[0] == HEADER_ORIGIN) {
+            int start = HEADER_LENGTH + 1 + readOriginLength(bytes);
+            return deserialize(Arrays.copyOfRange(bytes, start, bytes.length));
+        }
+        if (bytes[0] != HEADER_BATCH) {
+            Contact contact = contactSerializer.deserialize(bytes);
+            if (contact == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(contact);
+        }
+
+        int position = HEADER_LENGTH;
+        int count = readInt(bytes, position);
+        position += INT_LENGTH;
+        if (count < 0) {
+            throw new SerializationException("Cannot deserialize contact batch. Invalid count: " + count);
+        }
+
+        List<Contact> contacts = new ArrayList<Contact>(Math.min(count, bytes.length));
+        for (int index = 0; index < count; index++) {
+            int length = readInt(bytes, position);
+            position += INT_LENGTH;
+            if (length < 0 || position + length > bytes.length) {
+                throw new SerializationException("Cannot deserialize contact batch. Unexpected end of data.");
+            }
+
+            Contact contact = contactSerializer.deserialize(Arrays.copyOfRange(bytes, position, position + length));
+            if (contact != null) {
+                contacts.add(contact);
+            }
+            position += length;
+        }
+
+        return contacts;
+    }
+
+    private int readOriginLength(byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH + 1) {
+            throw new SerializationException("Cannot read origin. Unexpected end of data.");
+        }
+        int length = bytes[HEADER_LENGTH] & 0xFF;
+        if (HEADER_LENGTH + 1 + length > bytes.length) {
+            throw new SerializationException("Cannot read origin. Unexpected end of data.");
+        }
+        return length;
+    }
+
+    private int writeInt(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) (value >>> 24);
+        bytes[position + 1] = (byte) (value >>> 16);
+        bytes[position + 2] = (byte) (value >>> 8);
+        bytes[position + 3] = (byte) value;
+        return position + INT_LENGTH;
+    }
+
+    private int readInt(byte[] bytes, int position) {
+        if (position + INT_LENGTH > bytes.length) {
+            throw new SerializationException("Cannot deserialize contact batch. Unexpected end of data.");
+        }
+        return ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16)
+                | ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+    }
+}
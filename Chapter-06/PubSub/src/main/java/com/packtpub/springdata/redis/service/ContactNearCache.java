@@ -0,0 +1,170 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded in-process cache which holds recently read contacts in front of Redis. The
+ * cache evicts the least recently used contact when it is full, and a cached contact expires
+ * when it is older than the time to live of the cache.
+ * <p>
+ * The cached contacts are invalidated when a change notification is received from the
+ * contact channels, which keeps the caches of several application nodes coherent. Redis
+ * pub/sub does not guarantee delivery, which means that a notification can be lost (for
+ * example when the listener container reconnects). The time to live limits how long a
+ * contact can stay stale in that case.
+ * <p>
+ * A contact which is read from Redis is cached only if no contact was invalidated while
+ * it was read. This prevents a read which races with a change notification from caching
+ * the old information of a contact.
+ * @author Petri Kainulainen
+ */
+public class ContactNearCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactNearCache.class);
+
+    private final Map<Long, Entry> entries;
+
+    private final long timeToLiveMillis;
+
+    private final boolean enabled;
+
+    private long version;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+    private long invalidationCount;
+
+    private long servedAgeTotalMillis;
+    private long servedAgeMaxMillis;
+
+    /**
+     * Creates a new near cache.
+     * @param maxSize   The maximum number of cached contacts.
+     * @param timeToLiveMillis  The time in milliseconds after which a cached contact expires.
+     * @param enabled   Is the near cache used.
+     */
+    public ContactNearCache(final int maxSize, long timeToLiveMillis, boolean enabled) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be greater than zero. Was: " + maxSize);
+        }
+        if (timeToLiveMillis < 1) {
+            throw new IllegalArgumentException("Time to live must be greater than zero. Was: " + timeToLiveMillis);
+        }
+
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.enabled = enabled;
+        this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns true if the near cache is used.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets a cached contact.
+     * @param id    The id of the contact.
+     * @return  The cached contact or null if the contact is not cached or it has expired.
+     */
+    public synchronized Contact get(Long id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        long age = getCurrentTime() - entry.cachedAt;
+        if (age > timeToLiveMillis) {
+            LOGGER.debug("Cached contact with id: {} has expired", id);
+            entries.remove(id);
+            expirationCount++;
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        servedAgeTotalMillis += age;
+        servedAgeMaxMillis = Math.max(servedAgeMaxMillis, age);
+
+        return entry.contact;
+    }
+
+    /**
+     * Returns the current version of the cache. The version is changed every time when
+     * a contact is invalidated. It must be read before a contact is read from Redis and
+     * given to the put method after the contact has been read.
+     * @return
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Caches a contact which was read from Redis.
+     * @param contact   The cached contact.
+     * @param versionBeforeRead The version of the cache before the contact was read.
+     */
+    public synchronized void put(Contact contact, long versionBeforeRead) {
+        if (versionBeforeRead != version) {
+            LOGGER.debug("Contacts were invalidated during the read. Not caching contact: {}", contact);
+            return;
+        }
+
+        entries.put(contact.getId(), new Entry(contact, getCurrentTime()));
+    }
+
+    /**
+     * Removes a contact from the cache.
+     * @param id    The id of the removed contact.
+     */
+    public synchronized void invalidate(Long id) {
+        LOGGER.debug("Invalidating contact with id: {}", id);
+
+        version++;
+        invalidationCount++;
+        entries.remove(id);
+    }
+
+    /**
+     * Gets the statistics of the cache.
+     * @return
+     */
+    public synchronized NearCacheStatistics getStatistics() {
+        return new NearCacheStatistics(entries.size(), hitCount, missCount, evictionCount, expirationCount,
+                invalidationCount, servedAgeTotalMillis, servedAgeMaxMillis);
+    }
+
+    protected long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private static class Entry {
+
+        private final Contact contact;
+        private final long cachedAt;
+
+        private Entry(Contact contact, long cachedAt) {
+            this.contact = contact;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.packtpub.springdata.redis.service;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A snapshot of the statistics of the contact near cache. The served age of a contact is
+ * the time which has passed since the contact was read from Redis when it is returned from
+ * the cache, and it describes how stale the served contacts can be.
+ * @author Petri Kainulainen
+ */
+public class NearCacheStatistics {
+
+    private final int size;
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long invalidationCount;
+
+    private final long servedAgeTotalMillis;
+    private final long servedAgeMaxMillis;
+
+    public NearCacheStatistics(int size, long hitCount, long missCount, long evictionCount, long expirationCount,
+                               long invalidationCount, long servedAgeTotalMillis, long servedAgeMaxMillis) {
+        this.size = size;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.invalidationCount = invalidationCount;
+        this.servedAgeTotalMillis = servedAgeTotalMillis;
+        this.servedAgeMaxMillis = servedAgeMaxMillis;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the share of the reads which were served from the cache.
+     * @return  The hit rate between 0 and 1. If no reads have been made, returns 0.
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        if (requestCount == 0) {
+            return 0;
+        }
+        return (double) hitCount / requestCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Returns the average served age of the contacts which were served from the cache.
+     * @return  The average age in milliseconds. If no contacts have been served, returns 0.
+     */
+    public long getAverageServedAgeMillis() {
+        if (hitCount == 0) {
+            return 0;
+        }
+        return servedAgeTotalMillis / hitCount;
+    }
+
+    public long getMaxServedAgeMillis() {
+        return servedAgeMaxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
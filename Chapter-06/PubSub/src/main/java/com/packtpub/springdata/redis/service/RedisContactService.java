@@ -1,10 +1,19 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
+import com.packtpub.springdata.redis.messaging.ContactChangeLog;
+import com.packtpub.springdata.redis.messaging.ContactDelta;
+import com.packtpub.springdata.redis.messaging.ContactDeltaPublisher;
+import com.packtpub.springdata.redis.messaging.ContactEventPublisher;
 import com.packtpub.springdata.redis.model.Contact;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -15,6 +24,15 @@ import java.util.List;
 
 /**
  * This implementation communicates with Redis by using the RedisTemplate class.
+ * <p>
+ * The contact change events are published by using the contact event publisher, which
+ * can buffer the events and publish them in batches. The events are also appended to the
+ * contact change log, if it is enabled, so that a consumer which was down can read them later.
+ * If the contact delta publisher is enabled, an update publishes only the changed fields of the
+ * contact to the contact delta channel and no update event is published. The updated contact,
+ * its version, the contact set and the name indexes are then written in one transaction, which
+ * is retried if the contact is changed concurrently. A consumer which needs the whole contact
+ * reads a snapshot of it. The change log always contains the whole contact.
  * @author Petri Kainulainen
  */
 @Service
@@ -25,12 +43,33 @@ public class RedisContactService implements ContactService {
     public static final String CHANNEL_NEW_CONTACTS = "newContacts";
     public static final String CHANNEL_UPDATED_CONTACTS = "updatedContacts";
     public static final String CHANNEL_REMOVED_CONTACTS = "removedContacts";
+    public static final String CHANNEL_CONTACT_DELTAS = "contactDeltas";
 
     protected static final String KEY_CONTACTS_SET = "contacts";
     protected static final String KEY_CONTACT_PREFIX = "contact";
 
+    protected static final int MAX_UPDATE_ATTEMPTS = 5;
+
+    @Resource
+    private BatchWriter batchWriter;
+
+    @Resource
+    private BlockIdAllocator contactIdCounter;
+
+    @Resource
+    private ContactChangeLog contactChangeLog;
+
+    @Resource
+    private ContactDeltaPublisher contactDeltaPublisher;
+
+    @Resource
+    private ContactEventPublisher contactEventPublisher;
+
+    @Resource
+    private ContactNameIndex contactNameIndex;
+
     @Resource
-    private RedisAtomicLong contactIdCounter;
+    private ContactNearCache contactNearCache;
 
     @Resource
     private RedisTemplate<String, Contact> redisTemplate;
@@ -41,28 +80,138 @@ public class RedisContactService implements ContactService {
 
         persist(added);
         redisTemplate.opsForSet().add(KEY_CONTACTS_SET, added);
-        redisTemplate.convertAndSend(CHANNEL_NEW_CONTACTS, added);
+        contactNameIndex.add(added);
+        publish(CHANNEL_NEW_CONTACTS, added);
 
         return added;
     }
 
+    @Override
+    public List<Contact> addAll(Collection<Contact> added) {
+        LOGGER.debug("Adding {} contacts", added.size());
+
+        List<Contact> contacts = new ArrayList<Contact>(added);
+        assignIds(contacts);
+
+        batchWriter.write(contacts, new BatchWriteCallback<Contact>() {
+            @Override
+            public void write(RedisConnection connection, Contact contact) {
+                byte[] value = serializeValue(contact);
+
+                connection.set(serializeKey(buildKey(contact.getId())), value);
+                connection.sAdd(serializeKey(KEY_CONTACTS_SET), value);
+                contactNameIndex.add(connection, contact);
+                publish(connection, CHANNEL_NEW_CONTACTS, contact);
+            }
+
+            @Override
+            public void written(Contact contact) {
+                contactEventPublisher.deliver(CHANNEL_NEW_CONTACTS, contact);
+            }
+        });
+
+        contactChangeLog.trim();
+
+        LOGGER.debug("Added {} contacts", contacts.size());
+
+        return contacts;
+    }
+
+    @Override
+    public long count() {
+        LOGGER.debug("Getting contact count");
+        return contactNameIndex.count();
+    }
+
+    @Override
+    public long count(SearchDTO dto) {
+        LOGGER.debug("Getting contact count with search criteria: {}", dto);
+        return contactNameIndex.count(dto.getSearchTerm());
+    }
+
     @Override
     public Contact deleteById(Long id) throws NotFoundException {
         LOGGER.debug("Finding contact by id: {}", id);
 
-        Contact deleted = findById(id);
+        Contact deleted = findFromRedis(id);
         LOGGER.debug("Deleting the information of contact: {}", deleted);
 
         String key = buildKey(id);
         LOGGER.debug("Using key: {}", key);
 
         redisTemplate.opsForSet().remove(KEY_CONTACTS_SET, deleted);
+        contactNameIndex.remove(deleted);
         redisTemplate.opsForValue().set(key, null);
-        redisTemplate.convertAndSend(CHANNEL_REMOVED_CONTACTS, deleted);
+        if (contactDeltaPublisher.isEnabled()) {
+            contactDeltaPublisher.removeVersion(id);
+        }
+        invalidate(id);
+        publish(CHANNEL_REMOVED_CONTACTS, deleted);
+
+        return deleted;
+    }
+
+    @Override
+    public List<Contact> deleteAll(Collection<Long> ids) {
+        LOGGER.debug("Deleting {} contacts", ids.size());
+
+        List<Contact> deleted = new ArrayList<Contact>(ids.size());
+        for (List<Long> batch: batchWriter.partition(ids)) {
+            deleted.addAll(findByIds(batch));
+        }
+
+        batchWriter.write(deleted, new BatchWriteCallback<Contact>() {
+            @Override
+            public void write(RedisConnection connection, Contact contact) {
+                connection.del(serializeKey(buildKey(contact.getId())));
+                connection.sRem(serializeKey(KEY_CONTACTS_SET), serializeValue(contact));
+                contactNameIndex.remove(connection, contact);
+                if (contactDeltaPublisher.isEnabled()) {
+                    contactDeltaPublisher.removeVersion(connection, contact.getId());
+                }
+                publish(connection, CHANNEL_REMOVED_CONTACTS, contact);
+            }
+
+            @Override
+            public void written(Contact contact) {
+                contactEventPublisher.deliver(CHANNEL_REMOVED_CONTACTS, contact);
+            }
+        });
+
+        contactChangeLog.trim();
+
+        for (Contact contact: deleted) {
+            invalidate(contact.getId());
+        }
+
+        LOGGER.debug("Deleted {} contacts", deleted.size());
 
         return deleted;
     }
 
+    @Override
+    public long exportAll(ContactCallbackHandler handler) {
+        LOGGER.debug("Exporting all contacts");
+
+        long exported = 0;
+        int pageIndex = 0;
+
+        List<Long> ids = contactNameIndex.findIdsForPage(pageIndex, batchWriter.getBatchSize());
+        while (!ids.isEmpty()) {
+            for (Contact contact: findByIds(ids)) {
+                handler.processContact(contact);
+                exported++;
+            }
+
+            pageIndex++;
+            ids = contactNameIndex.findIdsForPage(pageIndex, batchWriter.getBatchSize());
+        }
+
+        LOGGER.debug("Exported {} contacts", exported);
+
+        return exported;
+    }
+
     @Override
     public List<Contact> findAll() {
         LOGGER.debug("Finding all contacts");
@@ -73,10 +222,58 @@ public class RedisContactService implements ContactService {
         return new ArrayList<Contact>(contacts);
     }
 
+    @Override
+    public List<Contact> findAllForPage(int pageIndex, int pageSize) {
+        LOGGER.debug("Finding contacts for page {} with page size {}", pageIndex, pageSize);
+
+        List<Long> ids = contactNameIndex.findIdsForPage(pageIndex, pageSize);
+        List<Contact> contacts = findByIds(ids);
+
+        LOGGER.debug("Returning {} contacts", contacts.size());
+
+        return contacts;
+    }
+
     @Override
     public Contact findById(Long id) throws NotFoundException {
         LOGGER.debug("Finding contact by id: {}", id);
 
+        if (!contactNearCache.isEnabled()) {
+            return findFromRedis(id);
+        }
+
+        Contact cached = contactNearCache.get(id);
+        if (cached != null) {
+            LOGGER.debug("Found contact from the near cache: {}", cached);
+            return cached;
+        }
+
+        long version = contactNearCache.getVersion();
+        Contact found = findFromRedis(id);
+        contactNearCache.put(found, version);
+
+        return found;
+    }
+
+    @Override
+    public ContactDelta findSnapshotById(Long id) throws NotFoundException {
+        LOGGER.debug("Finding snapshot of contact by id: {}", id);
+
+        long version = contactDeltaPublisher.getVersion(id);
+        Contact found = findFromRedis(id);
+
+        return ContactDelta.snapshot(found, version);
+    }
+
+    /**
+     * Finds a contact from Redis without using the near cache. The update and delete
+     * operations must use this method, because they need the stored information of the
+     * contact in order to remove it from the contact set.
+     * @param id    The id of the wanted contact.
+     * @return  The found contact.
+     * @throws NotFoundException    if no contact is found with the given id.
+     */
+    private Contact findFromRedis(Long id) throws NotFoundException {
         String key = buildKey(id);
         LOGGER.debug("Finding contact by key: {}", key);
 
@@ -90,21 +287,137 @@ public class RedisContactService implements ContactService {
         return found;
     }
 
+    @Override
+    public List<Contact> search(SearchDTO dto) {
+        LOGGER.debug("Searching contacts with search criteria: {}", dto);
+
+        List<Long> ids = contactNameIndex.search(dto.getSearchTerm(), dto.getPageIndex(), dto.getPageSize());
+        List<Contact> contacts = findByIds(ids);
+
+        LOGGER.debug("Found {} contacts", contacts.size());
+
+        return contacts;
+    }
+
     @Override
     public Contact update(Contact updated) throws NotFoundException {
         LOGGER.debug("Updating contact with information: {}", updated);
 
-        Contact old = findById(updated.getId());
+        if (contactDeltaPublisher.isEnabled()) {
+            return updateWithVersion(updated);
+        }
+
+        Contact old = findFromRedis(updated.getId());
 
         persist(updated);
 
-        redisTemplate.opsForSet().remove(KEY_CONTACTS_SET, old);
-        redisTemplate.opsForSet().add(KEY_CONTACTS_SET, updated);
-        redisTemplate.convertAndSend(CHANNEL_UPDATED_CONTACTS, updated);
+        updateIndexes(old, updated);
+        publish(CHANNEL_UPDATED_CONTACTS, updated);
 
         return updated;
     }
 
+    /**
+     * Stores an updated contact, increments its version and updates the contact set and the
+     * name indexes in one transaction and publishes the changed fields of the contact. The
+     * transaction is retried if the contact is changed concurrently.
+     * @param updated   The updated information of the contact.
+     * @return  The updated contact.
+     * @throws NotFoundException    if no contact is found with the id of the updated contact.
+     * @throws OptimisticLockingFailureException if the contact was changed concurrently during every attempt.
+     */
+    private Contact updateWithVersion(Contact updated) throws NotFoundException {
+        for (int attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+            VersionedUpdate result = tryUpdateWithVersion(updated);
+            if (result != null) {
+                if (result.old == null) {
+                    LOGGER.debug("No contact found with id: {}", updated.getId());
+                    throw new NotFoundException();
+                }
+
+                invalidate(updated.getId());
+                contactChangeLog.append(CHANNEL_UPDATED_CONTACTS, updated);
+                if (result.delta.isEmpty()) {
+                    LOGGER.debug("No fields of contact: {} were changed. Not publishing a delta.", updated.getId());
+                }
+                else {
+                    contactDeltaPublisher.publish(result.delta);
+                }
+
+                return updated;
+            }
+            LOGGER.debug("Contact: {} was changed concurrently. Update attempt {} of {} failed.",
+                    new Object[] {updated.getId(), attempt, MAX_UPDATE_ATTEMPTS});
+        }
+
+        throw new OptimisticLockingFailureException("Could not update contact: " + updated.getId()
+                + " because it was changed concurrently " + MAX_UPDATE_ATTEMPTS + " times");
+    }
+
+    /**
+     * Stores an updated contact, increments its version if any field was changed and replaces
+     * the old information of the contact in the contact set and in the name indexes. The key
+     * of the contact is watched while the old information is read, which means that concurrent
+     * updates cannot remove the same old member from the contact set and add different new ones.
+     * @param updated   The updated information of the contact.
+     * @return  The result of the update or null if the contact was changed concurrently.
+     */
+    private VersionedUpdate tryUpdateWithVersion(final Contact updated) {
+        final byte[] key = serializeKey(buildKey(updated.getId()));
+
+        return redisTemplate.execute(new RedisCallback<VersionedUpdate>() {
+            @Override
+            public VersionedUpdate doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.watch(key);
+
+                byte[] rawOld = connection.get(key);
+                Contact old = deserializeValue(rawOld);
+                if (old == null) {
+                    connection.unwatch();
+                    return new VersionedUpdate(null, null);
+                }
+
+                ContactDelta delta = ContactDelta.between(old, updated);
+
+                byte[] rawUpdated = serializeValue(updated);
+                byte[] setKey = serializeKey(KEY_CONTACTS_SET);
+
+                connection.multi();
+                connection.set(key, rawUpdated);
+                if (!delta.isEmpty()) {
+                    contactDeltaPublisher.incrementVersion(connection, updated.getId());
+                }
+                connection.sRem(setKey, rawOld);
+                connection.sAdd(setKey, rawUpdated);
+                contactNameIndex.remove(connection, old);
+                contactNameIndex.add(connection, updated);
+
+                List<Object> results = connection.exec();
+                if (results == null) {
+                    return null;
+                }
+
+                if (!delta.isEmpty()) {
+                    delta.setVersion((Long) results.get(1));
+                }
+                return new VersionedUpdate(old, delta);
+            }
+        });
+    }
+
+    /**
+     * Replaces the old information of an updated contact in the contact set and in the name
+     * index and removes the contact from the near cache of this node.
+     * @param old   The old information of the contact.
+     * @param updated   The updated information of the contact.
+     */
+    private void updateIndexes(Contact old, Contact updated) {
+        redisTemplate.opsForSet().remove(KEY_CONTACTS_SET, old);
+        redisTemplate.opsForSet().add(KEY_CONTACTS_SET, updated);
+        contactNameIndex.update(old, updated);
+        invalidate(updated.getId());
+    }
+
     private void persist(Contact persisted) {
         LOGGER.debug("Persisting contact: {}", persisted);
 
@@ -121,7 +434,121 @@ public class RedisContactService implements ContactService {
         redisTemplate.opsForValue().set(key, persisted);
     }
 
+    /**
+     * Assigns ids to the contacts which do not have an id. The ids are reserved from
+     * the id allocator in bulk.
+     * @param contacts  The contacts.
+     */
+    private void assignIds(List<Contact> contacts) {
+        List<Contact> withoutId = new ArrayList<Contact>();
+        for (Contact contact: contacts) {
+            if (contact.getId() == null) {
+                withoutId.add(contact);
+            }
+        }
+
+        if (withoutId.isEmpty()) {
+            return;
+        }
+
+        LOGGER.debug("Allocating ids for {} contacts", withoutId.size());
+
+        List<Long> ids = contactIdCounter.allocate(withoutId.size());
+        for (int index = 0; index < withoutId.size(); index++) {
+            withoutId.get(index).setId(ids.get(index));
+        }
+    }
+
+    /**
+     * Removes a contact from the near cache of this node. The near caches of the other
+     * nodes are invalidated by the change notification.
+     * @param id    The id of the changed contact.
+     */
+    private void invalidate(Long id) {
+        if (contactNearCache.isEnabled()) {
+            contactNearCache.invalidate(id);
+        }
+    }
+
+    /**
+     * Publishes a contact change event and appends it to the change log.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    private void publish(String channel, Contact contact) {
+        contactEventPublisher.publish(channel, contact);
+        contactChangeLog.append(channel, contact);
+    }
+
+    /**
+     * Publishes a contact change event and appends it to the change log by using the given
+     * connection. The change log must be trimmed after the connection has been used, and the
+     * event must be delivered by the contact event publisher after the transaction has been executed.
+     * @param connection    The used Redis connection.
+     * @param channel   The channel of the event.
+     * @param contact   The changed contact.
+     */
+    private void publish(RedisConnection connection, String channel, Contact contact) {
+        contactEventPublisher.publish(connection, channel, contact);
+        contactChangeLog.append(connection, channel, contact);
+    }
+
     private String buildKey(Long contactId) {
         return KEY_CONTACT_PREFIX + contactId;
     }
+
+    /**
+     * Finds the contacts which have the given ids with a single MGET command.
+     * @param contactIds    The ids of the contacts.
+     * @return  The found contacts. Ids which do not point to a contact are ignored.
+     */
+    private List<Contact> findByIds(List<Long> contactIds) {
+        List<Contact> contacts = new ArrayList<Contact>(contactIds.size());
+        if (contactIds.isEmpty()) {
+            return contacts;
+        }
+
+        List<String> keys = new ArrayList<String>(contactIds.size());
+        for (Long contactId: contactIds) {
+            keys.add(buildKey(contactId));
+        }
+
+        for (Contact contact: redisTemplate.opsForValue().multiGet(keys)) {
+            if (contact != null) {
+                contacts.add(contact);
+            }
+        }
+
+        return contacts;
+    }
+
+    private byte[] serializeKey(String key) {
+        RedisSerializer serializer = redisTemplate.getKeySerializer();
+        return serializer.serialize(key);
+    }
+
+    private byte[] serializeValue(Contact value) {
+        RedisSerializer serializer = redisTemplate.getValueSerializer();
+        return serializer.serialize(value);
+    }
+
+    private Contact deserializeValue(byte[] value) {
+        RedisSerializer<Contact> serializer = (RedisSerializer<Contact>) redisTemplate.getValueSerializer();
+        return serializer.deserialize(value);
+    }
+
+    /**
+     * The result of a versioned update. The old information is null if the contact was not found.
+     */
+    private static class VersionedUpdate {
+
+        private final Contact old;
+
+        private final ContactDelta delta;
+
+        private VersionedUpdate(Contact old, ContactDelta delta) {
+            this.old = old;
+            this.delta = delta;
+        }
+    }
 }
@@ -0,0 +1,95 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import com.packtpub.springdata.redis.service.ContactNearCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactCacheInvalidationListenerTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+    private static final Long SECOND_CONTACT_ID = Long.valueOf(2);
+    private static final String CHANNEL = "updatedContacts";
+    private static final String DELTA_CHANNEL = "contactDeltas";
+    private static final String PHONE_NUMBER = "7654321";
+
+    private ContactCacheInvalidationListener listener;
+
+    private ContactNearCache contactNearCacheMock;
+
+    private RedisSerializer<Contact> contactSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private RedisSerializer<List<Contact>> contactBatchSerializer = new ContactBatchRedisSerializer(contactSerializer);
+
+    private RedisSerializer<ContactDelta> contactDeltaSerializer = new JacksonJsonRedisSerializer<ContactDelta>(ContactDelta.class);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        contactNearCacheMock = mock(ContactNearCache.class);
+        listener = new ContactCacheInvalidationListener(contactNearCacheMock, contactBatchSerializer, contactDeltaSerializer);
+    }
+
+    @Test
+    public void onMessage() {
+        Contact changed = ContactTestUtil.createModel(CONTACT_ID);
+
+        listener.onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), contactSerializer.serialize(changed)), null);
+
+        verify(contactNearCacheMock, times(1)).invalidate(CONTACT_ID);
+        verify(contactNearCacheMock, times(1)).getStatistics();
+        verifyNoMoreInteractions(contactNearCacheMock);
+    }
+
+    @Test
+    public void onMessageWithBatch() {
+        List<Contact> changed = Arrays.asList(ContactTestUtil.createModel(CONTACT_ID), ContactTestUtil.createModel(),
+                ContactTestUtil.createModel(SECOND_CONTACT_ID));
+
+        listener.onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), contactBatchSerializer.serialize(changed)), null);
+
+        verify(contactNearCacheMock, times(1)).invalidate(CONTACT_ID);
+        verify(contactNearCacheMock, times(1)).invalidate(SECOND_CONTACT_ID);
+        verify(contactNearCacheMock, times(1)).getStatistics();
+        verifyNoMoreInteractions(contactNearCacheMock);
+    }
+
+    @Test
+    public void onMessageWithDelta() {
+        Contact old = ContactTestUtil.createModel(CONTACT_ID);
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setPhoneNumber(PHONE_NUMBER);
+
+        ContactDelta delta = ContactDelta.between(old, updated);
+
+        listener.onMessage(new DefaultMessage(stringSerializer.serialize(DELTA_CHANNEL), contactDeltaSerializer.serialize(delta)), null);
+
+        verify(contactNearCacheMock, times(1)).invalidate(CONTACT_ID);
+        verify(contactNearCacheMock, times(1)).getStatistics();
+        verifyNoMoreInteractions(contactNearCacheMock);
+    }
+
+    @Test
+    public void onMessageWithoutContactId() {
+        Contact changed = ContactTestUtil.createModel();
+
+        listener.onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), contactSerializer.serialize(changed)), null);
+
+        verifyZeroInteractions(contactNearCacheMock);
+    }
+}
@@ -0,0 +1,402 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactChangeLogTest {
+
+    private static final String CHANNEL = "updatedContacts";
+    private static final String GROUP = "search";
+
+    private static final Long FIRST_ID = Long.valueOf(1);
+    private static final Long SECOND_ID = Long.valueOf(2);
+
+    private static final long MAX_LENGTH = 10;
+    private static final long TRIM_SLACK = 2;
+    private static final long CURRENT_TIME = 100000;
+    private static final long MIN_IDLE = 1000;
+    private static final int COUNT = 2;
+
+    private ContactChangeLog log;
+
+    private RedisTemplate<String, Contact> redisTemplateMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer<Contact> contactSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisTemplateMock = mock(RedisTemplate.class);
+        redisConnectionMock = mock(RedisConnection.class);
+
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn((RedisSerializer) contactSerializer);
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+
+        log = createLog(true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidMaxLength() {
+        new ContactChangeLog(redisTemplateMock, 0, TRIM_SLACK, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithNegativeTrimSlack() {
+        new ContactChangeLog(redisTemplateMock, MAX_LENGTH, -1, true);
+    }
+
+    @Test
+    public void appendWhenLogIsDisabled() {
+        ContactChangeLog disabled = createLog(false);
+
+        disabled.append(CHANNEL, ContactTestUtil.createModel(FIRST_ID));
+        disabled.append(redisConnectionMock, CHANNEL, ContactTestUtil.createModel(FIRST_ID));
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, disabled.trim());
+        verifyZeroInteractions(redisTemplateMock, redisConnectionMock);
+    }
+
+    @Test
+    public void appendAndRead() {
+        when(redisConnectionMock.rPush(eq(serialize(ContactChangeLog.KEY_LOG)), any(byte[].class))).thenReturn(1L);
+
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+        log.append(CHANNEL, contact);
+
+        ArgumentCaptor<byte[]> entryArgument = ArgumentCaptor.forClass(byte[].class);
+        verify(redisConnectionMock, times(1)).rPush(eq(serialize(ContactChangeLog.KEY_LOG)), entryArgument.capture());
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        when(redisConnectionMock.get(serialize(ContactChangeLog.KEY_BASE))).thenReturn(serialize("3"));
+        when(redisConnectionMock.exec()).thenReturn(createReadResults(Arrays.asList(entryArgument.getValue())));
+
+        List<ContactLogEntry> entries = log.read(5, COUNT);
+
+        verify(redisConnectionMock, times(1)).watch(serialize(ContactChangeLog.KEY_BASE));
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).lRange(serialize(ContactChangeLog.KEY_LOG), 2, 3);
+
+        assertEquals(1, entries.size());
+        assertEquals(5, entries.get(0).getOffset());
+        assertEquals(CHANNEL, entries.get(0).getChannel());
+        assertEquals(FIRST_ID, entries.get(0).getContact().getId());
+    }
+
+    @Test
+    public void appendWhenLogIsTooLong() {
+        when(redisConnectionMock.rPush(eq(serialize(ContactChangeLog.KEY_LOG)), any(byte[].class))).thenReturn(MAX_LENGTH + TRIM_SLACK + 1);
+        when(redisConnectionMock.lLen(serialize(ContactChangeLog.KEY_LOG))).thenReturn(MAX_LENGTH + TRIM_SLACK + 1);
+        when(redisConnectionMock.exec()).thenReturn(new ArrayList<Object>());
+
+        log.append(CHANNEL, ContactTestUtil.createModel(FIRST_ID));
+
+        verify(redisConnectionMock, times(1)).watch(serialize(ContactChangeLog.KEY_LOG), serialize(ContactChangeLog.KEY_BASE));
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).lTrim(serialize(ContactChangeLog.KEY_LOG), TRIM_SLACK + 1, -1);
+        verify(redisConnectionMock, times(1)).incrBy(serialize(ContactChangeLog.KEY_BASE), TRIM_SLACK + 1);
+        verify(redisConnectionMock, times(1)).exec();
+    }
+
+    @Test
+    public void appendWhenLogIsWithinTrimSlack() {
+        when(redisConnectionMock.rPush(eq(serialize(ContactChangeLog.KEY_LOG)), any(byte[].class))).thenReturn(MAX_LENGTH + TRIM_SLACK);
+
+        log.append(CHANNEL, ContactTestUtil.createModel(FIRST_ID));
+
+        verify(redisConnectionMock, times(1)).rPush(eq(serialize(ContactChangeLog.KEY_LOG)), any(byte[].class));
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void appendWithConnection() {
+        log.append(redisConnectionMock, CHANNEL, ContactTestUtil.createModel(FIRST_ID));
+
+        verify(redisConnectionMock, times(1)).rPush(eq(serialize(ContactChangeLog.KEY_LOG)), any(byte[].class));
+        verifyNoMoreInteractions(redisConnectionMock);
+        verify(redisTemplateMock, never()).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    public void readFromTrimmedOffset() {
+        when(redisConnectionMock.get(serialize(ContactChangeLog.KEY_BASE))).thenReturn(serialize("3"));
+        when(redisConnectionMock.exec()).thenReturn(createReadResults(new ArrayList<byte[]>()));
+
+        List<ContactLogEntry> entries = log.read(1, COUNT);
+
+        verify(redisConnectionMock, times(1)).lRange(serialize(ContactChangeLog.KEY_LOG), 0, 1);
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void readWhenLogIsTrimmedConcurrently() {
+        when(redisConnectionMock.get(serialize(ContactChangeLog.KEY_BASE))).thenReturn(serialize("3"), serialize("4"));
+        when(redisConnectionMock.exec()).thenReturn(null).thenReturn(createReadResults(createEntries(FIRST_ID)));
+
+        List<ContactLogEntry> entries = log.read(5, COUNT);
+
+        verify(redisConnectionMock, times(2)).watch(serialize(ContactChangeLog.KEY_BASE));
+        verify(redisConnectionMock, times(1)).lRange(serialize(ContactChangeLog.KEY_LOG), 2, 3);
+        verify(redisConnectionMock, times(1)).lRange(serialize(ContactChangeLog.KEY_LOG), 1, 2);
+
+        assertEquals(1, entries.size());
+        assertEquals(5, entries.get(0).getOffset());
+    }
+
+    @Test(expected = OptimisticLockingFailureException.class)
+    public void readWhenLogIsAlwaysTrimmedConcurrently() {
+        when(redisConnectionMock.exec()).thenReturn(null);
+
+        log.read(5, COUNT);
+    }
+
+    @Test
+    public void readGroup() {
+        byte[] groupKey = serialize(ContactChangeLog.KEY_GROUP_PREFIX + GROUP);
+        byte[] pendingKey = serialize(ContactChangeLog.KEY_PENDING_PREFIX + GROUP);
+
+        when(redisConnectionMock.get(groupKey)).thenReturn(serialize("4"));
+        when(redisConnectionMock.get(serialize(ContactChangeLog.KEY_BASE))).thenReturn(serialize("2"));
+        List<byte[]> storedEntries = createEntries(FIRST_ID, SECOND_ID);
+        when(redisConnectionMock.lRange(serialize(ContactChangeLog.KEY_LOG), 3, 4)).thenReturn(storedEntries);
+        when(redisConnectionMock.exec()).thenReturn(new ArrayList<Object>());
+
+        List<ContactLogEntry> entries = log.readGroup(GROUP, COUNT);
+
+        verify(redisConnectionMock, times(1)).watch(groupKey, serialize(ContactChangeLog.KEY_BASE));
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).set(groupKey, serialize("6"));
+        verify(redisConnectionMock, times(1)).zAdd(pendingKey, CURRENT_TIME, serialize("5"));
+        verify(redisConnectionMock, times(1)).zAdd(pendingKey, CURRENT_TIME, serialize("6"));
+        verify(redisConnectionMock, times(1)).exec();
+
+        assertEquals(2, entries.size());
+        assertEquals(5, entries.get(0).getOffset());
+        assertEquals(FIRST_ID, entries.get(0).getContact().getId());
+        assertEquals(6, entries.get(1).getOffset());
+        assertEquals(SECOND_ID, entries.get(1).getContact().getId());
+    }
+
+    @Test
+    public void readGroupForNewGroup() {
+        List<byte[]> storedEntries = createEntries(FIRST_ID);
+        when(redisConnectionMock.lRange(serialize(ContactChangeLog.KEY_LOG), 0, 1)).thenReturn(storedEntries);
+        when(redisConnectionMock.exec()).thenReturn(new ArrayList<Object>());
+
+        List<ContactLogEntry> entries = log.readGroup(GROUP, COUNT);
+
+        verify(redisConnectionMock, times(1)).set(serialize(ContactChangeLog.KEY_GROUP_PREFIX + GROUP), serialize("0"));
+        assertEquals(1, entries.size());
+        assertEquals(0, entries.get(0).getOffset());
+    }
+
+    @Test
+    public void readGroupWhenNoNewEntriesAreFound() {
+        when(redisConnectionMock.lRange(any(byte[].class), anyLong(), anyLong())).thenReturn(new ArrayList<byte[]>());
+
+        List<ContactLogEntry> entries = log.readGroup(GROUP, COUNT);
+
+        verify(redisConnectionMock, times(1)).unwatch();
+        verify(redisConnectionMock, never()).multi();
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void readGroupWhenGroupIsChangedConcurrently() {
+        List<byte[]> storedEntries = createEntries(FIRST_ID);
+        when(redisConnectionMock.lRange(serialize(ContactChangeLog.KEY_LOG), 0, 1)).thenReturn(storedEntries);
+        when(redisConnectionMock.exec()).thenReturn(null).thenReturn(new ArrayList<Object>());
+
+        List<ContactLogEntry> entries = log.readGroup(GROUP, COUNT);
+
+        verify(redisConnectionMock, times(2)).exec();
+        assertEquals(1, entries.size());
+    }
+
+    @Test(expected = OptimisticLockingFailureException.class)
+    public void readGroupWhenGroupIsAlwaysChangedConcurrently() {
+        List<byte[]> storedEntries = createEntries(FIRST_ID);
+        when(redisConnectionMock.lRange(serialize(ContactChangeLog.KEY_LOG), 0, 1)).thenReturn(storedEntries);
+        when(redisConnectionMock.exec()).thenReturn(null);
+
+        log.readGroup(GROUP, COUNT);
+    }
+
+    @Test
+    public void claimPending() {
+        byte[] pendingKey = serialize(ContactChangeLog.KEY_PENDING_PREFIX + GROUP);
+        Set<byte[]> offsets = new LinkedHashSet<byte[]>(Arrays.asList(serialize("1"), serialize("4")));
+
+        when(redisConnectionMock.zRangeByScore(pendingKey, 0, CURRENT_TIME - MIN_IDLE, 0, COUNT)).thenReturn(offsets);
+        when(redisConnectionMock.get(serialize(ContactChangeLog.KEY_BASE))).thenReturn(serialize("2"));
+        List<byte[]> storedEntries = createEntries(FIRST_ID);
+        when(redisConnectionMock.lIndex(serialize(ContactChangeLog.KEY_LOG), 2)).thenReturn(storedEntries.get(0));
+        when(redisConnectionMock.exec()).thenReturn(new ArrayList<Object>());
+
+        List<ContactLogEntry> entries = log.claimPending(GROUP, MIN_IDLE, COUNT);
+
+        verify(redisConnectionMock, times(1)).watch(pendingKey, serialize(ContactChangeLog.KEY_BASE));
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).zRem(pendingKey, serialize("1"));
+        verify(redisConnectionMock, times(1)).zAdd(pendingKey, CURRENT_TIME, serialize("4"));
+        verify(redisConnectionMock, never()).zAdd(eq(pendingKey), anyDouble(), eq(serialize("1")));
+        verify(redisConnectionMock, times(1)).exec();
+
+        assertEquals(1, entries.size());
+        assertEquals(4, entries.get(0).getOffset());
+        assertEquals(FIRST_ID, entries.get(0).getContact().getId());
+    }
+
+    @Test
+    public void claimPendingWhenLogIsTrimmedConcurrently() {
+        byte[] pendingKey = serialize(ContactChangeLog.KEY_PENDING_PREFIX + GROUP);
+        Set<byte[]> offsets = new LinkedHashSet<byte[]>(Arrays.asList(serialize("4")));
+
+        when(redisConnectionMock.zRangeByScore(pendingKey, 0, CURRENT_TIME - MIN_IDLE, 0, COUNT)).thenReturn(offsets);
+        when(redisConnectionMock.get(serialize(ContactChangeLog.KEY_BASE))).thenReturn(serialize("2"), serialize("3"));
+        List<byte[]> storedEntries = createEntries(FIRST_ID, SECOND_ID);
+        when(redisConnectionMock.lIndex(serialize(ContactChangeLog.KEY_LOG), 2)).thenReturn(storedEntries.get(0));
+        when(redisConnectionMock.lIndex(serialize(ContactChangeLog.KEY_LOG), 1)).thenReturn(storedEntries.get(1));
+        when(redisConnectionMock.exec()).thenReturn(null).thenReturn(new ArrayList<Object>());
+
+        List<ContactLogEntry> entries = log.claimPending(GROUP, MIN_IDLE, COUNT);
+
+        verify(redisConnectionMock, times(2)).exec();
+
+        assertEquals(1, entries.size());
+        assertEquals(4, entries.get(0).getOffset());
+        assertEquals(SECOND_ID, entries.get(0).getContact().getId());
+    }
+
+    @Test
+    public void claimPendingWhenNothingIsPending() {
+        byte[] pendingKey = serialize(ContactChangeLog.KEY_PENDING_PREFIX + GROUP);
+        when(redisConnectionMock.zRangeByScore(pendingKey, 0, CURRENT_TIME - MIN_IDLE, 0, COUNT)).thenReturn(new LinkedHashSet<byte[]>());
+
+        List<ContactLogEntry> entries = log.claimPending(GROUP, MIN_IDLE, COUNT);
+
+        verify(redisConnectionMock, times(1)).unwatch();
+        verify(redisConnectionMock, never()).multi();
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void acknowledge() {
+        log.acknowledge(GROUP, 5);
+
+        verify(redisConnectionMock, times(1)).zRem(serialize(ContactChangeLog.KEY_PENDING_PREFIX + GROUP), serialize("5"));
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void getPendingCount() {
+        when(redisConnectionMock.zCard(serialize(ContactChangeLog.KEY_PENDING_PREFIX + GROUP))).thenReturn(3L);
+
+        assertEquals(3, log.getPendingCount(GROUP));
+    }
+
+    @Test
+    public void seekGroup() {
+        log.seekGroup(GROUP, 5);
+
+        verify(redisConnectionMock, times(1)).set(serialize(ContactChangeLog.KEY_GROUP_PREFIX + GROUP), serialize("4"));
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void trimWhenLogIsNotTooLong() {
+        when(redisConnectionMock.lLen(serialize(ContactChangeLog.KEY_LOG))).thenReturn(MAX_LENGTH + TRIM_SLACK);
+
+        assertEquals(0, log.trim());
+
+        verify(redisConnectionMock, times(1)).unwatch();
+        verify(redisConnectionMock, never()).multi();
+    }
+
+    @Test
+    public void trimWhenLogIsChangedConcurrently() {
+        when(redisConnectionMock.lLen(serialize(ContactChangeLog.KEY_LOG))).thenReturn(MAX_LENGTH + 3);
+        when(redisConnectionMock.exec()).thenReturn(null).thenReturn(new ArrayList<Object>());
+
+        assertEquals(3, log.trim());
+
+        verify(redisConnectionMock, times(2)).lTrim(serialize(ContactChangeLog.KEY_LOG), 3, -1);
+    }
+
+    private ContactChangeLog createLog(boolean enabled) {
+        return new ContactChangeLog(redisTemplateMock, MAX_LENGTH, TRIM_SLACK, enabled) {
+            @Override
+            protected long getCurrentTime() {
+                return CURRENT_TIME;
+            }
+        };
+    }
+
+    /**
+     * Creates the log entries of the given contacts by appending them to a log which
+     * uses a connection mock.
+     */
+    private List<byte[]> createEntries(Long... contactIds) {
+        RedisConnection connectionMock = mock(RedisConnection.class);
+        for (Long contactId: contactIds) {
+            log.append(connectionMock, CHANNEL, ContactTestUtil.createModel(contactId));
+        }
+
+        ArgumentCaptor<byte[]> entryArgument = ArgumentCaptor.forClass(byte[].class);
+        verify(connectionMock, times(contactIds.length)).rPush(eq(serialize(ContactChangeLog.KEY_LOG)), entryArgument.capture());
+        return entryArgument.getAllValues();
+    }
+
+    /**
+     * Creates the results of a read transaction which contain the given entries.
+     */
+    private List<Object> createReadResults(List<byte[]> entries) {
+        List<Object> results = new ArrayList<Object>();
+        results.add(entries);
+        return results;
+    }
+
+    private byte[] serialize(String value) {
+        return stringSerializer.serialize(value);
+    }
+}
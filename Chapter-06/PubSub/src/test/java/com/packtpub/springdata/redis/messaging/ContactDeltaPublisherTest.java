@@ -0,0 +1,128 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.service.RedisContactService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactDeltaPublisherTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+    private static final String VERSION_KEY = "contactversion1";
+    private static final long VERSION = 7;
+
+    private static final String PHONE_NUMBER = "7654321";
+
+    private ContactDeltaPublisher publisher;
+
+    private RedisTemplate<String, Contact> redisTemplateMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer keySerializer = new JdkSerializationRedisSerializer();
+
+    private RedisSerializer<ContactDelta> deltaSerializer = new JacksonJsonRedisSerializer<ContactDelta>(ContactDelta.class);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisTemplateMock = mock(RedisTemplate.class);
+        redisConnectionMock = mock(RedisConnection.class);
+
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+
+        publisher = new ContactDeltaPublisher(redisTemplateMock, deltaSerializer, true);
+    }
+
+    @Test
+    public void incrementVersion() {
+        publisher.incrementVersion(redisConnectionMock, CONTACT_ID);
+
+        verify(redisConnectionMock, times(1)).incr(keySerializer.serialize(VERSION_KEY));
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void publish() {
+        Contact old = ContactTestUtil.createModel(CONTACT_ID);
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setPhoneNumber(PHONE_NUMBER);
+
+        ContactDelta delta = ContactDelta.between(old, updated);
+        delta.setVersion(VERSION);
+        publisher.publish(delta);
+
+        ArgumentCaptor<byte[]> messageArgument = ArgumentCaptor.forClass(byte[].class);
+        verify(redisConnectionMock, times(1)).publish(eq(stringSerializer.serialize(RedisContactService.CHANNEL_CONTACT_DELTAS)),
+                messageArgument.capture());
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        ContactDelta actual = deltaSerializer.deserialize(messageArgument.getValue());
+
+        assertEquals(CONTACT_ID, actual.getId());
+        assertEquals(VERSION, actual.getVersion());
+        assertEquals(1, actual.getFields().size());
+        assertEquals(PHONE_NUMBER, actual.getFields().get(ContactDelta.FIELD_PHONE_NUMBER));
+    }
+
+    @Test
+    public void getVersion() {
+        when(redisConnectionMock.get(keySerializer.serialize(VERSION_KEY))).thenReturn(stringSerializer.serialize(Long.toString(VERSION)));
+
+        long actual = publisher.getVersion(CONTACT_ID);
+
+        assertEquals(VERSION, actual);
+    }
+
+    @Test
+    public void getVersionWhenNoDeltaIsPublished() {
+        when(redisConnectionMock.get(keySerializer.serialize(VERSION_KEY))).thenReturn(null);
+
+        long actual = publisher.getVersion(CONTACT_ID);
+
+        assertEquals(0, actual);
+    }
+
+    @Test
+    public void removeVersion() {
+        publisher.removeVersion(CONTACT_ID);
+
+        verify(redisTemplateMock, times(1)).delete(VERSION_KEY);
+    }
+
+    @Test
+    public void removeVersionWithConnection() {
+        publisher.removeVersion(redisConnectionMock, CONTACT_ID);
+
+        verify(redisConnectionMock, times(1)).del(keySerializer.serialize(VERSION_KEY));
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+}
@@ -0,0 +1,113 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactDeltaTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+    private static final long VERSION = 4;
+
+    private static final String PHONE_NUMBER = "7654321";
+    private static final String COUNTRY = "Finland";
+
+    private RedisSerializer<ContactDelta> deltaSerializer = new JacksonJsonRedisSerializer<ContactDelta>(ContactDelta.class);
+
+    @Test
+    public void between() {
+        Contact old = ContactTestUtil.createModel(CONTACT_ID);
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setPhoneNumber(PHONE_NUMBER);
+        updated.setEmailAddress(null);
+        updated.getAddress().setCountry(COUNTRY);
+
+        ContactDelta delta = ContactDelta.between(old, updated);
+
+        assertEquals(CONTACT_ID, delta.getId());
+        assertFalse(delta.isEmpty());
+        assertFalse(delta.isSnapshot());
+        assertEquals(3, delta.getFields().size());
+        assertEquals(PHONE_NUMBER, delta.getFields().get(ContactDelta.FIELD_PHONE_NUMBER));
+        assertEquals(COUNTRY, delta.getFields().get(ContactDelta.FIELD_COUNTRY));
+        assertTrue(delta.getFields().containsKey(ContactDelta.FIELD_EMAIL_ADDRESS));
+        assertNull(delta.getFields().get(ContactDelta.FIELD_EMAIL_ADDRESS));
+    }
+
+    @Test
+    public void betweenWhenNothingIsChanged() {
+        ContactDelta delta = ContactDelta.between(ContactTestUtil.createModel(CONTACT_ID), ContactTestUtil.createModel(CONTACT_ID));
+
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    public void betweenWhenAddressIsRemoved() {
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setAddress(null);
+
+        ContactDelta delta = ContactDelta.between(ContactTestUtil.createModel(CONTACT_ID), updated);
+
+        assertEquals(5, delta.getFields().size());
+        assertTrue(delta.getFields().containsKey(ContactDelta.FIELD_STREET_ADDRESS));
+        assertNull(delta.getFields().get(ContactDelta.FIELD_STREET_ADDRESS));
+    }
+
+    @Test
+    public void applyTo() {
+        Contact old = ContactTestUtil.createModel(CONTACT_ID);
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setPhoneNumber(PHONE_NUMBER);
+        updated.getAddress().setCountry(COUNTRY);
+
+        ContactDelta delta = deltaSerializer.deserialize(deltaSerializer.serialize(ContactDelta.between(old, updated)));
+        Contact actual = delta.applyTo(ContactTestUtil.createModel(CONTACT_ID));
+
+        assertContact(updated, actual);
+    }
+
+    @Test
+    public void applySnapshotToEmptyContact() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        ContactDelta snapshot = deltaSerializer.deserialize(deltaSerializer.serialize(ContactDelta.snapshot(contact, VERSION)));
+
+        assertTrue(snapshot.isSnapshot());
+        assertEquals(VERSION, snapshot.getVersion());
+
+        Contact actual = snapshot.applyTo(new Contact());
+
+        assertContact(contact, actual);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void applyUnknownField() {
+        ContactDelta delta = new ContactDelta();
+        delta.getFields().put("unknown", PHONE_NUMBER);
+
+        delta.applyTo(new Contact());
+    }
+
+    private void assertContact(Contact expected, Contact actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getEmailAddress(), actual.getEmailAddress());
+        assertEquals(expected.getFirstName(), actual.getFirstName());
+        assertEquals(expected.getLastName(), actual.getLastName());
+        assertEquals(expected.getPhoneNumber(), actual.getPhoneNumber());
+        assertEquals(expected.getAddress().getStreetAddress(), actual.getAddress().getStreetAddress());
+        assertEquals(expected.getAddress().getPostCode(), actual.getAddress().getPostCode());
+        assertEquals(expected.getAddress().getPostOffice(), actual.getAddress().getPostOffice());
+        assertEquals(expected.getAddress().getState(), actual.getAddress().getState());
+        assertEquals(expected.getAddress().getCountry(), actual.getAddress().getCountry());
+    }
+}
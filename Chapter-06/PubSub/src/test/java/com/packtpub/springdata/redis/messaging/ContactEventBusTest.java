@@ -0,0 +1,175 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactEventBusTest {
+
+    private static final String CHANNEL = "newContacts";
+    private static final String OTHER_CHANNEL = "removedContacts";
+    private static final String OTHER_NODE_ID = "otherNode";
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+
+    private ContactEventBus eventBus;
+
+    private ContactEventListener listenerMock;
+
+    private MessageListener messageListenerMock;
+
+    private RedisSerializer<Contact> contactSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private ContactBatchRedisSerializer batchSerializer = new ContactBatchRedisSerializer(contactSerializer);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        eventBus = new ContactEventBus(batchSerializer, true);
+
+        listenerMock = mock(ContactEventListener.class);
+        messageListenerMock = mock(MessageListener.class);
+    }
+
+    @Test
+    public void deliver() {
+        eventBus.addListener(listenerMock, Arrays.asList(CHANNEL));
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        eventBus.deliver(CHANNEL, contact);
+        eventBus.deliver(OTHER_CHANNEL, contact);
+
+        assertEvents(listenerMock, CHANNEL, contact);
+        verifyNoMoreInteractions(listenerMock);
+    }
+
+    @Test
+    public void deliverSameObject() {
+        final Contact[] received = new Contact[1];
+        eventBus.addListener(new ContactEventListener() {
+            @Override
+            public void onContacts(List<ContactEvent> events) {
+                received[0] = events.get(0).getContact();
+            }
+        }, Arrays.asList(CHANNEL));
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        eventBus.deliver(CHANNEL, contact);
+
+        assertSame(contact, received[0]);
+    }
+
+    @Test
+    public void deliverWhenListenerFails() {
+        ContactEventListener failingListenerMock = mock(ContactEventListener.class);
+        doThrow(new IllegalStateException()).when(failingListenerMock).onContacts(any(List.class));
+        eventBus.addListener(failingListenerMock, Arrays.asList(CHANNEL));
+        eventBus.addListener(listenerMock, Arrays.asList(CHANNEL));
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        eventBus.deliver(CHANNEL, contact);
+
+        assertEvents(listenerMock, CHANNEL, contact);
+    }
+
+    @Test
+    public void deliverWhenBusIsDisabled() {
+        ContactEventBus disabled = new ContactEventBus(batchSerializer, false);
+        disabled.addListener(listenerMock, Arrays.asList(CHANNEL));
+
+        disabled.deliver(CHANNEL, ContactTestUtil.createModel(CONTACT_ID));
+
+        assertFalse(disabled.isEnabled());
+        verifyZeroInteractions(listenerMock);
+    }
+
+    @Test
+    public void serialize() {
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(CONTACT_ID));
+
+        byte[] message = eventBus.serialize(contacts);
+
+        assertTrue(eventBus.isEnabled());
+        assertEquals(eventBus.getNodeId(), batchSerializer.readOrigin(message));
+        assertEquals(CONTACT_ID, batchSerializer.deserialize(message).get(0).getId());
+    }
+
+    @Test
+    public void serializeWhenBusIsDisabled() {
+        ContactEventBus disabled = new ContactEventBus(batchSerializer, false);
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(CONTACT_ID));
+
+        byte[] message = disabled.serialize(contacts);
+
+        assertTrue(Arrays.equals(batchSerializer.serialize(contacts), message));
+    }
+
+    @Test
+    public void suppressEcho() {
+        MessageListener listener = eventBus.suppressEcho(messageListenerMock);
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(CONTACT_ID));
+
+        listener.onMessage(createMessage(eventBus.serialize(contacts)), null);
+
+        verifyZeroInteractions(messageListenerMock);
+    }
+
+    @Test
+    public void suppressEchoWhenMessageIsFromOtherNode() {
+        MessageListener listener = eventBus.suppressEcho(messageListenerMock);
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(CONTACT_ID));
+
+        Message fromOtherNode = createMessage(batchSerializer.serialize(contacts, OTHER_NODE_ID));
+        Message withoutOrigin = createMessage(batchSerializer.serialize(contacts));
+        listener.onMessage(fromOtherNode, null);
+        listener.onMessage(withoutOrigin, null);
+
+        verify(messageListenerMock, times(1)).onMessage(fromOtherNode, null);
+        verify(messageListenerMock, times(1)).onMessage(withoutOrigin, null);
+        verifyNoMoreInteractions(messageListenerMock);
+    }
+
+    @Test
+    public void suppressEchoWhenBusIsDisabled() {
+        ContactEventBus disabled = new ContactEventBus(batchSerializer, false);
+
+        assertSame(messageListenerMock, disabled.suppressEcho(messageListenerMock));
+    }
+
+    private void assertEvents(ContactEventListener listenerMock, String channel, Contact contact) {
+        ArgumentCaptor<List> eventsArgument = ArgumentCaptor.forClass(List.class);
+        verify(listenerMock, times(1)).onContacts(eventsArgument.capture());
+
+        List<ContactEvent> events = eventsArgument.getValue();
+        assertEquals(1, events.size());
+        assertEquals(channel, events.get(0).getChannel());
+        assertSame(contact, events.get(0).getContact());
+    }
+
+    private Message createMessage(byte[] body) {
+        return new DefaultMessage(stringSerializer.serialize(CHANNEL), body);
+    }
+}
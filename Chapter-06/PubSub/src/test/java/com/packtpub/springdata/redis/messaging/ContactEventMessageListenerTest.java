@@ -0,0 +1,84 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactEventMessageListenerTest {
+
+    private static final String CHANNEL = "newContacts";
+
+    private static final Long FIRST_ID = Long.valueOf(1);
+    private static final Long SECOND_ID = Long.valueOf(2);
+
+    private ContactEventMessageListener messageListener;
+
+    private ContactEventListener listenerMock;
+
+    private RedisSerializer<Contact> contactSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private ContactBatchRedisSerializer batchSerializer = new ContactBatchRedisSerializer(contactSerializer);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        listenerMock = mock(ContactEventListener.class);
+        messageListener = new ContactEventMessageListener(listenerMock, batchSerializer);
+    }
+
+    @Test
+    public void onMessage() {
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        messageListener.onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), contactSerializer.serialize(contact)), null);
+
+        List<ContactEvent> events = captureEvents();
+        assertEquals(1, events.size());
+        assertEquals(CHANNEL, events.get(0).getChannel());
+        assertEquals(FIRST_ID, events.get(0).getContact().getId());
+    }
+
+    @Test
+    public void onMessageWithBatch() {
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(FIRST_ID), ContactTestUtil.createModel(SECOND_ID));
+
+        messageListener.onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), batchSerializer.serialize(contacts)), null);
+
+        List<ContactEvent> events = captureEvents();
+        assertEquals(2, events.size());
+        assertEquals(FIRST_ID, events.get(0).getContact().getId());
+        assertEquals(SECOND_ID, events.get(1).getContact().getId());
+        assertEquals(CHANNEL, events.get(1).getChannel());
+    }
+
+    @Test
+    public void onMessageWithEmptyMessage() {
+        messageListener.onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), new byte[0]), null);
+
+        verifyZeroInteractions(listenerMock);
+    }
+
+    private List<ContactEvent> captureEvents() {
+        ArgumentCaptor<List> eventsArgument = ArgumentCaptor.forClass(List.class);
+        verify(listenerMock, times(1)).onContacts(eventsArgument.capture());
+        verifyNoMoreInteractions(listenerMock);
+        return eventsArgument.getValue();
+    }
+}
@@ -0,0 +1,270 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactEventPublisherTest {
+
+    private static final String CHANNEL = "newContacts";
+    private static final String OTHER_CHANNEL = "removedContacts";
+
+    private static final Long FIRST_ID = Long.valueOf(1);
+    private static final Long SECOND_ID = Long.valueOf(2);
+    private static final Long THIRD_ID = Long.valueOf(3);
+
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int SMALL_BATCH_SIZE = 2;
+    private static final long FLUSH_INTERVAL = 3600000;
+    private static final int VERIFICATION_TIMEOUT = 5000;
+
+    private ContactEventPublisher publisher;
+
+    private RedisTemplate<String, Contact> redisTemplateMock;
+
+    private RedisConnectionFactory connectionFactoryMock;
+
+    private RedisConnection connectionMock;
+
+    private RedisSerializer<Contact> contactSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private ContactBatchRedisSerializer batchSerializer = new ContactBatchRedisSerializer(contactSerializer);
+
+    private ContactEventBus eventBus = new ContactEventBus(batchSerializer, false);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisTemplateMock = mock(RedisTemplate.class);
+        connectionFactoryMock = mock(RedisConnectionFactory.class);
+        connectionMock = mock(RedisConnection.class);
+
+        when(redisTemplateMock.getConnectionFactory()).thenReturn(connectionFactoryMock);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn((RedisSerializer) contactSerializer);
+        when(connectionFactoryMock.getConnection()).thenReturn(connectionMock);
+    }
+
+    @After
+    public void tearDown() {
+        if (publisher != null) {
+            publisher.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidMaxBatchSize() {
+        new ContactEventPublisher(redisTemplateMock, eventBus, 0, FLUSH_INTERVAL, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidFlushInterval() {
+        new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, 0, false);
+    }
+
+    @Test
+    public void publishWhenBatchingIsDisabled() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, false);
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        publisher.publish(CHANNEL, contact);
+
+        assertFalse(publisher.isEnabled());
+        verify(redisTemplateMock, times(1)).convertAndSend(CHANNEL, contact);
+        verifyZeroInteractions(connectionFactoryMock);
+    }
+
+    @Test
+    public void publishWithConnectionWhenBatchingIsDisabled() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, false);
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+        RedisConnection pipelineConnectionMock = mock(RedisConnection.class);
+
+        publisher.publish(pipelineConnectionMock, CHANNEL, contact);
+
+        verify(pipelineConnectionMock, times(1)).publish(stringSerializer.serialize(CHANNEL), contactSerializer.serialize(contact));
+        verifyNoMoreInteractions(pipelineConnectionMock);
+        verifyZeroInteractions(connectionFactoryMock);
+    }
+
+    @Test
+    public void publishWithEventBus() {
+        ContactEventBus enabledEventBus = new ContactEventBus(batchSerializer, true);
+        ContactEventListener listenerMock = mock(ContactEventListener.class);
+        enabledEventBus.addListener(listenerMock, Arrays.asList(CHANNEL));
+
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(connectionMock);
+            }
+        });
+
+        publisher = new ContactEventPublisher(redisTemplateMock, enabledEventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, false);
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        publisher.publish(CHANNEL, contact);
+
+        assertEvents(listenerMock, CHANNEL, contact);
+        verifyNoMoreInteractions(listenerMock);
+
+        ArgumentCaptor<byte[]> messageArgument = ArgumentCaptor.forClass(byte[].class);
+        verify(connectionMock, times(1)).publish(eq(stringSerializer.serialize(CHANNEL)), messageArgument.capture());
+        verify(redisTemplateMock, never()).convertAndSend(any(String.class), any());
+
+        assertEquals(enabledEventBus.getNodeId(), batchSerializer.readOrigin(messageArgument.getValue()));
+        assertEquals(FIRST_ID, batchSerializer.deserialize(messageArgument.getValue()).get(0).getId());
+    }
+
+    @Test
+    public void publishWithConnectionAndEventBus() {
+        ContactEventBus enabledEventBus = new ContactEventBus(batchSerializer, true);
+        ContactEventListener listenerMock = mock(ContactEventListener.class);
+        enabledEventBus.addListener(listenerMock, Arrays.asList(CHANNEL));
+
+        publisher = new ContactEventPublisher(redisTemplateMock, enabledEventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, false);
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+        RedisConnection pipelineConnectionMock = mock(RedisConnection.class);
+
+        publisher.publish(pipelineConnectionMock, CHANNEL, contact);
+
+        verifyZeroInteractions(listenerMock);
+        verify(pipelineConnectionMock, times(1)).publish(stringSerializer.serialize(CHANNEL),
+                batchSerializer.serialize(Arrays.asList(contact), enabledEventBus.getNodeId()));
+        verifyNoMoreInteractions(pipelineConnectionMock);
+
+        publisher.deliver(CHANNEL, contact);
+
+        assertEvents(listenerMock, CHANNEL, contact);
+        verifyNoMoreInteractions(pipelineConnectionMock);
+    }
+
+    @Test
+    public void publishAndFlush() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, true);
+        Contact first = ContactTestUtil.createModel(FIRST_ID);
+        Contact second = ContactTestUtil.createModel(SECOND_ID);
+        Contact third = ContactTestUtil.createModel(THIRD_ID);
+        RedisConnection pipelineConnectionMock = mock(RedisConnection.class);
+
+        publisher.publish(CHANNEL, first);
+        publisher.publish(pipelineConnectionMock, CHANNEL, second);
+        publisher.deliver(CHANNEL, second);
+        publisher.publish(OTHER_CHANNEL, third);
+
+        verifyZeroInteractions(connectionMock, pipelineConnectionMock);
+        verify(redisTemplateMock, never()).convertAndSend(any(String.class), any());
+
+        publisher.flush();
+
+        assertTrue(publisher.isEnabled());
+        verify(connectionFactoryMock, times(1)).getConnection();
+        verify(connectionMock, times(1)).publish(stringSerializer.serialize(CHANNEL), batchSerializer.serialize(Arrays.asList(first, second)));
+        verify(connectionMock, times(1)).publish(stringSerializer.serialize(OTHER_CHANNEL), contactSerializer.serialize(third));
+    }
+
+    @Test
+    public void publishWithConnectionAndFlushBeforeDelivery() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, true);
+        RedisConnection pipelineConnectionMock = mock(RedisConnection.class);
+
+        publisher.publish(pipelineConnectionMock, CHANNEL, ContactTestUtil.createModel(FIRST_ID));
+        publisher.flush();
+
+        verifyZeroInteractions(pipelineConnectionMock, connectionFactoryMock);
+    }
+
+    @Test
+    public void flushWhenNoEventsArePublished() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, true);
+
+        publisher.flush();
+
+        verifyZeroInteractions(connectionFactoryMock);
+    }
+
+    @Test
+    public void publishWhenBufferIsFull() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, SMALL_BATCH_SIZE, FLUSH_INTERVAL, true);
+        Contact first = ContactTestUtil.createModel(FIRST_ID);
+        Contact second = ContactTestUtil.createModel(SECOND_ID);
+
+        publisher.publish(CHANNEL, first);
+        publisher.publish(CHANNEL, second);
+
+        verify(connectionMock, timeout(VERIFICATION_TIMEOUT)).publish(stringSerializer.serialize(CHANNEL), batchSerializer.serialize(Arrays.asList(first, second)));
+    }
+
+    @Test
+    public void flushWhenPublishFails() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, true);
+        Contact first = ContactTestUtil.createModel(FIRST_ID);
+        Contact second = ContactTestUtil.createModel(SECOND_ID);
+
+        when(connectionMock.publish(any(byte[].class), any(byte[].class))).thenThrow(new RedisConnectionFailureException("")).thenReturn(1L);
+
+        publisher.publish(CHANNEL, first);
+        publisher.flush();
+
+        verify(connectionMock, times(1)).close();
+
+        publisher.publish(CHANNEL, second);
+        publisher.flush();
+
+        verify(connectionFactoryMock, times(2)).getConnection();
+        verify(connectionMock, times(1)).publish(stringSerializer.serialize(CHANNEL), contactSerializer.serialize(second));
+    }
+
+    @Test
+    public void shutdown() {
+        publisher = new ContactEventPublisher(redisTemplateMock, eventBus, MAX_BATCH_SIZE, FLUSH_INTERVAL, true);
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        publisher.publish(CHANNEL, contact);
+        publisher.shutdown();
+        publisher = null;
+
+        verify(connectionMock, times(1)).publish(stringSerializer.serialize(CHANNEL), contactSerializer.serialize(contact));
+        verify(connectionMock, times(1)).close();
+    }
+
+    private void assertEvents(ContactEventListener listenerMock, String channel, Contact contact) {
+        ArgumentCaptor<List> eventsArgument = ArgumentCaptor.forClass(List.class);
+        verify(listenerMock, times(1)).onContacts(eventsArgument.capture());
+
+        List<ContactEvent> events = eventsArgument.getValue();
+        assertEquals(1, events.size());
+        assertEquals(channel, events.get(0).getChannel());
+        assertSame(contact, events.get(0).getContact());
+    }
+}
@@ -0,0 +1,117 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the event processing throughput of the reflective message listener adapter and
+ * the contact event message listener. Both listeners decode the same messages by using the
+ * contact batch serializer and hand the contacts to a listener which only counts them.
+ * The messages contain either a single contact or a batch of contacts.
+ * <p>
+ * Each measurement is preceded by a warm up round which gives the JIT compiler a chance to
+ * compile the measured code. The results are written to the log. The benchmark is not run
+ * as a part of the test suite, and it should be run by using the test class path of the
+ * project.
+ * @author Petri Kainulainen
+ */
+public class ContactListenerBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactListenerBenchmark.class);
+
+    private static final String CHANNEL = "newContacts";
+
+    private static final int WARM_UP_MESSAGES = 50000;
+    private static final int MEASURED_CONTACTS = 500000;
+
+    private static final int[] BATCH_SIZES = {1, 10, 100};
+
+    /**
+     * Prevents the JIT compiler from removing the measured operations.
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        ContactBatchRedisSerializer batchSerializer = new ContactBatchRedisSerializer(new JacksonJsonRedisSerializer<Contact>(Contact.class));
+
+        MessageListenerAdapter adapter = new MessageListenerAdapter(new CountingPOJOListener());
+        adapter.setSerializer(batchSerializer);
+        adapter.afterPropertiesSet();
+
+        Map<String, MessageListener> listeners = new LinkedHashMap<String, MessageListener>();
+        listeners.put("adapter", adapter);
+        listeners.put("typed", new ContactEventMessageListener(new CountingEventListener(), batchSerializer));
+
+        for (int batchSize: BATCH_SIZES) {
+            Message message = createMessage(batchSerializer, batchSize);
+            for (Map.Entry<String, MessageListener> listener: listeners.entrySet()) {
+                run(listener.getKey(), listener.getValue(), message, batchSize);
+            }
+        }
+    }
+
+    private static void run(String name, MessageListener listener, Message message, int batchSize) {
+        handle(listener, message, WARM_UP_MESSAGES);
+
+        int messages = MEASURED_CONTACTS / batchSize;
+        long started = System.nanoTime();
+        handle(listener, message, messages);
+        long elapsed = System.nanoTime() - started;
+
+        long nanosPerContact = elapsed / (messages * (long) batchSize);
+        long contactsPerSecond = nanosPerContact == 0 ? -1 : 1000000000L / nanosPerContact;
+
+        LOGGER.debug("{}: batch size: {}, {} ns/contact, {} contacts/s",
+                new Object[] {name, batchSize, nanosPerContact, contactsPerSecond});
+    }
+
+    /**
+     * Hands the message to the listener in the same way as the listener container, which
+     * passes the channel as the pattern when the listener is registered to a channel topic.
+     */
+    private static void handle(MessageListener listener, Message message, int iterations) {
+        for (int index = 0; index < iterations; index++) {
+            listener.onMessage(message, message.getChannel());
+        }
+    }
+
+    private static Message createMessage(ContactBatchRedisSerializer batchSerializer, int batchSize) {
+        List<Contact> contacts = new ArrayList<Contact>(batchSize);
+        for (int index = 0; index < batchSize; index++) {
+            contacts.add(ContactTestUtil.createModel(Long.valueOf(index)));
+        }
+        return new DefaultMessage(new StringRedisSerializer().serialize(CHANNEL), batchSerializer.serialize(contacts));
+    }
+
+    /**
+     * A listener which is invoked by the message listener adapter.
+     */
+    public static class CountingPOJOListener {
+
+        public void handleMessage(List<Contact> contacts, String channel) {
+            sink += contacts.size() + channel.length();
+        }
+    }
+
+    private static class CountingEventListener implements ContactEventListener {
+
+        @Override
+        public void onContacts(List<ContactEvent> events) {
+            sink += events.size() + events.get(0).getChannel().length();
+        }
+    }
+}
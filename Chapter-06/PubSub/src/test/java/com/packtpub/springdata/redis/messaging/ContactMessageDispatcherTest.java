@@ -0,0 +1,364 @@
+package com.packtpub.springdata.redis.messaging;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
+import com.packtpub.springdata.redis.service.RedisContactService;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactMessageDispatcherTest {
+
+    private static final String CHANNEL = "updatedContacts";
+
+    private static final Long FIRST_ID = Long.valueOf(1);
+    private static final Long SECOND_ID = Long.valueOf(2);
+
+    private static final int PARTITION_COUNT = 2;
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final int UPDATE_COUNT = 200;
+
+    private static final long WAIT_TIMEOUT_SECONDS = 5;
+
+    private ContactMessageDispatcher dispatcher;
+
+    private RedisSerializer<Contact> contactSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private RedisSerializer<List<Contact>> batchSerializer = new ContactBatchRedisSerializer(contactSerializer);
+
+    private RedisSerializer<ContactDelta> deltaSerializer = new JacksonJsonRedisSerializer<ContactDelta>(ContactDelta.class);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidPartitionCount() {
+        new ContactMessageDispatcher(batchSerializer, deltaSerializer, 0, QUEUE_CAPACITY, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidQueueCapacity() {
+        new ContactMessageDispatcher(batchSerializer, deltaSerializer, PARTITION_COUNT, 0, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+    }
+
+    @Test
+    public void wrapWhenDispatcherIsDisabled() {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, PARTITION_COUNT, QUEUE_CAPACITY, ContactMessageDispatcher.BackpressurePolicy.BLOCK, false);
+        MessageListener listener = new RecordingListener(0);
+
+        assertFalse(dispatcher.isEnabled());
+        assertSame(listener, dispatcher.wrap(listener));
+    }
+
+    @Test
+    public void dispatchKeepsMessagesOfContactInOrder() throws InterruptedException {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, PARTITION_COUNT, QUEUE_CAPACITY, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+        RecordingListener listener = new RecordingListener(UPDATE_COUNT * 2);
+        MessageListener wrapped = dispatcher.wrap(listener);
+
+        for (int update = 0; update < UPDATE_COUNT; update++) {
+            wrapped.onMessage(createMessage(createContact(FIRST_ID, update)), null);
+            wrapped.onMessage(createMessage(createContact(SECOND_ID, update)), null);
+        }
+
+        assertTrue(listener.await());
+        assertInOrder(listener.getUpdates(FIRST_ID));
+        assertInOrder(listener.getUpdates(SECOND_ID));
+
+        DispatchStatistics statistics = dispatcher.getStatistics();
+        assertEquals(UPDATE_COUNT * 2, statistics.getDispatchedCount());
+        assertEquals(0, statistics.getDiscardedCount());
+        assertEquals(0, statistics.getQueueDepth());
+    }
+
+    @Test
+    public void dispatchSplitsBatchByPartition() throws InterruptedException {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, PARTITION_COUNT, QUEUE_CAPACITY, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+        RecordingListener listener = new RecordingListener(2);
+
+        dispatcher.wrap(listener).onMessage(createMessage(createContact(FIRST_ID, 0), createContact(SECOND_ID, 0)), null);
+
+        assertTrue(listener.await());
+        assertEquals(Arrays.asList(0), listener.getUpdates(FIRST_ID));
+        assertEquals(Arrays.asList(0), listener.getUpdates(SECOND_ID));
+        assertEquals(2, listener.getMessageCount());
+    }
+
+    @Test
+    public void dispatchDeltasByContactId() throws InterruptedException {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, PARTITION_COUNT, QUEUE_CAPACITY, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+        DeltaRecordingListener listener = new DeltaRecordingListener(UPDATE_COUNT * 2);
+        MessageListener wrapped = dispatcher.wrap(listener);
+
+        for (int update = 0; update < UPDATE_COUNT; update++) {
+            wrapped.onMessage(createDeltaMessage(FIRST_ID, update), null);
+            wrapped.onMessage(createDeltaMessage(SECOND_ID, update), null);
+        }
+
+        assertTrue(listener.await());
+        assertInOrder(listener.getVersions(FIRST_ID));
+        assertInOrder(listener.getVersions(SECOND_ID));
+        assertEquals(Collections.singleton("contact-listener-1"), listener.getThreadNames(FIRST_ID));
+        assertEquals(Collections.singleton("contact-listener-0"), listener.getThreadNames(SECOND_ID));
+        assertEquals(UPDATE_COUNT * 2, dispatcher.getStatistics().getDispatchedCount());
+    }
+
+    @Test
+    public void dispatchUnreadableMessage() throws InterruptedException {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, PARTITION_COUNT, QUEUE_CAPACITY, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+        final CountDownLatch handled = new CountDownLatch(1);
+
+        dispatcher.wrap(new MessageListener() {
+            @Override
+            public void onMessage(Message message, byte[] pattern) {
+                handled.countDown();
+            }
+        }).onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), stringSerializer.serialize("{invalid")), null);
+
+        assertTrue(handled.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void dispatchWhenQueueIsFullAndMessagesAreDiscarded() throws InterruptedException {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, 1, 1, ContactMessageDispatcher.BackpressurePolicy.DISCARD, true);
+        BlockingListener listener = new BlockingListener();
+        MessageListener wrapped = dispatcher.wrap(listener);
+
+        wrapped.onMessage(createMessage(createContact(FIRST_ID, 0)), null);
+        assertTrue(listener.awaitStarted());
+
+        wrapped.onMessage(createMessage(createContact(FIRST_ID, 1)), null);
+        wrapped.onMessage(createMessage(createContact(FIRST_ID, 2)), null);
+
+        DispatchStatistics statistics = dispatcher.getStatistics();
+        assertEquals(1, statistics.getQueueDepth());
+        assertEquals(1, statistics.getMaxPartitionQueueDepth());
+        assertEquals(1, statistics.getDiscardedCount());
+
+        listener.release();
+    }
+
+    @Test
+    public void dispatchWhenQueueIsFullAndCallerIsBlocked() throws InterruptedException {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, 1, 1, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+        BlockingListener listener = new BlockingListener();
+        final MessageListener wrapped = dispatcher.wrap(listener);
+
+        wrapped.onMessage(createMessage(createContact(FIRST_ID, 0)), null);
+        assertTrue(listener.awaitStarted());
+        wrapped.onMessage(createMessage(createContact(FIRST_ID, 1)), null);
+
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                wrapped.onMessage(createMessage(createContact(FIRST_ID, 2)), null);
+            }
+        });
+        caller.start();
+        caller.join(100);
+        assertTrue(caller.isAlive());
+
+        listener.release();
+        caller.join(TimeUnit.SECONDS.toMillis(WAIT_TIMEOUT_SECONDS));
+        assertFalse(caller.isAlive());
+        assertEquals(0, dispatcher.getStatistics().getDiscardedCount());
+    }
+
+    @Test
+    public void dispatchWhenListenerFails() throws InterruptedException {
+        dispatcher = new ContactMessageDispatcher(batchSerializer, deltaSerializer, 1, QUEUE_CAPACITY, ContactMessageDispatcher.BackpressurePolicy.BLOCK, true);
+        RecordingListener listener = new RecordingListener(1);
+        MessageListener wrapped = dispatcher.wrap(listener);
+
+        wrapped.onMessage(new DefaultMessage(stringSerializer.serialize(CHANNEL), null), null);
+        wrapped.onMessage(createMessage(createContact(FIRST_ID, 0)), null);
+
+        assertTrue(listener.await());
+        dispatcher.shutdown();
+
+        DispatchStatistics statistics = dispatcher.getStatistics();
+        assertEquals(1, statistics.getFailedCount());
+        assertEquals(2, statistics.getHandledCount());
+    }
+
+    private Contact createContact(Long id, int update) {
+        return ContactTestUtil.createModel(id, Integer.toString(update), ContactTestUtil.LAST_NAME);
+    }
+
+    private Message createMessage(Contact... contacts) {
+        return new DefaultMessage(stringSerializer.serialize(CHANNEL), batchSerializer.serialize(Arrays.asList(contacts)));
+    }
+
+    private Message createDeltaMessage(Long id, int version) {
+        ContactDelta delta = new ContactDelta();
+        delta.setId(id);
+        delta.setVersion(version);
+        return new DefaultMessage(stringSerializer.serialize(RedisContactService.CHANNEL_CONTACT_DELTAS), deltaSerializer.serialize(delta));
+    }
+
+    private void assertInOrder(List<Integer> updates) {
+        assertEquals(UPDATE_COUNT, updates.size());
+        for (int index = 0; index < updates.size(); index++) {
+            assertEquals(Integer.valueOf(index), updates.get(index));
+        }
+    }
+
+    /**
+     * Records the updates of the received contacts. A message without a body is treated
+     * as a failure.
+     */
+    private class RecordingListener implements MessageListener {
+
+        private final CountDownLatch received;
+
+        private final List<Contact> contacts = Collections.synchronizedList(new ArrayList<Contact>());
+
+        private int messageCount;
+
+        private RecordingListener(int expectedContacts) {
+            this.received = new CountDownLatch(expectedContacts);
+        }
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            if (message.getBody() == null) {
+                throw new IllegalStateException("No message body");
+            }
+
+            synchronized (this) {
+                messageCount++;
+            }
+            for (Contact contact: batchSerializer.deserialize(message.getBody())) {
+                contacts.add(contact);
+                received.countDown();
+            }
+        }
+
+        private boolean await() throws InterruptedException {
+            return received.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        private synchronized int getMessageCount() {
+            return messageCount;
+        }
+
+        private List<Integer> getUpdates(Long contactId) {
+            List<Integer> updates = new ArrayList<Integer>();
+            synchronized (contacts) {
+                for (Contact contact: contacts) {
+                    if (contactId.equals(contact.getId())) {
+                        updates.add(Integer.valueOf(contact.getFirstName()));
+                    }
+                }
+            }
+            return updates;
+        }
+    }
+
+    /**
+     * Records the versions of the received contact deltas and the names of the threads
+     * which handled them.
+     */
+    private class DeltaRecordingListener implements MessageListener {
+
+        private final CountDownLatch received;
+
+        private final List<ContactDelta> deltas = new ArrayList<ContactDelta>();
+
+        private final List<String> threadNames = new ArrayList<String>();
+
+        private DeltaRecordingListener(int expectedDeltas) {
+            this.received = new CountDownLatch(expectedDeltas);
+        }
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            synchronized (this) {
+                deltas.add(deltaSerializer.deserialize(message.getBody()));
+                threadNames.add(Thread.currentThread().getName());
+            }
+            received.countDown();
+        }
+
+        private boolean await() throws InterruptedException {
+            return received.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        private synchronized List<Integer> getVersions(Long contactId) {
+            List<Integer> versions = new ArrayList<Integer>();
+            for (ContactDelta delta: deltas) {
+                if (contactId.equals(delta.getId())) {
+                    versions.add((int) delta.getVersion());
+                }
+            }
+            return versions;
+        }
+
+        private synchronized Set<String> getThreadNames(Long contactId) {
+            Set<String> names = new HashSet<String>();
+            for (int index = 0; index < deltas.size(); index++) {
+                if (contactId.equals(deltas.get(index).getId())) {
+                    names.add(threadNames.get(index));
+                }
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Blocks the worker thread until it is released.
+     */
+    private class BlockingListener implements MessageListener {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            started.countDown();
+            try {
+                released.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean awaitStarted() throws InterruptedException {
+            return started.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        private void release() {
+            released.countDown();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactBatchRedisSerializerTest {
+
+    private static final Long FIRST_ID = Long.valueOf(1);
+    private static final Long SECOND_ID = Long.valueOf(2);
+    private static final String ORIGIN = "node";
+
+    private RedisSerializer<Contact> jsonSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private ContactBatchRedisSerializer serializer = new ContactBatchRedisSerializer(jsonSerializer);
+
+    @Test
+    public void serializeSingleContact() {
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        byte[] bytes = serializer.serialize(Arrays.asList(contact));
+
+        assertTrue(Arrays.equals(jsonSerializer.serialize(contact), bytes));
+    }
+
+    @Test
+    public void serializeBatch() {
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(FIRST_ID), ContactTestUtil.createModel(SECOND_ID));
+
+        byte[] bytes = serializer.serialize(contacts);
+        List<Contact> deserialized = serializer.deserialize(bytes);
+
+        assertEquals(ContactBatchRedisSerializer.HEADER_BATCH, bytes[0]);
+        assertEquals(2, deserialized.size());
+        assertEquals(FIRST_ID, deserialized.get(0).getId());
+        assertEquals(SECOND_ID, deserialized.get(1).getId());
+    }
+
+    @Test
+    public void serializeBatchWithBinarySerializer() {
+        ContactBatchRedisSerializer binaryBatchSerializer = new ContactBatchRedisSerializer(new ContactBinaryRedisSerializer());
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(FIRST_ID), ContactTestUtil.createModel(SECOND_ID));
+
+        List<Contact> deserialized = binaryBatchSerializer.deserialize(binaryBatchSerializer.serialize(contacts));
+
+        assertEquals(2, deserialized.size());
+        assertEquals(ContactTestUtil.FIRST_NAME, deserialized.get(1).getFirstName());
+    }
+
+    @Test
+    public void serializeEmptyBatch() {
+        assertEquals(0, serializer.serialize(new ArrayList<Contact>()).length);
+        assertEquals(0, serializer.serialize(null).length);
+    }
+
+    @Test
+    public void serializeWithOrigin() {
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(FIRST_ID), ContactTestUtil.createModel(SECOND_ID));
+
+        byte[] bytes = serializer.serialize(contacts, ORIGIN);
+        List<Contact> deserialized = serializer.deserialize(bytes);
+
+        assertEquals(ContactBatchRedisSerializer.HEADER_ORIGIN, bytes[0]);
+        assertEquals(ORIGIN, serializer.readOrigin(bytes));
+        assertEquals(2, deserialized.size());
+        assertEquals(SECOND_ID, deserialized.get(1).getId());
+    }
+
+    @Test
+    public void serializeSingleContactWithOrigin() {
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        byte[] bytes = serializer.serialize(Arrays.asList(contact), ORIGIN);
+        List<Contact> deserialized = serializer.deserialize(bytes);
+
+        assertEquals(ORIGIN, serializer.readOrigin(bytes));
+        assertEquals(1, deserialized.size());
+        assertEquals(FIRST_ID, deserialized.get(0).getId());
+    }
+
+    @Test
+    public void serializeWithoutOrigin() {
+        List<Contact> contacts = Arrays.asList(ContactTestUtil.createModel(FIRST_ID));
+
+        byte[] bytes = serializer.serialize(contacts, null);
+
+        assertTrue(Arrays.equals(serializer.serialize(contacts), bytes));
+        assertNull(serializer.readOrigin(bytes));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeTruncatedOrigin() {
+        byte[] bytes = serializer.serialize(Arrays.asList(ContactTestUtil.createModel(FIRST_ID)), ORIGIN);
+
+        serializer.deserialize(Arrays.copyOf(bytes, 3));
+    }
+
+    @Test
+    public void deserializeSingleContact() {
+        List<Contact> deserialized = serializer.deserialize(jsonSerializer.serialize(ContactTestUtil.createModel(FIRST_ID)));
+
+        assertEquals(1, deserialized.size());
+        assertEquals(FIRST_ID, deserialized.get(0).getId());
+    }
+
+    @Test
+    public void deserializeEmptyMessage() {
+        assertTrue(serializer.deserialize(null).isEmpty());
+        assertTrue(serializer.deserialize(new byte[0]).isEmpty());
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeTruncatedBatch() {
+        byte[] bytes = serializer.serialize(Arrays.asList(ContactTestUtil.createModel(FIRST_ID), ContactTestUtil.createModel(SECOND_ID)));
+
+        serializer.deserialize(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+}
@@ -0,0 +1,85 @@
+package com.packtpub.springdata.redis.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BatchWriterTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    private BatchWriter writer;
+
+    private RedisTemplate<String, String> redisTemplateMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private BatchWriteCallback<String> callbackMock;
+
+    @Before
+    public void setUp() {
+        redisTemplateMock = mock(RedisTemplate.class);
+        redisConnectionMock = mock(RedisConnection.class);
+        callbackMock = mock(BatchWriteCallback.class);
+
+        writer = new BatchWriter(redisTemplateMock, BATCH_SIZE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidBatchSize() {
+        new BatchWriter(redisTemplateMock, 0);
+    }
+
+    @Test
+    public void partition() {
+        List<List<String>> batches = writer.partition(Arrays.asList("a", "b", "c"));
+
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList("a", "b"), batches.get(0));
+        assertEquals(Arrays.asList("c"), batches.get(1));
+    }
+
+    @Test
+    public void write() {
+        writer.write(Arrays.asList("a", "b", "c"), callbackMock);
+
+        ArgumentCaptor<RedisCallback> callbackArgument = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplateMock, times(1)).execute(callbackArgument.capture());
+
+        callbackArgument.getValue().doInRedis(redisConnectionMock);
+
+        InOrder inOrder = inOrder(redisConnectionMock, callbackMock);
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(callbackMock).write(redisConnectionMock, "a");
+        inOrder.verify(callbackMock).write(redisConnectionMock, "b");
+        inOrder.verify(redisConnectionMock).exec();
+        inOrder.verify(callbackMock).written("a");
+        inOrder.verify(callbackMock).written("b");
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(callbackMock).write(redisConnectionMock, "c");
+        inOrder.verify(redisConnectionMock).exec();
+        inOrder.verify(callbackMock).written("c");
+        verifyNoMoreInteractions(redisConnectionMock, callbackMock);
+    }
+
+    @Test
+    public void writeWithoutItems() {
+        writer.write(new ArrayList<String>(), callbackMock);
+
+        verifyZeroInteractions(redisTemplateMock, callbackMock);
+    }
+}
@@ -0,0 +1,121 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactNearCacheTest {
+
+    private static final int MAX_SIZE = 2;
+    private static final long TIME_TO_LIVE = 1000;
+
+    private static final Long FIRST_ID = Long.valueOf(1);
+    private static final Long SECOND_ID = Long.valueOf(2);
+    private static final Long THIRD_ID = Long.valueOf(3);
+
+    private ContactNearCache cache;
+
+    private long currentTime;
+
+    @Before
+    public void setUp() {
+        currentTime = 0;
+        cache = new ContactNearCache(MAX_SIZE, TIME_TO_LIVE, true) {
+            @Override
+            protected long getCurrentTime() {
+                return currentTime;
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidMaxSize() {
+        new ContactNearCache(0, TIME_TO_LIVE, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidTimeToLive() {
+        new ContactNearCache(MAX_SIZE, 0, true);
+    }
+
+    @Test
+    public void isEnabled() {
+        assertTrue(cache.isEnabled());
+    }
+
+    @Test
+    public void getAndPut() {
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        assertNull(cache.get(FIRST_ID));
+        cache.put(contact, cache.getVersion());
+
+        currentTime = 400;
+        assertSame(contact, cache.get(FIRST_ID));
+
+        NearCacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getSize());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(0.5, statistics.getHitRate());
+        assertEquals(400, statistics.getAverageServedAgeMillis());
+        assertEquals(400, statistics.getMaxServedAgeMillis());
+    }
+
+    @Test
+    public void putEvictsLeastRecentlyUsedContact() {
+        cache.put(ContactTestUtil.createModel(FIRST_ID), cache.getVersion());
+        cache.put(ContactTestUtil.createModel(SECOND_ID), cache.getVersion());
+
+        cache.get(FIRST_ID);
+        cache.put(ContactTestUtil.createModel(THIRD_ID), cache.getVersion());
+
+        assertNull(cache.get(SECOND_ID));
+        assertEquals(FIRST_ID, cache.get(FIRST_ID).getId());
+        assertEquals(THIRD_ID, cache.get(THIRD_ID).getId());
+
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void getWhenContactHasExpired() {
+        cache.put(ContactTestUtil.createModel(FIRST_ID), cache.getVersion());
+
+        currentTime = TIME_TO_LIVE + 1;
+        assertNull(cache.get(FIRST_ID));
+
+        NearCacheStatistics statistics = cache.getStatistics();
+        assertEquals(0, statistics.getSize());
+        assertEquals(1, statistics.getExpirationCount());
+        assertEquals(1, statistics.getMissCount());
+    }
+
+    @Test
+    public void invalidate() {
+        cache.put(ContactTestUtil.createModel(FIRST_ID), cache.getVersion());
+
+        cache.invalidate(FIRST_ID);
+
+        assertNull(cache.get(FIRST_ID));
+        assertEquals(1, cache.getStatistics().getInvalidationCount());
+    }
+
+    @Test
+    public void putWhenContactsWereInvalidatedDuringRead() {
+        long version = cache.getVersion();
+        cache.invalidate(FIRST_ID);
+
+        cache.put(ContactTestUtil.createModel(FIRST_ID), version);
+
+        assertNull(cache.get(FIRST_ID));
+    }
+}
@@ -1,19 +1,38 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
+import com.packtpub.springdata.redis.messaging.ContactChangeLog;
+import com.packtpub.springdata.redis.messaging.ContactDelta;
+import com.packtpub.springdata.redis.messaging.ContactDeltaPublisher;
+import com.packtpub.springdata.redis.messaging.ContactEventBus;
+import com.packtpub.springdata.redis.messaging.ContactEventPublisher;
 import com.packtpub.springdata.redis.model.Contact;
 import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.ContactBatchRedisSerializer;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SetOperations;
 import org.springframework.data.redis.core.ValueOperations;
-import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.*;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -24,9 +43,20 @@ public class RedisContactServiceTest {
     private Long CONTACT_ID = Long.valueOf(1);
     private String CONTACT_KEY = "contact1";
 
+    private static final String SEARCH_TERM = "Foo";
+
+    private static final long CONTACT_VERSION = 3;
+    private static final String UPDATED_PHONE_NUMBER = "7654321";
+
+    private static final int PUBLISH_BATCH_SIZE = 100;
+    private static final long PUBLISH_INTERVAL = 1000;
+    private static final long CHANGE_LOG_MAX_LENGTH = 1000;
+
     private RedisContactService service;
 
-    private RedisAtomicLong contactIdCounterMock;
+    private BatchWriter batchWriterMock;
+
+    private BlockIdAllocator contactIdCounterMock;
 
     private RedisTemplate<String, Contact> redisTemplateMock;
 
@@ -34,11 +64,28 @@ public class RedisContactServiceTest {
 
     private ValueOperations valueOperationsMock;
 
+    private ContactNameIndex contactNameIndexMock;
+
+    private ContactNearCache contactNearCacheMock;
+
+    private ContactDeltaPublisher contactDeltaPublisherMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer keySerializer = new JdkSerializationRedisSerializer();
+
+    private RedisSerializer valueSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
     @Before
     public void setUp() {
         service = new RedisContactService();
 
-        contactIdCounterMock = mock(RedisAtomicLong.class);
+        batchWriterMock = mock(BatchWriter.class);
+        ReflectionTestUtils.setField(service, "batchWriter", batchWriterMock);
+
+        contactIdCounterMock = mock(BlockIdAllocator.class);
         ReflectionTestUtils.setField(service, "contactIdCounter", contactIdCounterMock);
 
         redisTemplateMock = mock(RedisTemplate.class);
@@ -46,6 +93,22 @@ public class RedisContactServiceTest {
 
         setOperationsMock = mock(SetOperations.class);
         valueOperationsMock = mock(ValueOperations.class);
+
+        contactNameIndexMock = mock(ContactNameIndex.class);
+        ReflectionTestUtils.setField(service, "contactNameIndex", contactNameIndexMock);
+
+        contactNearCacheMock = mock(ContactNearCache.class);
+        ReflectionTestUtils.setField(service, "contactNearCache", contactNearCacheMock);
+
+        contactDeltaPublisherMock = mock(ContactDeltaPublisher.class);
+        ReflectionTestUtils.setField(service, "contactDeltaPublisher", contactDeltaPublisherMock);
+
+        ContactEventPublisher contactEventPublisher = new ContactEventPublisher(redisTemplateMock,
+                new ContactEventBus(new ContactBatchRedisSerializer(valueSerializer), false), PUBLISH_BATCH_SIZE, PUBLISH_INTERVAL, false);
+        ReflectionTestUtils.setField(service, "contactEventPublisher", contactEventPublisher);
+        ReflectionTestUtils.setField(service, "contactChangeLog", new ContactChangeLog(redisTemplateMock, CHANGE_LOG_MAX_LENGTH, 0, false));
+
+        redisConnectionMock = mock(RedisConnection.class);
     }
 
     @Test
@@ -69,6 +132,9 @@ public class RedisContactServiceTest {
         verify(setOperationsMock, times(1)).add(RedisContactService.KEY_CONTACTS_SET, added);
         verifyNoMoreInteractions(setOperationsMock);
 
+        verify(contactNameIndexMock, times(1)).add(added);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
         verify(redisTemplateMock, times(1)).convertAndSend(RedisContactService.CHANNEL_NEW_CONTACTS, added);
         verifyNoMoreInteractions(redisTemplateMock);
 
@@ -76,6 +142,63 @@ public class RedisContactServiceTest {
         assertEquals(added, actual);
     }
 
+    @Test
+    public void addAll() {
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(valueSerializer);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(contactIdCounterMock.allocate(1)).thenReturn(Arrays.asList(CONTACT_ID));
+
+        Contact added = ContactTestUtil.createModel();
+        List<Contact> actual = service.addAll(Arrays.asList(added));
+
+        verify(contactIdCounterMock, times(1)).allocate(1);
+        verifyNoMoreInteractions(contactIdCounterMock);
+
+        executeBatchWriteCallback(actual);
+
+        verify(redisConnectionMock, times(1)).set(keySerializer.serialize(CONTACT_KEY), valueSerializer.serialize(added));
+        verify(redisConnectionMock, times(1)).sAdd(keySerializer.serialize(RedisContactService.KEY_CONTACTS_SET), valueSerializer.serialize(added));
+        verify(redisConnectionMock, times(1)).publish(stringSerializer.serialize(RedisContactService.CHANNEL_NEW_CONTACTS), valueSerializer.serialize(added));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(contactNameIndexMock, times(1)).add(redisConnectionMock, added);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(setOperationsMock, valueOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(CONTACT_ID, actual.get(0).getId());
+    }
+
+    @Test
+    public void count() {
+        when(contactNameIndexMock.count()).thenReturn(Long.valueOf(2));
+
+        long count = service.count();
+
+        verify(contactNameIndexMock, times(1)).count();
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void countWithSearchTerm() {
+        when(contactNameIndexMock.count(SEARCH_TERM)).thenReturn(Long.valueOf(2));
+
+        long count = service.count(createSearchDTO(SEARCH_TERM, 0, 10));
+
+        verify(contactNameIndexMock, times(1)).count(SEARCH_TERM);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(2, count);
+    }
+
     @Test
     public void deleteById() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
@@ -96,6 +219,9 @@ public class RedisContactServiceTest {
         verify(setOperationsMock, times(1)).remove(RedisContactService.KEY_CONTACTS_SET, deleted);
         verifyNoMoreInteractions(setOperationsMock);
 
+        verify(contactNameIndexMock, times(1)).remove(deleted);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
         verify(redisTemplateMock, times(1)).convertAndSend(RedisContactService.CHANNEL_REMOVED_CONTACTS, deleted);
         verifyNoMoreInteractions(redisTemplateMock);
 
@@ -104,6 +230,94 @@ public class RedisContactServiceTest {
         assertEquals(deleted, actual);
     }
 
+    @Test
+    public void deleteAll() {
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(valueSerializer);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(batchWriterMock.partition(Arrays.asList(CONTACT_ID))).thenReturn(Arrays.asList(Arrays.asList(CONTACT_ID)));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+
+        Contact deleted = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(deleted));
+
+        List<Contact> actual = service.deleteAll(Arrays.asList(CONTACT_ID));
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        executeBatchWriteCallback(actual);
+
+        verify(redisConnectionMock, times(1)).del(keySerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).sRem(keySerializer.serialize(RedisContactService.KEY_CONTACTS_SET), valueSerializer.serialize(deleted));
+        verify(redisConnectionMock, times(1)).publish(stringSerializer.serialize(RedisContactService.CHANNEL_REMOVED_CONTACTS), valueSerializer.serialize(deleted));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(contactNameIndexMock, times(1)).remove(redisConnectionMock, deleted);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(deleted, actual.get(0));
+    }
+
+    @Test
+    public void deleteByIdWithNearCache() throws NotFoundException {
+        when(contactNearCacheMock.isEnabled()).thenReturn(true);
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+
+        Contact deleted = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(deleted);
+
+        service.deleteById(CONTACT_ID);
+
+        verify(valueOperationsMock, times(1)).get(CONTACT_KEY);
+        verify(contactNearCacheMock, times(1)).isEnabled();
+        verify(contactNearCacheMock, times(1)).invalidate(CONTACT_ID);
+        verifyNoMoreInteractions(contactNearCacheMock);
+    }
+
+    @Test
+    public void deleteByIdWithDeltas() throws NotFoundException {
+        when(contactDeltaPublisherMock.isEnabled()).thenReturn(true);
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+
+        Contact deleted = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(deleted);
+
+        service.deleteById(CONTACT_ID);
+
+        verify(contactDeltaPublisherMock, times(1)).isEnabled();
+        verify(contactDeltaPublisherMock, times(1)).removeVersion(CONTACT_ID);
+        verifyNoMoreInteractions(contactDeltaPublisherMock);
+
+        verify(redisTemplateMock, times(1)).convertAndSend(RedisContactService.CHANNEL_REMOVED_CONTACTS, deleted);
+    }
+
+    @Test
+    public void deleteAllWithDeltas() {
+        when(contactDeltaPublisherMock.isEnabled()).thenReturn(true);
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(valueSerializer);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(batchWriterMock.partition(Arrays.asList(CONTACT_ID))).thenReturn(Arrays.asList(Arrays.asList(CONTACT_ID)));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+
+        Contact deleted = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(deleted));
+
+        List<Contact> actual = service.deleteAll(Arrays.asList(CONTACT_ID));
+
+        executeBatchWriteCallback(actual);
+
+        verify(contactDeltaPublisherMock, times(1)).isEnabled();
+        verify(contactDeltaPublisherMock, times(1)).removeVersion(redisConnectionMock, CONTACT_ID);
+        verifyNoMoreInteractions(contactDeltaPublisherMock);
+    }
+
     @Test(expected = NotFoundException.class)
     public void deleteByIdWhenContactIsNotFound() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
@@ -120,6 +334,35 @@ public class RedisContactServiceTest {
         verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
     }
 
+    @Test
+    public void exportAll() {
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+
+        when(batchWriterMock.getBatchSize()).thenReturn(10);
+        when(contactNameIndexMock.findIdsForPage(0, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(contactNameIndexMock.findIdsForPage(1, 10)).thenReturn(new ArrayList<Long>());
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(found));
+
+        ContactCallbackHandler handlerMock = mock(ContactCallbackHandler.class);
+
+        long exported = service.exportAll(handlerMock);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(0, 10);
+        verify(contactNameIndexMock, times(1)).findIdsForPage(1, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verify(handlerMock, times(1)).processContact(found);
+        verifyNoMoreInteractions(handlerMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, exported);
+    }
+
     @Test
     public void findAll() {
         Set<Contact> found = new HashSet<Contact>();
@@ -147,6 +390,64 @@ public class RedisContactServiceTest {
         assertTrue(actual.isEmpty());
     }
 
+    @Test
+    public void findAllForPage() {
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+
+        when(contactNameIndexMock.findIdsForPage(1, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(found, null));
+
+        List<Contact> actual = service.findAllForPage(1, 10);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(1, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(found, actual.get(0));
+    }
+
+    @Test
+    public void findAllForPageWhenPageIsEmpty() {
+        when(contactNameIndexMock.findIdsForPage(0, 10)).thenReturn(new ArrayList<Long>());
+
+        List<Contact> actual = service.findAllForPage(0, 10);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(0, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    public void search() {
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+
+        when(contactNameIndexMock.search(SEARCH_TERM, 1, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(found));
+
+        List<Contact> actual = service.search(createSearchDTO(SEARCH_TERM, 1, 10));
+
+        verify(contactNameIndexMock, times(1)).search(SEARCH_TERM, 1, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(found, actual.get(0));
+    }
+
     @Test
     public void findById() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
@@ -167,6 +468,79 @@ public class RedisContactServiceTest {
         assertEquals(found, actual);
     }
 
+    @Test
+    public void findByIdFromNearCache() throws NotFoundException {
+        Contact cached = ContactTestUtil.createModel(CONTACT_ID);
+
+        when(contactNearCacheMock.isEnabled()).thenReturn(true);
+        when(contactNearCacheMock.get(CONTACT_ID)).thenReturn(cached);
+
+        Contact actual = service.findById(CONTACT_ID);
+
+        verify(contactNearCacheMock, times(1)).isEnabled();
+        verify(contactNearCacheMock, times(1)).get(CONTACT_ID);
+        verifyNoMoreInteractions(contactNearCacheMock);
+
+        verifyZeroInteractions(redisTemplateMock, valueOperationsMock);
+
+        assertEquals(cached, actual);
+    }
+
+    @Test
+    public void findByIdWhenContactIsNotInNearCache() throws NotFoundException {
+        when(contactNearCacheMock.isEnabled()).thenReturn(true);
+        when(contactNearCacheMock.getVersion()).thenReturn(Long.valueOf(3));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(found);
+
+        Contact actual = service.findById(CONTACT_ID);
+
+        verify(contactNearCacheMock, times(1)).isEnabled();
+        verify(contactNearCacheMock, times(1)).get(CONTACT_ID);
+        verify(contactNearCacheMock, times(1)).getVersion();
+        verify(contactNearCacheMock, times(1)).put(found, 3);
+        verifyNoMoreInteractions(contactNearCacheMock);
+
+        verify(valueOperationsMock, times(1)).get(CONTACT_KEY);
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        assertEquals(found, actual);
+    }
+
+    @Test
+    public void findSnapshotById() throws NotFoundException {
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(contactDeltaPublisherMock.getVersion(CONTACT_ID)).thenReturn(CONTACT_VERSION);
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(found);
+
+        ContactDelta actual = service.findSnapshotById(CONTACT_ID);
+
+        verify(contactDeltaPublisherMock, times(1)).getVersion(CONTACT_ID);
+        verifyNoMoreInteractions(contactDeltaPublisherMock);
+
+        verify(valueOperationsMock, times(1)).get(CONTACT_KEY);
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verifyZeroInteractions(contactNearCacheMock);
+
+        assertEquals(CONTACT_ID, actual.getId());
+        assertEquals(CONTACT_VERSION, actual.getVersion());
+        assertTrue(actual.isSnapshot());
+        assertEquals(ContactTestUtil.PHONE_NUMBER, actual.getFields().get(ContactDelta.FIELD_PHONE_NUMBER));
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void findSnapshotByIdWhenContactIsNotFound() throws NotFoundException {
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(null);
+
+        service.findSnapshotById(CONTACT_ID);
+    }
+
     @Test(expected = NotFoundException.class)
     public void findByIdWhenContactIsNotFound() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
@@ -205,6 +579,9 @@ public class RedisContactServiceTest {
         verify(setOperationsMock, times(1)).add(RedisContactService.KEY_CONTACTS_SET, updated);
         verifyNoMoreInteractions(setOperationsMock);
 
+        verify(contactNameIndexMock, times(1)).update(found, updated);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
         verify(redisTemplateMock, times(1)).convertAndSend(RedisContactService.CHANNEL_UPDATED_CONTACTS, updated);
         verifyNoMoreInteractions(redisTemplateMock);
 
@@ -213,6 +590,153 @@ public class RedisContactServiceTest {
         assertEquals(updated, actual);
     }
 
+    @Test
+    public void updateWithNearCache() throws NotFoundException {
+        when(contactNearCacheMock.isEnabled()).thenReturn(true);
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(found);
+
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        service.update(updated);
+
+        verify(valueOperationsMock, times(1)).get(CONTACT_KEY);
+        verify(contactNearCacheMock, times(1)).isEnabled();
+        verify(contactNearCacheMock, times(1)).invalidate(CONTACT_ID);
+        verifyNoMoreInteractions(contactNearCacheMock);
+    }
+
+    @Test
+    public void updateWithDeltas() throws NotFoundException {
+        when(contactDeltaPublisherMock.isEnabled()).thenReturn(true);
+        stubVersionedUpdate();
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        byte[] key = keySerializer.serialize(CONTACT_KEY);
+        byte[] rawFound = valueSerializer.serialize(found);
+        when(redisConnectionMock.get(key)).thenReturn(rawFound);
+        when(redisConnectionMock.exec()).thenReturn(Arrays.<Object>asList(null, CONTACT_VERSION, 1L, 1L));
+
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setPhoneNumber(UPDATED_PHONE_NUMBER);
+        Contact actual = service.update(updated);
+
+        byte[] rawUpdated = valueSerializer.serialize(updated);
+        byte[] setKey = keySerializer.serialize(RedisContactService.KEY_CONTACTS_SET);
+
+        InOrder inOrder = inOrder(redisConnectionMock, contactNameIndexMock);
+        inOrder.verify(redisConnectionMock, times(1)).watch(key);
+        inOrder.verify(redisConnectionMock, times(1)).get(key);
+        inOrder.verify(redisConnectionMock, times(1)).multi();
+        inOrder.verify(redisConnectionMock, times(1)).set(key, rawUpdated);
+        inOrder.verify(redisConnectionMock, times(1)).sRem(setKey, rawFound);
+        inOrder.verify(redisConnectionMock, times(1)).sAdd(setKey, rawUpdated);
+        inOrder.verify(contactNameIndexMock, times(1)).remove(eq(redisConnectionMock), any(Contact.class));
+        inOrder.verify(contactNameIndexMock, times(1)).add(redisConnectionMock, updated);
+        inOrder.verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock, contactNameIndexMock);
+
+        ArgumentCaptor<ContactDelta> deltaArgument = ArgumentCaptor.forClass(ContactDelta.class);
+        verify(contactDeltaPublisherMock, times(1)).isEnabled();
+        verify(contactDeltaPublisherMock, times(1)).incrementVersion(redisConnectionMock, CONTACT_ID);
+        verify(contactDeltaPublisherMock, times(1)).publish(deltaArgument.capture());
+        verifyNoMoreInteractions(contactDeltaPublisherMock);
+
+        ContactDelta delta = deltaArgument.getValue();
+        assertEquals(CONTACT_ID, delta.getId());
+        assertEquals(CONTACT_VERSION, delta.getVersion());
+        assertEquals(1, delta.getFields().size());
+        assertEquals(UPDATED_PHONE_NUMBER, delta.getFields().get(ContactDelta.FIELD_PHONE_NUMBER));
+
+        verifyZeroInteractions(setOperationsMock);
+        verify(redisTemplateMock, never()).convertAndSend(anyString(), any());
+
+        assertEquals(updated, actual);
+    }
+
+    @Test
+    public void updateWithDeltasWhenNothingIsChanged() throws NotFoundException {
+        when(contactDeltaPublisherMock.isEnabled()).thenReturn(true);
+        stubVersionedUpdate();
+
+        byte[] key = keySerializer.serialize(CONTACT_KEY);
+        when(redisConnectionMock.get(key)).thenReturn(valueSerializer.serialize(ContactTestUtil.createModel(CONTACT_ID)));
+        when(redisConnectionMock.exec()).thenReturn(Arrays.<Object>asList(null, 1L, 1L));
+
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        service.update(updated);
+
+        verify(contactDeltaPublisherMock, times(1)).isEnabled();
+        verifyNoMoreInteractions(contactDeltaPublisherMock);
+
+        verify(redisTemplateMock, never()).convertAndSend(anyString(), any());
+    }
+
+    @Test
+    public void updateWithDeltasWhenContactIsChangedConcurrently() throws NotFoundException {
+        when(contactDeltaPublisherMock.isEnabled()).thenReturn(true);
+        stubVersionedUpdate();
+
+        byte[] key = keySerializer.serialize(CONTACT_KEY);
+        when(redisConnectionMock.get(key)).thenReturn(valueSerializer.serialize(ContactTestUtil.createModel(CONTACT_ID)));
+        when(redisConnectionMock.exec()).thenReturn(null).thenReturn(Arrays.<Object>asList(null, CONTACT_VERSION, 1L, 1L));
+
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setPhoneNumber(UPDATED_PHONE_NUMBER);
+        service.update(updated);
+
+        verify(redisConnectionMock, times(2)).watch(key);
+        verify(redisConnectionMock, times(2)).exec();
+        verify(contactDeltaPublisherMock, times(2)).incrementVersion(redisConnectionMock, CONTACT_ID);
+        verify(contactDeltaPublisherMock, times(1)).publish(any(ContactDelta.class));
+        verify(redisTemplateMock, never()).convertAndSend(anyString(), any());
+    }
+
+    @Test
+    public void updateWithDeltasWhenContactIsAlwaysChangedConcurrently() throws NotFoundException {
+        when(contactDeltaPublisherMock.isEnabled()).thenReturn(true);
+        stubVersionedUpdate();
+
+        byte[] key = keySerializer.serialize(CONTACT_KEY);
+        when(redisConnectionMock.get(key)).thenReturn(valueSerializer.serialize(ContactTestUtil.createModel(CONTACT_ID)));
+        when(redisConnectionMock.exec()).thenReturn(null);
+
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        updated.setPhoneNumber(UPDATED_PHONE_NUMBER);
+        try {
+            service.update(updated);
+            fail("Should have thrown an exception");
+        }
+        catch (OptimisticLockingFailureException e) {
+            verify(redisConnectionMock, times(RedisContactService.MAX_UPDATE_ATTEMPTS)).exec();
+            verify(contactDeltaPublisherMock, never()).publish(any(ContactDelta.class));
+            verify(redisTemplateMock, never()).convertAndSend(anyString(), any());
+            verifyZeroInteractions(setOperationsMock);
+            verify(contactNameIndexMock, never()).update(any(Contact.class), any(Contact.class));
+        }
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void updateWithDeltasWhenContactIsNotFound() throws NotFoundException {
+        when(contactDeltaPublisherMock.isEnabled()).thenReturn(true);
+        stubVersionedUpdate();
+
+        byte[] key = keySerializer.serialize(CONTACT_KEY);
+        when(redisConnectionMock.get(key)).thenReturn(null);
+
+        try {
+            service.update(ContactTestUtil.createModel(CONTACT_ID));
+        }
+        finally {
+            verify(redisConnectionMock, times(1)).watch(key);
+            verify(redisConnectionMock, times(1)).get(key);
+            verify(redisConnectionMock, times(1)).unwatch();
+            verifyNoMoreInteractions(redisConnectionMock);
+        }
+    }
+
     @Test(expected = NotFoundException.class)
     public void updateWhenContactIsNotFound() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
@@ -229,4 +753,37 @@ public class RedisContactServiceTest {
 
         verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
     }
+
+    private void stubVersionedUpdate() {
+        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(valueSerializer);
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+    }
+
+    private void executeBatchWriteCallback(List<Contact> expectedItems) {
+        ArgumentCaptor<BatchWriteCallback> callbackArgument = ArgumentCaptor.forClass(BatchWriteCallback.class);
+        verify(batchWriterMock, times(1)).write(eq(expectedItems), callbackArgument.capture());
+
+        for (Contact item: expectedItems) {
+            callbackArgument.getValue().write(redisConnectionMock, item);
+        }
+        for (Contact item: expectedItems) {
+            callbackArgument.getValue().written(item);
+        }
+    }
+
+    private SearchDTO createSearchDTO(String searchTerm, int pageIndex, int pageSize) {
+        SearchDTO dto = new SearchDTO();
+        dto.setSearchTerm(searchTerm);
+        dto.setPageIndex(pageIndex);
+        dto.setPageSize(pageSize);
+        return dto;
+    }
 }
@@ -1,12 +1,20 @@
 package com.packtpub.springdata.redis.config;
 
+import com.packtpub.springdata.redis.service.BatchWriter;
+import com.packtpub.springdata.redis.service.BlockIdAllocator;
+import com.packtpub.springdata.redis.service.BucketedContactStore;
+import com.packtpub.springdata.redis.service.BulkHashLoader;
+import com.packtpub.springdata.redis.service.ContactNameIndex;
+import com.packtpub.springdata.redis.service.RedisScript;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.*;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.support.atomic.RedisAtomicLong;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
@@ -18,6 +26,7 @@ import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
 import javax.annotation.Resource;
+import java.io.IOException;
 import java.util.Properties;
 
 /**
@@ -45,6 +54,14 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
 
     private static final String PROPERTY_NAME_REDIS_HOST = "redis.host";
     private static final String PROPERTY_NAME_REDIS_PORT = "redis.port";
+    private static final String PROPERTY_NAME_REDIS_ID_BLOCK_SIZE = "redis.id.block.size";
+    private static final String PROPERTY_NAME_REDIS_BULK_LOAD_CHUNK_SIZE = "redis.bulk.load.chunk.size";
+    private static final String PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE = "redis.bulk.write.batch.size";
+    private static final String PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_ENABLED = "redis.bucketed.layout.enabled";
+    private static final String PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_BUCKET_SIZE = "redis.bucketed.layout.bucket.size";
+    private static final String PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_MAX_ZIPLIST_VALUE = "redis.bucketed.layout.max.ziplist.value";
+
+    private static final String SCRIPT_LOCATION_FIND_NAME_PREFIX = "scripts/find-name-prefix.lua";
 
     @Resource
     private Environment environment;
@@ -68,6 +85,62 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
         configurer.enable();
     }
 
+    /**
+     * Configures the writer which is used to write multiple contacts in batches.
+     * @return
+     */
+    @Bean
+    public BatchWriter batchWriter() {
+        int batchSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE));
+        return new BatchWriter(redisTemplate(), batchSize);
+    }
+
+    /**
+     * Configures the store which is used to store contacts in bucketed hashes. The store is
+     * used only if the bucketed layout is enabled in the application properties.
+     * @return
+     */
+    @Bean
+    public BucketedContactStore bucketedContactStore() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_ENABLED));
+        int bucketSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_BUCKET_SIZE));
+        int maxZiplistValue = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_MAX_ZIPLIST_VALUE));
+        return new BucketedContactStore(stringRedisTemplate(), bucketSize, maxZiplistValue, enabled);
+    }
+
+    /**
+     * Configures the loader which is used to fetch multiple contact hashes in batches.
+     * @return
+     */
+    @Bean
+    public BulkHashLoader bulkHashLoader() {
+        int chunkSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_BULK_LOAD_CHUNK_SIZE));
+        return new BulkHashLoader(redisTemplate(), chunkSize);
+    }
+
+    /**
+     * Configures the allocator which hands out the ids of new contacts from blocks
+     * reserved from the contact id counter.
+     * @return
+     */
+    @Bean
+    public BlockIdAllocator contactIdAllocator() {
+        int blockSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_ID_BLOCK_SIZE));
+        return new BlockIdAllocator(redisAtomicLong(), blockSize);
+    }
+
+    /**
+     * Configures the name indexes which are used to sort and search contacts. The contacts
+     * whose names start with a search term are found by a Lua script.
+     * @return
+     * @throws IOException
+     */
+    @Bean
+    public ContactNameIndex contactNameIndex() throws IOException {
+        RedisScript script = new RedisScript(new ClassPathResource(SCRIPT_LOCATION_FIND_NAME_PREFIX));
+        return new ContactNameIndex(stringRedisTemplate(), script);
+    }
+
     @Bean
     public RedisAtomicLong redisAtomicLong() {
         return new RedisAtomicLong("contact", redisConnectionFactory());
@@ -100,6 +173,15 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
         return redisTemplate;
     }
 
+    /**
+     * Configures the Redis template which is used to access the string based indexes.
+     * @return
+     */
+    @Bean
+    public StringRedisTemplate stringRedisTemplate() {
+        return new StringRedisTemplate(redisConnectionFactory());
+    }
+
     /**
      * Configures the exception resolver.
      * @return
@@ -0,0 +1,306 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Address;
+import com.packtpub.springdata.redis.model.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores contacts in bucketed hashes instead of using one hash per contact. The contact
+ * whose id is N is stored in the hash 'contactBucket:(N / bucket size)', and each field of
+ * the contact is stored in its own hash field whose name is 'N % bucket size' followed by
+ * a one character field code. For example, the first name of the contact 117 is stored in
+ * the field '17f' of the hash 'contactBucket:2' when the bucket size is 50.
+ * <p>
+ * The keys, field names and values are plain UTF-8 strings, and the id of a contact is not
+ * stored at all because it can be derived from the key and the field name. This removes
+ * the per-key overhead of Redis and the JDK serialization headers, and it keeps the buckets
+ * in the small ziplist encoding as long as the bucket size multiplied by the number of
+ * fields (9) is not larger than the hash-max-ziplist-entries setting of the server and the
+ * field values are not longer than the hash-max-ziplist-value setting. A single longer value
+ * converts the whole bucket to the hashtable encoding, so a warning is written to the log
+ * when such a value is written.
+ * @author Petri Kainulainen
+ */
+public class BucketedContactStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BucketedContactStore.class);
+
+    protected static final String KEY_BUCKET_PREFIX = "contactBucket:";
+
+    protected static final String FIELD_CODE_EMAIL_ADDRESS = "e";
+    protected static final String FIELD_CODE_FIRST_NAME = "f";
+    protected static final String FIELD_CODE_LAST_NAME = "l";
+    protected static final String FIELD_CODE_PHONE_NUMBER = "p";
+    protected static final String FIELD_CODE_STREET_ADDRESS = "s";
+    protected static final String FIELD_CODE_POST_CODE = "c";
+    protected static final String FIELD_CODE_POST_OFFICE = "o";
+    protected static final String FIELD_CODE_STATE = "t";
+    protected static final String FIELD_CODE_COUNTRY = "y";
+
+    private static final String[] FIELD_CODES = {
+            FIELD_CODE_EMAIL_ADDRESS,
+            FIELD_CODE_FIRST_NAME,
+            FIELD_CODE_LAST_NAME,
+            FIELD_CODE_PHONE_NUMBER,
+            FIELD_CODE_STREET_ADDRESS,
+            FIELD_CODE_POST_CODE,
+            FIELD_CODE_POST_OFFICE,
+            FIELD_CODE_STATE,
+            FIELD_CODE_COUNTRY
+    };
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private int bucketSize;
+
+    private int maxZiplistValue;
+
+    private boolean enabled;
+
+    /**
+     * Creates a new bucketed contact store.
+     * @param stringRedisTemplate   The Redis template which is used to access the buckets.
+     * @param bucketSize    The number of contacts which are stored in one bucket.
+     * @param maxZiplistValue   The hash-max-ziplist-value setting of the server in bytes.
+     * @param enabled   Is the bucketed layout used to store contacts.
+     */
+    public BucketedContactStore(StringRedisTemplate stringRedisTemplate, int bucketSize, int maxZiplistValue, boolean enabled) {
+        if (bucketSize < 1) {
+            throw new IllegalArgumentException("Bucket size must be greater than zero. Was: " + bucketSize);
+        }
+        if (maxZiplistValue < 1) {
+            throw new IllegalArgumentException("Max ziplist value must be greater than zero. Was: " + maxZiplistValue);
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.bucketSize = bucketSize;
+        this.maxZiplistValue = maxZiplistValue;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns true if contacts are stored by using the bucketed layout.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks if the field values of the given contact fit into the ziplist encoding of a bucket.
+     * @param contact   The checked contact.
+     * @return  false if a field value is longer than the hash-max-ziplist-value setting and
+     *          true otherwise.
+     */
+    public boolean fitsInZiplist(Contact contact) {
+        for (String value: encode(contact)) {
+            if (value != null && serialize(value).length > maxZiplistValue) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the given contact by using the given connection. The fields of the contact
+     * which are null are removed from the bucket. This method can be used to write the
+     * contact as a part of a larger transaction.
+     * @param connection    The used connection.
+     * @param contact   The written contact.
+     */
+    public void write(RedisConnection connection, Contact contact) {
+        Long id = contact.getId();
+        LOGGER.debug("Writing contact with id: {} to bucket: {}", id, buildBucketKey(id));
+
+        byte[] bucketKey = serialize(buildBucketKey(id));
+        Map<byte[], byte[]> fields = new LinkedHashMap<byte[], byte[]>();
+
+        String[] values = encode(contact);
+        for (int index = 0; index < FIELD_CODES.length; index++) {
+            byte[] field = serialize(buildField(id, FIELD_CODES[index]));
+            if (values[index] != null) {
+                byte[] value = serialize(values[index]);
+                if (value.length > maxZiplistValue) {
+                    LOGGER.warn("The value of the field: {} of the contact with id: {} is {} bytes long. It is longer than hash-max-ziplist-value ({} bytes), which converts the bucket: {} to a hashtable.",
+                            new Object[] {FIELD_CODES[index], id, value.length, maxZiplistValue, buildBucketKey(id)});
+                }
+                fields.put(field, value);
+            }
+            else {
+                connection.hDel(bucketKey, field);
+            }
+        }
+
+        if (!fields.isEmpty()) {
+            connection.hMSet(bucketKey, fields);
+        }
+    }
+
+    /**
+     * Deletes the contact which has the given id by using the given connection. This method
+     * can be used to delete the contact as a part of a larger transaction.
+     * @param connection    The used connection.
+     * @param id    The id of the deleted contact.
+     */
+    public void delete(RedisConnection connection, Long id) {
+        LOGGER.debug("Deleting contact with id: {} from bucket: {}", id, buildBucketKey(id));
+
+        byte[] bucketKey = serialize(buildBucketKey(id));
+        for (String fieldCode: FIELD_CODES) {
+            connection.hDel(bucketKey, serialize(buildField(id, fieldCode)));
+        }
+    }
+
+    /**
+     * Finds the contacts which have the given ids. The fields of each contact are fetched
+     * with one HMGET command and the commands are sent as one MULTI/EXEC batch.
+     * @param ids   The ids of the contacts.
+     * @return  The found contacts in the same order than the ids were given. Ids which do not
+     *          point to a contact are ignored.
+     */
+    public List<Contact> find(final List<Long> ids) {
+        LOGGER.debug("Finding contacts with ids: {}", ids);
+
+        if (ids.isEmpty()) {
+            return new ArrayList<Contact>();
+        }
+
+        return stringRedisTemplate.execute(new RedisCallback<List<Contact>>() {
+            @Override
+            public List<Contact> doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.multi();
+                for (Long id: ids) {
+                    connection.hMGet(serialize(buildBucketKey(id)), serializeFields(id));
+                }
+
+                List<Object> replies = connection.exec();
+
+                List<Contact> contacts = new ArrayList<Contact>(ids.size());
+                for (int index = 0; index < ids.size(); index++) {
+                    Contact contact = decode(ids.get(index), (List<byte[]>) replies.get(index));
+                    if (contact != null) {
+                        contacts.add(contact);
+                    }
+                }
+
+                return contacts;
+            }
+        });
+    }
+
+    /**
+     * Finds the contact which has the given id.
+     * @param id    The id of the contact.
+     * @return  The found contact or null if no contact is found with the given id.
+     */
+    public Contact findById(final Long id) {
+        LOGGER.debug("Finding contact with id: {}", id);
+
+        List<byte[]> rawValues = stringRedisTemplate.execute(new RedisCallback<List<byte[]>>() {
+            @Override
+            public List<byte[]> doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.hMGet(serialize(buildBucketKey(id)), serializeFields(id));
+            }
+        });
+
+        return decode(id, rawValues);
+    }
+
+    private String buildBucketKey(Long id) {
+        return KEY_BUCKET_PREFIX + (id / bucketSize);
+    }
+
+    private String buildField(Long id, String fieldCode) {
+        return (id % bucketSize) + fieldCode;
+    }
+
+    private byte[][] serializeFields(Long id) {
+        byte[][] fields = new byte[FIELD_CODES.length][];
+        for (int index = 0; index < FIELD_CODES.length; index++) {
+            fields[index] = serialize(buildField(id, FIELD_CODES[index]));
+        }
+        return fields;
+    }
+
+    /**
+     * Encodes the fields of a contact in the order of the field codes.
+     * @param contact   The encoded contact.
+     * @return  The field values.
+     */
+    private String[] encode(Contact contact) {
+        Address address = contact.getAddress();
+
+        return new String[] {
+                contact.getEmailAddress(),
+                contact.getFirstName(),
+                contact.getLastName(),
+                contact.getPhoneNumber(),
+                address.getStreetAddress(),
+                address.getPostCode(),
+                address.getPostOffice(),
+                address.getState(),
+                address.getCountry()
+        };
+    }
+
+    /**
+     * Decodes a contact from the field values which are given in the order of the field codes.
+     * @param id    The id of the contact.
+     * @param rawValues The raw field values.
+     * @return  The decoded contact or null if no field of the contact was found.
+     */
+    private Contact decode(Long id, List<byte[]> rawValues) {
+        if (rawValues == null) {
+            return null;
+        }
+
+        String[] values = new String[FIELD_CODES.length];
+        boolean found = false;
+
+        for (int index = 0; index < FIELD_CODES.length; index++) {
+            values[index] = deserialize(rawValues.get(index));
+            found |= values[index] != null;
+        }
+
+        if (!found) {
+            LOGGER.debug("No contact found with id: {}", id);
+            return null;
+        }
+
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setEmailAddress(values[0]);
+        contact.setFirstName(values[1]);
+        contact.setLastName(values[2]);
+        contact.setPhoneNumber(values[3]);
+
+        Address address = new Address();
+        address.setStreetAddress(values[4]);
+        address.setPostCode(values[5]);
+        address.setPostOffice(values[6]);
+        address.setState(values[7]);
+        address.setCountry(values[8]);
+        contact.setAddress(address);
+
+        return contact;
+    }
+
+    private byte[] serialize(String value) {
+        return stringRedisTemplate.getStringSerializer().serialize(value);
+    }
+
+    private String deserialize(byte[] value) {
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        return serializer.deserialize(value);
+    }
+}
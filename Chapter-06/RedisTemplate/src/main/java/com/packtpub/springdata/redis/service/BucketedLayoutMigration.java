@@ -0,0 +1,182 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Converts the contacts which are stored in their own hashes to the bucketed layout. Each
+ * batch of contacts is written to the buckets and the old contact hashes are deleted in one
+ * MULTI/EXEC transaction, which means that a contact is never lost or stored twice even if
+ * the migration is interrupted. Contacts which are already migrated are ignored, so the
+ * migration can be run again. The contact set and the name indexes are not changed.
+ * <p>
+ * The used memory reported by the INFO command is read before and after the migration, and
+ * the difference divided by the number of migrated contacts is logged as the memory saved
+ * per contact. The used memory covers the whole server, but the difference is caused by the
+ * migration as long as nothing else writes to the server while the migration is running.
+ * The memory used per contact by each layout is measured with a fixed sample by the
+ * BucketedLayoutMemoryBenchmark class of the test sources.
+ * <p>
+ * A contact whose field value is longer than the hash-max-ziplist-value setting of the
+ * server converts its bucket to the hashtable encoding, which removes most of the savings
+ * of the bucket. The number of such contacts is written to the log as a warning.
+ * <p>
+ * The migration should be run when the application is stopped. It can be started from the
+ * command line, in which case the connection settings and the bucket size are read from
+ * the application properties.
+ * @author Petri Kainulainen
+ */
+public class BucketedLayoutMigration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BucketedLayoutMigration.class);
+
+    private static final String PROPERTIES_LOCATION = "application.properties";
+
+    private static final String PROPERTY_NAME_REDIS_HOST = "redis.host";
+    private static final String PROPERTY_NAME_REDIS_PORT = "redis.port";
+    private static final String PROPERTY_NAME_REDIS_BULK_LOAD_CHUNK_SIZE = "redis.bulk.load.chunk.size";
+    private static final String PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE = "redis.bulk.write.batch.size";
+    private static final String PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_BUCKET_SIZE = "redis.bucketed.layout.bucket.size";
+    private static final String PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_MAX_ZIPLIST_VALUE = "redis.bucketed.layout.max.ziplist.value";
+
+    private static final String INFO_USED_MEMORY = "used_memory";
+
+    private RedisTemplate<String, String> redisTemplate;
+
+    private BulkHashLoader bulkHashLoader;
+
+    private BatchWriter batchWriter;
+
+    private BucketedContactStore bucketedContactStore;
+
+    public BucketedLayoutMigration(RedisTemplate<String, String> redisTemplate, BulkHashLoader bulkHashLoader,
+                                   BatchWriter batchWriter, BucketedContactStore bucketedContactStore) {
+        this.redisTemplate = redisTemplate;
+        this.bulkHashLoader = bulkHashLoader;
+        this.batchWriter = batchWriter;
+        this.bucketedContactStore = bucketedContactStore;
+    }
+
+    /**
+     * Migrates the contacts to the bucketed layout.
+     * @return  The number of migrated contacts.
+     */
+    public long migrate() {
+        LOGGER.debug("Migrating contacts to the bucketed layout");
+
+        long memoryBefore = getUsedMemory();
+
+        Set<String> keys = redisTemplate.opsForSet().members(RedisContactService.KEY_CONTACT_SET);
+        long migrated = 0;
+        long exceedingZiplist = 0;
+
+        for (List<String> batch: batchWriter.partition(keys)) {
+            List<Contact> contacts = new ArrayList<Contact>(batch.size());
+            for (Map<Object, Object> hash: bulkHashLoader.load(batch, RedisContactService.HASH_KEYS)) {
+                if (!hash.isEmpty()) {
+                    Contact contact = RedisContactService.buildContact(hash);
+                    if (!bucketedContactStore.fitsInZiplist(contact)) {
+                        exceedingZiplist++;
+                    }
+                    contacts.add(contact);
+                }
+            }
+
+            batchWriter.write(contacts, new BatchWriteCallback<Contact>() {
+                @Override
+                public void write(RedisConnection connection, Contact contact) {
+                    bucketedContactStore.write(connection, contact);
+                    connection.del(serializeKey(RedisContactService.KEY_CONTACT_PREFIX + contact.getId()));
+                }
+            });
+
+            migrated += contacts.size();
+            LOGGER.debug("Migrated {} of {} contacts", migrated, keys.size());
+        }
+
+        long memoryAfter = getUsedMemory();
+
+        LOGGER.debug("Migrated {} contacts. Used memory before migration: {} bytes, after migration: {} bytes, saved per contact: {} bytes",
+                new Object[] {migrated, memoryBefore, memoryAfter, migrated == 0 ? 0 : (memoryBefore - memoryAfter) / migrated});
+
+        if (exceedingZiplist > 0) {
+            LOGGER.warn("{} of {} migrated contacts have a field value which is longer than hash-max-ziplist-value. Their buckets use the hashtable encoding.",
+                    exceedingZiplist, migrated);
+        }
+
+        return migrated;
+    }
+
+    /**
+     * Gets the used memory of the server.
+     * @return  The used memory reported by the INFO command in bytes.
+     */
+    public long getUsedMemory() {
+        return redisTemplate.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                long usedMemory = Long.parseLong(connection.info().getProperty(INFO_USED_MEMORY));
+                LOGGER.debug("Used memory: {} bytes", usedMemory);
+                return usedMemory;
+            }
+        });
+    }
+
+    private byte[] serializeKey(String key) {
+        RedisSerializer serializer = redisTemplate.getKeySerializer();
+        return serializer.serialize(key);
+    }
+
+    /**
+     * Runs the migration by using the settings found from the application properties.
+     * @param args  Not used.
+     * @throws IOException if the application properties cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        Properties properties = PropertiesLoaderUtils.loadAllProperties(PROPERTIES_LOCATION);
+
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory();
+        connectionFactory.setHostName(properties.getProperty(PROPERTY_NAME_REDIS_HOST));
+        connectionFactory.setPort(Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_PORT)));
+        connectionFactory.afterPropertiesSet();
+
+        try {
+            RedisTemplate<String, String> redisTemplate = new RedisTemplate<String, String>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.afterPropertiesSet();
+
+            StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+            int chunkSize = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BULK_LOAD_CHUNK_SIZE));
+            int batchSize = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE));
+            int bucketSize = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_BUCKET_SIZE));
+            int maxZiplistValue = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_MAX_ZIPLIST_VALUE));
+
+            BucketedLayoutMigration migration = new BucketedLayoutMigration(redisTemplate,
+                    new BulkHashLoader(redisTemplate, chunkSize),
+                    new BatchWriter(redisTemplate, batchSize),
+                    new BucketedContactStore(stringRedisTemplate, bucketSize, maxZiplistValue, true)
+            );
+            migration.migrate();
+        }
+        finally {
+            connectionFactory.destroy();
+        }
+    }
+}
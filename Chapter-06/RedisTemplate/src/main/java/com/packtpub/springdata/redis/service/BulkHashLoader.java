@@ -0,0 +1,110 @@
+package com.packtpub.springdata.redis.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the fields of multiple hashes over a single connection. The keys are split into
+ * chunks and the HMGET commands of each chunk are sent as one MULTI/EXEC batch, which means
+ * that loading a chunk costs one network round trip instead of one round trip per hash.
+ * <p>
+ * A MULTI/EXEC batch is used instead of a plain pipeline because the pipeline of Jedis 2.1.0
+ * decodes hash replies as strings, which would break binary hash values.
+ * @author Petri Kainulainen
+ */
+public class BulkHashLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkHashLoader.class);
+
+    private RedisTemplate<String, String> redisTemplate;
+
+    private int chunkSize;
+
+    public BulkHashLoader(RedisTemplate<String, String> redisTemplate, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be greater than zero. Was: " + chunkSize);
+        }
+        this.redisTemplate = redisTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Loads the given fields of the given hashes.
+     * @param keys  The keys of the loaded hashes.
+     * @param hashKeys  The loaded fields.
+     * @return  A list which contains the fields of each hash in the same order than the keys
+     *          were given. If a hash is not found, the list contains an empty map in its place.
+     */
+    public List<Map<Object, Object>> load(final List<String> keys, final List<String> hashKeys) {
+        LOGGER.debug("Loading {} hashes in chunks of {}", keys.size(), chunkSize);
+
+        if (keys.isEmpty()) {
+            return new ArrayList<Map<Object, Object>>();
+        }
+
+        return redisTemplate.execute(new RedisCallback<List<Map<Object, Object>>>() {
+            @Override
+            public List<Map<Object, Object>> doInRedis(RedisConnection connection) throws DataAccessException {
+                byte[][] rawHashKeys = serializeHashKeys(hashKeys);
+                List<Map<Object, Object>> hashes = new ArrayList<Map<Object, Object>>(keys.size());
+
+                for (int from = 0; from < keys.size(); from += chunkSize) {
+                    int to = Math.min(from + chunkSize, keys.size());
+                    LOGGER.debug("Loading hashes from index {} to index {}", from, to);
+
+                    connection.multi();
+                    for (String key: keys.subList(from, to)) {
+                        connection.hMGet(serializeKey(key), rawHashKeys);
+                    }
+
+                    List<Object> replies = connection.exec();
+                    for (Object reply: replies) {
+                        hashes.add(deserializeHash(hashKeys, (List<byte[]>) reply));
+                    }
+                }
+
+                return hashes;
+            }
+        });
+    }
+
+    private byte[] serializeKey(String key) {
+        RedisSerializer serializer = redisTemplate.getKeySerializer();
+        return serializer.serialize(key);
+    }
+
+    private byte[][] serializeHashKeys(List<String> hashKeys) {
+        RedisSerializer serializer = redisTemplate.getHashKeySerializer();
+
+        byte[][] rawHashKeys = new byte[hashKeys.size()][];
+        for (int index = 0; index < hashKeys.size(); index++) {
+            rawHashKeys[index] = serializer.serialize(hashKeys.get(index));
+        }
+
+        return rawHashKeys;
+    }
+
+    private Map<Object, Object> deserializeHash(List<String> hashKeys, List<byte[]> rawValues) {
+        RedisSerializer serializer = redisTemplate.getHashValueSerializer();
+        Map<Object, Object> hash = new HashMap<Object, Object>();
+
+        for (int index = 0; index < hashKeys.size(); index++) {
+            byte[] rawValue = rawValues.get(index);
+            if (rawValue != null) {
+                hash.put(hashKeys.get(index), serializer.deserialize(rawValue));
+            }
+        }
+
+        return hash;
+    }
+}
@@ -1,7 +1,9 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
 import com.packtpub.springdata.redis.model.Contact;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,6 +19,27 @@ public interface ContactService {
      */
     public Contact add(Contact added);
 
+    /**
+     * Adds new contacts. The contacts are written in batches and the ids of the contacts
+     * are reserved in bulk.
+     * @param added The information of the added contacts.
+     * @return  The added contacts.
+     */
+    public List<Contact> addAll(Collection<Contact> added);
+
+    /**
+     * Gets the count of contacts.
+     * @return  The count of all contacts.
+     */
+    public long count();
+
+    /**
+     * Gets the count of contacts whose first or last name starts with the search term.
+     * @param dto   The search conditions
+     * @return  The count of contacts matching with the given search conditions.
+     */
+    public long count(SearchDTO dto);
+
     /**
      * Deletes a contact.
      * @param id    The id of the deleted contact.
@@ -25,12 +48,36 @@ public interface ContactService {
      */
     public Contact deleteById(Long id) throws NotFoundException;
 
+    /**
+     * Deletes contacts. The contacts are deleted in batches.
+     * @param ids   The ids of the deleted contacts.
+     * @return  The deleted contacts. Ids which do not point to a contact are ignored.
+     */
+    public List<Contact> deleteAll(Collection<Long> ids);
+
+    /**
+     * Streams all contacts to the given handler. The contacts are read in batches which
+     * are sorted by the last and first names of the contacts, which means that all contacts
+     * are never held in memory at the same time.
+     * @param handler   The handler which processes the exported contacts.
+     * @return  The number of exported contacts.
+     */
+    public long exportAll(ContactCallbackHandler handler);
+
     /**
      * Finds a all contacts.
      * @return  A list of contacts. If no contacts is found, this method returns an empty list.
      */
     public List<Contact> findAll();
 
+    /**
+     * Finds contacts for page. The contacts are sorted by their last and first names.
+     * @param pageIndex The index of the page.
+     * @param pageSize  The number of contacts per page.
+     * @return  A list of contacts for the given page.
+     */
+    public List<Contact> findAllForPage(int pageIndex, int pageSize);
+
     /**
      * Finds a contact.
      * @param id    The id of the wanted contact.
@@ -39,6 +86,13 @@ public interface ContactService {
      */
     public Contact findById(Long id) throws NotFoundException;
 
+    /**
+     * Searches contacts whose first or last name starts with the search term.
+     * @param dto   The used search criteria.
+     * @return  A list of contacts. If no contacts is found, this method returns an empty list.
+     */
+    public List<Contact> search(SearchDTO dto);
+
     /**
      * Updates the information of a contact.
      * @param updated   The new information of a contact.
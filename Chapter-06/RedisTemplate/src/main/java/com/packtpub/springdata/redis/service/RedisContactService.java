@@ -1,22 +1,30 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
 import com.packtpub.springdata.redis.model.Address;
 import com.packtpub.springdata.redis.model.Contact;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
- * This implementation communicates with Redis by using the RedisTemplate class.
+ * This implementation communicates with Redis by using the RedisTemplate class. By default
+ * each contact is stored in its own hash. If the bucketed layout is enabled, the contacts
+ * are stored by using the bucketed contact store instead.
  * @author Petri Kainulainen
  */
 @Service
@@ -24,7 +32,7 @@ public class RedisContactService implements ContactService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RedisContactService.class);
 
-    private static final String KEY_CONTACT_PREFIX = "contact";
+    protected static final String KEY_CONTACT_PREFIX = "contact";
     protected static final String KEY_CONTACT_SET = "contacts";
 
     protected static final String HASH_KEY_ADDRESS_COUNTRY = "country";
@@ -39,9 +47,33 @@ public class RedisContactService implements ContactService {
     protected static final String HASH_KEY_CONTACT_LAST_NAME = "lastName";
     protected static final String HASH_KEY_CONTACT_PHONE_NUMBER = "phoneNumber";
 
+    protected static final List<String> HASH_KEYS = Arrays.asList(
+            HASH_KEY_CONTACT_ID,
+            HASH_KEY_CONTACT_EMAIL_ADDRESS,
+            HASH_KEY_CONTACT_FIRST_NAME,
+            HASH_KEY_CONTACT_LAST_NAME,
+            HASH_KEY_CONTACT_PHONE_NUMBER,
+            HASH_KEY_ADDRESS_STREET_ADDRESS,
+            HASH_KEY_ADDRESS_POST_CODE,
+            HASH_KEY_ADDRESS_POST_OFFICE,
+            HASH_KEY_ADDRESS_STATE,
+            HASH_KEY_ADDRESS_COUNTRY
+    );
 
     @Resource
-    private RedisAtomicLong contactIdCounter;
+    private BatchWriter batchWriter;
+
+    @Resource
+    private BucketedContactStore bucketedContactStore;
+
+    @Resource
+    private BulkHashLoader bulkHashLoader;
+
+    @Resource
+    private BlockIdAllocator contactIdCounter;
+
+    @Resource
+    private ContactNameIndex contactNameIndex;
 
     @Resource
     private RedisTemplate<String, String> redisTemplate;
@@ -50,56 +82,135 @@ public class RedisContactService implements ContactService {
     public Contact add(Contact added) {
         LOGGER.debug("Adding contact with information: {}", added);
 
-        String key = persist(added);
-
-        redisTemplate.opsForSet().add(KEY_CONTACT_SET, key);
+        persist(added, null);
 
         return added;
     }
 
+    @Override
+    public List<Contact> addAll(Collection<Contact> added) {
+        LOGGER.debug("Adding {} contacts", added.size());
+
+        List<Contact> contacts = new ArrayList<Contact>(added);
+        assignIds(contacts);
+
+        batchWriter.write(contacts, new BatchWriteCallback<Contact>() {
+            @Override
+            public void write(RedisConnection connection, Contact contact) {
+                String key = buildKey(contact.getId());
+
+                writeContact(connection, contact);
+                connection.sAdd(serializeKey(KEY_CONTACT_SET), serializeValue(key));
+                contactNameIndex.add(connection, contact);
+            }
+        });
+
+        LOGGER.debug("Added {} contacts", contacts.size());
+
+        return contacts;
+    }
+
+    @Override
+    public long count() {
+        LOGGER.debug("Getting contact count");
+        return contactNameIndex.count();
+    }
+
+    @Override
+    public long count(SearchDTO dto) {
+        LOGGER.debug("Getting contact count with search criteria: {}", dto);
+        return contactNameIndex.count(dto.getSearchTerm());
+    }
+
     @Override
     public Contact deleteById(Long id) throws NotFoundException {
         LOGGER.debug("Finding contact by id: {}", id);
 
-        Contact deleted = findById(id);
+        final Contact deleted = findById(id);
         LOGGER.debug("Deleting the information of contact: {}", deleted);
 
-        String key = buildKey(id);
+        final String key = buildKey(id);
         LOGGER.debug("Using key: {}", key);
 
-        redisTemplate.opsForSet().remove(KEY_CONTACT_SET, key);
+        redisTemplate.execute(new RedisCallback<List<Object>>() {
+            @Override
+            public List<Object> doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.multi();
+
+                deleteContact(connection, deleted.getId());
+                connection.sRem(serializeKey(KEY_CONTACT_SET), serializeValue(key));
+                contactNameIndex.remove(connection, deleted);
+
+                return connection.exec();
+            }
+        });
+
+        return deleted;
+    }
+
+    @Override
+    public List<Contact> deleteAll(Collection<Long> ids) {
+        LOGGER.debug("Deleting {} contacts", ids.size());
+
+        List<Contact> deleted = buildContacts(buildKeys(new ArrayList<Long>(ids)));
 
-        BoundHashOperations operations = redisTemplate.boundHashOps(key);
+        batchWriter.write(deleted, new BatchWriteCallback<Contact>() {
+            @Override
+            public void write(RedisConnection connection, Contact contact) {
+                String key = buildKey(contact.getId());
 
-        operations.delete(HASH_KEY_CONTACT_ID);
-        operations.delete(HASH_KEY_CONTACT_EMAIL_ADDRESS);
-        operations.delete(HASH_KEY_CONTACT_FIRST_NAME);
-        operations.delete(HASH_KEY_CONTACT_LAST_NAME);
-        operations.delete(HASH_KEY_CONTACT_PHONE_NUMBER);
+                deleteContact(connection, contact.getId());
+                connection.sRem(serializeKey(KEY_CONTACT_SET), serializeValue(key));
+                contactNameIndex.remove(connection, contact);
+            }
+        });
 
-        operations.delete(HASH_KEY_ADDRESS_STREET_ADDRESS);
-        operations.delete(HASH_KEY_ADDRESS_POST_CODE);
-        operations.delete(HASH_KEY_ADDRESS_POST_OFFICE);
-        operations.delete(HASH_KEY_ADDRESS_STATE);
-        operations.delete(HASH_KEY_ADDRESS_COUNTRY);
+        LOGGER.debug("Deleted {} contacts", deleted.size());
 
         return deleted;
     }
 
+    @Override
+    public long exportAll(ContactCallbackHandler handler) {
+        LOGGER.debug("Exporting all contacts");
+
+        long exported = 0;
+        int pageIndex = 0;
+
+        List<Long> ids = contactNameIndex.findIdsForPage(pageIndex, batchWriter.getBatchSize());
+        while (!ids.isEmpty()) {
+            for (Contact contact: buildContacts(buildKeys(ids))) {
+                handler.processContact(contact);
+                exported++;
+            }
+
+            pageIndex++;
+            ids = contactNameIndex.findIdsForPage(pageIndex, batchWriter.getBatchSize());
+        }
+
+        LOGGER.debug("Exported {} contacts", exported);
+
+        return exported;
+    }
+
     @Override
     public List<Contact> findAll() {
         LOGGER.debug("Finding all contacts");
-        List<Contact> contacts = new ArrayList<Contact>();
 
         Collection<String> keys = redisTemplate.opsForSet().members(KEY_CONTACT_SET);
+        List<Contact> contacts = buildContacts(new ArrayList<String>(keys));
 
-        for (String key: keys) {
-            LOGGER.debug("Finding contact with key: {}", key);
+        LOGGER.debug("Returning {} contacts", contacts.size());
 
-            Contact contact = buildContact(key);
-            contacts.add(contact);
-        }
+        return contacts;
+    }
+
+    @Override
+    public List<Contact> findAllForPage(int pageIndex, int pageSize) {
+        LOGGER.debug("Finding contacts for page {} with page size {}", pageIndex, pageSize);
 
+        List<Long> ids = contactNameIndex.findIdsForPage(pageIndex, pageSize);
+        List<Contact> contacts = buildContacts(buildKeys(ids));
         LOGGER.debug("Returning {} contacts", contacts.size());
 
         return contacts;
@@ -109,67 +220,140 @@ public class RedisContactService implements ContactService {
     public Contact findById(Long id) throws NotFoundException {
         LOGGER.debug("Finding contact by id: {}", id);
 
-        if (contactDoesNotExist(id)) {
+        if (bucketedContactStore.isEnabled()) {
+            Contact found = bucketedContactStore.findById(id);
+            if (found == null) {
+                LOGGER.debug("Contact was not found with id: {}", id);
+                throw new NotFoundException("No contact found with id: " + id);
+            }
+            return found;
+        }
+
+        String key = buildKey(id);
+        Map<Object, Object> hash = redisTemplate.boundHashOps(key).entries();
+
+        if (hash.isEmpty()) {
             LOGGER.debug("Contact was not found with id: {}", id);
             throw new NotFoundException("No contact found with id: " + id);
         }
 
-        return buildContact(id);
+        return buildContact(hash);
+    }
+
+    @Override
+    public List<Contact> search(SearchDTO dto) {
+        LOGGER.debug("Searching contacts with search criteria: {}", dto);
+
+        List<Long> ids = contactNameIndex.search(dto.getSearchTerm(), dto.getPageIndex(), dto.getPageSize());
+        List<Contact> contacts = buildContacts(buildKeys(ids));
+
+        LOGGER.debug("Found {} contacts", contacts.size());
+
+        return contacts;
     }
 
     @Override
     public Contact update(Contact updated) throws NotFoundException {
         LOGGER.debug("Updating contact with information: {}", updated);
 
-        if (contactDoesNotExist(updated.getId())) {
-            LOGGER.debug("Contact was not found with id: {)", updated.getId());
-            throw new NotFoundException("No contact found with id: " + updated.getId());
-        }
+        Contact old = findById(updated.getId());
 
-        persist(updated);
+        persist(updated, old);
 
         return updated;
     }
 
-    private boolean contactDoesNotExist(Long id) {
-        LOGGER.debug("Checking if contact is not found with id: {}", id);
+    /**
+     * Assigns ids to the contacts which do not have an id. The ids are reserved from
+     * the id allocator in bulk.
+     * @param contacts  The contacts.
+     */
+    private void assignIds(List<Contact> contacts) {
+        List<Contact> withoutId = new ArrayList<Contact>();
+        for (Contact contact: contacts) {
+            if (contact.getId() == null) {
+                withoutId.add(contact);
+            }
+        }
 
-        String key = buildKey(id);
+        if (withoutId.isEmpty()) {
+            return;
+        }
 
-        return !redisTemplate.opsForSet().isMember(KEY_CONTACT_SET, key);
+        LOGGER.debug("Allocating ids for {} contacts", withoutId.size());
+
+        List<Long> ids = contactIdCounter.allocate(withoutId.size());
+        for (int index = 0; index < withoutId.size(); index++) {
+            withoutId.get(index).setId(ids.get(index));
+        }
     }
 
     private String buildKey(Long contactId) {
         return KEY_CONTACT_PREFIX + contactId;
     }
 
-    private Contact buildContact(Long id) {
-        LOGGER.debug("Building contact with id: {}", id);
-
-        String key = buildKey(id);
+    private List<String> buildKeys(List<Long> contactIds) {
+        List<String> keys = new ArrayList<String>(contactIds.size());
+        for (Long contactId: contactIds) {
+            keys.add(buildKey(contactId));
+        }
+        return keys;
+    }
 
-        return buildContact(key);
+    private Long parseId(String key) {
+        return Long.valueOf(key.substring(KEY_CONTACT_PREFIX.length()));
     }
 
-    private Contact buildContact(String key) {
-        LOGGER.debug("Building contact with key: {}", key);
+    /**
+     * Builds the contacts stored with the given keys. The contact hashes are fetched in
+     * batches by using the bulk hash loader. If the bucketed layout is enabled, the contacts
+     * are fetched from the bucketed contact store.
+     * @param keys  The keys of the contacts.
+     * @return  The found contacts. Keys which do not point to a contact hash are ignored.
+     */
+    private List<Contact> buildContacts(List<String> keys) {
+        LOGGER.debug("Building contacts with keys: {}", keys);
+
+        if (bucketedContactStore.isEnabled()) {
+            List<Long> ids = new ArrayList<Long>(keys.size());
+            for (String key: keys) {
+                ids.add(parseId(key));
+            }
+            return bucketedContactStore.find(ids);
+        }
 
-        Contact contact = new Contact();
+        List<Contact> contacts = new ArrayList<Contact>(keys.size());
 
-        BoundHashOperations operations = redisTemplate.boundHashOps(key);
+        for (Map<Object, Object> hash: bulkHashLoader.load(keys, HASH_KEYS)) {
+            if (!hash.isEmpty()) {
+                contacts.add(buildContact(hash));
+            }
+        }
 
-        contact.setId((Long) operations.get(HASH_KEY_CONTACT_ID));
-        contact.setEmailAddress((String) operations.get(HASH_KEY_CONTACT_EMAIL_ADDRESS));
-        contact.setFirstName((String) operations.get(HASH_KEY_CONTACT_FIRST_NAME));
-        contact.setLastName((String) operations.get(HASH_KEY_CONTACT_LAST_NAME));
-        contact.setPhoneNumber((String) operations.get(HASH_KEY_CONTACT_PHONE_NUMBER));
+        return contacts;
+    }
+
+    /**
+     * Builds a contact from the fields of a contact hash. The whole hash is fetched
+     * with a single HGETALL command instead of reading each field separately.
+     * @param hash  The fields of the contact hash.
+     * @return  The built contact.
+     */
+    protected static Contact buildContact(Map<Object, Object> hash) {
+        Contact contact = new Contact();
+
+        contact.setId((Long) hash.get(HASH_KEY_CONTACT_ID));
+        contact.setEmailAddress((String) hash.get(HASH_KEY_CONTACT_EMAIL_ADDRESS));
+        contact.setFirstName((String) hash.get(HASH_KEY_CONTACT_FIRST_NAME));
+        contact.setLastName((String) hash.get(HASH_KEY_CONTACT_LAST_NAME));
+        contact.setPhoneNumber((String) hash.get(HASH_KEY_CONTACT_PHONE_NUMBER));
 
         Address address = new Address();
-        address.setStreetAddress((String) operations.get(HASH_KEY_ADDRESS_STREET_ADDRESS));
-        address.setPostCode((String) operations.get(HASH_KEY_ADDRESS_POST_CODE));
-        address.setPostOffice((String) operations.get(HASH_KEY_ADDRESS_POST_OFFICE));
-        address.setState((String) operations.get(HASH_KEY_ADDRESS_STATE));
-        address.setCountry((String) operations.get(HASH_KEY_ADDRESS_COUNTRY));
+        address.setStreetAddress((String) hash.get(HASH_KEY_ADDRESS_STREET_ADDRESS));
+        address.setPostCode((String) hash.get(HASH_KEY_ADDRESS_POST_CODE));
+        address.setPostOffice((String) hash.get(HASH_KEY_ADDRESS_POST_OFFICE));
+        address.setState((String) hash.get(HASH_KEY_ADDRESS_STATE));
+        address.setCountry((String) hash.get(HASH_KEY_ADDRESS_COUNTRY));
         contact.setAddress(address);
 
         LOGGER.debug("Build contact: {}", contact);
@@ -177,7 +361,14 @@ public class RedisContactService implements ContactService {
         return contact;
     }
 
-    private String persist(Contact persisted) {
+    /**
+     * Persists the information of a contact. The contact hash is written with a single HMSET
+     * command, and the contact set and the name indexes are updated in the same MULTI/EXEC
+     * transaction. This means that a contact is never left half written.
+     * @param persisted The persisted contact.
+     * @param old   The old information of the contact or null if a new contact is persisted.
+     */
+    private void persist(final Contact persisted, final Contact old) {
         LOGGER.debug("Persisting contact: {}", persisted);
 
         Long id = persisted.getId();
@@ -188,27 +379,99 @@ public class RedisContactService implements ContactService {
             LOGGER.debug("The id of the persisted contact is {}", id);
         }
 
-        String contactKey = buildKey(id);
-
-        BoundHashOperations operations = redisTemplate.boundHashOps(contactKey);
+        final String key = buildKey(id);
 
-        operations.put(HASH_KEY_CONTACT_ID, persisted.getId());
-        operations.put(HASH_KEY_CONTACT_EMAIL_ADDRESS, persisted.getEmailAddress());
-        operations.put(HASH_KEY_CONTACT_FIRST_NAME, persisted.getFirstName());
-        operations.put(HASH_KEY_CONTACT_LAST_NAME, persisted.getLastName());
-        operations.put(HASH_KEY_CONTACT_PHONE_NUMBER, persisted.getPhoneNumber());
+        redisTemplate.execute(new RedisCallback<List<Object>>() {
+            @Override
+            public List<Object> doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.multi();
 
-        Address address = persisted.getAddress();
+                writeContact(connection, persisted);
+                connection.sAdd(serializeKey(KEY_CONTACT_SET), serializeValue(key));
+                if (old != null) {
+                    contactNameIndex.remove(connection, old);
+                }
+                contactNameIndex.add(connection, persisted);
 
-        operations.put(HASH_KEY_ADDRESS_STREET_ADDRESS, address.getStreetAddress());
-        operations.put(HASH_KEY_ADDRESS_POST_CODE, address.getPostCode());
-        operations.put(HASH_KEY_ADDRESS_POST_OFFICE, address.getPostOffice());
-        operations.put(HASH_KEY_ADDRESS_STATE, address.getState());
-        operations.put(HASH_KEY_ADDRESS_COUNTRY, address.getCountry());
+                return connection.exec();
+            }
+        });
 
         LOGGER.debug("persisted contact: {}", persisted);
+    }
 
-        return contactKey;
+    /**
+     * Writes the fields of a contact by using the given connection.
+     * @param connection    The used connection.
+     * @param contact   The written contact.
+     */
+    private void writeContact(RedisConnection connection, Contact contact) {
+        if (bucketedContactStore.isEnabled()) {
+            bucketedContactStore.write(connection, contact);
+        }
+        else {
+            connection.hMSet(serializeKey(buildKey(contact.getId())), serializeHash(buildHash(contact)));
+        }
     }
 
+    /**
+     * Deletes the fields of a contact by using the given connection.
+     * @param connection    The used connection.
+     * @param id    The id of the deleted contact.
+     */
+    private void deleteContact(RedisConnection connection, Long id) {
+        if (bucketedContactStore.isEnabled()) {
+            bucketedContactStore.delete(connection, id);
+        }
+        else {
+            connection.del(serializeKey(buildKey(id)));
+        }
+    }
+
+    /**
+     * Builds the fields of a contact hash.
+     * @param contact   The contact.
+     * @return  The fields of the contact hash.
+     */
+    protected static Map<String, Object> buildHash(Contact contact) {
+        Map<String, Object> hash = new LinkedHashMap<String, Object>();
+
+        hash.put(HASH_KEY_CONTACT_ID, contact.getId());
+        hash.put(HASH_KEY_CONTACT_EMAIL_ADDRESS, contact.getEmailAddress());
+        hash.put(HASH_KEY_CONTACT_FIRST_NAME, contact.getFirstName());
+        hash.put(HASH_KEY_CONTACT_LAST_NAME, contact.getLastName());
+        hash.put(HASH_KEY_CONTACT_PHONE_NUMBER, contact.getPhoneNumber());
+
+        Address address = contact.getAddress();
+
+        hash.put(HASH_KEY_ADDRESS_STREET_ADDRESS, address.getStreetAddress());
+        hash.put(HASH_KEY_ADDRESS_POST_CODE, address.getPostCode());
+        hash.put(HASH_KEY_ADDRESS_POST_OFFICE, address.getPostOffice());
+        hash.put(HASH_KEY_ADDRESS_STATE, address.getState());
+        hash.put(HASH_KEY_ADDRESS_COUNTRY, address.getCountry());
+
+        return hash;
+    }
+
+    private byte[] serializeKey(String key) {
+        RedisSerializer serializer = redisTemplate.getKeySerializer();
+        return serializer.serialize(key);
+    }
+
+    private byte[] serializeValue(String value) {
+        RedisSerializer serializer = redisTemplate.getValueSerializer();
+        return serializer.serialize(value);
+    }
+
+    private Map<byte[], byte[]> serializeHash(Map<String, Object> hash) {
+        RedisSerializer hashKeySerializer = redisTemplate.getHashKeySerializer();
+        RedisSerializer hashValueSerializer = redisTemplate.getHashValueSerializer();
+
+        Map<byte[], byte[]> rawHash = new LinkedHashMap<byte[], byte[]>(hash.size());
+        for (Map.Entry<String, Object> field: hash.entrySet()) {
+            rawHash.put(hashKeySerializer.serialize(field.getKey()), hashValueSerializer.serialize(field.getValue()));
+        }
+
+        return rawHash;
+    }
 }
@@ -0,0 +1,94 @@
+package com.packtpub.springdata.redis.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisUtils;
+import org.springframework.util.FileCopyUtils;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Lua script which is executed on the Redis server with the EVALSHA command. The script
+ * is loaded to the script cache of the server when it is executed for the first time, and
+ * it is loaded again if the server reports that the script is not found from the cache
+ * (for example after a restart).
+ * <p>
+ * Spring Data Redis 1.0 has no scripting support, so the script is executed by using the
+ * native Jedis connection.
+ * @author Petri Kainulainen
+ */
+public class RedisScript {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisScript.class);
+
+    private static final String ERROR_PREFIX_NO_SCRIPT = "NOSCRIPT";
+
+    private byte[] script;
+
+    private volatile byte[] sha;
+
+    public RedisScript(Resource location) throws IOException {
+        this.script = FileCopyUtils.copyToByteArray(location.getInputStream());
+    }
+
+    /**
+     * Executes the script.
+     * @param connection    The used Redis connection. It must be a Jedis connection.
+     * @param keys  The keys given to the script.
+     * @param args  The arguments given to the script.
+     * @return  The reply of the script.
+     */
+    public Object execute(RedisConnection connection, List<byte[]> keys, List<byte[]> args) {
+        Jedis jedis = (Jedis) connection.getNativeConnection();
+
+        try {
+            if (sha == null) {
+                sha = load(jedis);
+            }
+
+            try {
+                return evalSha(jedis, keys, args);
+            }
+            catch (JedisDataException ex) {
+                if (!isNoScriptError(ex)) {
+                    throw ex;
+                }
+                LOGGER.debug("Script was not found from the script cache. Loading it again.");
+                sha = load(jedis);
+                return evalSha(jedis, keys, args);
+            }
+        }
+        catch (JedisException ex) {
+            throw JedisUtils.convertJedisAccessException(ex);
+        }
+    }
+
+    private byte[] load(Jedis jedis) {
+        LOGGER.debug("Loading script to the script cache");
+        return jedis.scriptLoad(script);
+    }
+
+    private Object evalSha(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        List<byte[]> params = new ArrayList<byte[]>(keys.size() + args.size());
+        params.addAll(keys);
+        params.addAll(args);
+
+        Client client = jedis.getClient();
+        client.evalsha(sha, Protocol.toByteArray(keys.size()), params.toArray(new byte[params.size()][]));
+
+        return client.getOne();
+    }
+
+    private boolean isNoScriptError(JedisDataException ex) {
+        return ex.getMessage() != null && ex.getMessage().startsWith(ERROR_PREFIX_NO_SCRIPT);
+    }
+}
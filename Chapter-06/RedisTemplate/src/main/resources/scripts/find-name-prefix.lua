@@ -0,0 +1,149 @@
+-- Finds the members of the name indexes which start with a prefix. The ranks of the matching
+-- members are resolved by binary searches which read one member per probe, and the members
+-- of the wanted page are read on the server. This means that a count or a search costs a
+-- single network round trip and that only the members of the page are sent to the client.
+--
+-- KEYS[1..n] The keys of the searched name indexes.
+--
+-- ARGV[1] The lowercased prefix.
+-- ARGV[2] The number of members which are skipped before the page.
+-- ARGV[3] The maximum number of members on the page. If it is 0, no members are returned.
+--
+-- Returns the sizes of the matching ranges in the order of the keys followed by the members
+-- of the page. The members of the first two indexes are merged in byte order, and a member
+-- whose id has already been merged is skipped. If only one of them has matching members, the
+-- page is read directly from the start rank of the page.
+
+local prefix = ARGV[1]
+local offset = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+
+local CHUNK_SIZE = 100
+
+-- Lua compares strings by using the collation of the server locale, so the members are
+-- compared as bytes in the same way than Redis compares them.
+local function isLess(first, second)
+    local length = math.min(#first, #second)
+    for index = 1, length do
+        local firstByte = string.byte(first, index)
+        local secondByte = string.byte(second, index)
+        if firstByte ~= secondByte then
+            return firstByte < secondByte
+        end
+    end
+    return #first < #second
+end
+
+local function isNotBeforePrefix(member)
+    return not isLess(member, prefix)
+end
+
+local function isAfterPrefix(member)
+    return string.sub(member, 1, #prefix) ~= prefix
+end
+
+-- Returns the first rank in [low, high) whose member matches or high if no member matches.
+-- Every member which matches must be after the members which do not match. If the index
+-- has shrunk and no member is found, the rank is treated as the end of the index.
+local function findRank(key, low, high, matches)
+    while low < high do
+        local middle = math.floor((low + high) / 2)
+        local member = redis.call('ZRANGE', key, middle, middle)[1]
+        if member == nil or matches(member) then
+            high = middle
+        else
+            low = middle + 1
+        end
+    end
+    return low
+end
+
+-- Returns the next unread member of a range or nil if the range has been read. The members
+-- are read in chunks.
+local function peek(range)
+    if range.position > #range.buffer then
+        if range.rank >= range.stop then
+            return nil
+        end
+
+        local stop = math.min(range.rank + CHUNK_SIZE, range.stop) - 1
+        range.buffer = redis.call('ZRANGE', range.key, range.rank, stop)
+        range.position = 1
+        range.rank = stop + 1
+
+        if #range.buffer == 0 then
+            range.rank = range.stop
+            return nil
+        end
+    end
+    return range.buffer[range.position]
+end
+
+local reply = {}
+local ranges = {}
+
+for index, key in ipairs(KEYS) do
+    local size = redis.call('ZCARD', key)
+    local first = findRank(key, 0, size, isNotBeforePrefix)
+    local last = findRank(key, first, size, isAfterPrefix)
+
+    ranges[index] = { key = key, rank = first, stop = last, buffer = {}, position = 1 }
+    table.insert(reply, last - first)
+end
+
+if limit <= 0 or #ranges == 0 then
+    return reply
+end
+
+local first = ranges[1]
+local second = ranges[2]
+
+if second == nil or second.rank >= second.stop or first.rank >= first.stop then
+    local range = first
+    if first.rank >= first.stop and second ~= nil then
+        range = second
+    end
+
+    local start = range.rank + offset
+    local stop = math.min(start + limit, range.stop) - 1
+    if start <= stop then
+        for _, member in ipairs(redis.call('ZRANGE', range.key, start, stop)) do
+            table.insert(reply, member)
+        end
+    end
+    return reply
+end
+
+local merged = {}
+local skipped = 0
+local found = 0
+
+while found < limit do
+    local firstMember = peek(first)
+    local secondMember = peek(second)
+    if firstMember == nil and secondMember == nil then
+        break
+    end
+
+    local member
+    if secondMember == nil or (firstMember ~= nil and not isLess(secondMember, firstMember)) then
+        member = firstMember
+        first.position = first.position + 1
+    else
+        member = secondMember
+        second.position = second.position + 1
+    end
+
+    local id = string.match(member, '[^:]*$')
+    if not merged[id] then
+        merged[id] = true
+        if skipped < offset then
+            skipped = skipped + 1
+        else
+            table.insert(reply, member)
+            found = found + 1
+        end
+    end
+end
+
+return reply
@@ -24,6 +24,16 @@
             </c:otherwise>
         </c:choose>
     </div>
+    <c:if test="${pageCount > 1}">
+        <ul class="pager">
+            <c:if test="${pageIndex > 0}">
+                <li class="previous"><a href="/?page=${pageIndex - 1}"><spring:message code="pagination.previous.page.label"/></a></li>
+            </c:if>
+            <c:if test="${pageIndex + 1 < pageCount}">
+                <li class="next"><a href="/?page=${pageIndex + 1}"><spring:message code="pagination.next.page.label"/></a></li>
+            </c:if>
+        </ul>
+    </c:if>
 </div>
 </body>
 </html>
\ No newline at end of file
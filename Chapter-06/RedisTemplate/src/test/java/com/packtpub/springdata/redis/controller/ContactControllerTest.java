@@ -257,16 +257,38 @@ public class ContactControllerTest {
     @Test
     public void showHomePage() {
         List<Contact> contacts = new ArrayList<Contact>();
-        when(serviceMock.findAll()).thenReturn(contacts);
+        when(serviceMock.count()).thenReturn(CONTACT_COUNT);
+        when(serviceMock.findAllForPage(PAGE_INDEX, ContactController.HOME_PAGE_SIZE)).thenReturn(contacts);
 
         Model model = new BindingAwareModelMap();
-        String view = controller.showHomePage(model);
+        String view = controller.showHomePage(PAGE_INDEX, model);
 
-        verify(serviceMock, times(1)).findAll();
+        verify(serviceMock, times(1)).count();
+        verify(serviceMock, times(1)).findAllForPage(PAGE_INDEX, ContactController.HOME_PAGE_SIZE);
         verifyNoMoreInteractions(serviceMock);
 
         assertEquals(ContactController.HOME_VIEW, view);
         assertEquals(contacts, model.asMap().get(ContactController.MODEL_ATTRIBUTE_CONTACTS));
+        assertEquals(1L, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_COUNT));
+        assertEquals(PAGE_INDEX, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_INDEX));
+    }
+
+    @Test
+    public void showHomePageWithNegativePageIndex() {
+        List<Contact> contacts = new ArrayList<Contact>();
+        when(serviceMock.count()).thenReturn(0L);
+        when(serviceMock.findAllForPage(0, ContactController.HOME_PAGE_SIZE)).thenReturn(contacts);
+
+        Model model = new BindingAwareModelMap();
+        String view = controller.showHomePage(-1, model);
+
+        verify(serviceMock, times(1)).count();
+        verify(serviceMock, times(1)).findAllForPage(0, ContactController.HOME_PAGE_SIZE);
+        verifyNoMoreInteractions(serviceMock);
+
+        assertEquals(ContactController.HOME_VIEW, view);
+        assertEquals(0L, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_COUNT));
+        assertEquals(0, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_INDEX));
     }
 
     @Test
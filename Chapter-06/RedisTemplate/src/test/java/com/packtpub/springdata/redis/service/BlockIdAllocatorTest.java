@@ -0,0 +1,71 @@
+package com.packtpub.springdata.redis.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BlockIdAllocatorTest {
+
+    private static final int BLOCK_SIZE = 2;
+
+    private BlockIdAllocator allocator;
+
+    private RedisAtomicLong counterMock;
+
+    @Before
+    public void setUp() {
+        counterMock = mock(RedisAtomicLong.class);
+        allocator = new BlockIdAllocator(counterMock, BLOCK_SIZE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidBlockSize() {
+        new BlockIdAllocator(counterMock, 0);
+    }
+
+    @Test
+    public void incrementAndGet() {
+        when(counterMock.addAndGet(BLOCK_SIZE)).thenReturn(Long.valueOf(2)).thenReturn(Long.valueOf(6));
+
+        assertEquals(1, allocator.incrementAndGet());
+        assertEquals(2, allocator.incrementAndGet());
+        assertEquals(5, allocator.incrementAndGet());
+        assertEquals(6, allocator.incrementAndGet());
+
+        verify(counterMock, times(2)).addAndGet(BLOCK_SIZE);
+        verifyNoMoreInteractions(counterMock);
+    }
+
+    @Test
+    public void allocate() {
+        when(counterMock.addAndGet(BLOCK_SIZE)).thenReturn(Long.valueOf(2));
+        when(counterMock.addAndGet(4)).thenReturn(Long.valueOf(6));
+
+        assertEquals(1, allocator.incrementAndGet());
+        assertEquals(Arrays.asList(2L, 3L, 4L, 5L), allocator.allocate(4));
+        assertEquals(6, allocator.incrementAndGet());
+
+        verify(counterMock, times(1)).addAndGet(BLOCK_SIZE);
+        verify(counterMock, times(1)).addAndGet(4);
+        verifyNoMoreInteractions(counterMock);
+    }
+
+    @Test
+    public void allocateFromCurrentBlock() {
+        when(counterMock.addAndGet(BLOCK_SIZE)).thenReturn(Long.valueOf(2));
+
+        assertEquals(1, allocator.incrementAndGet());
+        assertEquals(Arrays.asList(2L), allocator.allocate(1));
+
+        verify(counterMock, times(1)).addAndGet(BLOCK_SIZE);
+        verifyNoMoreInteractions(counterMock);
+    }
+}
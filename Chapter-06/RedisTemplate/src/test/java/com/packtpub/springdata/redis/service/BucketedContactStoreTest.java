@@ -0,0 +1,273 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Address;
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BucketedContactStoreTest {
+
+    private static final int BUCKET_SIZE = 50;
+    private static final int MAX_ZIPLIST_VALUE = 64;
+
+    private static final Long CONTACT_ID = Long.valueOf(117);
+    private static final String BUCKET_KEY = "contactBucket:2";
+    private static final String FIELD_PREFIX = "17";
+
+    private BucketedContactStore store;
+
+    private RedisConnection redisConnectionMock;
+
+    private StringRedisTemplate stringRedisTemplateMock;
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisConnectionMock = mock(RedisConnection.class);
+        stringRedisTemplateMock = mock(StringRedisTemplate.class);
+
+        when(stringRedisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+
+        store = new BucketedContactStore(stringRedisTemplateMock, BUCKET_SIZE, MAX_ZIPLIST_VALUE, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidBucketSize() {
+        new BucketedContactStore(stringRedisTemplateMock, 0, MAX_ZIPLIST_VALUE, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidMaxZiplistValue() {
+        new BucketedContactStore(stringRedisTemplateMock, BUCKET_SIZE, 0, true);
+    }
+
+    @Test
+    public void fitsInZiplist() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+        contact.getAddress().setStreetAddress(createValue(MAX_ZIPLIST_VALUE));
+
+        assertTrue(store.fitsInZiplist(contact));
+    }
+
+    @Test
+    public void fitsInZiplistWhenValueIsTooLong() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+        contact.getAddress().setStreetAddress(createValue(MAX_ZIPLIST_VALUE + 1));
+
+        assertFalse(store.fitsInZiplist(contact));
+    }
+
+    @Test
+    public void isEnabled() {
+        assertTrue(store.isEnabled());
+    }
+
+    @Test
+    public void write() {
+        Contact written = ContactTestUtil.createModel(CONTACT_ID);
+        written.setPhoneNumber(null);
+
+        store.write(redisConnectionMock, written);
+
+        ArgumentCaptor<Map> fieldsArgument = ArgumentCaptor.forClass(Map.class);
+        verify(redisConnectionMock, times(1)).hDel(serialize(BUCKET_KEY), serialize(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_PHONE_NUMBER));
+        verify(redisConnectionMock, times(1)).hMSet(eq(serialize(BUCKET_KEY)), fieldsArgument.capture());
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        Map<String, String> fields = deserialize(fieldsArgument.getValue());
+        assertEquals(8, fields.size());
+        assertEquals(ContactTestUtil.EMAIL_ADDRESS, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_EMAIL_ADDRESS));
+        assertEquals(ContactTestUtil.FIRST_NAME, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_FIRST_NAME));
+        assertEquals(ContactTestUtil.LAST_NAME, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_LAST_NAME));
+        assertEquals(ContactTestUtil.STREET_ADDRESS, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_STREET_ADDRESS));
+        assertEquals(ContactTestUtil.POST_CODE, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_POST_CODE));
+        assertEquals(ContactTestUtil.POST_OFFICE, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_POST_OFFICE));
+        assertEquals(ContactTestUtil.STATE, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_STATE));
+        assertEquals(ContactTestUtil.COUNTRY, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_COUNTRY));
+    }
+
+    @Test
+    public void writeWhenValueIsLongerThanMaxZiplistValue() {
+        Contact written = ContactTestUtil.createModel(CONTACT_ID);
+        String streetAddress = createValue(MAX_ZIPLIST_VALUE + 1);
+        written.getAddress().setStreetAddress(streetAddress);
+
+        store.write(redisConnectionMock, written);
+
+        ArgumentCaptor<Map> fieldsArgument = ArgumentCaptor.forClass(Map.class);
+        verify(redisConnectionMock, times(1)).hMSet(eq(serialize(BUCKET_KEY)), fieldsArgument.capture());
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        Map<String, String> fields = deserialize(fieldsArgument.getValue());
+        assertEquals(9, fields.size());
+        assertEquals(streetAddress, fields.get(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_STREET_ADDRESS));
+    }
+
+    @Test
+    public void delete() {
+        store.delete(redisConnectionMock, CONTACT_ID);
+
+        verify(redisConnectionMock, times(9)).hDel(eq(serialize(BUCKET_KEY)), any(byte[].class));
+        verify(redisConnectionMock, times(1)).hDel(serialize(BUCKET_KEY), serialize(FIELD_PREFIX + BucketedContactStore.FIELD_CODE_FIRST_NAME));
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void findById() {
+        Contact found = executeFindById(createValues());
+
+        assertContact(CONTACT_ID, found);
+    }
+
+    @Test
+    public void findByIdWhenContactIsNotFound() {
+        Contact found = executeFindById(createEmptyValues());
+
+        assertNull(found);
+    }
+
+    @Test
+    public void find() {
+        List<Object> replies = new ArrayList<Object>();
+        replies.add(createValues());
+        replies.add(createEmptyValues());
+        when(redisConnectionMock.exec()).thenReturn(replies);
+
+        store.find(Arrays.asList(CONTACT_ID, Long.valueOf(3)));
+
+        ArgumentCaptor<RedisCallback> callbackArgument = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(stringRedisTemplateMock, times(1)).execute(callbackArgument.capture());
+
+        List<Contact> found = (List<Contact>) callbackArgument.getValue().doInRedis(redisConnectionMock);
+
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).hMGet(serialize(BUCKET_KEY), createFields(FIELD_PREFIX));
+        verify(redisConnectionMock, times(1)).hMGet(serialize("contactBucket:0"), createFields("3"));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        assertEquals(1, found.size());
+        assertContact(CONTACT_ID, found.get(0));
+    }
+
+    @Test
+    public void findWithoutIds() {
+        List<Contact> found = store.find(new ArrayList<Long>());
+
+        verify(stringRedisTemplateMock, never()).execute(any(RedisCallback.class));
+        assertTrue(found.isEmpty());
+    }
+
+    private Contact executeFindById(List<byte[]> rawValues) {
+        when(stringRedisTemplateMock.execute(any(RedisCallback.class))).thenReturn(rawValues);
+
+        Contact found = store.findById(CONTACT_ID);
+
+        ArgumentCaptor<RedisCallback> callbackArgument = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(stringRedisTemplateMock, times(1)).execute(callbackArgument.capture());
+
+        callbackArgument.getValue().doInRedis(redisConnectionMock);
+
+        verify(redisConnectionMock, times(1)).hMGet(serialize(BUCKET_KEY), createFields(FIELD_PREFIX));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        return found;
+    }
+
+    private void assertContact(Long expectedId, Contact actual) {
+        assertEquals(expectedId, actual.getId());
+        assertEquals(ContactTestUtil.EMAIL_ADDRESS, actual.getEmailAddress());
+        assertEquals(ContactTestUtil.FIRST_NAME, actual.getFirstName());
+        assertEquals(ContactTestUtil.LAST_NAME, actual.getLastName());
+        assertEquals(ContactTestUtil.PHONE_NUMBER, actual.getPhoneNumber());
+
+        Address actualAddress = actual.getAddress();
+
+        assertEquals(ContactTestUtil.STREET_ADDRESS, actualAddress.getStreetAddress());
+        assertEquals(ContactTestUtil.POST_CODE, actualAddress.getPostCode());
+        assertEquals(ContactTestUtil.POST_OFFICE, actualAddress.getPostOffice());
+        assertEquals(ContactTestUtil.STATE, actualAddress.getState());
+        assertEquals(ContactTestUtil.COUNTRY, actualAddress.getCountry());
+    }
+
+    private byte[][] createFields(String fieldPrefix) {
+        return new byte[][] {
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_EMAIL_ADDRESS),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_FIRST_NAME),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_LAST_NAME),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_PHONE_NUMBER),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_STREET_ADDRESS),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_POST_CODE),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_POST_OFFICE),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_STATE),
+                serialize(fieldPrefix + BucketedContactStore.FIELD_CODE_COUNTRY)
+        };
+    }
+
+    private List<byte[]> createValues() {
+        return Arrays.asList(
+                serialize(ContactTestUtil.EMAIL_ADDRESS),
+                serialize(ContactTestUtil.FIRST_NAME),
+                serialize(ContactTestUtil.LAST_NAME),
+                serialize(ContactTestUtil.PHONE_NUMBER),
+                serialize(ContactTestUtil.STREET_ADDRESS),
+                serialize(ContactTestUtil.POST_CODE),
+                serialize(ContactTestUtil.POST_OFFICE),
+                serialize(ContactTestUtil.STATE),
+                serialize(ContactTestUtil.COUNTRY)
+        );
+    }
+
+    private List<byte[]> createEmptyValues() {
+        List<byte[]> values = new ArrayList<byte[]>();
+        for (int index = 0; index < 9; index++) {
+            values.add(null);
+        }
+        return values;
+    }
+
+    private String createValue(int length) {
+        StringBuilder value = new StringBuilder();
+        for (int index = 0; index < length; index++) {
+            value.append('a');
+        }
+        return value.toString();
+    }
+
+    private Map<String, String> deserialize(Map<byte[], byte[]> rawFields) {
+        Map<String, String> fields = new HashMap<String, String>();
+        for (Map.Entry<byte[], byte[]> rawField: rawFields.entrySet()) {
+            fields.put(stringSerializer.deserialize(rawField.getKey()), stringSerializer.deserialize(rawField.getValue()));
+        }
+        return fields;
+    }
+
+    private byte[] serialize(String value) {
+        return stringSerializer.serialize(value);
+    }
+}
@@ -0,0 +1,127 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Measures the memory which is used per contact by the hash per contact layout and by the
+ * bucketed layout. A fixed sample of contacts is written to the server in the hash per
+ * contact layout and migrated to the bucketed layout by using the migration tool. The memory
+ * per contact is the growth of the used memory reported by the INFO command divided by the
+ * size of the sample. The contact set is written before the first measurement, so only the
+ * contacts are measured.
+ * <p>
+ * The benchmark uses the connection settings and the bucketed layout settings found from the
+ * application properties. It must be run against a server whose database is empty, because
+ * the database is flushed when the benchmark is finished. The results are written to the log.
+ * The benchmark is not run as a part of the test suite, and it should be run by using the test
+ * class path of the project.
+ * @author Petri Kainulainen
+ */
+public class BucketedLayoutMemoryBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BucketedLayoutMemoryBenchmark.class);
+
+    private static final String PROPERTIES_LOCATION = "application.properties";
+
+    private static final String PROPERTY_NAME_REDIS_HOST = "redis.host";
+    private static final String PROPERTY_NAME_REDIS_PORT = "redis.port";
+    private static final String PROPERTY_NAME_REDIS_BULK_LOAD_CHUNK_SIZE = "redis.bulk.load.chunk.size";
+    private static final String PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE = "redis.bulk.write.batch.size";
+    private static final String PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_BUCKET_SIZE = "redis.bucketed.layout.bucket.size";
+    private static final String PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_MAX_ZIPLIST_VALUE = "redis.bucketed.layout.max.ziplist.value";
+
+    private static final int SAMPLE_SIZE = 100000;
+
+    public static void main(String[] args) throws IOException {
+        Properties properties = PropertiesLoaderUtils.loadAllProperties(PROPERTIES_LOCATION);
+
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory();
+        connectionFactory.setHostName(properties.getProperty(PROPERTY_NAME_REDIS_HOST));
+        connectionFactory.setPort(Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_PORT)));
+        connectionFactory.afterPropertiesSet();
+
+        try {
+            RedisTemplate<String, String> redisTemplate = new RedisTemplate<String, String>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.afterPropertiesSet();
+
+            StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+            int chunkSize = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BULK_LOAD_CHUNK_SIZE));
+            int batchSize = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE));
+            int bucketSize = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_BUCKET_SIZE));
+            int maxZiplistValue = Integer.parseInt(properties.getProperty(PROPERTY_NAME_REDIS_BUCKETED_LAYOUT_MAX_ZIPLIST_VALUE));
+
+            BucketedLayoutMigration migration = new BucketedLayoutMigration(redisTemplate,
+                    new BulkHashLoader(redisTemplate, chunkSize),
+                    new BatchWriter(redisTemplate, batchSize),
+                    new BucketedContactStore(stringRedisTemplate, bucketSize, maxZiplistValue, true)
+            );
+
+            run(redisTemplate, migration, bucketSize);
+        }
+        finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private static void run(RedisTemplate<String, String> redisTemplate, BucketedLayoutMigration migration, int bucketSize) {
+        if (getDatabaseSize(redisTemplate) != 0) {
+            throw new IllegalStateException("The benchmark must be run against an empty database.");
+        }
+
+        try {
+            for (long id = 1; id <= SAMPLE_SIZE; id++) {
+                redisTemplate.opsForSet().add(RedisContactService.KEY_CONTACT_SET, RedisContactService.KEY_CONTACT_PREFIX + id);
+            }
+
+            long emptyMemory = migration.getUsedMemory();
+
+            for (long id = 1; id <= SAMPLE_SIZE; id++) {
+                Contact contact = ContactTestUtil.createModel(id, "First" + id, "Last" + id);
+                redisTemplate.opsForHash().putAll(RedisContactService.KEY_CONTACT_PREFIX + id, RedisContactService.buildHash(contact));
+            }
+
+            long hashPerContactMemory = migration.getUsedMemory();
+
+            migration.migrate();
+
+            long bucketedMemory = migration.getUsedMemory();
+
+            LOGGER.debug("Sample of {} contacts, bucket size {}: hash per contact: {} bytes per contact, bucketed: {} bytes per contact",
+                    new Object[] {SAMPLE_SIZE, bucketSize, (hashPerContactMemory - emptyMemory) / SAMPLE_SIZE,
+                            (bucketedMemory - emptyMemory) / SAMPLE_SIZE});
+        }
+        finally {
+            redisTemplate.execute(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    connection.flushDb();
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static long getDatabaseSize(RedisTemplate<String, String> redisTemplate) {
+        return redisTemplate.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.dbSize();
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BucketedLayoutMigrationTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+    private static final String CONTACT_KEY = "contact1";
+    private static final String MISSING_CONTACT_KEY = "contact2";
+
+    private BucketedLayoutMigration migration;
+
+    private BatchWriter batchWriterMock;
+
+    private BucketedContactStore bucketedContactStoreMock;
+
+    private BulkHashLoader bulkHashLoaderMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisTemplate<String, String> redisTemplateMock;
+
+    private SetOperations setOperationsMock;
+
+    private RedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    @Before
+    public void setUp() {
+        batchWriterMock = mock(BatchWriter.class);
+        bucketedContactStoreMock = mock(BucketedContactStore.class);
+        bulkHashLoaderMock = mock(BulkHashLoader.class);
+        redisConnectionMock = mock(RedisConnection.class);
+        redisTemplateMock = mock(RedisTemplate.class);
+        setOperationsMock = mock(SetOperations.class);
+
+        when(redisTemplateMock.getKeySerializer()).thenReturn(jdkSerializer);
+        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+
+        migration = new BucketedLayoutMigration(redisTemplateMock, bulkHashLoaderMock, batchWriterMock, bucketedContactStoreMock);
+    }
+
+    @Test
+    public void migrate() {
+        Set<String> keys = new LinkedHashSet<String>(Arrays.asList(CONTACT_KEY, MISSING_CONTACT_KEY));
+        List<String> batch = new ArrayList<String>(keys);
+
+        when(setOperationsMock.members(RedisContactService.KEY_CONTACT_SET)).thenReturn(keys);
+        when(batchWriterMock.partition(keys)).thenReturn(Arrays.asList(batch));
+        when(bulkHashLoaderMock.load(batch, RedisContactService.HASH_KEYS)).thenReturn(createHashList(createHash(CONTACT_ID), new HashMap<Object, Object>()));
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenReturn(Long.valueOf(100));
+        when(bucketedContactStoreMock.fitsInZiplist(any(Contact.class))).thenReturn(true);
+
+        long migrated = migration.migrate();
+
+        verify(setOperationsMock, times(1)).members(RedisContactService.KEY_CONTACT_SET);
+        verify(bulkHashLoaderMock, times(1)).load(batch, RedisContactService.HASH_KEYS);
+        verifyNoMoreInteractions(setOperationsMock, bulkHashLoaderMock);
+
+        verify(redisTemplateMock, times(2)).execute(any(RedisCallback.class));
+
+        ArgumentCaptor<List> contactsArgument = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<BatchWriteCallback> callbackArgument = ArgumentCaptor.forClass(BatchWriteCallback.class);
+        verify(batchWriterMock, times(1)).write(contactsArgument.capture(), callbackArgument.capture());
+
+        List<Contact> contacts = contactsArgument.getValue();
+        assertEquals(1, contacts.size());
+
+        Contact contact = contacts.get(0);
+        assertEquals(CONTACT_ID, contact.getId());
+        assertEquals(ContactTestUtil.FIRST_NAME, contact.getFirstName());
+
+        callbackArgument.getValue().write(redisConnectionMock, contact);
+
+        verify(bucketedContactStoreMock, times(1)).fitsInZiplist(contact);
+        verify(bucketedContactStoreMock, times(1)).write(redisConnectionMock, contact);
+        verifyNoMoreInteractions(bucketedContactStoreMock);
+
+        verify(redisConnectionMock, times(1)).del(jdkSerializer.serialize(CONTACT_KEY));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        assertEquals(1, migrated);
+    }
+
+    @Test
+    public void getUsedMemory() {
+        when(redisConnectionMock.info()).thenReturn(createInfo("1000"));
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenReturn(Long.valueOf(0));
+
+        migration.getUsedMemory();
+
+        ArgumentCaptor<RedisCallback> callbackArgument = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplateMock, times(1)).execute(callbackArgument.capture());
+
+        assertEquals(Long.valueOf(1000), callbackArgument.getValue().doInRedis(redisConnectionMock));
+
+        verify(redisConnectionMock, times(1)).info();
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    private Properties createInfo(String usedMemory) {
+        Properties info = new Properties();
+        info.setProperty("used_memory", usedMemory);
+        return info;
+    }
+
+    private List<Map<Object, Object>> createHashList(Map<Object, Object>... hashes) {
+        return new ArrayList<Map<Object, Object>>(Arrays.asList(hashes));
+    }
+
+    private Map<Object, Object> createHash(Long id) {
+        Map<Object, Object> hash = new HashMap<Object, Object>();
+
+        hash.put(RedisContactService.HASH_KEY_CONTACT_ID, id);
+        hash.put(RedisContactService.HASH_KEY_CONTACT_FIRST_NAME, ContactTestUtil.FIRST_NAME);
+        hash.put(RedisContactService.HASH_KEY_CONTACT_LAST_NAME, ContactTestUtil.LAST_NAME);
+
+        return hash;
+    }
+}
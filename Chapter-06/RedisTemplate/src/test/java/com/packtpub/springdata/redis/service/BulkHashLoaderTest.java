@@ -0,0 +1,109 @@
+package com.packtpub.springdata.redis.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BulkHashLoaderTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    private static final String FIRST_KEY = "contact1";
+    private static final String SECOND_KEY = "contact2";
+    private static final String THIRD_KEY = "contact3";
+
+    private static final String HASH_KEY = "firstName";
+    private static final String HASH_VALUE = "Foo";
+
+    private BulkHashLoader loader;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisTemplate<String, String> redisTemplateMock;
+
+    private RedisSerializer serializer = new JdkSerializationRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisConnectionMock = mock(RedisConnection.class);
+        redisTemplateMock = mock(RedisTemplate.class);
+
+        when(redisTemplateMock.getKeySerializer()).thenReturn(serializer);
+        when(redisTemplateMock.getHashKeySerializer()).thenReturn(serializer);
+        when(redisTemplateMock.getHashValueSerializer()).thenReturn(serializer);
+
+        loader = new BulkHashLoader(redisTemplateMock, CHUNK_SIZE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidChunkSize() {
+        new BulkHashLoader(redisTemplateMock, 0);
+    }
+
+    @Test
+    public void loadWithoutKeys() {
+        List<Map<Object, Object>> hashes = loader.load(new ArrayList<String>(), Arrays.asList(HASH_KEY));
+
+        verifyZeroInteractions(redisTemplateMock);
+        assertTrue(hashes.isEmpty());
+    }
+
+    @Test
+    public void load() {
+        when(redisConnectionMock.exec())
+                .thenReturn(createReplies(serializer.serialize(HASH_VALUE), null))
+                .thenReturn(createReplies(serializer.serialize(HASH_VALUE)));
+
+        List<Map<Object, Object>> hashes = executeLoad(FIRST_KEY, SECOND_KEY, THIRD_KEY);
+
+        verify(redisConnectionMock, times(2)).multi();
+        verify(redisConnectionMock, times(3)).hMGet(any(byte[].class), any(byte[].class));
+        verify(redisConnectionMock, times(2)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        assertEquals(3, hashes.size());
+        assertEquals(HASH_VALUE, hashes.get(0).get(HASH_KEY));
+        assertTrue(hashes.get(1).isEmpty());
+        assertEquals(HASH_VALUE, hashes.get(2).get(HASH_KEY));
+    }
+
+    private List<Map<Object, Object>> executeLoad(String... keys) {
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenReturn(null);
+        loader.load(Arrays.asList(keys), Arrays.asList(HASH_KEY));
+
+        ArgumentCaptor<RedisCallback> callbackArgument = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplateMock, times(1)).execute(callbackArgument.capture());
+
+        return (List<Map<Object, Object>>) callbackArgument.getValue().doInRedis(redisConnectionMock);
+    }
+
+    private List<Object> createReplies(byte[]... values) {
+        List<Object> replies = new ArrayList<Object>();
+
+        for (byte[] value: values) {
+            List<byte[]> reply = new ArrayList<byte[]>();
+            reply.add(value);
+            replies.add(reply);
+        }
+
+        return replies;
+    }
+}
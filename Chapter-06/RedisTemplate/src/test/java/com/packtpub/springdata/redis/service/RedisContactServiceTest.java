@@ -1,21 +1,33 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
 import com.packtpub.springdata.redis.model.Address;
 import com.packtpub.springdata.redis.model.Contact;
 import com.packtpub.springdata.redis.model.ContactTestUtil;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SetOperations;
-import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -26,9 +38,19 @@ public class RedisContactServiceTest {
     private Long CONTACT_ID = Long.valueOf(1);
     private String CONTACT_KEY = "contact1";
 
+    private static final String SEARCH_TERM = "Foo";
+
     private RedisContactService service;
 
-    private RedisAtomicLong contactIdCounterMock;
+    private BatchWriter batchWriterMock;
+
+    private BucketedContactStore bucketedContactStoreMock;
+
+    private BulkHashLoader bulkHashLoaderMock;
+
+    private ContactNameIndex contactNameIndexMock;
+
+    private BlockIdAllocator contactIdCounterMock;
 
     private RedisTemplate<String, String> redisTemplateMock;
 
@@ -36,25 +58,47 @@ public class RedisContactServiceTest {
 
     private SetOperations setOperationsMock;
 
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
     @Before
     public void setUp() {
         service = new RedisContactService();
 
-        contactIdCounterMock = mock(RedisAtomicLong.class);
+        batchWriterMock = mock(BatchWriter.class);
+        ReflectionTestUtils.setField(service, "batchWriter", batchWriterMock);
+
+        bucketedContactStoreMock = mock(BucketedContactStore.class);
+        ReflectionTestUtils.setField(service, "bucketedContactStore", bucketedContactStoreMock);
+
+        bulkHashLoaderMock = mock(BulkHashLoader.class);
+        ReflectionTestUtils.setField(service, "bulkHashLoader", bulkHashLoaderMock);
+
+
+        contactIdCounterMock = mock(BlockIdAllocator.class);
         ReflectionTestUtils.setField(service, "contactIdCounter", contactIdCounterMock);
 
         redisTemplateMock = mock(RedisTemplate.class);
         ReflectionTestUtils.setField(service, "redisTemplate", redisTemplateMock);
 
+        when(redisTemplateMock.getKeySerializer()).thenReturn(jdkSerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(jdkSerializer);
+        when(redisTemplateMock.getHashKeySerializer()).thenReturn(jdkSerializer);
+        when(redisTemplateMock.getHashValueSerializer()).thenReturn(jdkSerializer);
+
         boundHashOperationsMock = mock(BoundHashOperations.class);
         setOperationsMock = mock(SetOperations.class);
+
+        contactNameIndexMock = mock(ContactNameIndex.class);
+        ReflectionTestUtils.setField(service, "contactNameIndex", contactNameIndexMock);
+
+        redisConnectionMock = mock(RedisConnection.class);
     }
 
     @Test
     public void add() {
         when(contactIdCounterMock.incrementAndGet()).thenReturn(CONTACT_ID);
-        when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
 
         Contact added = ContactTestUtil.createModel();
         Contact actual = service.add(added);
@@ -62,78 +106,325 @@ public class RedisContactServiceTest {
         verify(contactIdCounterMock, times(1)).incrementAndGet();
         verifyNoMoreInteractions(contactIdCounterMock);
 
-        verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
+        executeRedisCallback();
+
+        verify(redisConnectionMock, times(1)).multi();
         verifyThatContactWasPersisted(CONTACT_ID, added);
+        verify(redisConnectionMock, times(1)).sAdd(jdkSerializer.serialize(RedisContactService.KEY_CONTACT_SET), jdkSerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
 
-        verify(redisTemplateMock, times(1)).opsForSet();
-        verify(setOperationsMock, times(1)).add(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY);
-        verifyNoMoreInteractions(boundHashOperationsMock, setOperationsMock, redisTemplateMock);
+        verify(contactNameIndexMock, times(1)).add(redisConnectionMock, added);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(boundHashOperationsMock, setOperationsMock);
 
         assertEquals(added, actual);
     }
 
+    @Test
+    public void addWithBucketedLayout() {
+        when(bucketedContactStoreMock.isEnabled()).thenReturn(true);
+        when(contactIdCounterMock.incrementAndGet()).thenReturn(CONTACT_ID);
+
+        Contact added = ContactTestUtil.createModel();
+        service.add(added);
+
+        executeRedisCallback();
+
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).sAdd(jdkSerializer.serialize(RedisContactService.KEY_CONTACT_SET), jdkSerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(bucketedContactStoreMock, times(1)).write(redisConnectionMock, added);
+        verify(contactNameIndexMock, times(1)).add(redisConnectionMock, added);
+
+        assertEquals(CONTACT_ID, added.getId());
+    }
+
+    @Test
+    public void addAll() {
+        when(contactIdCounterMock.allocate(1)).thenReturn(Arrays.asList(CONTACT_ID));
+
+        Contact added = ContactTestUtil.createModel();
+        List<Contact> actual = service.addAll(Arrays.asList(added));
+
+        verify(contactIdCounterMock, times(1)).allocate(1);
+        verifyNoMoreInteractions(contactIdCounterMock);
+
+        executeBatchWriteCallback(actual);
+
+        verifyThatContactWasPersisted(CONTACT_ID, added);
+        verify(redisConnectionMock, times(1)).sAdd(jdkSerializer.serialize(RedisContactService.KEY_CONTACT_SET), jdkSerializer.serialize(CONTACT_KEY));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(contactNameIndexMock, times(1)).add(redisConnectionMock, added);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(CONTACT_ID, actual.get(0).getId());
+    }
+
+    @Test
+    public void addAllWhenContactHasId() {
+        Contact added = ContactTestUtil.createModel(CONTACT_ID);
+        List<Contact> actual = service.addAll(Arrays.asList(added));
+
+        verifyZeroInteractions(contactIdCounterMock);
+
+        executeBatchWriteCallback(actual);
+
+        verifyThatContactWasPersisted(CONTACT_ID, added);
+    }
+
+    @Test
+    public void count() {
+        when(contactNameIndexMock.count()).thenReturn(Long.valueOf(2));
+
+        long count = service.count();
+
+        verify(contactNameIndexMock, times(1)).count();
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void countWithSearchTerm() {
+        when(contactNameIndexMock.count(SEARCH_TERM)).thenReturn(Long.valueOf(2));
+
+        long count = service.count(createSearchDTO(SEARCH_TERM, 0, 10));
+
+        verify(contactNameIndexMock, times(1)).count(SEARCH_TERM);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(2, count);
+    }
+
     @Test
     public void deleteById() throws NotFoundException {
         when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
-        when(setOperationsMock.isMember(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY)).thenReturn(true);
         initGetHashOperationsForContact(CONTACT_ID);
 
         Contact deleted = service.deleteById(CONTACT_ID);
 
-        verify(redisTemplateMock, times(2)).boundHashOps(CONTACT_KEY);
-
+        verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
         verifyThatContactWasGet();
-        verifyThatContactWasDeleted();
 
-        verify(redisTemplateMock, times(2)).opsForSet();
-        verify(setOperationsMock, times(1)).isMember(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY);
-        verify(setOperationsMock,times(1)).remove(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY);
-        verifyNoMoreInteractions(setOperationsMock);
+        executeRedisCallback();
 
-        verifyNoMoreInteractions(boundHashOperationsMock, redisTemplateMock);
-        verifyZeroInteractions(contactIdCounterMock);
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).del(jdkSerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).sRem(jdkSerializer.serialize(RedisContactService.KEY_CONTACT_SET), jdkSerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(contactNameIndexMock, times(1)).remove(redisConnectionMock, deleted);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyNoMoreInteractions(boundHashOperationsMock);
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
 
         assertContact(CONTACT_ID, deleted);
     }
 
+    @Test
+    public void deleteAll() {
+        when(bulkHashLoaderMock.load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS)).thenReturn(createHashList(createHash(CONTACT_ID)));
+
+        List<Contact> deleted = service.deleteAll(Arrays.asList(CONTACT_ID));
+
+        verify(bulkHashLoaderMock, times(1)).load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS);
+        verifyNoMoreInteractions(bulkHashLoaderMock);
+
+        executeBatchWriteCallback(deleted);
+
+        verify(redisConnectionMock, times(1)).del(jdkSerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).sRem(jdkSerializer.serialize(RedisContactService.KEY_CONTACT_SET), jdkSerializer.serialize(CONTACT_KEY));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(contactNameIndexMock, times(1)).remove(redisConnectionMock, deleted.get(0));
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(contactIdCounterMock);
+
+        assertEquals(1, deleted.size());
+        assertContact(CONTACT_ID, deleted.get(0));
+    }
+
+    @Test
+    public void deleteByIdWithBucketedLayout() throws NotFoundException {
+        when(bucketedContactStoreMock.isEnabled()).thenReturn(true);
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(bucketedContactStoreMock.findById(CONTACT_ID)).thenReturn(found);
+
+        Contact deleted = service.deleteById(CONTACT_ID);
+
+        executeRedisCallback();
+
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).sRem(jdkSerializer.serialize(RedisContactService.KEY_CONTACT_SET), jdkSerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(bucketedContactStoreMock, times(1)).delete(redisConnectionMock, CONTACT_ID);
+        verify(contactNameIndexMock, times(1)).remove(redisConnectionMock, found);
+
+        verifyZeroInteractions(boundHashOperationsMock);
+
+        assertEquals(found, deleted);
+    }
+
     @Test(expected = NotFoundException.class)
     public void deleteByIdWhenContactIsNotFound() throws NotFoundException {
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
-        when(setOperationsMock.isMember(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY)).thenReturn(false);
+        when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
+        when(boundHashOperationsMock.entries()).thenReturn(new HashMap());
 
         service.deleteById(CONTACT_ID);
 
-        verifyThatExistCheckForContactIsDone(CONTACT_KEY);
-        verifyNoMoreInteractions(redisTemplateMock, setOperationsMock);
+        verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
+        verifyThatContactWasGet();
+        verifyNoMoreInteractions(redisTemplateMock, boundHashOperationsMock);
+        verifyZeroInteractions(setOperationsMock, contactIdCounterMock);
+    }
 
-        verifyZeroInteractions(boundHashOperationsMock, contactIdCounterMock);
+    @Test
+    public void exportAll() {
+        when(batchWriterMock.getBatchSize()).thenReturn(10);
+        when(contactNameIndexMock.findIdsForPage(0, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(contactNameIndexMock.findIdsForPage(1, 10)).thenReturn(new ArrayList<Long>());
+        when(bulkHashLoaderMock.load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS)).thenReturn(createHashList(createHash(CONTACT_ID)));
+
+        ContactCallbackHandler handlerMock = mock(ContactCallbackHandler.class);
+
+        long exported = service.exportAll(handlerMock);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(0, 10);
+        verify(contactNameIndexMock, times(1)).findIdsForPage(1, 10);
+        verify(bulkHashLoaderMock, times(1)).load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS);
+        verifyNoMoreInteractions(contactNameIndexMock, bulkHashLoaderMock);
+
+        ArgumentCaptor<Contact> contactArgument = ArgumentCaptor.forClass(Contact.class);
+        verify(handlerMock, times(1)).processContact(contactArgument.capture());
+        verifyNoMoreInteractions(handlerMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertContact(CONTACT_ID, contactArgument.getValue());
+        assertEquals(1, exported);
     }
 
     @Test
     public void findAll() {
         when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
         when(setOperationsMock.members(RedisContactService.KEY_CONTACT_SET)).thenReturn(createKeySet(CONTACT_KEY));
-        when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
-        initGetHashOperationsForContact(CONTACT_ID);
+        when(bulkHashLoaderMock.load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS)).thenReturn(createHashList(createHash(CONTACT_ID)));
 
         List<Contact> contacts = service.findAll();
 
         verify(redisTemplateMock, times(1)).opsForSet();
-        verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
         verify(setOperationsMock, times(1)).members(RedisContactService.KEY_CONTACT_SET);
-        verifyNoMoreInteractions(setOperationsMock);
-
-        verifyThatContactWasGet();
-        verifyNoMoreInteractions(boundHashOperationsMock, redisTemplateMock);
+        verify(bulkHashLoaderMock, times(1)).load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS);
+        verifyNoMoreInteractions(setOperationsMock, bulkHashLoaderMock, redisTemplateMock);
 
-        verifyZeroInteractions(contactIdCounterMock);
+        verifyZeroInteractions(boundHashOperationsMock, contactIdCounterMock);
 
         assertEquals(1, contacts.size());
         Contact actual = contacts.get(0);
         assertContact(CONTACT_ID, actual);
     }
 
+    @Test
+    public void findAllWhenContactHashIsNotFound() {
+        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+        when(setOperationsMock.members(RedisContactService.KEY_CONTACT_SET)).thenReturn(createKeySet(CONTACT_KEY));
+        when(bulkHashLoaderMock.load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS)).thenReturn(createHashList(new HashMap<Object, Object>()));
+
+        List<Contact> contacts = service.findAll();
+
+        verify(bulkHashLoaderMock, times(1)).load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS);
+
+        assertEquals(0, contacts.size());
+    }
+
+    @Test
+    public void findAllForPage() {
+        when(contactNameIndexMock.findIdsForPage(1, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(bulkHashLoaderMock.load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS)).thenReturn(createHashList(createHash(CONTACT_ID)));
+
+        List<Contact> contacts = service.findAllForPage(1, 10);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(1, 10);
+        verify(bulkHashLoaderMock, times(1)).load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS);
+        verifyNoMoreInteractions(contactNameIndexMock, bulkHashLoaderMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(1, contacts.size());
+        assertContact(CONTACT_ID, contacts.get(0));
+    }
+
+    @Test
+    public void findAllForPageWithBucketedLayout() {
+        when(bucketedContactStoreMock.isEnabled()).thenReturn(true);
+        when(contactNameIndexMock.findIdsForPage(1, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(bucketedContactStoreMock.find(Arrays.asList(CONTACT_ID))).thenReturn(Arrays.asList(found));
+
+        List<Contact> contacts = service.findAllForPage(1, 10);
+
+        verify(bucketedContactStoreMock, times(1)).isEnabled();
+        verify(bucketedContactStoreMock, times(1)).find(Arrays.asList(CONTACT_ID));
+        verifyNoMoreInteractions(bucketedContactStoreMock);
+
+        verifyZeroInteractions(bulkHashLoaderMock, redisTemplateMock);
+
+        assertEquals(1, contacts.size());
+        assertEquals(found, contacts.get(0));
+    }
+
+    @Test
+    public void search() {
+        when(contactNameIndexMock.search(SEARCH_TERM, 1, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(bulkHashLoaderMock.load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS)).thenReturn(createHashList(createHash(CONTACT_ID)));
+
+        List<Contact> contacts = service.search(createSearchDTO(SEARCH_TERM, 1, 10));
+
+        verify(contactNameIndexMock, times(1)).search(SEARCH_TERM, 1, 10);
+        verify(bulkHashLoaderMock, times(1)).load(Arrays.asList(CONTACT_KEY), RedisContactService.HASH_KEYS);
+        verifyNoMoreInteractions(contactNameIndexMock, bulkHashLoaderMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(1, contacts.size());
+        assertContact(CONTACT_ID, contacts.get(0));
+    }
+
+    private SearchDTO createSearchDTO(String searchTerm, int pageIndex, int pageSize) {
+        SearchDTO dto = new SearchDTO();
+        dto.setSearchTerm(searchTerm);
+        dto.setPageIndex(pageIndex);
+        dto.setPageSize(pageSize);
+        return dto;
+    }
+
+    private List<Map<Object, Object>> createHashList(Map<Object, Object>... hashes) {
+        List<Map<Object, Object>> hashList = new ArrayList<Map<Object, Object>>();
+
+        for (Map<Object, Object> hash: hashes) {
+            hashList.add(hash);
+        }
+
+        return hashList;
+    }
+
     private Set<String> createKeySet(String... keys) {
         Set<String> keySet = new HashSet<String>();
 
@@ -147,66 +438,102 @@ public class RedisContactServiceTest {
     @Test
     public void findById() throws NotFoundException {
         when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
-        when(setOperationsMock.isMember(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY)).thenReturn(true);
         initGetHashOperationsForContact(CONTACT_ID);
 
         Contact found = service.findById(CONTACT_ID);
 
         verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
-
-        verifyThatExistCheckForContactIsDone(CONTACT_KEY);
         verifyThatContactWasGet();
 
-        verifyNoMoreInteractions(boundHashOperationsMock, redisTemplateMock,setOperationsMock);
-        verifyZeroInteractions(contactIdCounterMock);
+        verifyNoMoreInteractions(boundHashOperationsMock, redisTemplateMock);
+        verifyZeroInteractions(setOperationsMock, contactIdCounterMock);
 
         assertContact(CONTACT_ID, found);
     }
 
+    @Test
+    public void findByIdWithBucketedLayout() throws NotFoundException {
+        when(bucketedContactStoreMock.isEnabled()).thenReturn(true);
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(bucketedContactStoreMock.findById(CONTACT_ID)).thenReturn(found);
+
+        Contact actual = service.findById(CONTACT_ID);
+
+        verify(bucketedContactStoreMock, times(1)).isEnabled();
+        verify(bucketedContactStoreMock, times(1)).findById(CONTACT_ID);
+        verifyNoMoreInteractions(bucketedContactStoreMock);
+
+        verifyZeroInteractions(redisTemplateMock, boundHashOperationsMock);
+
+        assertEquals(found, actual);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void findByIdWithBucketedLayoutWhenContactIsNotFound() throws NotFoundException {
+        when(bucketedContactStoreMock.isEnabled()).thenReturn(true);
+        when(bucketedContactStoreMock.findById(CONTACT_ID)).thenReturn(null);
+
+        service.findById(CONTACT_ID);
+    }
+
     @Test(expected = NotFoundException.class)
     public void findByIdWhenContactIsNotFound() throws NotFoundException {
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
-        when(setOperationsMock.isMember(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY)).thenReturn(false);
+        when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
+        when(boundHashOperationsMock.entries()).thenReturn(new HashMap());
 
         service.findById(CONTACT_ID);
 
-        verifyThatExistCheckForContactIsDone(CONTACT_KEY);
+        verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
+        verifyThatContactWasGet();
 
-        verifyNoMoreInteractions(redisTemplateMock, setOperationsMock);
-        verifyZeroInteractions(boundHashOperationsMock, contactIdCounterMock);
+        verifyNoMoreInteractions(redisTemplateMock, boundHashOperationsMock);
+        verifyZeroInteractions(setOperationsMock, contactIdCounterMock);
     }
 
     @Test
     public void update() throws NotFoundException {
         when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
-        when(setOperationsMock.isMember(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY)).thenReturn(true);
+        initGetHashOperationsForContact(CONTACT_ID);
 
-        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID, "Updated", "Contact");
         service.update(updated);
 
         verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
+        verifyThatContactWasGet();
+
+        executeRedisCallback();
+
+        verify(redisConnectionMock, times(1)).multi();
         verifyThatContactWasPersisted(CONTACT_ID, updated);
+        verify(redisConnectionMock, times(1)).sAdd(jdkSerializer.serialize(RedisContactService.KEY_CONTACT_SET), jdkSerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
 
-        verifyThatExistCheckForContactIsDone(CONTACT_KEY);
+        ArgumentCaptor<Contact> oldArgument = ArgumentCaptor.forClass(Contact.class);
+        verify(contactNameIndexMock, times(1)).remove(eq(redisConnectionMock), oldArgument.capture());
+        verify(contactNameIndexMock, times(1)).add(redisConnectionMock, updated);
+        verifyNoMoreInteractions(contactNameIndexMock);
 
-        verifyNoMoreInteractions(boundHashOperationsMock, redisTemplateMock);
+        assertContact(CONTACT_ID, oldArgument.getValue());
+
+        verifyNoMoreInteractions(boundHashOperationsMock);
         verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
     }
 
     @Test(expected = NotFoundException.class)
     public void updateWhenContactIsNotFound() throws NotFoundException {
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
-        when(setOperationsMock.isMember(RedisContactService.KEY_CONTACT_SET, CONTACT_KEY)).thenReturn(false);
+        when(redisTemplateMock.boundHashOps(CONTACT_KEY)).thenReturn(boundHashOperationsMock);
+        when(boundHashOperationsMock.entries()).thenReturn(new HashMap());
 
         Contact updated = ContactTestUtil.createModel(CONTACT_ID);
         service.update(updated);
 
-        verifyThatExistCheckForContactIsDone(CONTACT_KEY);
+        verify(redisTemplateMock, times(1)).boundHashOps(CONTACT_KEY);
+        verifyThatContactWasGet();
 
-        verifyNoMoreInteractions(redisTemplateMock, setOperationsMock);
-        verifyZeroInteractions(boundHashOperationsMock, contactIdCounterMock);
+        verifyNoMoreInteractions(redisTemplateMock, boundHashOperationsMock);
+        verifyZeroInteractions(setOperationsMock, contactNameIndexMock, contactIdCounterMock);
     }
 
     private void assertContact(Long expectedId, Contact actual) {
@@ -226,66 +553,70 @@ public class RedisContactServiceTest {
     }
 
     private void initGetHashOperationsForContact(Long id) {
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_CONTACT_ID)).thenReturn(id);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_CONTACT_EMAIL_ADDRESS)).thenReturn(ContactTestUtil.EMAIL_ADDRESS);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_CONTACT_FIRST_NAME)).thenReturn(ContactTestUtil.FIRST_NAME);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_CONTACT_LAST_NAME)).thenReturn(ContactTestUtil.LAST_NAME);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_CONTACT_PHONE_NUMBER)).thenReturn(ContactTestUtil.PHONE_NUMBER);
+        when(boundHashOperationsMock.entries()).thenReturn(createHash(id));
+    }
 
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_ADDRESS_STREET_ADDRESS)).thenReturn(ContactTestUtil.STREET_ADDRESS);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_ADDRESS_POST_CODE)).thenReturn(ContactTestUtil.POST_CODE);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_ADDRESS_POST_OFFICE)).thenReturn(ContactTestUtil.POST_OFFICE);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_ADDRESS_STATE)).thenReturn(ContactTestUtil.STATE);
-        when(boundHashOperationsMock.get(RedisContactService.HASH_KEY_ADDRESS_COUNTRY)).thenReturn(ContactTestUtil.COUNTRY);
+    private Map<Object, Object> createHash(Long id) {
+        Map<Object, Object> hash = new HashMap<Object, Object>();
 
-    }
+        hash.put(RedisContactService.HASH_KEY_CONTACT_ID, id);
+        hash.put(RedisContactService.HASH_KEY_CONTACT_EMAIL_ADDRESS, ContactTestUtil.EMAIL_ADDRESS);
+        hash.put(RedisContactService.HASH_KEY_CONTACT_FIRST_NAME, ContactTestUtil.FIRST_NAME);
+        hash.put(RedisContactService.HASH_KEY_CONTACT_LAST_NAME, ContactTestUtil.LAST_NAME);
+        hash.put(RedisContactService.HASH_KEY_CONTACT_PHONE_NUMBER, ContactTestUtil.PHONE_NUMBER);
 
-    private void verifyThatContactWasDeleted() {
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_CONTACT_ID);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_CONTACT_EMAIL_ADDRESS);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_CONTACT_FIRST_NAME);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_CONTACT_LAST_NAME);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_CONTACT_PHONE_NUMBER);
+        hash.put(RedisContactService.HASH_KEY_ADDRESS_STREET_ADDRESS, ContactTestUtil.STREET_ADDRESS);
+        hash.put(RedisContactService.HASH_KEY_ADDRESS_POST_CODE, ContactTestUtil.POST_CODE);
+        hash.put(RedisContactService.HASH_KEY_ADDRESS_POST_OFFICE, ContactTestUtil.POST_OFFICE);
+        hash.put(RedisContactService.HASH_KEY_ADDRESS_STATE, ContactTestUtil.STATE);
+        hash.put(RedisContactService.HASH_KEY_ADDRESS_COUNTRY, ContactTestUtil.COUNTRY);
 
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_ADDRESS_STREET_ADDRESS);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_ADDRESS_POST_CODE);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_ADDRESS_POST_OFFICE);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_ADDRESS_STATE);
-        verify(boundHashOperationsMock, times(1)).delete(RedisContactService.HASH_KEY_ADDRESS_COUNTRY);
+        return hash;
     }
 
     private void verifyThatContactWasGet() {
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_CONTACT_ID);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_CONTACT_EMAIL_ADDRESS);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_CONTACT_FIRST_NAME);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_CONTACT_LAST_NAME);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_CONTACT_PHONE_NUMBER);
+        verify(boundHashOperationsMock, times(1)).entries();
+    }
+
+    private void executeRedisCallback() {
+        ArgumentCaptor<RedisCallback> callbackArgument = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplateMock, atLeastOnce()).execute(callbackArgument.capture());
 
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_ADDRESS_STREET_ADDRESS);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_ADDRESS_POST_CODE);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_ADDRESS_POST_OFFICE);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_ADDRESS_STATE);
-        verify(boundHashOperationsMock, times(1)).get(RedisContactService.HASH_KEY_ADDRESS_COUNTRY);
+        callbackArgument.getValue().doInRedis(redisConnectionMock);
     }
 
-    private void verifyThatExistCheckForContactIsDone(String key) {
-        verify(redisTemplateMock, times(1)).opsForSet();
-        verify(setOperationsMock, times(1)).isMember(RedisContactService.KEY_CONTACT_SET, key);
+    private void executeBatchWriteCallback(List<Contact> expectedItems) {
+        ArgumentCaptor<BatchWriteCallback> callbackArgument = ArgumentCaptor.forClass(BatchWriteCallback.class);
+        verify(batchWriterMock, times(1)).write(eq(expectedItems), callbackArgument.capture());
+
+        for (Contact item: expectedItems) {
+            callbackArgument.getValue().write(redisConnectionMock, item);
+        }
     }
 
-    private void verifyThatContactWasPersisted(Long id, Contact added) {
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_CONTACT_ID, id);
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_CONTACT_EMAIL_ADDRESS, added.getEmailAddress());
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_CONTACT_FIRST_NAME, added.getFirstName());
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_CONTACT_LAST_NAME, added.getLastName());
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_CONTACT_PHONE_NUMBER, added.getPhoneNumber());
+    private void verifyThatContactWasPersisted(Long id, Contact persisted) {
+        ArgumentCaptor<Map> hashArgument = ArgumentCaptor.forClass(Map.class);
+        verify(redisConnectionMock, times(1)).hMSet(eq(jdkSerializer.serialize(CONTACT_KEY)), hashArgument.capture());
+
+        Map<Object, Object> hash = new HashMap<Object, Object>();
+        for (Object field: hashArgument.getValue().entrySet()) {
+            Map.Entry<byte[], byte[]> rawField = (Map.Entry<byte[], byte[]>) field;
+            hash.put(jdkSerializer.deserialize(rawField.getKey()), jdkSerializer.deserialize(rawField.getValue()));
+        }
+
+        assertEquals(10, hash.size());
+        assertEquals(id, hash.get(RedisContactService.HASH_KEY_CONTACT_ID));
+        assertEquals(persisted.getEmailAddress(), hash.get(RedisContactService.HASH_KEY_CONTACT_EMAIL_ADDRESS));
+        assertEquals(persisted.getFirstName(), hash.get(RedisContactService.HASH_KEY_CONTACT_FIRST_NAME));
+        assertEquals(persisted.getLastName(), hash.get(RedisContactService.HASH_KEY_CONTACT_LAST_NAME));
+        assertEquals(persisted.getPhoneNumber(), hash.get(RedisContactService.HASH_KEY_CONTACT_PHONE_NUMBER));
 
-        Address address = added.getAddress();
+        Address address = persisted.getAddress();
 
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_ADDRESS_STREET_ADDRESS, address.getStreetAddress());
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_ADDRESS_POST_CODE, address.getPostCode());
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_ADDRESS_POST_OFFICE, address.getPostOffice());
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_ADDRESS_STATE, address.getState());
-        verify(boundHashOperationsMock, times(1)).put(RedisContactService.HASH_KEY_ADDRESS_COUNTRY, address.getCountry());
+        assertEquals(address.getStreetAddress(), hash.get(RedisContactService.HASH_KEY_ADDRESS_STREET_ADDRESS));
+        assertEquals(address.getPostCode(), hash.get(RedisContactService.HASH_KEY_ADDRESS_POST_CODE));
+        assertEquals(address.getPostOffice(), hash.get(RedisContactService.HASH_KEY_ADDRESS_POST_OFFICE));
+        assertEquals(address.getState(), hash.get(RedisContactService.HASH_KEY_ADDRESS_STATE));
+        assertEquals(address.getCountry(), hash.get(RedisContactService.HASH_KEY_ADDRESS_COUNTRY));
     }
 }
@@ -0,0 +1,320 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Redis cache whose entries expire after the configured time to live and whose size is
+ * limited by an eviction policy.
+ * <p>
+ * The keys of the entries are kept in a sorted set, which is used as the index of the cache.
+ * The score of a key tells when the entry was last written or read (LRU) or how often it has
+ * been read (LFU). An entry and its key are written to the index in one transaction. When an
+ * entry is added to a full cache, the keys with the lowest scores are removed from the index
+ * and their entries are deleted. The eviction is discarded if the index is changed while the
+ * evicted keys are read, which means that concurrent puts never evict the same entries twice.
+ * This keeps the memory used by the cache predictable no matter how Redis itself is configured.
+ * <p>
+ * A read costs one round trip. Only every Nth hit of the cache updates the index, where N is
+ * the touch sample rate, and an LFU hit which updates the index adds N to the score of the key.
+ * This keeps the scores proportional to the real number of reads.
+ * <p>
+ * An entry which expires leaves its key to the index until the key is evicted. When an entry
+ * is added to an LRU cache whose entries expire, the keys which have not been written or read
+ * during the time to live are removed from the index. The index never grows larger than the
+ * maximum number of entries.
+ * @author Petri Kainulainen
+ */
+public class BoundedRedisCache implements Cache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BoundedRedisCache.class);
+
+    private static final int CLEAR_PAGE_SIZE = 128;
+
+    private static final String INDEX_SUFFIX = "~keys";
+    private static final String KEY_SEPARATOR = ":";
+
+    private final String name;
+
+    private final RedisCacheSettings settings;
+
+    private final RedisTemplate redisTemplate;
+
+    private final int touchSampleRate;
+
+    private final byte[] prefix;
+
+    private final byte[] indexKey;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong touchCounter = new AtomicLong();
+
+    /**
+     * Creates a new bounded Redis cache.
+     * @param name  The name of the cache.
+     * @param settings  The settings of the cache.
+     * @param redisTemplate The template which is used to access Redis. The key and value
+     *                      serializers of the template are used to write the entries.
+     * @param touchSampleRate   Every Nth hit updates the index. 1 means that every hit updates the index.
+     */
+    public BoundedRedisCache(String name, RedisCacheSettings settings, RedisTemplate redisTemplate, int touchSampleRate) {
+        if (touchSampleRate < 1) {
+            throw new IllegalArgumentException("Touch sample rate must be greater than zero. Was: " + touchSampleRate);
+        }
+        this.name = name;
+        this.settings = settings;
+        this.redisTemplate = redisTemplate;
+        this.touchSampleRate = touchSampleRate;
+        this.prefix = serializeString(name + KEY_SEPARATOR);
+        this.indexKey = serializeString(name + INDEX_SUFFIX);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisTemplate;
+    }
+
+    public RedisCacheSettings getSettings() {
+        return settings;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        final byte[] rawKey = computeKey(key);
+
+        byte[] rawValue = (byte[]) redisTemplate.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                byte[] value = connection.get(rawKey);
+                if (value != null && isTouched()) {
+                    touch(connection, rawKey);
+                }
+                return value;
+            }
+        });
+
+        if (rawValue == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return new SimpleValueWrapper(redisTemplate.getValueSerializer().deserialize(rawValue));
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        final byte[] rawKey = computeKey(key);
+        final byte[] rawValue = redisTemplate.getValueSerializer().serialize(value);
+
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                Double lfuScore = getLfuScore(connection, rawKey);
+
+                connection.multi();
+                if (settings.isExpiring()) {
+                    connection.setEx(rawKey, settings.getTtlSeconds(), rawValue);
+                }
+                else {
+                    connection.set(rawKey, rawValue);
+                }
+                index(connection, rawKey, lfuScore);
+                if (isExpiredKeyRemovalUsed()) {
+                    connection.zRemRangeByScore(indexKey, 0, System.currentTimeMillis() - settings.getTtlSeconds() * 1000);
+                }
+                if (settings.isBounded()) {
+                    connection.zCard(indexKey);
+                }
+
+                List<Object> results = connection.exec();
+                if (results == null) {
+                    return null;
+                }
+                if (isExpiredKeyRemovalUsed()) {
+                    expirations.addAndGet((Long) results.get(2));
+                }
+                if (settings.isBounded() && (Long) results.get(results.size() - 1) > settings.getMaxEntries()) {
+                    evictOverflow(connection);
+                }
+                return null;
+            }
+        });
+
+        puts.incrementAndGet();
+    }
+
+    @Override
+    public void evict(Object key) {
+        final byte[] rawKey = computeKey(key);
+
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.del(rawKey);
+                connection.zRem(indexKey, rawKey);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                Set<byte[]> keys = connection.zRange(indexKey, 0, CLEAR_PAGE_SIZE - 1);
+                while (!keys.isEmpty()) {
+                    connection.del(keys.toArray(new byte[keys.size()][]));
+                    connection.zRemRange(indexKey, 0, keys.size() - 1);
+                    keys = connection.zRange(indexKey, 0, CLEAR_PAGE_SIZE - 1);
+                }
+                connection.del(indexKey);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the statistics of the cache.
+     * @return
+     */
+    public RedisCacheStatistics getStatistics() {
+        Long size = (Long) redisTemplate.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.zCard(indexKey);
+            }
+        });
+
+        return new RedisCacheStatistics(name, size == null ? 0 : size, hits.get(), misses.get(), puts.get(),
+                evictions.get(), expirations.get());
+    }
+
+    private boolean isTouched() {
+        return touchSampleRate == 1 || touchCounter.incrementAndGet() % touchSampleRate == 0;
+    }
+
+    private boolean isExpiredKeyRemovalUsed() {
+        return settings.isExpiring() && settings.getEvictionPolicy() == EvictionPolicy.LRU;
+    }
+
+    private void touch(RedisConnection connection, byte[] rawKey) {
+        if (settings.getEvictionPolicy() == EvictionPolicy.LFU) {
+            connection.zIncrBy(indexKey, touchSampleRate, rawKey);
+        }
+        else {
+            connection.zAdd(indexKey, System.currentTimeMillis(), rawKey);
+        }
+    }
+
+    /**
+     * Reads the score which is given to a new key of an LFU cache.
+     * @param connection    The used Redis connection.
+     * @param rawKey    The written key.
+     * @return  The score of a new key or null if the key is already indexed or the cache uses the LRU policy.
+     */
+    private Double getLfuScore(RedisConnection connection, byte[] rawKey) {
+        if (settings.getEvictionPolicy() != EvictionPolicy.LFU || connection.zScore(indexKey, rawKey) != null) {
+            return null;
+        }
+        return getLowestScore(connection) + 1;
+    }
+
+    /**
+     * Writes the key of an entry to the index. This method is called inside the transaction
+     * which writes the entry.
+     * @param connection    The used Redis connection.
+     * @param rawKey    The written key.
+     * @param lfuScore  The score of a new key of an LFU cache or null if the score of the key is incremented.
+     */
+    private void index(RedisConnection connection, byte[] rawKey, Double lfuScore) {
+        if (settings.getEvictionPolicy() == EvictionPolicy.LRU) {
+            connection.zAdd(indexKey, System.currentTimeMillis(), rawKey);
+        }
+        else if (lfuScore != null) {
+            connection.zAdd(indexKey, lfuScore, rawKey);
+        }
+        else {
+            connection.zIncrBy(indexKey, 1, rawKey);
+        }
+    }
+
+    private double getLowestScore(RedisConnection connection) {
+        Set<RedisZSetCommands.Tuple> lowest = connection.zRangeWithScores(indexKey, 0, 0);
+        if (lowest == null || lowest.isEmpty()) {
+            return 0;
+        }
+        return lowest.iterator().next().getScore();
+    }
+
+    /**
+     * Removes the keys with the lowest scores from the index and deletes their entries. The
+     * index is watched while the evicted keys are read, and the eviction is discarded if the
+     * index is changed before it is executed. The next put evicts the overflow in that case.
+     * @param connection    The used Redis connection.
+     */
+    private void evictOverflow(RedisConnection connection) {
+        connection.watch(indexKey);
+
+        Long size = connection.zCard(indexKey);
+        if (size == null || size <= settings.getMaxEntries()) {
+            connection.unwatch();
+            return;
+        }
+
+        long overflow = size - settings.getMaxEntries();
+        Set<byte[]> evicted = connection.zRange(indexKey, 0, overflow - 1);
+        if (evicted.isEmpty()) {
+            connection.unwatch();
+            return;
+        }
+
+        connection.multi();
+        connection.del(evicted.toArray(new byte[evicted.size()][]));
+        connection.zRemRange(indexKey, 0, evicted.size() - 1);
+        if (connection.exec() == null) {
+            LOGGER.debug("The index of cache: {} was changed during eviction. Leaving the overflow to the next put.", name);
+            return;
+        }
+
+        evictions.addAndGet(evicted.size());
+        LOGGER.debug("Evicted {} entries from cache: {}", evicted.size(), name);
+    }
+
+    private byte[] computeKey(Object key) {
+        byte[] rawKey = redisTemplate.getKeySerializer().serialize(key);
+
+        byte[] prefixedKey = new byte[prefix.length + rawKey.length];
+        System.arraycopy(prefix, 0, prefixedKey, 0, prefix.length);
+        System.arraycopy(rawKey, 0, prefixedKey, prefix.length, rawKey.length);
+
+        return prefixedKey;
+    }
+
+    private byte[] serializeString(String value) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        return serializer.serialize(value);
+    }
+}
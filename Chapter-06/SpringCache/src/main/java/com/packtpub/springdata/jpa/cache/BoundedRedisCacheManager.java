@@ -0,0 +1,93 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache manager which creates bounded Redis caches. Each cache can have settings of its own,
+ * and the caches which have no settings use the default settings.
+ * @author Petri Kainulainen
+ */
+public class BoundedRedisCacheManager implements CacheManager {
+
+    private final RedisTemplate redisTemplate;
+
+    private final RedisCacheSettings defaultSettings;
+
+    private final Map<String, RedisCacheSettings> cacheSettings;
+
+    private final int touchSampleRate;
+
+    private final ConcurrentMap<String, BoundedRedisCache> caches = new ConcurrentHashMap<String, BoundedRedisCache>();
+
+    /**
+     * Creates a new bounded Redis cache manager.
+     * @param redisTemplate The template which is used to access Redis.
+     * @param defaultSettings   The settings of the caches which have no settings of their own.
+     * @param cacheSettings The settings of the caches by cache name.
+     * @param touchSampleRate   Every Nth hit of a cache updates the index of the cache.
+     */
+    public BoundedRedisCacheManager(RedisTemplate redisTemplate, RedisCacheSettings defaultSettings,
+                                    Map<String, RedisCacheSettings> cacheSettings, int touchSampleRate) {
+        if (touchSampleRate < 1) {
+            throw new IllegalArgumentException("Touch sample rate must be greater than zero. Was: " + touchSampleRate);
+        }
+        this.redisTemplate = redisTemplate;
+        this.defaultSettings = defaultSettings;
+        this.cacheSettings = new HashMap<String, RedisCacheSettings>(cacheSettings);
+        this.touchSampleRate = touchSampleRate;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        BoundedRedisCache cache = caches.get(name);
+        if (cache == null) {
+            BoundedRedisCache created = new BoundedRedisCache(name, getSettings(name), redisTemplate, touchSampleRate);
+            cache = caches.putIfAbsent(name, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * Returns the settings of a cache.
+     * @param name  The name of the cache.
+     * @return  The settings of the cache or the default settings if the cache has no settings of its own.
+     */
+    public RedisCacheSettings getSettings(String name) {
+        RedisCacheSettings settings = cacheSettings.get(name);
+        if (settings == null) {
+            return defaultSettings;
+        }
+        return settings;
+    }
+
+    /**
+     * Returns the statistics of the caches which have been used.
+     * @return
+     */
+    public List<RedisCacheStatistics> getStatistics() {
+        List<RedisCacheStatistics> statistics = new ArrayList<RedisCacheStatistics>();
+        for (BoundedRedisCache cache: caches.values()) {
+            statistics.add(cache.getStatistics());
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,104 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps the generations of caches whose entries are invalidated all at once. The current
+ * generation of a cache is included in the keys of its entries, which means that incrementing
+ * the generation invalidates every entry of the cache without finding or removing them. The
+ * entries of the old generations are never read again and they are left to expire.
+ * <p>
+ * The generations are stored in Redis so that they are shared by all nodes. If a generation
+ * is incremented inside a transaction, the increment is done after the transaction has been
+ * committed. Otherwise a concurrent read could cache the old data under the new generation.
+ * @author Petri Kainulainen
+ */
+public class CacheGenerations {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheGenerations.class);
+
+    protected static final String KEY_GENERATION_PREFIX = "cachegeneration:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * Creates a new cache generations.
+     * @param redisTemplate The template which is used to access Redis.
+     */
+    public CacheGenerations(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Gets the current generation of a cache.
+     * @param cacheName The name of the cache.
+     * @return  The generation or 0 if the cache has never been invalidated.
+     */
+    public long getGeneration(String cacheName) {
+        final byte[] key = serializeString(buildGenerationKey(cacheName));
+
+        byte[] generation = redisTemplate.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.get(key);
+            }
+        });
+
+        if (generation == null) {
+            return 0;
+        }
+        return Long.parseLong(redisTemplate.getStringSerializer().deserialize(generation));
+    }
+
+    /**
+     * Increments the generations of the given caches. If a transaction is active, the
+     * generations are incremented after it has been committed.
+     * @param cacheNames    The names of the invalidated caches.
+     */
+    public void increment(final String... cacheNames) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            LOGGER.debug("Incrementing the generations of caches after commit");
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    incrementNow(cacheNames);
+                }
+            });
+        }
+        else {
+            incrementNow(cacheNames);
+        }
+    }
+
+    private void incrementNow(String... cacheNames) {
+        for (String cacheName: cacheNames) {
+            final byte[] key = serializeString(buildGenerationKey(cacheName));
+
+            Long generation = redisTemplate.execute(new RedisCallback<Long>() {
+                @Override
+                public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                    return connection.incr(key);
+                }
+            });
+
+            LOGGER.debug("Incremented the generation of cache: {} to {}", cacheName, generation);
+        }
+    }
+
+    private String buildGenerationKey(String cacheName) {
+        return KEY_GENERATION_PREFIX + cacheName;
+    }
+
+    private byte[] serializeString(String value) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        return serializer.serialize(value);
+    }
+}
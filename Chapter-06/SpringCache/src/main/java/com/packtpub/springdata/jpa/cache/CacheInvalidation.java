@@ -0,0 +1,66 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import java.io.Serializable;
+
+/**
+ * A message which tells the other nodes to remove an entry, or all entries, of a cache
+ * from their local cache.
+ * @author Petri Kainulainen
+ */
+public class CacheInvalidation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String origin;
+
+    private final String cacheName;
+
+    private final Object key;
+
+    /**
+     * Creates a new cache invalidation.
+     * @param origin    The id of the node which sent the invalidation.
+     * @param cacheName The name of the cache.
+     * @param key   The key of the invalidated entry or null if all entries are invalidated.
+     */
+    public CacheInvalidation(String origin, String cacheName, Object key) {
+        this.origin = origin;
+        this.cacheName = cacheName;
+        this.key = key;
+    }
+
+    /**
+     * Returns the id of the node which sent the invalidation.
+     * @return
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * Returns the key of the invalidated entry.
+     * @return  The key or null if all entries of the cache are invalidated.
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Returns true if all entries of the cache are invalidated.
+     * @return
+     */
+    public boolean isClear() {
+        return key == null;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
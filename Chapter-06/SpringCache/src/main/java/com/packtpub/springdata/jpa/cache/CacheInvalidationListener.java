@@ -0,0 +1,43 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Receives the cache invalidations published by the other nodes and removes the invalidated
+ * entries from the local caches of the two-level cache manager.
+ * @author Petri Kainulainen
+ */
+public class CacheInvalidationListener implements MessageListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidationListener.class);
+
+    private final TwoLevelCacheManager cacheManager;
+
+    private final RedisSerializer<Object> serializer;
+
+    /**
+     * Creates a new cache invalidation listener.
+     * @param cacheManager  The cache manager whose local caches are invalidated.
+     * @param serializer    The serializer which is used to read the invalidations.
+     */
+    public CacheInvalidationListener(TwoLevelCacheManager cacheManager, RedisSerializer<Object> serializer) {
+        this.cacheManager = cacheManager;
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object invalidation = serializer.deserialize(message.getBody());
+
+        if (invalidation instanceof CacheInvalidation) {
+            cacheManager.invalidateLocal((CacheInvalidation) invalidation);
+        }
+        else {
+            LOGGER.debug("Ignoring unknown cache invalidation: {}", invalidation);
+        }
+    }
+}
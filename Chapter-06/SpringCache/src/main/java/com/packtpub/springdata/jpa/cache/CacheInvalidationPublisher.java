@@ -0,0 +1,65 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.UUID;
+
+/**
+ * Publishes the invalidations of the local caches to the other nodes by using Redis pub/sub.
+ * Each publisher has a unique node id which is written to the published invalidations, so
+ * that a node can ignore the invalidations which it has sent itself.
+ * <p>
+ * The invalidations are serialized with the value serializer of the Redis template, which
+ * means that the keys of the cached entries must be serializable with it.
+ * @author Petri Kainulainen
+ */
+public class CacheInvalidationPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidationPublisher.class);
+
+    public static final String CHANNEL_CACHE_INVALIDATIONS = "cacheInvalidations";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Creates a new cache invalidation publisher.
+     * @param redisTemplate The template which is used to publish the invalidations.
+     */
+    public CacheInvalidationPublisher(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Returns the id of this node.
+     * @return
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Publishes the invalidation of a cache entry.
+     * @param cacheName The name of the cache.
+     * @param key   The key of the invalidated entry.
+     */
+    public void publishEvict(String cacheName, Object key) {
+        publish(new CacheInvalidation(nodeId, cacheName, key));
+    }
+
+    /**
+     * Publishes the invalidation of all entries of a cache.
+     * @param cacheName The name of the cache.
+     */
+    public void publishClear(String cacheName) {
+        publish(new CacheInvalidation(nodeId, cacheName, null));
+    }
+
+    private void publish(CacheInvalidation invalidation) {
+        LOGGER.debug("Publishing cache invalidation: {}", invalidation);
+        redisTemplate.convertAndSend(CHANNEL_CACHE_INVALIDATIONS, invalidation);
+    }
+}
@@ -0,0 +1,60 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The statistics of a single-flight cache loader.
+ * @author Petri Kainulainen
+ */
+public class CacheLoadStatistics {
+
+    private final long loads;
+    private final long sharedLoads;
+    private final long lockWaits;
+    private final long lockTimeouts;
+
+    public CacheLoadStatistics(long loads, long sharedLoads, long lockWaits, long lockTimeouts) {
+        this.loads = loads;
+        this.sharedLoads = sharedLoads;
+        this.lockWaits = lockWaits;
+        this.lockTimeouts = lockTimeouts;
+    }
+
+    /**
+     * Returns the number of values which were loaded by this node.
+     * @return
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    /**
+     * Returns the number of callers which received the value loaded by another thread of this node.
+     * @return
+     */
+    public long getSharedLoads() {
+        return sharedLoads;
+    }
+
+    /**
+     * Returns the number of values which were read from the cache after another node loaded them.
+     * @return
+     */
+    public long getLockWaits() {
+        return lockWaits;
+    }
+
+    /**
+     * Returns the number of times when the lock of another node was not released in time and
+     * the value was loaded without holding the lock.
+     * @return
+     */
+    public long getLockTimeouts() {
+        return lockTimeouts;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
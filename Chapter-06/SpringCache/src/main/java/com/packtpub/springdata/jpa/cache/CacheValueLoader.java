@@ -0,0 +1,14 @@
+package com.packtpub.springdata.jpa.cache;
+
+/**
+ * Loads a value which was not found from a cache.
+ * @author Petri Kainulainen
+ */
+public interface CacheValueLoader<T> {
+
+    /**
+     * Loads the value.
+     * @return  The loaded value or null if no value was found. Null values are not cached.
+     */
+    public T load();
+}
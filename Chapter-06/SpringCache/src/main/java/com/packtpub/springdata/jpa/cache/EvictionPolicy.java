@@ -0,0 +1,18 @@
+package com.packtpub.springdata.jpa.cache;
+
+/**
+ * Describes how the entries are chosen for eviction when a cache is full.
+ * @author Petri Kainulainen
+ */
+public enum EvictionPolicy {
+    /**
+     * Evicts the entries which have not been read for the longest time.
+     */
+    LRU,
+    /**
+     * Evicts the entries which have been read least often. New entries start with a score which
+     * is one greater than the lowest score of the cache, so that they are not evicted before
+     * they have had a chance to be read.
+     */
+    LFU
+}
@@ -0,0 +1,70 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The settings of a bounded Redis cache.
+ * @author Petri Kainulainen
+ */
+public class RedisCacheSettings {
+
+    private final long ttlSeconds;
+
+    private final long maxEntries;
+
+    private final EvictionPolicy evictionPolicy;
+
+    /**
+     * Creates new cache settings.
+     * @param ttlSeconds    The time to live of the entries in seconds. 0 means that the entries do not expire.
+     * @param maxEntries    The maximum number of entries. 0 means that the size of the cache is not limited.
+     * @param evictionPolicy    The policy which is used to choose the evicted entries when the cache is full.
+     */
+    public RedisCacheSettings(long ttlSeconds, long maxEntries, EvictionPolicy evictionPolicy) {
+        if (ttlSeconds < 0) {
+            throw new IllegalArgumentException("TTL cannot be negative. Was: " + ttlSeconds);
+        }
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Max entries cannot be negative. Was: " + maxEntries);
+        }
+        if (evictionPolicy == null) {
+            throw new IllegalArgumentException("Eviction policy cannot be null.");
+        }
+        this.ttlSeconds = ttlSeconds;
+        this.maxEntries = maxEntries;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Returns true if the entries expire.
+     * @return
+     */
+    public boolean isExpiring() {
+        return ttlSeconds > 0;
+    }
+
+    /**
+     * Returns true if the number of entries is limited.
+     * @return
+     */
+    public boolean isBounded() {
+        return maxEntries > 0;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
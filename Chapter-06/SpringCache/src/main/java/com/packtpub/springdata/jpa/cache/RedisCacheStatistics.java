@@ -0,0 +1,88 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The statistics of a bounded Redis cache. The counters are collected by the current node
+ * and the size is read from Redis.
+ * @author Petri Kainulainen
+ */
+public class RedisCacheStatistics {
+
+    private final String cacheName;
+    private final long size;
+    private final long hits;
+    private final long misses;
+    private final long puts;
+    private final long evictions;
+    private final long expirations;
+
+    public RedisCacheStatistics(String cacheName, long size, long hits, long misses, long puts, long evictions,
+                                long expirations) {
+        this.cacheName = cacheName;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.puts = puts;
+        this.evictions = evictions;
+        this.expirations = expirations;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * Returns the number of keys in the index of the cache. The index can contain keys whose
+     * entries have expired but which have not been read after that.
+     * @return
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getPuts() {
+        return puts;
+    }
+
+    /**
+     * Returns the number of entries which were removed because the cache was full.
+     * @return
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of expired keys which were removed from the index of an LRU cache.
+     * @return
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * Returns the share of the reads which found the value.
+     * @return  The hit rate or 0.0 if nothing has been read.
+     */
+    public double getHitRate() {
+        long requests = hits + misses;
+        if (requests == 0) {
+            return 0.0;
+        }
+        return (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
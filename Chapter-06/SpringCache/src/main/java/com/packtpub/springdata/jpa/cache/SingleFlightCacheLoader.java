@@ -0,0 +1,297 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads values from a cache and loads the missing values so that only one loader per key
+ * is run at a time. This protects the database when a popular entry expires or is evicted
+ * and many requests miss it at the same time.
+ * <p>
+ * Inside a node, the first caller which misses a key loads the value and the concurrent
+ * callers wait for its result. If the lock is enabled, the loading caller must also take
+ * a short Redis lock of the key before it loads the value. The callers of the other nodes
+ * wait until the value appears to the cache or the lock is released. If the lock is not
+ * released before it expires, the value is loaded without it. The lock is taken and
+ * released in transactions which watch the lock key, so that a lock is always written
+ * with its timeout and a caller never releases a lock which is held by another caller.
+ * <p>
+ * The callers which wait for the loading caller of the same node receive the same instance
+ * as the loading caller. The returned values must therefore be treated as read-only. This
+ * is the same contract which applies to the values read from an in-memory cache.
+ * <p>
+ * If the single-flight loading is disabled, every caller which misses a key loads the value.
+ * @author Petri Kainulainen
+ */
+public class SingleFlightCacheLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SingleFlightCacheLoader.class);
+
+    protected static final String KEY_LOCK_PREFIX = "cacheloadlock:";
+
+    private final CacheManager cacheManager;
+
+    private final RedisTemplate redisTemplate;
+
+    private final boolean enabled;
+
+    private final boolean lockEnabled;
+
+    private final long lockTimeoutSeconds;
+
+    private final long lockPollMillis;
+
+    private final ConcurrentMap<List<Object>, FutureTask<Object>> flights = new ConcurrentHashMap<List<Object>, FutureTask<Object>>();
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+    private final AtomicLong lockWaits = new AtomicLong();
+    private final AtomicLong lockTimeouts = new AtomicLong();
+
+    /**
+     * Creates a new single-flight cache loader.
+     * @param cacheManager  The cache manager which provides the caches.
+     * @param redisTemplate The template which is used to take the locks.
+     * @param enabled   Is only one loader per key run at a time.
+     * @param lockEnabled   Are the loaders of all nodes coordinated with a Redis lock.
+     * @param lockTimeoutSeconds    The time after which an unreleased lock expires.
+     * @param lockPollMillis    The interval in which the other nodes check whether the value has been loaded.
+     */
+    public SingleFlightCacheLoader(CacheManager cacheManager, RedisTemplate redisTemplate, boolean enabled,
+                                   boolean lockEnabled, long lockTimeoutSeconds, long lockPollMillis) {
+        if (lockEnabled && lockTimeoutSeconds <= 0) {
+            throw new IllegalArgumentException("Lock timeout must be positive. Was: " + lockTimeoutSeconds);
+        }
+        if (lockEnabled && lockPollMillis <= 0) {
+            throw new IllegalArgumentException("Lock poll interval must be positive. Was: " + lockPollMillis);
+        }
+        this.cacheManager = cacheManager;
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.lockEnabled = lockEnabled;
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
+        this.lockPollMillis = lockPollMillis;
+    }
+
+    /**
+     * Returns true if only one loader per key is run at a time.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets a value from the cache and loads it if it is not found.
+     * @param cacheName The name of the cache.
+     * @param key   The key of the value.
+     * @param valueLoader   The loader which is used if the value is not found from the cache.
+     * @return  The cached or loaded value. Returns null if the loader returned null. The value
+     *          may be shared with the other callers, and it must not be modified.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String cacheName, final Object key, final CacheValueLoader<T> valueLoader) {
+        final Cache cache = cacheManager.getCache(cacheName);
+
+        Cache.ValueWrapper cached = cache.get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+
+        if (!enabled) {
+            return loadAndPut(cache, key, valueLoader);
+        }
+
+        List<Object> flightKey = Arrays.asList(cacheName, key);
+        FutureTask<Object> flight = new FutureTask<Object>(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return loadOnce(cache, key, valueLoader);
+            }
+        });
+
+        FutureTask<Object> running = flights.putIfAbsent(flightKey, flight);
+        if (running != null) {
+            LOGGER.debug("Waiting for the value of key: {} in cache: {}", key, cacheName);
+            sharedLoads.incrementAndGet();
+            return (T) getResult(running);
+        }
+
+        try {
+            flight.run();
+        }
+        finally {
+            flights.remove(flightKey, flight);
+        }
+
+        return (T) getResult(flight);
+    }
+
+    /**
+     * Returns the statistics of the loader.
+     * @return
+     */
+    public CacheLoadStatistics getStatistics() {
+        return new CacheLoadStatistics(loads.get(), sharedLoads.get(), lockWaits.get(), lockTimeouts.get());
+    }
+
+    private Object loadOnce(Cache cache, Object key, CacheValueLoader<?> valueLoader) {
+        Cache.ValueWrapper cached = cache.get(key);
+        if (cached != null) {
+            return cached.get();
+        }
+
+        if (!lockEnabled) {
+            return loadAndPut(cache, key, valueLoader);
+        }
+
+        byte[] lockKey = serializeString(KEY_LOCK_PREFIX + cache.getName() + ":" + key);
+        byte[] token = serializeString(UUID.randomUUID().toString());
+        long deadline = System.currentTimeMillis() + lockTimeoutSeconds * 1000;
+
+        while (!acquireLock(lockKey, token)) {
+            if (System.currentTimeMillis() >= deadline) {
+                LOGGER.debug("The lock of key: {} in cache: {} was not released in time. Loading without the lock.", key, cache.getName());
+                lockTimeouts.incrementAndGet();
+                return loadAndPut(cache, key, valueLoader);
+            }
+
+            sleep(lockPollMillis);
+
+            cached = cache.get(key);
+            if (cached != null) {
+                lockWaits.incrementAndGet();
+                return cached.get();
+            }
+        }
+
+        try {
+            cached = cache.get(key);
+            if (cached != null) {
+                return cached.get();
+            }
+            return loadAndPut(cache, key, valueLoader);
+        }
+        finally {
+            releaseLock(lockKey, token);
+        }
+    }
+
+    private <T> T loadAndPut(Cache cache, Object key, CacheValueLoader<T> valueLoader) {
+        T value = valueLoader.load();
+        loads.incrementAndGet();
+
+        if (value != null) {
+            cache.put(key, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Takes the lock of a key if no other caller holds it. The lock is written with its
+     * timeout by a single SETEX command, which is executed only if the lock key was not
+     * changed after it was found to be free.
+     * @param lockKey   The key of the lock.
+     * @param token The token which identifies the holder of the lock.
+     * @return  true if the lock was taken.
+     */
+    private boolean acquireLock(final byte[] lockKey, final byte[] token) {
+        return (Boolean) redisTemplate.execute(new RedisCallback<Boolean>() {
+            @Override
+            public Boolean doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.watch(lockKey);
+
+                if (Boolean.TRUE.equals(connection.exists(lockKey))) {
+                    connection.unwatch();
+                    return false;
+                }
+
+                connection.multi();
+                connection.setEx(lockKey, lockTimeoutSeconds, token);
+                return connection.exec() != null;
+            }
+        });
+    }
+
+    /**
+     * Releases a lock if it is still held by the given token. The lock key is watched while
+     * the token is compared, which means that a lock which expired and was taken by another
+     * caller after the comparison is not deleted.
+     * @param lockKey   The key of the lock.
+     * @param token The token which identifies the holder of the lock.
+     */
+    private void releaseLock(final byte[] lockKey, final byte[] token) {
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.watch(lockKey);
+
+                if (!Arrays.equals(token, connection.get(lockKey))) {
+                    LOGGER.debug("The lock has expired and it is no longer held by this caller. Not releasing it.");
+                    connection.unwatch();
+                    return null;
+                }
+
+                connection.multi();
+                connection.del(lockKey);
+                if (connection.exec() == null) {
+                    LOGGER.debug("The lock was changed while it was released. Not releasing it.");
+                }
+                return null;
+            }
+        });
+    }
+
+    private Object getResult(FutureTask<Object> flight) {
+        try {
+            return flight.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a cache value.", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Could not load a cache value.", cause);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a cache lock.", e);
+        }
+    }
+
+    private byte[] serializeString(String value) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        return serializer.serialize(value);
+    }
+}
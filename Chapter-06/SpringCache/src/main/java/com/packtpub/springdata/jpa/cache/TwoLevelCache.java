@@ -0,0 +1,226 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache which keeps the most recently used entries of a remote cache in a bounded local
+ * cache. A value is read from the local cache if it is found from there, and otherwise it
+ * is read from the remote cache and stored to the local cache. The writes go to both caches
+ * and they are published to the other nodes which remove the written entry from their local
+ * cache.
+ * <p>
+ * A value which was read from the remote cache is not stored to the local cache if an entry
+ * of the cache was written or invalidated during the read. This ensures that a stale value
+ * which was read before an update is not left in the local cache.
+ * <p>
+ * The local entries expire after the local time to live has passed since they were stored
+ * to the local cache. This limits the time for which a node can return a value which was
+ * changed on a node whose invalidation message was lost, or which has expired from the
+ * remote cache.
+ * <p>
+ * The local cache returns the same object to every caller. The cached values must not be
+ * modified.
+ * @author Petri Kainulainen
+ */
+public class TwoLevelCache implements Cache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwoLevelCache.class);
+
+    private final Cache remoteCache;
+
+    private final CacheInvalidationPublisher invalidationPublisher;
+
+    private final int maxLocalSize;
+
+    private final long localTtlSeconds;
+
+    private final Map<Object, LocalEntry> localCache;
+
+    private long generation;
+
+    private long localHits;
+    private long remoteHits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Creates a new two-level cache.
+     * @param remoteCache   The remote cache.
+     * @param invalidationPublisher The publisher which is used to invalidate the entries of the other nodes.
+     * @param maxLocalSize  The maximum number of entries which are kept in the local cache.
+     * @param localTtlSeconds   The time to live of the local entries in seconds. 0 means that the local entries do not expire.
+     */
+    public TwoLevelCache(Cache remoteCache, CacheInvalidationPublisher invalidationPublisher, int maxLocalSize,
+                         long localTtlSeconds) {
+        if (maxLocalSize <= 0) {
+            throw new IllegalArgumentException("Max local size must be positive. Was: " + maxLocalSize);
+        }
+        if (localTtlSeconds < 0) {
+            throw new IllegalArgumentException("Local TTL cannot be negative. Was: " + localTtlSeconds);
+        }
+        this.remoteCache = remoteCache;
+        this.invalidationPublisher = invalidationPublisher;
+        this.maxLocalSize = maxLocalSize;
+        this.localTtlSeconds = localTtlSeconds;
+        this.localCache = new LinkedHashMap<Object, LocalEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, LocalEntry> eldest) {
+                return countEviction(size());
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return remoteCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remoteCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        long readGeneration;
+
+        synchronized (this) {
+            LocalEntry local = localCache.get(key);
+            if (local != null) {
+                if (!isExpired(local)) {
+                    localHits++;
+                    return local;
+                }
+                LOGGER.debug("Local entry of key: {} in cache: {} has expired.", key, getName());
+                localCache.remove(key);
+            }
+            readGeneration = generation;
+        }
+
+        ValueWrapper remote = remoteCache.get(key);
+
+        synchronized (this) {
+            if (remote == null) {
+                misses++;
+                return null;
+            }
+
+            remoteHits++;
+            if (readGeneration == generation) {
+                localCache.put(key, new LocalEntry(remote.get(), currentTimeMillis()));
+            }
+            else {
+                LOGGER.debug("Cache: {} was invalidated during the read of key: {}. Not caching it locally.", getName(), key);
+            }
+        }
+
+        return remote;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remoteCache.put(key, value);
+
+        synchronized (this) {
+            generation++;
+            localCache.put(key, new LocalEntry(value, currentTimeMillis()));
+        }
+
+        invalidationPublisher.publishEvict(getName(), key);
+    }
+
+    @Override
+    public void evict(Object key) {
+        remoteCache.evict(key);
+        evictLocal(key);
+        invalidationPublisher.publishEvict(getName(), key);
+    }
+
+    @Override
+    public void clear() {
+        remoteCache.clear();
+        clearLocal();
+        invalidationPublisher.publishClear(getName());
+    }
+
+    /**
+     * Removes an entry from the local cache without touching the remote cache.
+     * @param key   The key of the removed entry.
+     */
+    public synchronized void evictLocal(Object key) {
+        generation++;
+        invalidations++;
+        localCache.remove(key);
+    }
+
+    /**
+     * Removes all entries from the local cache without touching the remote cache.
+     */
+    public synchronized void clearLocal() {
+        generation++;
+        invalidations++;
+        localCache.clear();
+    }
+
+    /**
+     * Returns the time to live of the local entries in seconds.
+     * @return  The time to live. 0 means that the local entries do not expire.
+     */
+    public long getLocalTtlSeconds() {
+        return localTtlSeconds;
+    }
+
+    /**
+     * Returns the statistics of the cache.
+     * @return
+     */
+    public synchronized TwoLevelCacheStatistics getStatistics() {
+        return new TwoLevelCacheStatistics(getName(), localCache.size(), localHits, remoteHits, misses, evictions, invalidations);
+    }
+
+    /**
+     * Returns the current time in milliseconds.
+     * @return
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private boolean isExpired(LocalEntry entry) {
+        return localTtlSeconds > 0 && currentTimeMillis() - entry.writtenAt >= localTtlSeconds * 1000;
+    }
+
+    private boolean countEviction(int size) {
+        if (size > maxLocalSize) {
+            evictions++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A value of the local cache and the time when it was stored to the local cache.
+     */
+    private static class LocalEntry implements ValueWrapper {
+
+        private final Object value;
+
+        private final long writtenAt;
+
+        private LocalEntry(Object value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+
+        @Override
+        public Object get() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache manager which puts a bounded local cache in front of the caches of another cache
+ * manager. The local caches of the other nodes are invalidated by publishing the written and
+ * evicted keys to Redis. If the local caches are disabled, this cache manager returns the
+ * caches of the remote cache manager as they are.
+ * <p>
+ * The local entries of a cache expire after the local time to live or after the time to live
+ * of the remote cache, whichever is shorter.
+ * @author Petri Kainulainen
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwoLevelCacheManager.class);
+
+    private final CacheManager remoteCacheManager;
+
+    private final CacheInvalidationPublisher invalidationPublisher;
+
+    private final int maxLocalSize;
+
+    private final long localTtlSeconds;
+
+    private final boolean enabled;
+
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<String, TwoLevelCache>();
+
+    /**
+     * Creates a new two-level cache manager.
+     * @param remoteCacheManager    The cache manager of the remote caches.
+     * @param invalidationPublisher The publisher which is used to invalidate the entries of the other nodes.
+     * @param maxLocalSize  The maximum number of entries which are kept in each local cache.
+     * @param localTtlSeconds   The maximum time to live of the local entries in seconds. 0 means that
+     *                          the local entries expire only after the time to live of the remote cache.
+     * @param enabled   Are the local caches used.
+     */
+    public TwoLevelCacheManager(CacheManager remoteCacheManager, CacheInvalidationPublisher invalidationPublisher,
+                                int maxLocalSize, long localTtlSeconds, boolean enabled) {
+        if (enabled && maxLocalSize <= 0) {
+            throw new IllegalArgumentException("Max local size must be positive. Was: " + maxLocalSize);
+        }
+        if (enabled && localTtlSeconds < 0) {
+            throw new IllegalArgumentException("Local TTL cannot be negative. Was: " + localTtlSeconds);
+        }
+        this.remoteCacheManager = remoteCacheManager;
+        this.invalidationPublisher = invalidationPublisher;
+        this.maxLocalSize = maxLocalSize;
+        this.localTtlSeconds = localTtlSeconds;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns true if the local caches are used.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        if (!enabled) {
+            return remoteCacheManager.getCache(name);
+        }
+
+        TwoLevelCache cache = caches.get(name);
+        if (cache == null) {
+            Cache remoteCache = remoteCacheManager.getCache(name);
+            if (remoteCache == null) {
+                return null;
+            }
+
+            TwoLevelCache created = new TwoLevelCache(remoteCache, invalidationPublisher, maxLocalSize, getLocalTtlSeconds(remoteCache));
+            cache = caches.putIfAbsent(name, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+
+        return cache;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    /**
+     * Removes the invalidated entries from the local cache. The invalidations sent by this
+     * node, and the invalidations of caches which have not been used on this node, are ignored.
+     * @param invalidation  The received invalidation.
+     */
+    public void invalidateLocal(CacheInvalidation invalidation) {
+        if (invalidationPublisher.getNodeId().equals(invalidation.getOrigin())) {
+            return;
+        }
+
+        TwoLevelCache cache = caches.get(invalidation.getCacheName());
+        if (cache == null) {
+            return;
+        }
+
+        LOGGER.debug("Received cache invalidation: {}", invalidation);
+
+        if (invalidation.isClear()) {
+            cache.clearLocal();
+        }
+        else {
+            cache.evictLocal(invalidation.getKey());
+        }
+    }
+
+    /**
+     * Returns the time to live of the local entries of a cache. The local entries must not
+     * live longer than the entries of the remote cache.
+     * @param remoteCache   The remote cache.
+     * @return  The time to live in seconds. 0 means that the local entries do not expire.
+     */
+    private long getLocalTtlSeconds(Cache remoteCache) {
+        if (!(remoteCache instanceof BoundedRedisCache)) {
+            return localTtlSeconds;
+        }
+
+        RedisCacheSettings settings = ((BoundedRedisCache) remoteCache).getSettings();
+        if (!settings.isExpiring()) {
+            return localTtlSeconds;
+        }
+        if (localTtlSeconds == 0) {
+            return settings.getTtlSeconds();
+        }
+        return Math.min(localTtlSeconds, settings.getTtlSeconds());
+    }
+
+    /**
+     * Returns the statistics of the two-level caches.
+     * @return  The statistics or an empty list if the local caches are disabled.
+     */
+    public List<TwoLevelCacheStatistics> getStatistics() {
+        List<TwoLevelCacheStatistics> statistics = new ArrayList<TwoLevelCacheStatistics>();
+        for (TwoLevelCache cache: caches.values()) {
+            statistics.add(cache.getStatistics());
+        }
+        return statistics;
+    }
+}
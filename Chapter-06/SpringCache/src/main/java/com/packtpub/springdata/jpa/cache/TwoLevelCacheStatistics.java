@@ -0,0 +1,101 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The statistics of a two-level cache.
+ * @author Petri Kainulainen
+ */
+public class TwoLevelCacheStatistics {
+
+    private final String cacheName;
+    private final int localSize;
+    private final long localHits;
+    private final long remoteHits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+
+    public TwoLevelCacheStatistics(String cacheName, int localSize, long localHits, long remoteHits, long misses,
+                                   long evictions, long invalidations) {
+        this.cacheName = cacheName;
+        this.localSize = localSize;
+        this.localHits = localHits;
+        this.remoteHits = remoteHits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public int getLocalSize() {
+        return localSize;
+    }
+
+    public long getLocalHits() {
+        return localHits;
+    }
+
+    public long getRemoteHits() {
+        return remoteHits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries which were removed from the local cache because it was full.
+     * @return
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of local or remote invalidations which removed entries from the local cache.
+     * @return
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Returns the share of all reads which were served by the local cache.
+     * @return  The local hit rate or 0.0 if nothing has been read.
+     */
+    public double getLocalHitRate() {
+        return rate(localHits, localHits + remoteHits + misses);
+    }
+
+    /**
+     * Returns the share of the reads missing the local cache which were served by the remote cache.
+     * @return  The remote hit rate or 0.0 if the local cache has not been missed.
+     */
+    public double getRemoteHitRate() {
+        return rate(remoteHits, remoteHits + misses);
+    }
+
+    /**
+     * Returns the share of all reads which were served by either cache.
+     * @return  The hit rate or 0.0 if nothing has been read.
+     */
+    public double getHitRate() {
+        return rate(localHits + remoteHits, localHits + remoteHits + misses);
+    }
+
+    private double rate(long hits, long requests) {
+        if (requests == 0) {
+            return 0.0;
+        }
+        return (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
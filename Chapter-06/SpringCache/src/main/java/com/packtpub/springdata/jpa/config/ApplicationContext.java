@@ -1,18 +1,29 @@
 package com.packtpub.springdata.jpa.config;
 
 import com.jolbox.bonecp.BoneCPDataSource;
+import com.packtpub.springdata.jpa.cache.BoundedRedisCacheManager;
+import com.packtpub.springdata.jpa.cache.CacheGenerations;
+import com.packtpub.springdata.jpa.cache.CacheInvalidationListener;
+import com.packtpub.springdata.jpa.cache.CacheInvalidationPublisher;
+import com.packtpub.springdata.jpa.cache.EvictionPolicy;
+import com.packtpub.springdata.jpa.cache.RedisCacheSettings;
+import com.packtpub.springdata.jpa.cache.SingleFlightCacheLoader;
+import com.packtpub.springdata.jpa.cache.TwoLevelCacheManager;
 import com.packtpub.springdata.jpa.model.Contact;
+import com.packtpub.springdata.jpa.serializer.CompressingRedisSerializer;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.*;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
@@ -28,6 +39,8 @@ import org.springframework.web.servlet.view.JstlView;
 
 import javax.annotation.Resource;
 import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -70,6 +83,25 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
 
     private static final String PROPERTY_NAME_REDIS_HOST = "redis.host";
     private static final String PROPERTY_NAME_REDIS_PORT = "redis.port";
+    private static final String PROPERTY_NAME_REDIS_COMPRESSION_THRESHOLD = "redis.compression.threshold";
+    private static final String PROPERTY_NAME_REDIS_COMPRESSION_MAX_LENGTH = "redis.compression.max.length";
+
+    private static final String PROPERTY_NAME_CACHE_LOCAL_ENABLED = "cache.local.enabled";
+    private static final String PROPERTY_NAME_CACHE_LOCAL_MAX_SIZE = "cache.local.max.size";
+    private static final String PROPERTY_NAME_CACHE_LOCAL_TTL_SECONDS = "cache.local.ttl.seconds";
+
+    private static final String PROPERTY_NAME_CACHE_LOAD_SINGLE_FLIGHT_ENABLED = "cache.load.single.flight.enabled";
+    private static final String PROPERTY_NAME_CACHE_LOAD_LOCK_ENABLED = "cache.load.lock.enabled";
+    private static final String PROPERTY_NAME_CACHE_LOAD_LOCK_TIMEOUT_SECONDS = "cache.load.lock.timeout.seconds";
+    private static final String PROPERTY_NAME_CACHE_LOAD_LOCK_POLL_MILLIS = "cache.load.lock.poll.millis";
+
+    private static final String PROPERTY_NAME_CACHE_REDIS_NAMES = "cache.redis.names";
+    private static final String PROPERTY_NAME_CACHE_REDIS_TOUCH_SAMPLE_RATE = "cache.redis.touch.sample.rate";
+    private static final String PROPERTY_PREFIX_CACHE_REDIS = "cache.redis.";
+    private static final String PROPERTY_PREFIX_CACHE_REDIS_DEFAULT = "cache.redis.default";
+    private static final String PROPERTY_SUFFIX_CACHE_TTL_SECONDS = ".ttl.seconds";
+    private static final String PROPERTY_SUFFIX_CACHE_MAX_ENTRIES = ".max.entries";
+    private static final String PROPERTY_SUFFIX_CACHE_EVICTION_POLICY = ".eviction.policy";
 
     @Resource
     private Environment environment;
@@ -171,17 +203,130 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
         RedisTemplate<String, String> redisTemplate = new RedisTemplate<String, String>();
 
         redisTemplate.setConnectionFactory(redisConnectionFactory());
+        redisTemplate.setValueSerializer(cacheValueSerializer());
 
         return redisTemplate;
     }
 
     /**
-     * Configures the cache manager
+     * Configures the serializer of the cached values. The values are serialized by using
+     * the JDK serialization and compressed if they are larger than the compression threshold.
      * @return
      */
     @Bean
-    public RedisCacheManager cacheManager() {
-        return new RedisCacheManager(redisTemplate());
+    public CompressingRedisSerializer<Object> cacheValueSerializer() {
+        int threshold = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_COMPRESSION_THRESHOLD));
+        int maxLength = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_COMPRESSION_MAX_LENGTH));
+        return new CompressingRedisSerializer<Object>(new JdkSerializationRedisSerializer(), threshold, maxLength);
+    }
+
+    /**
+     * Configures the cache manager. The Redis cache manager is not registered as a bean
+     * because the caching support requires that there is only one cache manager. If the
+     * local caches are enabled, the most recently used entries are kept in memory and
+     * the local caches of the other nodes are invalidated via Redis when an entry is
+     * updated or evicted.
+     * @return
+     */
+    @Bean
+    public TwoLevelCacheManager cacheManager() {
+        boolean localEnabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_CACHE_LOCAL_ENABLED));
+        int maxLocalSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_CACHE_LOCAL_MAX_SIZE));
+        long localTtlSeconds = Long.parseLong(environment.getRequiredProperty(PROPERTY_NAME_CACHE_LOCAL_TTL_SECONDS));
+
+        return new TwoLevelCacheManager(redisCacheManager(), cacheInvalidationPublisher(), maxLocalSize, localTtlSeconds, localEnabled);
+    }
+
+    /**
+     * Creates the manager of the Redis caches. The time to live, the maximum number of entries
+     * and the eviction policy of each cache listed in the cache names property are read from
+     * the properties of the cache. The other caches use the default settings. Only every Nth hit
+     * of a cache updates the eviction index, where N is read from the touch sample rate property.
+     * @return
+     */
+    private BoundedRedisCacheManager redisCacheManager() {
+        Map<String, RedisCacheSettings> cacheSettings = new HashMap<String, RedisCacheSettings>();
+
+        for (String cacheName: environment.getRequiredProperty(PROPERTY_NAME_CACHE_REDIS_NAMES).split(",")) {
+            cacheName = cacheName.trim();
+            cacheSettings.put(cacheName, redisCacheSettings(PROPERTY_PREFIX_CACHE_REDIS + cacheName));
+        }
+
+        int touchSampleRate = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_CACHE_REDIS_TOUCH_SAMPLE_RATE));
+
+        return new BoundedRedisCacheManager(redisTemplate(), redisCacheSettings(PROPERTY_PREFIX_CACHE_REDIS_DEFAULT), cacheSettings,
+                touchSampleRate);
+    }
+
+    private RedisCacheSettings redisCacheSettings(String propertyPrefix) {
+        long ttlSeconds = Long.parseLong(environment.getRequiredProperty(propertyPrefix + PROPERTY_SUFFIX_CACHE_TTL_SECONDS));
+        long maxEntries = Long.parseLong(environment.getRequiredProperty(propertyPrefix + PROPERTY_SUFFIX_CACHE_MAX_ENTRIES));
+        EvictionPolicy evictionPolicy = EvictionPolicy.valueOf(environment.getRequiredProperty(propertyPrefix + PROPERTY_SUFFIX_CACHE_EVICTION_POLICY));
+
+        return new RedisCacheSettings(ttlSeconds, maxEntries, evictionPolicy);
+    }
+
+    /**
+     * Configures the loader which loads the missing cache values so that only one loader
+     * per key is run at a time. If the lock is enabled, the loaders of all nodes are
+     * coordinated by using a Redis lock.
+     * @return
+     */
+    @Bean
+    public SingleFlightCacheLoader singleFlightCacheLoader() {
+        boolean enabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_CACHE_LOAD_SINGLE_FLIGHT_ENABLED));
+        boolean lockEnabled = Boolean.parseBoolean(environment.getRequiredProperty(PROPERTY_NAME_CACHE_LOAD_LOCK_ENABLED));
+        long lockTimeoutSeconds = Long.parseLong(environment.getRequiredProperty(PROPERTY_NAME_CACHE_LOAD_LOCK_TIMEOUT_SECONDS));
+        long lockPollMillis = Long.parseLong(environment.getRequiredProperty(PROPERTY_NAME_CACHE_LOAD_LOCK_POLL_MILLIS));
+
+        return new SingleFlightCacheLoader(cacheManager(), redisTemplate(), enabled, lockEnabled, lockTimeoutSeconds, lockPollMillis);
+    }
+
+    /**
+     * Configures the generations of the caches which are invalidated all at once.
+     * @return
+     */
+    @Bean
+    public CacheGenerations cacheGenerations() {
+        return new CacheGenerations(redisTemplate());
+    }
+
+    /**
+     * Configures the publisher of the local cache invalidations.
+     * @return
+     */
+    @Bean
+    public CacheInvalidationPublisher cacheInvalidationPublisher() {
+        return new CacheInvalidationPublisher(redisTemplate());
+    }
+
+    /**
+     * Configures the listener which invalidates the local caches when an entry is
+     * updated or evicted on another node.
+     * @return
+     */
+    @Bean
+    public CacheInvalidationListener cacheInvalidationListener() {
+        return new CacheInvalidationListener(cacheManager(), cacheValueSerializer());
+    }
+
+    /**
+     * Configures the message listener container. The cache invalidation listener is
+     * registered only if the local caches are enabled.
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+
+        container.setConnectionFactory(redisConnectionFactory());
+        if (cacheManager().isEnabled()) {
+            container.addMessageListener(cacheInvalidationListener(),
+                    new ChannelTopic(CacheInvalidationPublisher.CHANNEL_CACHE_INVALIDATIONS)
+            );
+        }
+
+        return container;
     }
 
     /**
@@ -1,5 +1,8 @@
 package com.packtpub.springdata.jpa.service;
 
+import com.packtpub.springdata.jpa.cache.CacheGenerations;
+import com.packtpub.springdata.jpa.cache.CacheValueLoader;
+import com.packtpub.springdata.jpa.cache.SingleFlightCacheLoader;
 import com.packtpub.springdata.jpa.dto.ContactDTO;
 import com.packtpub.springdata.jpa.dto.SearchDTO;
 import com.packtpub.springdata.jpa.model.Contact;
@@ -25,6 +28,16 @@ import static com.packtpub.springdata.jpa.repository.ContactSpecifications.first
 
 /**
  * This implementation communicates with the data storage by using Spring Data JPA.
+ * <p>
+ * The contact lists and counts are cached in caches whose keys contain the current generation
+ * of the cache. The generations are incremented when contacts are added, updated or deleted,
+ * which invalidates all cached lists and counts without finding their keys. The contact count
+ * is not affected by updates, so it is kept in a cache of its own.
+ * <p>
+ * The contacts are read through the single-flight cache loader instead of the cacheable
+ * annotation, so that concurrent requests which miss the same contact load it only once.
+ * Updates and deletes load the contact from the repository, because the cached contact is
+ * a detached entity which may be stale.
  * @author Petri Kainulainen
  */
 @Service
@@ -32,6 +45,18 @@ public class RepositoryContactService implements ContactService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryContactService.class);
 
+    public static final String CACHE_CONTACTS = "contacts";
+    public static final String CACHE_CONTACT_PAGES = "contactPages";
+    public static final String CACHE_CONTACT_COUNTS = "contactCounts";
+
+    private static final String KEY_GENERATION = "#root.target.getCacheGeneration(#root.caches[0].name) + ':";
+
+    @Resource
+    private CacheGenerations cacheGenerations;
+
+    @Resource
+    private SingleFlightCacheLoader cacheLoader;
+
     @Resource
     private ContactRepository repository;
 
@@ -46,9 +71,13 @@ public class RepositoryContactService implements ContactService {
                 .phoneNumber(added.getPhoneNumber())
                 .build();
 
-        return repository.save(contact);
+        Contact saved = repository.save(contact);
+        cacheGenerations.increment(CACHE_CONTACT_PAGES, CACHE_CONTACT_COUNTS);
+
+        return saved;
     }
 
+    @Cacheable(value = CACHE_CONTACT_COUNTS, key = KEY_GENERATION + "count'")
     @Transactional(readOnly = true)
     @Override
     public long count() {
@@ -56,6 +85,7 @@ public class RepositoryContactService implements ContactService {
         return repository.count();
     }
 
+    @Cacheable(value = CACHE_CONTACT_PAGES, key = KEY_GENERATION + "count:' + #p0.searchTerm")
     @Transactional(readOnly = true)
     @Override
     public long count(SearchDTO dto) {
@@ -64,20 +94,29 @@ public class RepositoryContactService implements ContactService {
         return repository.count(contactSpec);
     }
 
-    @CacheEvict("contacts")
+    @CacheEvict(CACHE_CONTACTS)
     @Transactional(rollbackFor = NotFoundException.class)
     @Override
     public Contact deleteById(Long id) throws NotFoundException {
         LOGGER.debug("Deleting contact by id: {}", id);
 
-        Contact deleted = findById(id);
+        //The cached contact is detached and possibly stale, so it is not used.
+        Contact deleted = repository.findOne(id);
+
+        if (deleted == null) {
+            LOGGER.debug("No contact found with id: {}", id);
+            throw new NotFoundException("No contact found with id: " + id);
+        }
+
         repository.delete(deleted);
+        cacheGenerations.increment(CACHE_CONTACT_PAGES, CACHE_CONTACT_COUNTS);
 
         LOGGER.debug("Deleted contact: {}", deleted);
 
         return deleted;
     }
 
+    @Cacheable(value = CACHE_CONTACT_PAGES, key = KEY_GENERATION + "page:' + #p0 + ':' + #p1")
     @Transactional(readOnly = true)
     @Override
     public List<Contact> findAllForPage(int pageIndex, int pageSize) {
@@ -89,13 +128,17 @@ public class RepositoryContactService implements ContactService {
         return page.getContent();
     }
 
-    @Cacheable("contacts")
     @Transactional(readOnly = true)
     @Override
-    public Contact findById(Long id) throws NotFoundException {
+    public Contact findById(final Long id) throws NotFoundException {
         LOGGER.debug("Finding contact by id: {}", id);
 
-        Contact found = repository.findOne(id);
+        Contact found = cacheLoader.get(CACHE_CONTACTS, id, new CacheValueLoader<Contact>() {
+            @Override
+            public Contact load() {
+                return repository.findOne(id);
+            }
+        });
 
         if (found == null) {
             LOGGER.debug("No contact found with id: {}", id);
@@ -107,6 +150,7 @@ public class RepositoryContactService implements ContactService {
         return found;
     }
 
+    @Cacheable(value = CACHE_CONTACT_PAGES, key = KEY_GENERATION + "search:' + #p0.pageIndex + ':' + #p0.pageSize + ':' + #p0.searchTerm")
     @Transactional(readOnly = true)
     @Override
     public List<Contact> search(SearchDTO dto) {
@@ -119,6 +163,16 @@ public class RepositoryContactService implements ContactService {
         return page.getContent();
     }
 
+    /**
+     * Returns the current generation of a cache. This method is used to build the keys of
+     * the cached contact lists and counts.
+     * @param cacheName The name of the cache.
+     * @return
+     */
+    public long getCacheGeneration(String cacheName) {
+        return cacheGenerations.getGeneration(cacheName);
+    }
+
     /**
      * Creates a Pageable object which is used to pass the pagination arguments to
      * Spring Data.
@@ -141,7 +195,7 @@ public class RepositoryContactService implements ContactService {
         );
     }
 
-    @CachePut(value = "contacts", key="#p0.id")
+    @CachePut(value = CACHE_CONTACTS, key="#p0.id")
     @Transactional(rollbackFor = NotFoundException.class)
     @Override
     public Contact update(ContactDTO updated) throws NotFoundException {
@@ -156,6 +210,7 @@ public class RepositoryContactService implements ContactService {
 
         found.update(updated.getFirstName(), updated.getLastName(), updated.getEmailAddress(), updated.getPhoneNumber());
         found.updateAddress(updated.getStreetAddress(), updated.getPostCode(), updated.getPostOffice(), updated.getState(), updated.getCountry());
+        cacheGenerations.increment(CACHE_CONTACT_PAGES);
 
         return found;
     }
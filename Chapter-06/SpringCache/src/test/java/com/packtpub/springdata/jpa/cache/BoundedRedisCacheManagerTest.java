@@ -0,0 +1,77 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BoundedRedisCacheManagerTest {
+
+    private static final String CACHE_NAME = "contacts";
+    private static final String OTHER_CACHE_NAME = "other";
+
+    private static final int TOUCH_SAMPLE_RATE = 4;
+
+    private RedisCacheSettings defaultSettings = new RedisCacheSettings(60, 100, EvictionPolicy.LRU);
+
+    private RedisCacheSettings contactSettings = new RedisCacheSettings(3600, 1000, EvictionPolicy.LFU);
+
+    private RedisTemplate redisTemplateMock;
+
+    private Map<String, RedisCacheSettings> cacheSettings;
+
+    private BoundedRedisCacheManager cacheManager;
+
+    @Before
+    public void setUp() {
+        redisTemplateMock = mock(RedisTemplate.class);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(new StringRedisSerializer());
+
+        cacheSettings = new HashMap<String, RedisCacheSettings>();
+        cacheSettings.put(CACHE_NAME, contactSettings);
+
+        cacheManager = new BoundedRedisCacheManager(redisTemplateMock, defaultSettings, cacheSettings, TOUCH_SAMPLE_RATE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithZeroTouchSampleRate() {
+        new BoundedRedisCacheManager(redisTemplateMock, defaultSettings, cacheSettings, 0);
+    }
+
+    @Test
+    public void getCacheWithSettings() {
+        BoundedRedisCache cache = (BoundedRedisCache) cacheManager.getCache(CACHE_NAME);
+
+        assertEquals(CACHE_NAME, cache.getName());
+        assertSame(contactSettings, cache.getSettings());
+        assertSame(cache, cacheManager.getCache(CACHE_NAME));
+    }
+
+    @Test
+    public void getCacheWithDefaultSettings() {
+        BoundedRedisCache cache = (BoundedRedisCache) cacheManager.getCache(OTHER_CACHE_NAME);
+
+        assertSame(defaultSettings, cache.getSettings());
+    }
+
+    @Test
+    public void getCacheNames() {
+        assertTrue(cacheManager.getCacheNames().isEmpty());
+
+        cacheManager.getCache(CACHE_NAME);
+
+        assertEquals(1, cacheManager.getCacheNames().size());
+        assertTrue(cacheManager.getCacheNames().contains(CACHE_NAME));
+    }
+}
@@ -0,0 +1,331 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BoundedRedisCacheTest {
+
+    private static final String CACHE_NAME = "contacts";
+
+    private static final Long KEY = Long.valueOf(1);
+    private static final Long EVICTED_KEY = Long.valueOf(2);
+
+    private static final String VALUE = "value";
+
+    private static final long TTL_SECONDS = 60;
+    private static final long MAX_ENTRIES = 2;
+
+    private static final double LOWEST_SCORE = 4;
+
+    private static final int TOUCH_SAMPLE_RATE = 4;
+
+    private static final long EXPIRED_COUNT = 3;
+
+    private RedisTemplate redisTemplateMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer keySerializer = new JdkSerializationRedisSerializer();
+
+    private RedisSerializer valueSerializer = new JdkSerializationRedisSerializer();
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisTemplateMock = mock(RedisTemplate.class);
+        redisConnectionMock = mock(RedisConnection.class);
+
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(valueSerializer);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createSettingsWithNegativeTtl() {
+        new RedisCacheSettings(-1, MAX_ENTRIES, EvictionPolicy.LRU);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createSettingsWithNegativeMaxEntries() {
+        new RedisCacheSettings(TTL_SECONDS, -1, EvictionPolicy.LRU);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithZeroTouchSampleRate() {
+        new BoundedRedisCache(CACHE_NAME, new RedisCacheSettings(TTL_SECONDS, MAX_ENTRIES, EvictionPolicy.LRU), redisTemplateMock, 0);
+    }
+
+    @Test
+    public void getWithLru() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+        when(redisConnectionMock.get(buildKey(KEY))).thenReturn(valueSerializer.serialize(VALUE));
+
+        assertEquals(VALUE, cache.get(KEY).get());
+
+        verify(redisConnectionMock).zAdd(eq(buildIndexKey()), anyDouble(), eq(buildKey(KEY)));
+        assertEquals(1, cache.getStatistics().getHits());
+    }
+
+    @Test
+    public void getWithLfu() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LFU);
+        when(redisConnectionMock.get(buildKey(KEY))).thenReturn(valueSerializer.serialize(VALUE));
+
+        assertEquals(VALUE, cache.get(KEY).get());
+
+        verify(redisConnectionMock).zIncrBy(buildIndexKey(), 1, buildKey(KEY));
+    }
+
+    @Test
+    public void getWithSampledTouchAndLru() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU, TOUCH_SAMPLE_RATE);
+        when(redisConnectionMock.get(buildKey(KEY))).thenReturn(valueSerializer.serialize(VALUE));
+
+        for (int read = 1; read < TOUCH_SAMPLE_RATE; read++) {
+            assertEquals(VALUE, cache.get(KEY).get());
+        }
+        verify(redisConnectionMock, never()).zAdd(any(byte[].class), anyDouble(), any(byte[].class));
+
+        assertEquals(VALUE, cache.get(KEY).get());
+        verify(redisConnectionMock, times(1)).zAdd(eq(buildIndexKey()), anyDouble(), eq(buildKey(KEY)));
+    }
+
+    @Test
+    public void getWithSampledTouchAndLfu() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LFU, TOUCH_SAMPLE_RATE);
+        when(redisConnectionMock.get(buildKey(KEY))).thenReturn(valueSerializer.serialize(VALUE));
+
+        for (int read = 0; read < TOUCH_SAMPLE_RATE; read++) {
+            cache.get(KEY);
+        }
+
+        verify(redisConnectionMock, times(1)).zIncrBy(buildIndexKey(), TOUCH_SAMPLE_RATE, buildKey(KEY));
+        assertEquals(TOUCH_SAMPLE_RATE, cache.getStatistics().getHits());
+    }
+
+    @Test
+    public void getMissing() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+        when(redisConnectionMock.get(buildKey(KEY))).thenReturn(null);
+
+        assertNull(cache.get(KEY));
+
+        verify(redisConnectionMock).get(buildKey(KEY));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        RedisCacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getMisses());
+        assertEquals(0.0, statistics.getHitRate());
+    }
+
+    @Test
+    public void putWithTtl() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+        when(redisConnectionMock.exec()).thenReturn(createPutResults(EXPIRED_COUNT, MAX_ENTRIES));
+
+        cache.put(KEY, VALUE);
+
+        InOrder inOrder = inOrder(redisConnectionMock);
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(redisConnectionMock).setEx(buildKey(KEY), TTL_SECONDS, valueSerializer.serialize(VALUE));
+        inOrder.verify(redisConnectionMock).zAdd(eq(buildIndexKey()), anyDouble(), eq(buildKey(KEY)));
+        inOrder.verify(redisConnectionMock).zRemRangeByScore(eq(buildIndexKey()), eq(0.0), anyDouble());
+        inOrder.verify(redisConnectionMock).zCard(buildIndexKey());
+        inOrder.verify(redisConnectionMock).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        RedisCacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getPuts());
+        assertEquals(EXPIRED_COUNT, statistics.getExpirations());
+    }
+
+    @Test
+    public void putWithoutTtlAndLimit() {
+        BoundedRedisCache cache = new BoundedRedisCache(CACHE_NAME, new RedisCacheSettings(0, 0, EvictionPolicy.LRU), redisTemplateMock, 1);
+        when(redisConnectionMock.exec()).thenReturn(Arrays.<Object>asList(null, null));
+
+        cache.put(KEY, VALUE);
+
+        verify(redisConnectionMock).multi();
+        verify(redisConnectionMock).set(buildKey(KEY), valueSerializer.serialize(VALUE));
+        verify(redisConnectionMock).zAdd(eq(buildIndexKey()), anyDouble(), eq(buildKey(KEY)));
+        verify(redisConnectionMock).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void putToFullCache() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+        when(redisConnectionMock.exec())
+                .thenReturn(createPutResults(0, MAX_ENTRIES + 1))
+                .thenReturn(Arrays.<Object>asList(1L, 1L));
+        when(redisConnectionMock.zCard(buildIndexKey())).thenReturn(MAX_ENTRIES + 1);
+
+        Set<byte[]> evicted = Collections.singleton(buildKey(EVICTED_KEY));
+        when(redisConnectionMock.zRange(buildIndexKey(), 0, 0)).thenReturn(evicted);
+
+        cache.put(KEY, VALUE);
+
+        InOrder inOrder = inOrder(redisConnectionMock);
+        inOrder.verify(redisConnectionMock).exec();
+        inOrder.verify(redisConnectionMock).watch(buildIndexKey());
+        inOrder.verify(redisConnectionMock).zRange(buildIndexKey(), 0, 0);
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(redisConnectionMock).del(buildKey(EVICTED_KEY));
+        inOrder.verify(redisConnectionMock).zRemRange(buildIndexKey(), 0, 0);
+        inOrder.verify(redisConnectionMock).exec();
+        verify(redisConnectionMock, never()).zRem(any(byte[].class), any(byte[].class));
+
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void putToFullCacheWhenIndexIsChanged() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+        when(redisConnectionMock.exec())
+                .thenReturn(createPutResults(0, MAX_ENTRIES + 1))
+                .thenReturn(null);
+        when(redisConnectionMock.zCard(buildIndexKey())).thenReturn(MAX_ENTRIES + 1);
+        when(redisConnectionMock.zRange(buildIndexKey(), 0, 0)).thenReturn(Collections.singleton(buildKey(EVICTED_KEY)));
+
+        cache.put(KEY, VALUE);
+
+        assertEquals(0, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void putToFullCacheWhenOverflowIsAlreadyEvicted() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+        when(redisConnectionMock.exec()).thenReturn(createPutResults(0, MAX_ENTRIES + 1));
+        when(redisConnectionMock.zCard(buildIndexKey())).thenReturn(MAX_ENTRIES);
+
+        cache.put(KEY, VALUE);
+
+        verify(redisConnectionMock).watch(buildIndexKey());
+        verify(redisConnectionMock).unwatch();
+        verify(redisConnectionMock, never()).zRange(any(byte[].class), anyLong(), anyLong());
+        verify(redisConnectionMock, never()).zRemRange(any(byte[].class), anyLong(), anyLong());
+        assertEquals(0, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void putNewEntryWithLfu() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LFU);
+        when(redisConnectionMock.exec()).thenReturn(Arrays.<Object>asList(null, null, MAX_ENTRIES));
+        when(redisConnectionMock.zScore(buildIndexKey(), buildKey(KEY))).thenReturn(null);
+
+        RedisZSetCommands.Tuple lowest = mock(RedisZSetCommands.Tuple.class);
+        when(lowest.getScore()).thenReturn(LOWEST_SCORE);
+        when(redisConnectionMock.zRangeWithScores(buildIndexKey(), 0, 0)).thenReturn(Collections.singleton(lowest));
+
+        cache.put(KEY, VALUE);
+
+        InOrder inOrder = inOrder(redisConnectionMock);
+        inOrder.verify(redisConnectionMock).zRangeWithScores(buildIndexKey(), 0, 0);
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(redisConnectionMock).zAdd(buildIndexKey(), LOWEST_SCORE + 1, buildKey(KEY));
+        inOrder.verify(redisConnectionMock).exec();
+        verify(redisConnectionMock, never()).zRemRangeByScore(any(byte[].class), anyDouble(), anyDouble());
+    }
+
+    @Test
+    public void putExistingEntryWithLfu() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LFU);
+        when(redisConnectionMock.exec()).thenReturn(Arrays.<Object>asList(null, null, MAX_ENTRIES));
+        when(redisConnectionMock.zScore(buildIndexKey(), buildKey(KEY))).thenReturn(LOWEST_SCORE);
+
+        cache.put(KEY, VALUE);
+
+        InOrder inOrder = inOrder(redisConnectionMock);
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(redisConnectionMock).zIncrBy(buildIndexKey(), 1, buildKey(KEY));
+        inOrder.verify(redisConnectionMock).exec();
+        verify(redisConnectionMock, never()).zAdd(any(byte[].class), anyDouble(), any(byte[].class));
+    }
+
+    @Test
+    public void evict() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+
+        cache.evict(KEY);
+
+        verify(redisConnectionMock).del(buildKey(KEY));
+        verify(redisConnectionMock).zRem(buildIndexKey(), buildKey(KEY));
+    }
+
+    @Test
+    public void clear() {
+        BoundedRedisCache cache = createCache(EvictionPolicy.LRU);
+
+        Set<byte[]> keys = new LinkedHashSet<byte[]>();
+        keys.add(buildKey(KEY));
+        keys.add(buildKey(EVICTED_KEY));
+        when(redisConnectionMock.zRange(eq(buildIndexKey()), eq(0L), anyLong()))
+                .thenReturn(keys)
+                .thenReturn(Collections.<byte[]>emptySet());
+
+        cache.clear();
+
+        verify(redisConnectionMock).del(buildKey(KEY), buildKey(EVICTED_KEY));
+        verify(redisConnectionMock).zRemRange(buildIndexKey(), 0, 1);
+        verify(redisConnectionMock).del(buildIndexKey());
+    }
+
+    private BoundedRedisCache createCache(EvictionPolicy evictionPolicy) {
+        return createCache(evictionPolicy, 1);
+    }
+
+    private BoundedRedisCache createCache(EvictionPolicy evictionPolicy, int touchSampleRate) {
+        return new BoundedRedisCache(CACHE_NAME, new RedisCacheSettings(TTL_SECONDS, MAX_ENTRIES, evictionPolicy), redisTemplateMock,
+                touchSampleRate);
+    }
+
+    private List<Object> createPutResults(long expiredCount, long size) {
+        return Arrays.<Object>asList(null, null, expiredCount, size);
+    }
+
+    private byte[] buildKey(Object key) {
+        byte[] prefix = stringSerializer.serialize(CACHE_NAME + ":");
+        byte[] rawKey = keySerializer.serialize(key);
+
+        byte[] prefixedKey = new byte[prefix.length + rawKey.length];
+        System.arraycopy(prefix, 0, prefixedKey, 0, prefix.length);
+        System.arraycopy(rawKey, 0, prefixedKey, prefix.length, rawKey.length);
+        return prefixedKey;
+    }
+
+    private byte[] buildIndexKey() {
+        return stringSerializer.serialize(CACHE_NAME + "~keys");
+    }
+}
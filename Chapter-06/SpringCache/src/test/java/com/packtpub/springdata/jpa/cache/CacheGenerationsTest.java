@@ -0,0 +1,101 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class CacheGenerationsTest {
+
+    private static final String CACHE_NAME = "contactPages";
+    private static final String OTHER_CACHE_NAME = "contactCounts";
+
+    private static final long GENERATION = 3;
+
+    private CacheGenerations generations;
+
+    private RedisTemplate<String, Object> redisTemplateMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisTemplateMock = mock(RedisTemplate.class);
+        redisConnectionMock = mock(RedisConnection.class);
+
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+
+        generations = new CacheGenerations(redisTemplateMock);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void getGeneration() {
+        when(redisConnectionMock.get(buildKey(CACHE_NAME))).thenReturn(stringSerializer.serialize(String.valueOf(GENERATION)));
+
+        assertEquals(GENERATION, generations.getGeneration(CACHE_NAME));
+    }
+
+    @Test
+    public void getGenerationWhenNotIncremented() {
+        when(redisConnectionMock.get(buildKey(CACHE_NAME))).thenReturn(null);
+
+        assertEquals(0, generations.getGeneration(CACHE_NAME));
+    }
+
+    @Test
+    public void incrementWithoutTransaction() {
+        generations.increment(CACHE_NAME, OTHER_CACHE_NAME);
+
+        verify(redisConnectionMock, times(1)).incr(buildKey(CACHE_NAME));
+        verify(redisConnectionMock, times(1)).incr(buildKey(OTHER_CACHE_NAME));
+    }
+
+    @Test
+    public void incrementInTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        generations.increment(CACHE_NAME);
+
+        verifyZeroInteractions(redisConnectionMock);
+
+        for (TransactionSynchronization synchronization: TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+
+        verify(redisConnectionMock, times(1)).incr(buildKey(CACHE_NAME));
+    }
+
+    private byte[] buildKey(String cacheName) {
+        return stringSerializer.serialize(CacheGenerations.KEY_GENERATION_PREFIX + cacheName);
+    }
+}
@@ -0,0 +1,149 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the latency of the callers when a popular cache entry disappears and many callers
+ * miss it at the same time. The database is simulated by a connection pool of a few connections
+ * and a query which takes a fixed time, which means that the queries of the callers are queued
+ * when the pool is exhausted.
+ * <p>
+ * Each round evicts the entry and releases all callers at once. The benchmark compares a loader
+ * which loads the value for every caller with a single-flight loader, and writes the latency
+ * percentiles and the number of database queries to the log. The benchmark is not run as a part
+ * of the test suite, and it should be run by using the test class path of the project.
+ * @author Petri Kainulainen
+ */
+public class CacheStampedeBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheStampedeBenchmark.class);
+
+    private static final String CACHE_NAME = "contacts";
+    private static final Long KEY = Long.valueOf(1);
+
+    private static final int CALLER_COUNT = 200;
+    private static final int CONNECTION_POOL_SIZE = 4;
+    private static final long QUERY_MILLIS = 10;
+
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLER_COUNT);
+
+        try {
+            run("every caller loads", executor, false);
+            run("single-flight", executor, true);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void run(String name, ExecutorService executor, boolean singleFlight) throws Exception {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+        SingleFlightCacheLoader loader = new SingleFlightCacheLoader(cacheManager, null, singleFlight, false, 0, 0);
+        Database database = new Database();
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            cacheManager.getCache(CACHE_NAME).evict(KEY);
+            runRound(executor, loader, database);
+        }
+
+        database.queries.set(0);
+        List<Long> latencies = new ArrayList<Long>();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            cacheManager.getCache(CACHE_NAME).evict(KEY);
+            latencies.addAll(runRound(executor, loader, database));
+        }
+
+        long[] sorted = new long[latencies.size()];
+        for (int index = 0; index < sorted.length; index++) {
+            sorted[index] = latencies.get(index);
+        }
+        Arrays.sort(sorted);
+
+        LOGGER.debug("{}: p50: {} ms, p99: {} ms, max: {} ms, queries per round: {}", new Object[] {
+                name,
+                toMillis(percentile(sorted, 50)),
+                toMillis(percentile(sorted, 99)),
+                toMillis(sorted[sorted.length - 1]),
+                database.queries.get() / MEASURED_ROUNDS
+        });
+    }
+
+    private static List<Long> runRound(ExecutorService executor, final SingleFlightCacheLoader loader,
+                                       final Database database) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        for (int index = 0; index < CALLER_COUNT; index++) {
+            results.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    start.await();
+                    long started = System.nanoTime();
+                    loader.get(CACHE_NAME, KEY, database);
+                    return System.nanoTime() - started;
+                }
+            }));
+        }
+
+        start.countDown();
+
+        List<Long> latencies = new ArrayList<Long>();
+        for (Future<Long> result: results) {
+            latencies.add(result.get());
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * A database whose queries wait for a free connection and take a fixed time.
+     */
+    private static class Database implements CacheValueLoader<String> {
+
+        private final Semaphore connections = new Semaphore(CONNECTION_POOL_SIZE);
+
+        private final AtomicInteger queries = new AtomicInteger();
+
+        @Override
+        public String load() {
+            connections.acquireUninterruptibly();
+            try {
+                queries.incrementAndGet();
+                Thread.sleep(QUERY_MILLIS);
+                return "contact";
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            finally {
+                connections.release();
+            }
+        }
+    }
+}
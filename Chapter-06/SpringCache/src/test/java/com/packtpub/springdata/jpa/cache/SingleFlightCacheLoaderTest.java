@@ -0,0 +1,334 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class SingleFlightCacheLoaderTest {
+
+    private static final String CACHE_NAME = "contacts";
+
+    private static final Long KEY = Long.valueOf(1);
+
+    private static final String VALUE = "value";
+
+    private static final int CALLER_COUNT = 20;
+
+    private static final long LOCK_TIMEOUT_SECONDS = 1;
+    private static final long LOCK_POLL_MILLIS = 10;
+
+    private CacheManager cacheManager;
+
+    private RedisTemplate redisTemplateMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    private AtomicInteger loadCount;
+
+    @Before
+    public void setUp() {
+        cacheManager = new ConcurrentMapCacheManager();
+
+        redisTemplateMock = mock(RedisTemplate.class);
+        redisConnectionMock = mock(RedisConnection.class);
+
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+
+        loadCount = new AtomicInteger();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithZeroLockTimeout() {
+        new SingleFlightCacheLoader(cacheManager, redisTemplateMock, true, true, 0, LOCK_POLL_MILLIS);
+    }
+
+    @Test
+    public void getCached() {
+        getCache().put(KEY, VALUE);
+
+        assertEquals(VALUE, createLoader(true, false).get(CACHE_NAME, KEY, createValueLoader(VALUE)));
+        assertEquals(0, loadCount.get());
+    }
+
+    @Test
+    public void getMissing() {
+        SingleFlightCacheLoader loader = createLoader(true, false);
+
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader(VALUE)));
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader(VALUE)));
+
+        assertEquals(1, loadCount.get());
+        assertEquals(VALUE, getCache().get(KEY).get());
+        assertEquals(1, loader.getStatistics().getLoads());
+    }
+
+    @Test
+    public void getNotFound() {
+        SingleFlightCacheLoader loader = createLoader(true, false);
+
+        assertNull(loader.get(CACHE_NAME, KEY, createValueLoader(null)));
+
+        assertNull(getCache().get(KEY));
+    }
+
+    @Test
+    public void getWhenLoaderFails() {
+        SingleFlightCacheLoader loader = createLoader(true, false);
+
+        try {
+            loader.get(CACHE_NAME, KEY, new CacheValueLoader<String>() {
+                @Override
+                public String load() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail("Should have thrown an exception");
+        }
+        catch (IllegalStateException e) {
+            assertNull(getCache().get(KEY));
+        }
+
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader(VALUE)));
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        SingleFlightCacheLoader loader = createLoader(true, false);
+
+        List<String> values = getConcurrently(loader);
+
+        assertEquals(1, loadCount.get());
+        for (String value: values) {
+            assertEquals(VALUE, value);
+        }
+        assertEquals(1, loader.getStatistics().getLoads());
+    }
+
+    @Test
+    public void concurrentMissesWhenDisabled() throws Exception {
+        SingleFlightCacheLoader loader = createLoader(false, false);
+
+        getConcurrently(loader);
+
+        assertTrue(loadCount.get() > 1);
+    }
+
+    @Test
+    public void getWithLock() {
+        final byte[][] token = stubAcquiredLock();
+        when(redisConnectionMock.get(buildLockKey())).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) throws Throwable {
+                return token[0];
+            }
+        });
+
+        SingleFlightCacheLoader loader = createLoader(true, true);
+
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader(VALUE)));
+
+        assertEquals(1, loadCount.get());
+
+        InOrder inOrder = inOrder(redisConnectionMock);
+        inOrder.verify(redisConnectionMock).watch(buildLockKey());
+        inOrder.verify(redisConnectionMock).exists(buildLockKey());
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(redisConnectionMock).setEx(eq(buildLockKey()), eq(LOCK_TIMEOUT_SECONDS), any(byte[].class));
+        inOrder.verify(redisConnectionMock).exec();
+        inOrder.verify(redisConnectionMock).watch(buildLockKey());
+        inOrder.verify(redisConnectionMock).get(buildLockKey());
+        inOrder.verify(redisConnectionMock).multi();
+        inOrder.verify(redisConnectionMock).del(buildLockKey());
+        inOrder.verify(redisConnectionMock).exec();
+    }
+
+    @Test
+    public void getWhenLockIsTakenOverBeforeRelease() {
+        stubAcquiredLock();
+        when(redisConnectionMock.get(buildLockKey())).thenReturn(stringSerializer.serialize("other"));
+
+        SingleFlightCacheLoader loader = createLoader(true, true);
+
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader(VALUE)));
+
+        verify(redisConnectionMock, times(1)).unwatch();
+        verify(redisConnectionMock, times(1)).exec();
+        verify(redisConnectionMock, never()).del(any(byte[].class));
+    }
+
+    @Test
+    public void getWhenLockIsTakenByOtherNodeDuringAcquire() {
+        when(redisConnectionMock.exists(buildLockKey())).thenReturn(false);
+        when(redisConnectionMock.exec()).thenAnswer(new Answer<List<Object>>() {
+            @Override
+            public List<Object> answer(InvocationOnMock invocation) throws Throwable {
+                getCache().put(KEY, VALUE);
+                return null;
+            }
+        });
+
+        SingleFlightCacheLoader loader = createLoader(true, true);
+
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader("other")));
+
+        assertEquals(0, loadCount.get());
+        assertEquals(1, loader.getStatistics().getLockWaits());
+        verify(redisConnectionMock, never()).del(any(byte[].class));
+    }
+
+    @Test
+    public void getWhenOtherNodeHoldsLock() {
+        when(redisConnectionMock.exists(buildLockKey())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                getCache().put(KEY, VALUE);
+                return true;
+            }
+        });
+
+        SingleFlightCacheLoader loader = createLoader(true, true);
+
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader("other")));
+
+        assertEquals(0, loadCount.get());
+        assertEquals(1, loader.getStatistics().getLockWaits());
+        verify(redisConnectionMock, times(1)).unwatch();
+        verify(redisConnectionMock, never()).setEx(any(byte[].class), anyLong(), any(byte[].class));
+        verify(redisConnectionMock, never()).del(buildLockKey());
+    }
+
+    @Test
+    public void getWhenLockIsNotReleased() {
+        when(redisConnectionMock.exists(buildLockKey())).thenReturn(true);
+
+        SingleFlightCacheLoader loader = createLoader(true, true);
+
+        assertEquals(VALUE, loader.get(CACHE_NAME, KEY, createValueLoader(VALUE)));
+
+        assertEquals(1, loadCount.get());
+        assertEquals(1, loader.getStatistics().getLockTimeouts());
+        verify(redisConnectionMock, never()).setEx(any(byte[].class), anyLong(), any(byte[].class));
+    }
+
+    /**
+     * Stubs the connection so that the lock is free and the transaction which takes it is
+     * executed.
+     * @return  An array whose only element is set to the token of the lock when it is taken.
+     */
+    private byte[][] stubAcquiredLock() {
+        final byte[][] token = new byte[1][];
+        when(redisConnectionMock.exists(buildLockKey())).thenReturn(false);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                token[0] = (byte[]) invocation.getArguments()[2];
+                return null;
+            }
+        }).when(redisConnectionMock).setEx(eq(buildLockKey()), eq(LOCK_TIMEOUT_SECONDS), any(byte[].class));
+        when(redisConnectionMock.exec()).thenReturn(new ArrayList<Object>());
+        return token;
+    }
+
+    private List<String> getConcurrently(final SingleFlightCacheLoader loader) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CacheValueLoader<String> slowLoader = new CacheValueLoader<String>() {
+            @Override
+            public String load() {
+                loadCount.incrementAndGet();
+                sleep(50);
+                return VALUE;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLER_COUNT);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int index = 0; index < CALLER_COUNT; index++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    start.await();
+                    return loader.get(CACHE_NAME, KEY, slowLoader);
+                }
+            }));
+        }
+
+        start.countDown();
+
+        List<String> values = new ArrayList<String>();
+        for (Future<String> result: results) {
+            values.add(result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        return values;
+    }
+
+    private SingleFlightCacheLoader createLoader(boolean enabled, boolean lockEnabled) {
+        return new SingleFlightCacheLoader(cacheManager, redisTemplateMock, enabled, lockEnabled, LOCK_TIMEOUT_SECONDS, LOCK_POLL_MILLIS);
+    }
+
+    private CacheValueLoader<String> createValueLoader(final String value) {
+        return new CacheValueLoader<String>() {
+            @Override
+            public String load() {
+                loadCount.incrementAndGet();
+                return value;
+            }
+        };
+    }
+
+    private Cache getCache() {
+        return cacheManager.getCache(CACHE_NAME);
+    }
+
+    private byte[] buildLockKey() {
+        return stringSerializer.serialize(SingleFlightCacheLoader.KEY_LOCK_PREFIX + CACHE_NAME + ":" + KEY);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class TwoLevelCacheManagerTest {
+
+    private static final String CACHE_NAME = "contacts";
+    private static final String UNKNOWN_CACHE_NAME = "unknown";
+
+    private static final Long KEY = Long.valueOf(1);
+    private static final String VALUE = "value";
+
+    private static final String NODE_ID = "node";
+    private static final String OTHER_NODE_ID = "other";
+
+    private static final int MAX_LOCAL_SIZE = 10;
+    private static final long LOCAL_TTL_SECONDS = 60;
+    private static final long SHORT_REMOTE_TTL_SECONDS = 30;
+
+    private CacheManager remoteCacheManagerMock;
+
+    private Cache remoteCacheMock;
+
+    private CacheInvalidationPublisher invalidationPublisherMock;
+
+    private TwoLevelCacheManager cacheManager;
+
+    @Before
+    public void setUp() {
+        remoteCacheMock = mock(Cache.class);
+        when(remoteCacheMock.getName()).thenReturn(CACHE_NAME);
+
+        remoteCacheManagerMock = mock(CacheManager.class);
+        when(remoteCacheManagerMock.getCache(CACHE_NAME)).thenReturn(remoteCacheMock);
+
+        invalidationPublisherMock = mock(CacheInvalidationPublisher.class);
+        when(invalidationPublisherMock.getNodeId()).thenReturn(NODE_ID);
+
+        cacheManager = new TwoLevelCacheManager(remoteCacheManagerMock, invalidationPublisherMock, MAX_LOCAL_SIZE, LOCAL_TTL_SECONDS, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithZeroMaxLocalSize() {
+        new TwoLevelCacheManager(remoteCacheManagerMock, invalidationPublisherMock, 0, LOCAL_TTL_SECONDS, true);
+    }
+
+    @Test
+    public void getCacheWhenDisabled() {
+        cacheManager = new TwoLevelCacheManager(remoteCacheManagerMock, invalidationPublisherMock, MAX_LOCAL_SIZE, LOCAL_TTL_SECONDS, false);
+
+        assertSame(remoteCacheMock, cacheManager.getCache(CACHE_NAME));
+        assertTrue(cacheManager.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void getCache() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+
+        assertTrue(cache instanceof TwoLevelCache);
+        assertSame(cache, cacheManager.getCache(CACHE_NAME));
+        verify(remoteCacheManagerMock, times(1)).getCache(CACHE_NAME);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithNegativeLocalTtl() {
+        new TwoLevelCacheManager(remoteCacheManagerMock, invalidationPublisherMock, MAX_LOCAL_SIZE, -1, true);
+    }
+
+    @Test
+    public void getCacheWithLocalTtl() {
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(CACHE_NAME);
+
+        assertEquals(LOCAL_TTL_SECONDS, cache.getLocalTtlSeconds());
+    }
+
+    @Test
+    public void getCacheWhenRemoteTtlIsShorter() {
+        BoundedRedisCache remoteCache = mock(BoundedRedisCache.class);
+        when(remoteCache.getSettings()).thenReturn(new RedisCacheSettings(SHORT_REMOTE_TTL_SECONDS, 0, EvictionPolicy.LRU));
+        when(remoteCacheManagerMock.getCache(CACHE_NAME)).thenReturn(remoteCache);
+
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(CACHE_NAME);
+
+        assertEquals(SHORT_REMOTE_TTL_SECONDS, cache.getLocalTtlSeconds());
+    }
+
+    @Test
+    public void getCacheWithoutLocalTtl() {
+        BoundedRedisCache remoteCache = mock(BoundedRedisCache.class);
+        when(remoteCache.getSettings()).thenReturn(new RedisCacheSettings(SHORT_REMOTE_TTL_SECONDS, 0, EvictionPolicy.LRU));
+        when(remoteCacheManagerMock.getCache(CACHE_NAME)).thenReturn(remoteCache);
+        cacheManager = new TwoLevelCacheManager(remoteCacheManagerMock, invalidationPublisherMock, MAX_LOCAL_SIZE, 0, true);
+
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(CACHE_NAME);
+
+        assertEquals(SHORT_REMOTE_TTL_SECONDS, cache.getLocalTtlSeconds());
+    }
+
+    @Test
+    public void getUnknownCache() {
+        assertNull(cacheManager.getCache(UNKNOWN_CACHE_NAME));
+    }
+
+    @Test
+    public void getCacheNames() {
+        List<String> names = Arrays.asList(CACHE_NAME);
+        when(remoteCacheManagerMock.getCacheNames()).thenReturn(names);
+
+        assertEquals(names, cacheManager.getCacheNames());
+    }
+
+    @Test
+    public void invalidateLocalFromOtherNode() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        cache.put(KEY, VALUE);
+
+        cacheManager.invalidateLocal(new CacheInvalidation(OTHER_NODE_ID, CACHE_NAME, KEY));
+
+        assertNull(cache.get(KEY));
+        verify(remoteCacheMock).get(KEY);
+    }
+
+    @Test
+    public void invalidateLocalFromSameNode() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        cache.put(KEY, VALUE);
+
+        cacheManager.invalidateLocal(new CacheInvalidation(NODE_ID, CACHE_NAME, KEY));
+
+        assertEquals(VALUE, cache.get(KEY).get());
+        verify(remoteCacheMock, never()).get(KEY);
+    }
+
+    @Test
+    public void clearLocalFromOtherNode() {
+        cacheManager.getCache(CACHE_NAME).put(KEY, VALUE);
+
+        cacheManager.invalidateLocal(new CacheInvalidation(OTHER_NODE_ID, CACHE_NAME, null));
+
+        List<TwoLevelCacheStatistics> statistics = cacheManager.getStatistics();
+        assertEquals(1, statistics.size());
+        assertEquals(CACHE_NAME, statistics.get(0).getCacheName());
+        assertEquals(0, statistics.get(0).getLocalSize());
+        assertEquals(1, statistics.get(0).getInvalidations());
+    }
+
+    @Test
+    public void receiveInvalidation() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        cache.put(KEY, VALUE);
+
+        RedisSerializer<Object> serializer = new JdkSerializationRedisSerializer();
+        CacheInvalidationListener listener = new CacheInvalidationListener(cacheManager, serializer);
+
+        byte[] body = serializer.serialize(new CacheInvalidation(OTHER_NODE_ID, CACHE_NAME, KEY));
+        listener.onMessage(new DefaultMessage(CacheInvalidationPublisher.CHANNEL_CACHE_INVALIDATIONS.getBytes(), body), null);
+
+        assertEquals(0, cacheManager.getStatistics().get(0).getLocalSize());
+    }
+}
@@ -0,0 +1,228 @@
+package com.packtpub.springdata.jpa.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class TwoLevelCacheTest {
+
+    private static final String CACHE_NAME = "contacts";
+
+    private static final Long KEY = Long.valueOf(1);
+    private static final Long SECOND_KEY = Long.valueOf(2);
+    private static final Long THIRD_KEY = Long.valueOf(3);
+
+    private static final String VALUE = "value";
+    private static final String UPDATED_VALUE = "updated";
+
+    private static final int MAX_LOCAL_SIZE = 2;
+    private static final long LOCAL_TTL_SECONDS = 60;
+    private static final long LOCAL_TTL_MILLIS = LOCAL_TTL_SECONDS * 1000;
+
+    private Cache remoteCacheMock;
+
+    private CacheInvalidationPublisher invalidationPublisherMock;
+
+    private TwoLevelCache cache;
+
+    private long now;
+
+    @Before
+    public void setUp() {
+        remoteCacheMock = mock(Cache.class);
+        when(remoteCacheMock.getName()).thenReturn(CACHE_NAME);
+
+        invalidationPublisherMock = mock(CacheInvalidationPublisher.class);
+
+        now = 0;
+        cache = new TwoLevelCache(remoteCacheMock, invalidationPublisherMock, MAX_LOCAL_SIZE, LOCAL_TTL_SECONDS) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithZeroMaxLocalSize() {
+        new TwoLevelCache(remoteCacheMock, invalidationPublisherMock, 0, LOCAL_TTL_SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithNegativeLocalTtl() {
+        new TwoLevelCache(remoteCacheMock, invalidationPublisherMock, MAX_LOCAL_SIZE, -1);
+    }
+
+    @Test
+    public void getBeforeLocalEntryExpires() {
+        cache.put(KEY, VALUE);
+        now = LOCAL_TTL_MILLIS - 1;
+
+        assertEquals(VALUE, cache.get(KEY).get());
+
+        verify(remoteCacheMock, never()).get(KEY);
+    }
+
+    @Test
+    public void getWhenLocalEntryHasExpired() {
+        cache.put(KEY, VALUE);
+        now = LOCAL_TTL_MILLIS;
+        when(remoteCacheMock.get(KEY)).thenReturn(new SimpleValueWrapper(UPDATED_VALUE));
+
+        assertEquals(UPDATED_VALUE, cache.get(KEY).get());
+        assertEquals(UPDATED_VALUE, cache.get(KEY).get());
+
+        verify(remoteCacheMock, times(1)).get(KEY);
+        assertEquals(1, cache.getStatistics().getLocalHits());
+        assertEquals(1, cache.getStatistics().getRemoteHits());
+    }
+
+    @Test
+    public void getWhenLocalEntryHasExpiredFromRemoteCache() {
+        cache.put(KEY, VALUE);
+        now = LOCAL_TTL_MILLIS;
+
+        assertNull(cache.get(KEY));
+
+        assertEquals(0, cache.getStatistics().getLocalSize());
+    }
+
+    @Test
+    public void getWithoutLocalTtl() {
+        cache = new TwoLevelCache(remoteCacheMock, invalidationPublisherMock, MAX_LOCAL_SIZE, 0) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+        cache.put(KEY, VALUE);
+        now = Long.MAX_VALUE;
+
+        assertEquals(VALUE, cache.get(KEY).get());
+
+        verify(remoteCacheMock, never()).get(KEY);
+    }
+
+    @Test
+    public void getFromRemoteCacheAndThenFromLocalCache() {
+        when(remoteCacheMock.get(KEY)).thenReturn(new SimpleValueWrapper(VALUE));
+
+        assertEquals(VALUE, cache.get(KEY).get());
+        assertEquals(VALUE, cache.get(KEY).get());
+
+        verify(remoteCacheMock, times(1)).get(KEY);
+
+        TwoLevelCacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getLocalHits());
+        assertEquals(1, statistics.getRemoteHits());
+        assertEquals(0, statistics.getMisses());
+        assertEquals(1, statistics.getLocalSize());
+        assertEquals(0.5, statistics.getLocalHitRate());
+        assertEquals(1.0, statistics.getRemoteHitRate());
+        assertEquals(1.0, statistics.getHitRate());
+    }
+
+    @Test
+    public void getMissing() {
+        assertNull(cache.get(KEY));
+        assertNull(cache.get(KEY));
+
+        verify(remoteCacheMock, times(2)).get(KEY);
+
+        TwoLevelCacheStatistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getMisses());
+        assertEquals(0, statistics.getLocalSize());
+        assertEquals(0.0, statistics.getHitRate());
+    }
+
+    @Test
+    public void getWhenInvalidatedDuringRemoteRead() {
+        when(remoteCacheMock.get(KEY)).thenAnswer(new Answer<Cache.ValueWrapper>() {
+            @Override
+            public Cache.ValueWrapper answer(InvocationOnMock invocation) throws Throwable {
+                cache.evictLocal(KEY);
+                return new SimpleValueWrapper(VALUE);
+            }
+        });
+
+        assertEquals(VALUE, cache.get(KEY).get());
+
+        assertEquals(0, cache.getStatistics().getLocalSize());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedEntry() {
+        cache.put(KEY, VALUE);
+        cache.put(SECOND_KEY, VALUE);
+        cache.get(KEY);
+        cache.put(THIRD_KEY, VALUE);
+
+        when(remoteCacheMock.get(SECOND_KEY)).thenReturn(null);
+
+        assertEquals(VALUE, cache.get(KEY).get());
+        assertEquals(VALUE, cache.get(THIRD_KEY).get());
+        assertNull(cache.get(SECOND_KEY));
+
+        TwoLevelCacheStatistics statistics = cache.getStatistics();
+        assertEquals(MAX_LOCAL_SIZE, statistics.getLocalSize());
+        assertEquals(1, statistics.getEvictions());
+    }
+
+    @Test
+    public void put() {
+        cache.put(KEY, VALUE);
+        cache.put(KEY, UPDATED_VALUE);
+
+        verify(remoteCacheMock).put(KEY, VALUE);
+        verify(remoteCacheMock).put(KEY, UPDATED_VALUE);
+        verify(invalidationPublisherMock, times(2)).publishEvict(CACHE_NAME, KEY);
+
+        assertEquals(UPDATED_VALUE, cache.get(KEY).get());
+        verify(remoteCacheMock, never()).get(KEY);
+    }
+
+    @Test
+    public void evict() {
+        cache.put(KEY, VALUE);
+        cache.evict(KEY);
+
+        verify(remoteCacheMock).evict(KEY);
+        verify(invalidationPublisherMock, times(2)).publishEvict(CACHE_NAME, KEY);
+
+        assertNull(cache.get(KEY));
+        assertEquals(1, cache.getStatistics().getInvalidations());
+    }
+
+    @Test
+    public void clear() {
+        cache.put(KEY, VALUE);
+        cache.put(SECOND_KEY, VALUE);
+        cache.clear();
+
+        verify(remoteCacheMock).clear();
+        verify(invalidationPublisherMock).publishClear(CACHE_NAME);
+
+        assertEquals(0, cache.getStatistics().getLocalSize());
+    }
+
+    @Test
+    public void evictLocal() {
+        cache.put(KEY, VALUE);
+        cache.evictLocal(KEY);
+
+        verify(remoteCacheMock, never()).evict(KEY);
+        verify(invalidationPublisherMock, times(1)).publishEvict(CACHE_NAME, KEY);
+
+        assertEquals(0, cache.getStatistics().getLocalSize());
+    }
+}
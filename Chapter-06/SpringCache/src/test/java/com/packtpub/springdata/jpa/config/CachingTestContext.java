@@ -0,0 +1,60 @@
+package com.packtpub.springdata.jpa.config;
+
+import com.packtpub.springdata.jpa.cache.CacheGenerations;
+import com.packtpub.springdata.jpa.cache.SingleFlightCacheLoader;
+import com.packtpub.springdata.jpa.repository.ContactRepository;
+import com.packtpub.springdata.jpa.service.RepositoryContactService;
+import org.mockito.Mockito;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+
+/**
+ * This test context is used to test the cache annotations of the RepositoryContactService
+ * class. The caches are kept in memory and the repository and the cache generations are
+ * replaced with mocks. The single-flight cache loader does not use the Redis lock.
+ *
+ * @author Petri Kainulainen
+ */
+@Configuration
+@EnableCaching
+public class CachingTestContext {
+
+    @Bean
+    public CacheManager cacheManager() {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+
+        cacheManager.setCaches(Arrays.asList(
+                new ConcurrentMapCache("contacts"),
+                new ConcurrentMapCache(RepositoryContactService.CACHE_CONTACT_PAGES),
+                new ConcurrentMapCache(RepositoryContactService.CACHE_CONTACT_COUNTS)
+        ));
+
+        return cacheManager;
+    }
+
+    @Bean
+    public CacheGenerations cacheGenerations() {
+        return Mockito.mock(CacheGenerations.class);
+    }
+
+    @Bean
+    public SingleFlightCacheLoader singleFlightCacheLoader() {
+        return new SingleFlightCacheLoader(cacheManager(), null, true, false, 0, 0);
+    }
+
+    @Bean
+    public ContactRepository contactRepository() {
+        return Mockito.mock(ContactRepository.class);
+    }
+
+    @Bean
+    public RepositoryContactService contactService() {
+        return new RepositoryContactService();
+    }
+}
@@ -0,0 +1,197 @@
+package com.packtpub.springdata.jpa.serializer;
+
+import com.packtpub.springdata.jpa.model.Contact;
+import com.packtpub.springdata.jpa.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class CompressingRedisSerializerTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+
+    private static final int MAX_LENGTH = 65536;
+    private static final int THRESHOLD = 256;
+
+    private static final String SHORT_VALUE = "abc";
+
+    private RedisSerializer<Object> jdkSerializer;
+
+    private CompressingRedisSerializer<Object> serializer;
+
+    @Before
+    public void setUp() {
+        jdkSerializer = new JdkSerializationRedisSerializer();
+        serializer = new CompressingRedisSerializer<Object>(jdkSerializer, THRESHOLD, MAX_LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithNegativeThreshold() {
+        new CompressingRedisSerializer<Object>(jdkSerializer, -1, MAX_LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithMaxLengthSmallerThanThreshold() {
+        new CompressingRedisSerializer<Object>(jdkSerializer, THRESHOLD, THRESHOLD - 1);
+    }
+
+    @Test
+    public void serializeSmallValue() {
+        byte[] bytes = serializer.serialize(CONTACT_ID);
+
+        assertEquals(CompressingRedisSerializer.HEADER_RAW, bytes[0]);
+        assertEquals(jdkSerializer.serialize(CONTACT_ID).length + 1, bytes.length);
+        assertEquals(0, serializer.getStatistics().getCompressedCount());
+
+        assertEquals(CONTACT_ID, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void serializeLargeValue() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        byte[] bytes = serializer.serialize(contact);
+        byte[] uncompressed = jdkSerializer.serialize(contact);
+
+        assertEquals(CompressingRedisSerializer.HEADER_COMPRESSED, bytes[0]);
+        assertTrue(bytes.length < uncompressed.length);
+
+        Contact deserialized = (Contact) serializer.deserialize(bytes);
+        assertEquals(CONTACT_ID, deserialized.getId());
+        assertEquals(contact.getFirstName(), deserialized.getFirstName());
+        assertEquals(contact.getAddress().getStreetAddress(), deserialized.getAddress().getStreetAddress());
+
+        CompressionStatistics statistics = serializer.getStatistics();
+        assertEquals(1, statistics.getCompressedCount());
+        assertEquals(1, statistics.getDecompressedCount());
+        assertEquals(uncompressed.length, statistics.getUncompressedBytes());
+        assertEquals(bytes.length, statistics.getCompressedBytes());
+        assertTrue(statistics.getCompressionRatio() < 1.0);
+    }
+
+    @Test
+    public void serializeHighlyCompressibleValue() {
+        CompressingRedisSerializer<String> stringSerializer = new CompressingRedisSerializer<String>(new StringRedisSerializer(), THRESHOLD, MAX_LENGTH);
+        String value = createString(MAX_LENGTH);
+
+        byte[] bytes = stringSerializer.serialize(value);
+
+        assertEquals(CompressingRedisSerializer.HEADER_COMPRESSED, bytes[0]);
+        assertTrue(bytes.length * 4 < value.length());
+        assertEquals(value, stringSerializer.deserialize(bytes));
+    }
+
+    @Test
+    public void serializeValueLargerThanMaxLength() {
+        CompressingRedisSerializer<String> stringSerializer = new CompressingRedisSerializer<String>(new StringRedisSerializer(), THRESHOLD, THRESHOLD);
+        String value = createString(THRESHOLD + 1);
+
+        byte[] bytes = stringSerializer.serialize(value);
+
+        assertEquals(CompressingRedisSerializer.HEADER_RAW, bytes[0]);
+        assertEquals(value, stringSerializer.deserialize(bytes));
+    }
+
+    @Test
+    public void serializeValueWhichDoesNotGetSmaller() {
+        CompressingRedisSerializer<String> compressAll = new CompressingRedisSerializer<String>(new StringRedisSerializer(), 0, MAX_LENGTH);
+
+        byte[] bytes = compressAll.serialize(SHORT_VALUE);
+
+        assertEquals(CompressingRedisSerializer.HEADER_RAW, bytes[0]);
+        assertEquals(SHORT_VALUE.length() + 1, bytes.length);
+        assertEquals(SHORT_VALUE, compressAll.deserialize(bytes));
+    }
+
+    @Test
+    public void deserializeValueWrittenWithoutCompression() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        Contact deserialized = (Contact) serializer.deserialize(jdkSerializer.serialize(contact));
+
+        assertEquals(CONTACT_ID, deserialized.getId());
+        assertEquals(contact.getFirstName(), deserialized.getFirstName());
+    }
+
+    @Test
+    public void serializeNull() {
+        byte[] bytes = serializer.serialize(null);
+
+        assertEquals(0, bytes.length);
+        assertNull(serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void deserializeNull() {
+        assertNull(serializer.deserialize(null));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeTruncatedValue() {
+        byte[] bytes = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+
+        serializer.deserialize(Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueWithLengthLargerThanMaxLength() {
+        byte[] bytes = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+        setLength(bytes, Integer.MAX_VALUE);
+
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueLongerThanItsLength() {
+        byte[] bytes = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+        setLength(bytes, getLength(bytes) - 1);
+
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueShorterThanItsLength() {
+        byte[] bytes = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+        setLength(bytes, getLength(bytes) + 1);
+
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueWithTrailingData() {
+        byte[] bytes = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+
+        serializer.deserialize(Arrays.copyOf(bytes, bytes.length + 1));
+    }
+
+    private String createString(int length) {
+        StringBuilder value = new StringBuilder();
+        for (int index = 0; index < length; index++) {
+            value.append('a');
+        }
+        return value.toString();
+    }
+
+    private int getLength(byte[] bytes) {
+        return ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+    }
+
+    private void setLength(byte[] bytes, int length) {
+        bytes[1] = (byte) (length >>> 24);
+        bytes[2] = (byte) (length >>> 16);
+        bytes[3] = (byte) (length >>> 8);
+        bytes[4] = (byte) length;
+    }
+}
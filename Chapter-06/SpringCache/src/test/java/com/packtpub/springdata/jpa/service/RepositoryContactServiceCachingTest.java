@@ -0,0 +1,136 @@
+package com.packtpub.springdata.jpa.service;
+
+import com.packtpub.springdata.jpa.cache.CacheGenerations;
+import com.packtpub.springdata.jpa.config.CachingTestContext;
+import com.packtpub.springdata.jpa.dto.SearchDTO;
+import com.packtpub.springdata.jpa.model.Contact;
+import com.packtpub.springdata.jpa.repository.ContactRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {CachingTestContext.class})
+public class RepositoryContactServiceCachingTest {
+
+    private static final long COUNT = 5;
+    private static final long SEARCH_COUNT = 2;
+
+    private static final int PAGE_INDEX = 0;
+    private static final int PAGE_SIZE = 10;
+    private static final String SEARCH_TERM = "foo";
+
+    @Resource
+    private ContactService service;
+
+    @Resource
+    private ContactRepository repositoryMock;
+
+    @Resource
+    private CacheGenerations cacheGenerationsMock;
+
+    @Resource
+    private CacheManager cacheManager;
+
+    @Before
+    public void setUp() {
+        reset(repositoryMock, cacheGenerationsMock);
+
+        cacheManager.getCache(RepositoryContactService.CACHE_CONTACT_PAGES).clear();
+        cacheManager.getCache(RepositoryContactService.CACHE_CONTACT_COUNTS).clear();
+
+        when(repositoryMock.count()).thenReturn(COUNT);
+        when(repositoryMock.count(any(Specification.class))).thenReturn(SEARCH_COUNT);
+        when(repositoryMock.findAll(any(Pageable.class))).thenReturn(new PageImpl<Contact>(new ArrayList<Contact>()));
+        when(repositoryMock.findAll(any(Specification.class), any(Pageable.class))).thenReturn(new PageImpl<Contact>(new ArrayList<Contact>()));
+    }
+
+    @Test
+    public void countIsCachedUntilGenerationChanges() {
+        assertEquals(COUNT, service.count());
+        assertEquals(COUNT, service.count());
+
+        verify(repositoryMock, times(1)).count();
+
+        when(cacheGenerationsMock.getGeneration(RepositoryContactService.CACHE_CONTACT_COUNTS)).thenReturn(1L);
+
+        assertEquals(COUNT, service.count());
+
+        verify(repositoryMock, times(2)).count();
+    }
+
+    @Test
+    public void searchCountIsCachedPerSearchTerm() {
+        SearchDTO dto = createSearchDTO(SEARCH_TERM);
+
+        assertEquals(SEARCH_COUNT, service.count(dto));
+        assertEquals(SEARCH_COUNT, service.count(dto));
+        assertEquals(SEARCH_COUNT, service.count(createSearchDTO("bar")));
+
+        verify(repositoryMock, times(2)).count(any(Specification.class));
+    }
+
+    @Test
+    public void findAllForPageIsCachedPerPage() {
+        service.findAllForPage(PAGE_INDEX, PAGE_SIZE);
+        service.findAllForPage(PAGE_INDEX, PAGE_SIZE);
+        service.findAllForPage(PAGE_INDEX + 1, PAGE_SIZE);
+
+        verify(repositoryMock, times(2)).findAll(any(Pageable.class));
+    }
+
+    @Test
+    public void searchIsCachedUntilGenerationChanges() {
+        SearchDTO dto = createSearchDTO(SEARCH_TERM);
+
+        service.search(dto);
+        service.search(dto);
+
+        verify(repositoryMock, times(1)).findAll(any(Specification.class), any(Pageable.class));
+
+        when(cacheGenerationsMock.getGeneration(RepositoryContactService.CACHE_CONTACT_PAGES)).thenReturn(1L);
+
+        service.search(dto);
+        service.count(dto);
+
+        verify(repositoryMock, times(2)).findAll(any(Specification.class), any(Pageable.class));
+        verify(repositoryMock, times(1)).count(any(Specification.class));
+    }
+
+    @Test
+    public void pagesAndCountsUseSeparateGenerations() {
+        service.count();
+        service.findAllForPage(PAGE_INDEX, PAGE_SIZE);
+
+        when(cacheGenerationsMock.getGeneration(RepositoryContactService.CACHE_CONTACT_PAGES)).thenReturn(1L);
+
+        service.count();
+        service.findAllForPage(PAGE_INDEX, PAGE_SIZE);
+
+        verify(repositoryMock, times(1)).count();
+        verify(repositoryMock, times(2)).findAll(any(Pageable.class));
+    }
+
+    private SearchDTO createSearchDTO(String searchTerm) {
+        SearchDTO dto = new SearchDTO();
+        dto.setPageIndex(PAGE_INDEX);
+        dto.setPageSize(PAGE_SIZE);
+        dto.setSearchTerm(searchTerm);
+        return dto;
+    }
+}
@@ -1,5 +1,7 @@
 package com.packtpub.springdata.jpa.service;
 
+import com.packtpub.springdata.jpa.cache.CacheGenerations;
+import com.packtpub.springdata.jpa.cache.SingleFlightCacheLoader;
 import com.packtpub.springdata.jpa.dto.ContactDTO;
 import com.packtpub.springdata.jpa.dto.SearchDTO;
 import com.packtpub.springdata.jpa.model.Contact;
@@ -8,6 +10,7 @@ import com.packtpub.springdata.jpa.repository.ContactRepository;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -32,16 +35,26 @@ public class RepositoryContactServiceTest {
     private static final int PAGE_SIZE = 10;
     private static final String SEARCH_TERM = "foo";
 
+    private static final long GENERATION = 2;
+
     private RepositoryContactService service;
 
     private ContactRepository repositoryMock;
 
+    private CacheGenerations cacheGenerationsMock;
+
     @Before
     public void setUp() {
         service = new RepositoryContactService();
 
         repositoryMock = mock(ContactRepository.class);
         ReflectionTestUtils.setField(service, "repository", repositoryMock);
+
+        cacheGenerationsMock = mock(CacheGenerations.class);
+        ReflectionTestUtils.setField(service, "cacheGenerations", cacheGenerationsMock);
+
+        SingleFlightCacheLoader cacheLoader = new SingleFlightCacheLoader(new ConcurrentMapCacheManager(), null, true, false, 0, 0);
+        ReflectionTestUtils.setField(service, "cacheLoader", cacheLoader);
     }
 
     @Test
@@ -53,6 +66,7 @@ public class RepositoryContactServiceTest {
         ArgumentCaptor<Contact> contactArgument = ArgumentCaptor.forClass(Contact.class);
         verify(repositoryMock, times(1)).save(contactArgument.capture());
         verifyNoMoreInteractions(repositoryMock);
+        verify(cacheGenerationsMock, times(1)).increment(RepositoryContactService.CACHE_CONTACT_PAGES, RepositoryContactService.CACHE_CONTACT_COUNTS);
 
         Contact actual = contactArgument.getValue();
         ContactTestUtil.assertContact(added, actual);
@@ -86,6 +100,23 @@ public class RepositoryContactServiceTest {
         verify(repositoryMock, times(1)).findOne(ID);
         verify(repositoryMock, times(1)).delete(deleted);
         verifyNoMoreInteractions(repositoryMock);
+        verify(cacheGenerationsMock, times(1)).increment(RepositoryContactService.CACHE_CONTACT_PAGES, RepositoryContactService.CACHE_CONTACT_COUNTS);
+
+        assertEquals(deleted, actual);
+    }
+
+    @Test
+    public void deleteByIdWhenContactIsCached() throws NotFoundException {
+        Contact cached = new Contact();
+        Contact deleted = new Contact();
+        when(repositoryMock.findOne(ID)).thenReturn(cached).thenReturn(deleted);
+
+        service.findById(ID);
+        Contact actual = service.deleteById(ID);
+
+        verify(repositoryMock, times(2)).findOne(ID);
+        verify(repositoryMock, times(1)).delete(deleted);
+        verifyNoMoreInteractions(repositoryMock);
 
         assertEquals(deleted, actual);
     }
@@ -98,6 +129,7 @@ public class RepositoryContactServiceTest {
 
         verify(repositoryMock, times(1)).findOne(ID);
         verifyNoMoreInteractions(repositoryMock);
+        verifyZeroInteractions(cacheGenerationsMock);
     }
 
     @Test
@@ -131,6 +163,20 @@ public class RepositoryContactServiceTest {
         assertEquals(actual, found);
     }
 
+    @Test
+    public void findByIdFromCache() throws NotFoundException {
+        Contact found = new Contact();
+        when(repositoryMock.findOne(ID)).thenReturn(found);
+
+        service.findById(ID);
+        Contact actual = service.findById(ID);
+
+        verify(repositoryMock, times(1)).findOne(ID);
+        verifyNoMoreInteractions(repositoryMock);
+
+        assertEquals(actual, found);
+    }
+
     @Test(expected = NotFoundException.class)
     public void findByIdWhenContactIsNotFound() throws NotFoundException {
         when(repositoryMock.findOne(ID)).thenReturn(null);
@@ -151,11 +197,20 @@ public class RepositoryContactServiceTest {
 
         verify(repositoryMock, times(1)).findOne(ID);
         verifyNoMoreInteractions(repositoryMock);
+        verify(cacheGenerationsMock, times(1)).increment(RepositoryContactService.CACHE_CONTACT_PAGES);
+        verifyNoMoreInteractions(cacheGenerationsMock);
 
         ContactTestUtil.assertContact(updated, found);
         assertEquals(found, actual);
     }
 
+    @Test
+    public void getCacheGeneration() {
+        when(cacheGenerationsMock.getGeneration(RepositoryContactService.CACHE_CONTACT_PAGES)).thenReturn(GENERATION);
+
+        assertEquals(GENERATION, service.getCacheGeneration(RepositoryContactService.CACHE_CONTACT_PAGES));
+    }
+
     @Test
     public void search() {
         SearchDTO dto = constructSearchDTO();
@@ -1,13 +1,22 @@
 package com.packtpub.springdata.redis.config;
 
 import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.serializer.CompressingRedisSerializer;
+import com.packtpub.springdata.redis.serializer.ContactBinaryRedisSerializer;
+import com.packtpub.springdata.redis.serializer.ContactJsonWriter;
+import com.packtpub.springdata.redis.service.BatchWriter;
+import com.packtpub.springdata.redis.service.BlockIdAllocator;
+import com.packtpub.springdata.redis.service.ContactNameIndex;
+import com.packtpub.springdata.redis.service.RedisScript;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.*;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.support.atomic.RedisAtomicLong;
@@ -21,6 +30,7 @@ import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
 import javax.annotation.Resource;
+import java.io.IOException;
 import java.util.Properties;
 
 /**
@@ -48,6 +58,16 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
 
     private static final String PROPERTY_NAME_REDIS_HOST = "redis.host";
     private static final String PROPERTY_NAME_REDIS_PORT = "redis.port";
+    private static final String PROPERTY_NAME_REDIS_ID_BLOCK_SIZE = "redis.id.block.size";
+    private static final String PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE = "redis.bulk.write.batch.size";
+    private static final String PROPERTY_NAME_REDIS_CONTACT_SERIALIZER = "redis.contact.serializer";
+    private static final String PROPERTY_NAME_REDIS_COMPRESSION_THRESHOLD = "redis.compression.threshold";
+    private static final String PROPERTY_NAME_REDIS_COMPRESSION_MAX_LENGTH = "redis.compression.max.length";
+
+    private static final String SCRIPT_LOCATION_FIND_NAME_PREFIX = "scripts/find-name-prefix.lua";
+
+    private static final String CONTACT_SERIALIZER_BINARY = "binary";
+    private static final String CONTACT_SERIALIZER_JSON = "json";
 
     @Resource
     private Environment environment;
@@ -71,6 +91,50 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
         configurer.enable();
     }
 
+    /**
+     * Configures the writer which is used to write multiple contacts in batches.
+     * @return
+     */
+    @Bean
+    public BatchWriter batchWriter() {
+        int batchSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_BULK_WRITE_BATCH_SIZE));
+        return new BatchWriter(redisTemplate(), batchSize);
+    }
+
+    /**
+     * Configures the allocator which hands out the ids of new contacts from blocks
+     * reserved from the contact id counter.
+     * @return
+     */
+    @Bean
+    public BlockIdAllocator contactIdAllocator() {
+        int blockSize = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_ID_BLOCK_SIZE));
+        return new BlockIdAllocator(redisAtomicLong(), blockSize);
+    }
+
+    /**
+     * Configures the writer which writes the stored contacts as JSON. The stored bytes are
+     * written as they are when the contacts are stored as JSON.
+     * @return
+     */
+    @Bean
+    public ContactJsonWriter contactJsonWriter() {
+        String serializer = environment.getRequiredProperty(PROPERTY_NAME_REDIS_CONTACT_SERIALIZER);
+        return new ContactJsonWriter(compressingContactSerializer(), CONTACT_SERIALIZER_JSON.equals(serializer));
+    }
+
+    /**
+     * Configures the name indexes which are used to sort and search contacts. The contacts
+     * whose names start with a search term are found by a Lua script.
+     * @return
+     * @throws IOException
+     */
+    @Bean
+    public ContactNameIndex contactNameIndex() throws IOException {
+        RedisScript script = new RedisScript(new ClassPathResource(SCRIPT_LOCATION_FIND_NAME_PREFIX));
+        return new ContactNameIndex(stringRedisTemplate(), script);
+    }
+
     @Bean
     public RedisAtomicLong redisAtomicLong() {
         return new RedisAtomicLong("contact", redisConnectionFactory());
@@ -99,18 +163,51 @@ public class ApplicationContext extends WebMvcConfigurerAdapter {
         RedisTemplate<String, Contact> redisTemplate = new RedisTemplate<String, Contact>();
 
         redisTemplate.setConnectionFactory(redisConnectionFactory());
-        redisTemplate.setValueSerializer(contactSerializer());
+        redisTemplate.setValueSerializer(compressingContactSerializer());
 
         return redisTemplate;
     }
 
     /**
-     * Configures the value serializer bean.
+     * Configures the serializer which compresses the contacts which are larger than the
+     * compression threshold.
+     * @return
+     */
+    @Bean
+    public CompressingRedisSerializer<Contact> compressingContactSerializer() {
+        int threshold = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_COMPRESSION_THRESHOLD));
+        int maxLength = Integer.parseInt(environment.getRequiredProperty(PROPERTY_NAME_REDIS_COMPRESSION_MAX_LENGTH));
+        return new CompressingRedisSerializer<Contact>(contactSerializer(), threshold, maxLength);
+    }
+
+    /**
+     * Configures the value serializer bean. The used serializer is selected by the value of
+     * the 'redis.contact.serializer' property which can be either 'json' or 'binary'. The
+     * formats are not compatible, which means that the existing contacts must be removed
+     * when the serializer is changed.
      * @return
      */
     @Bean
     public RedisSerializer<Contact> contactSerializer() {
-        return new JacksonJsonRedisSerializer<Contact>(Contact.class);
+        String serializer = environment.getRequiredProperty(PROPERTY_NAME_REDIS_CONTACT_SERIALIZER);
+
+        if (CONTACT_SERIALIZER_BINARY.equals(serializer)) {
+            return new ContactBinaryRedisSerializer();
+        }
+        if (CONTACT_SERIALIZER_JSON.equals(serializer)) {
+            return new JacksonJsonRedisSerializer<Contact>(Contact.class);
+        }
+
+        throw new IllegalStateException("Unknown contact serializer: " + serializer);
+    }
+
+    /**
+     * Configures the Redis template which is used to access the string based indexes.
+     * @return
+     */
+    @Bean
+    public StringRedisTemplate stringRedisTemplate() {
+        return new StringRedisTemplate(redisConnectionFactory());
     }
 
     /**
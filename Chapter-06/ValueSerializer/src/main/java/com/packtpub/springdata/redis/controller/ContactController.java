@@ -14,7 +14,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
 
@@ -37,13 +39,20 @@ public class ContactController {
 
     protected static final String ADD_CONTACT_VIEW = "add";
     protected static final String CONTACT_VIEW = "view";
+
+    protected static final String CONTENT_TYPE_JSON = "application/json;charset=UTF-8";
     protected static final String HOME_VIEW = "list";
     protected static final String UPDATE_CONTACT_VIEW = "update";
 
     protected static final String MODEL_ATTRIBUTE_CONTACT = "contact";
     protected static final String MODEL_ATTRIBUTE_CONTACTS = "contacts";
+    protected static final String MODEL_ATTRIBUTE_PAGE_COUNT = "pageCount";
+    protected static final String MODEL_ATTRIBUTE_PAGE_INDEX = "pageIndex";
+
+    protected static final int HOME_PAGE_SIZE = 10;
 
     protected static final String PARAMETER_CONTACT_ID = "id";
+    protected static final String PARAMETER_PAGE_INDEX = "page";
 
     protected static final String REQUEST_MAPPING_VIEW_CONTACT = "/contact/{id}";
 
@@ -95,6 +104,39 @@ public class ContactController {
         return getMessage(FEEDBACK_MESSAGE_KEY_CONTACT_DELETED, deleted.getFirstName(), deleted.getLastName());
     }
 
+    /**
+     * Writes a contact to the response as JSON. The stored JSON of the contact is copied to
+     * the response without creating a contact object.
+     * @param id    The id of the requested contact.
+     * @param response  The response.
+     * @throws NotFoundException    if no contact is found with the given id.
+     * @throws IOException  if the contact cannot be written to the response.
+     */
+    @RequestMapping(value = "/api/contact/{id}", method = RequestMethod.GET)
+    public void getContactAsJson(@PathVariable("id") Long id, HttpServletResponse response) throws NotFoundException, IOException {
+        LOGGER.debug("Writing contact with id: {} as JSON", id);
+
+        response.setContentType(CONTENT_TYPE_JSON);
+        service.writeByIdAsJson(id, response.getOutputStream());
+    }
+
+    /**
+     * Writes the contacts of a page to the response as a JSON array. The stored JSON of the
+     * contacts is copied to the response without creating contact objects.
+     * @param pageIndex The index of the requested page.
+     * @param response  The response.
+     * @throws IOException  if the contacts cannot be written to the response.
+     */
+    @RequestMapping(value = "/api/contact", method = RequestMethod.GET)
+    public void getContactsAsJson(@RequestParam(value = PARAMETER_PAGE_INDEX, defaultValue = "0") int pageIndex, HttpServletResponse response) throws IOException {
+        LOGGER.debug("Writing contacts of page {} as JSON", pageIndex);
+
+        response.setContentType(CONTENT_TYPE_JSON);
+        int written = service.writeAllForPageAsJson(Math.max(0, pageIndex), HOME_PAGE_SIZE, response.getOutputStream());
+
+        LOGGER.debug("Wrote {} contacts", written);
+    }
+
     /**
      * Shows the add contact page.
      * @param model The model.
@@ -130,15 +172,21 @@ public class ContactController {
 
     /**
      * Shows the home page.
+     * @param pageIndex The index of the shown page.
      * @param model The model.
      * @return  The name of the home page view.
      */
     @RequestMapping(value = "/", method = RequestMethod.GET)
-    public String showHomePage(Model model) {
-        LOGGER.debug("Rendering home page");
+    public String showHomePage(@RequestParam(value = PARAMETER_PAGE_INDEX, defaultValue = "0") int pageIndex, Model model) {
+        LOGGER.debug("Rendering home page {}", pageIndex);
+
+        long pageCount = countPages(service.count());
+        pageIndex = Math.max(0, pageIndex);
 
-        List<Contact> contacts = service.findAll();
+        List<Contact> contacts = service.findAllForPage(pageIndex, HOME_PAGE_SIZE);
         model.addAttribute(MODEL_ATTRIBUTE_CONTACTS, contacts);
+        model.addAttribute(MODEL_ATTRIBUTE_PAGE_COUNT, pageCount);
+        model.addAttribute(MODEL_ATTRIBUTE_PAGE_INDEX, pageIndex);
 
         return HOME_VIEW;
     }
@@ -213,6 +261,15 @@ public class ContactController {
         return messageSource.getMessage(code, params, current);
     }
 
+    /**
+     * Counts the number of pages shown on the home page.
+     * @param contactCount  The number of contacts.
+     * @return  The number of pages.
+     */
+    private long countPages(long contactCount) {
+        return (contactCount + HOME_PAGE_SIZE - 1) / HOME_PAGE_SIZE;
+    }
+
     /**
      * Creates a redirect view path.
      * @param requestMapping    The request mapping of target controller method.
@@ -0,0 +1,279 @@
+package com.packtpub.springdata.redis.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A serializer which compresses the values created by another serializer when they are
+ * larger than the configured threshold. The values are compressed with the deflate
+ * algorithm of the JDK by using the fastest compression level.
+ * <p>
+ * The first byte of a written value tells whether the value is compressed or not:
+ * <ul>
+ *     <li>
+ *         A compressed value starts with {@link #HEADER_COMPRESSED} which is followed by
+ *         the uncompressed length of the value (four bytes) and the compressed data.
+ *     </li>
+ *     <li>
+ *         A value which is smaller than the threshold, larger than the maximum length, or
+ *         which does not get smaller when it is compressed, starts with {@link #HEADER_RAW}
+ *         which is followed by the value.
+ *     </li>
+ * </ul>
+ * A value which starts with some other byte was written without this serializer, and it is
+ * given to the wrapped serializer as it is. This means that the existing values can be read
+ * after this serializer is taken into use, as long as the values of the wrapped serializer
+ * never start with a header byte. This is true for JSON, for the JDK serialization and for
+ * the binary contact format.
+ * <p>
+ * A null or empty value of the wrapped serializer is written as an empty value without a
+ * header byte, which means that it is read back as null.
+ * <p>
+ * The uncompressed length of a compressed value cannot be trusted before the value has been
+ * inflated, because a corrupted value or a value written by some other application can start
+ * with the compressed header byte. A value whose length is larger than the maximum length is
+ * rejected, the output buffer grows while the value is inflated, and a value whose data does
+ * not end exactly at the end of the compressed data is rejected.
+ * <p>
+ * The serializer counts the compression ratio and the time used to compress and decompress
+ * the values. These statistics are returned by the {@link #getStatistics()} method.
+ * @author Petri Kainulainen
+ */
+public class CompressingRedisSerializer<T> implements RedisSerializer<T> {
+
+    protected static final byte HEADER_RAW = 0x1E;
+    protected static final byte HEADER_COMPRESSED = 0x1F;
+
+    private static final int HEADER_LENGTH = 1;
+    private static final int COMPRESSED_HEADER_LENGTH = HEADER_LENGTH + 4;
+
+    private static final int BUFFER_SIZE = 512;
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final RedisSerializer<T> serializer;
+
+    private final int threshold;
+
+    private final int maxLength;
+
+    private final AtomicLong compressedCount = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong decompressedCount = new AtomicLong();
+    private final AtomicLong decompressionNanos = new AtomicLong();
+
+    /**
+     * Creates a new compressing serializer.
+     * @param serializer    The serializer whose values are compressed.
+     * @param threshold The minimum size of a compressed value in bytes.
+     * @param maxLength The maximum uncompressed size of a compressed value in bytes.
+     */
+    public CompressingRedisSerializer(RedisSerializer<T> serializer, int threshold, int maxLength) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative. Was: " + threshold);
+        }
+        if (maxLength < threshold) {
+            throw new IllegalArgumentException("Max length cannot be smaller than the threshold. Was: " + maxLength);
+        }
+        this.serializer = serializer;
+        this.threshold = threshold;
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        byte[] bytes = serializer.serialize(value);
+        if (bytes == null || bytes.length == 0) {
+            return EMPTY_ARRAY;
+        }
+
+        if (bytes.length >= threshold && bytes.length <= maxLength) {
+            byte[] compressed = compress(bytes);
+            if (compressed.length < bytes.length + HEADER_LENGTH) {
+                return compressed;
+            }
+        }
+
+        byte[] raw = new byte[bytes.length + HEADER_LENGTH];
+        raw[0] = HEADER_RAW;
+        System.arraycopy(bytes, 0, raw, HEADER_LENGTH, bytes.length);
+        return raw;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        return serializer.deserialize(unwrap(bytes));
+    }
+
+    /**
+     * Returns true if the given value contains no value of the wrapped serializer. This is
+     * also true for a value which was written with a header byte but without a value.
+     * @param bytes The value which was read from Redis.
+     * @return
+     */
+    public boolean isEmpty(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return true;
+        }
+        return bytes[0] == HEADER_RAW && bytes.length == HEADER_LENGTH;
+    }
+
+    /**
+     * Returns the value which was created by the wrapped serializer without deserializing it.
+     * @param bytes The value which was read from Redis.
+     * @return  The decompressed value without the header byte.
+     */
+    public byte[] unwrap(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return bytes;
+        }
+
+        if (bytes[0] == HEADER_COMPRESSED) {
+            return decompress(bytes);
+        }
+        if (bytes[0] == HEADER_RAW) {
+            return Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Writes the value which was created by the wrapped serializer to the given stream
+     * without deserializing it. A value which is not compressed is written without copying it.
+     * @param bytes The value which was read from Redis.
+     * @param out   The stream to which the value is written.
+     * @throws IOException if the value cannot be written.
+     */
+    public void writeUnwrapped(byte[] bytes, OutputStream out) throws IOException {
+        if (bytes == null || bytes.length == 0) {
+            return;
+        }
+
+        if (bytes[0] == HEADER_COMPRESSED) {
+            out.write(decompress(bytes));
+        }
+        else if (bytes[0] == HEADER_RAW) {
+            out.write(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        }
+        else {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Gets the compression statistics of this serializer.
+     * @return
+     */
+    public CompressionStatistics getStatistics() {
+        return new CompressionStatistics(compressedCount.get(), uncompressedBytes.get(), compressedBytes.get(),
+                compressionNanos.get(), decompressedCount.get(), decompressionNanos.get());
+    }
+
+    private byte[] compress(byte[] bytes) {
+        long started = System.nanoTime();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            out.write(HEADER_COMPRESSED);
+            out.write(bytes.length >>> 24);
+            out.write(bytes.length >>> 16);
+            out.write(bytes.length >>> 8);
+            out.write(bytes.length);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+
+            byte[] compressed = out.toByteArray();
+
+            compressedCount.incrementAndGet();
+            uncompressedBytes.addAndGet(bytes.length);
+            compressedBytes.addAndGet(compressed.length);
+            compressionNanos.addAndGet(System.nanoTime() - started);
+
+            return compressed;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        if (bytes.length < COMPRESSED_HEADER_LENGTH) {
+            throw new SerializationException("Cannot decompress value. Unexpected end of data.");
+        }
+
+        long started = System.nanoTime();
+
+        int length = ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+        if (length < 0 || length > maxLength) {
+            throw new SerializationException("Cannot decompress value. Invalid length: " + length);
+        }
+
+        int compressedLength = bytes.length - COMPRESSED_HEADER_LENGTH;
+        byte[] decompressed = new byte[(int) Math.min(length, Math.max(BUFFER_SIZE, 4L * compressedLength))];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, COMPRESSED_HEADER_LENGTH, compressedLength);
+
+            int position = 0;
+            while (!inflater.finished()) {
+                int inflated;
+                if (position < length) {
+                    if (position == decompressed.length) {
+                        decompressed = Arrays.copyOf(decompressed, (int) Math.min(length, 2L * decompressed.length));
+                    }
+                    inflated = inflater.inflate(decompressed, position, decompressed.length - position);
+                }
+                else {
+                    inflated = inflater.inflate(new byte[1]);
+                    if (inflated > 0) {
+                        throw new SerializationException("Cannot decompress value. The data is longer than " + length + " bytes.");
+                    }
+                }
+
+                if (inflated == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SerializationException("Cannot decompress value. Unexpected end of data.");
+                }
+                position += inflated;
+            }
+
+            if (position < length) {
+                throw new SerializationException("Cannot decompress value. Unexpected end of data.");
+            }
+            if (inflater.getRemaining() > 0) {
+                throw new SerializationException("Cannot decompress value. Unexpected data after the compressed data.");
+            }
+        }
+        catch (DataFormatException ex) {
+            throw new SerializationException("Cannot decompress value.", ex);
+        }
+        finally {
+            inflater.end();
+        }
+
+        decompressedCount.incrementAndGet();
+        decompressionNanos.addAndGet(System.nanoTime() - started);
+
+        return decompressed;
+    }
+}
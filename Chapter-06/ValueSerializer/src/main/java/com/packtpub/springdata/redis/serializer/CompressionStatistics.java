@@ -0,0 +1,81 @@
+package com.packtpub.springdata.redis.serializer;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The compression statistics of a compressing serializer.
+ * @author Petri Kainulainen
+ */
+public class CompressionStatistics {
+
+    private final long compressedCount;
+    private final long uncompressedBytes;
+    private final long compressedBytes;
+    private final long compressionNanos;
+    private final long decompressedCount;
+    private final long decompressionNanos;
+
+    public CompressionStatistics(long compressedCount, long uncompressedBytes, long compressedBytes,
+                                 long compressionNanos, long decompressedCount, long decompressionNanos) {
+        this.compressedCount = compressedCount;
+        this.uncompressedBytes = uncompressedBytes;
+        this.compressedBytes = compressedBytes;
+        this.compressionNanos = compressionNanos;
+        this.decompressedCount = decompressedCount;
+        this.decompressionNanos = decompressionNanos;
+    }
+
+    public long getCompressedCount() {
+        return compressedCount;
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getDecompressedCount() {
+        return decompressedCount;
+    }
+
+    /**
+     * Returns the size of the compressed values divided by their original size.
+     * @return  The compression ratio or 1.0 if no values have been compressed.
+     */
+    public double getCompressionRatio() {
+        if (uncompressedBytes == 0) {
+            return 1.0;
+        }
+        return (double) compressedBytes / uncompressedBytes;
+    }
+
+    /**
+     * Returns the average time which was used to compress a value.
+     * @return  The average compression time in nanoseconds.
+     */
+    public long getAverageCompressionNanos() {
+        if (compressedCount == 0) {
+            return 0;
+        }
+        return compressionNanos / compressedCount;
+    }
+
+    /**
+     * Returns the average time which was used to decompress a value.
+     * @return  The average decompression time in nanoseconds.
+     */
+    public long getAverageDecompressionNanos() {
+        if (decompressedCount == 0) {
+            return 0;
+        }
+        return decompressionNanos / decompressedCount;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,317 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Address;
+import com.packtpub.springdata.redis.model.Contact;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.Charset;
+
+/**
+ * A compact binary serializer for contacts. The serialized form of a contact is:
+ * <ol>
+ *     <li>The version of the format (one byte).</li>
+ *     <li>A two byte bit mask which tells which fields of the contact are not null.</li>
+ *     <li>The id of the contact as a variable length integer, if it is not null.</li>
+ *     <li>
+ *         The string fields which are not null in the order of the bit mask. Each field is
+ *         written as its length in bytes (a variable length integer) followed by the UTF-8
+ *         encoded value.
+ *     </li>
+ * </ol>
+ * The field names are not written at all, and the strings are encoded directly to a byte
+ * array which is allocated only once. The serialized form of a contact is always the same,
+ * which means that it can be used as a member of a Redis set.
+ * <p>
+ * A new field must be added to the end of the bit mask and the version must be increased,
+ * so that the contacts written by using an older version can still be read.
+ * @author Petri Kainulainen
+ */
+public class ContactBinaryRedisSerializer implements RedisSerializer<Contact> {
+
+    protected static final byte VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int FIELD_ID = 0;
+    private static final int FIELD_ADDRESS = 1;
+    private static final int FIELD_EMAIL_ADDRESS = 2;
+    private static final int FIELD_FIRST_NAME = 3;
+    private static final int FIELD_LAST_NAME = 4;
+    private static final int FIELD_PHONE_NUMBER = 5;
+    private static final int FIELD_STREET_ADDRESS = 6;
+    private static final int FIELD_POST_CODE = 7;
+    private static final int FIELD_POST_OFFICE = 8;
+    private static final int FIELD_STATE = 9;
+    private static final int FIELD_COUNTRY = 10;
+
+    private static final int FIRST_STRING_FIELD = FIELD_EMAIL_ADDRESS;
+    private static final int FIELD_COUNT = 11;
+
+    private static final int HEADER_LENGTH = 3;
+
+    @Override
+    public byte[] serialize(Contact contact) throws SerializationException {
+        if (contact == null) {
+            return new byte[0];
+        }
+
+        String[] values = getStrings(contact);
+        int[] lengths = new int[values.length];
+
+        int mask = 0;
+        int length = HEADER_LENGTH;
+
+        if (contact.getId() != null) {
+            mask |= 1 << FIELD_ID;
+            length += getVarLongLength(contact.getId());
+        }
+        if (contact.getAddress() != null) {
+            mask |= 1 << FIELD_ADDRESS;
+        }
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != null) {
+                mask |= 1 << (FIRST_STRING_FIELD + index);
+                lengths[index] = getUtf8Length(values[index]);
+                length += getVarLongLength(lengths[index]) + lengths[index];
+            }
+        }
+
+        Output output = new Output(length);
+        output.writeByte(VERSION);
+        output.writeByte(mask >>> 8);
+        output.writeByte(mask);
+
+        if (contact.getId() != null) {
+            output.writeVarLong(contact.getId());
+        }
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != null) {
+                output.writeVarLong(lengths[index]);
+                output.writeUtf8(values[index]);
+            }
+        }
+
+        return output.bytes;
+    }
+
+    @Override
+    public Contact deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        Input input = new Input(bytes);
+
+        int version = input.readByte();
+        if (version != VERSION) {
+            throw new SerializationException("Cannot deserialize contact. Unsupported version: " + version);
+        }
+
+        int mask = (input.readByte() << 8) | input.readByte();
+
+        Contact contact = new Contact();
+        if (isSet(mask, FIELD_ID)) {
+            contact.setId(input.readVarLong());
+        }
+
+        contact.setEmailAddress(readString(input, mask, FIELD_EMAIL_ADDRESS));
+        contact.setFirstName(readString(input, mask, FIELD_FIRST_NAME));
+        contact.setLastName(readString(input, mask, FIELD_LAST_NAME));
+        contact.setPhoneNumber(readString(input, mask, FIELD_PHONE_NUMBER));
+
+        if (isSet(mask, FIELD_ADDRESS)) {
+            Address address = new Address();
+            address.setStreetAddress(readString(input, mask, FIELD_STREET_ADDRESS));
+            address.setPostCode(readString(input, mask, FIELD_POST_CODE));
+            address.setPostOffice(readString(input, mask, FIELD_POST_OFFICE));
+            address.setState(readString(input, mask, FIELD_STATE));
+            address.setCountry(readString(input, mask, FIELD_COUNTRY));
+            contact.setAddress(address);
+        }
+
+        return contact;
+    }
+
+    /**
+     * Gets the string fields of a contact in the order of the bit mask.
+     * @param contact   The contact.
+     * @return  The field values.
+     */
+    private String[] getStrings(Contact contact) {
+        String[] values = new String[FIELD_COUNT - FIRST_STRING_FIELD];
+
+        values[FIELD_EMAIL_ADDRESS - FIRST_STRING_FIELD] = contact.getEmailAddress();
+        values[FIELD_FIRST_NAME - FIRST_STRING_FIELD] = contact.getFirstName();
+        values[FIELD_LAST_NAME - FIRST_STRING_FIELD] = contact.getLastName();
+        values[FIELD_PHONE_NUMBER - FIRST_STRING_FIELD] = contact.getPhoneNumber();
+
+        Address address = contact.getAddress();
+        if (address != null) {
+            values[FIELD_STREET_ADDRESS - FIRST_STRING_FIELD] = address.getStreetAddress();
+            values[FIELD_POST_CODE - FIRST_STRING_FIELD] = address.getPostCode();
+            values[FIELD_POST_OFFICE - FIRST_STRING_FIELD] = address.getPostOffice();
+            values[FIELD_STATE - FIRST_STRING_FIELD] = address.getState();
+            values[FIELD_COUNTRY - FIRST_STRING_FIELD] = address.getCountry();
+        }
+
+        return values;
+    }
+
+    private String readString(Input input, int mask, int field) {
+        if (!isSet(mask, field)) {
+            return null;
+        }
+
+        int length = (int) input.readVarLong();
+        return input.readString(length);
+    }
+
+    private boolean isSet(int mask, int field) {
+        return (mask & (1 << field)) != 0;
+    }
+
+    /**
+     * Calculates the length of a string in UTF-8 encoding. A surrogate character which is
+     * not a part of a valid surrogate pair is encoded as '?'.
+     * @param value The string.
+     * @return  The length in bytes.
+     */
+    private static int getUtf8Length(String value) {
+        int length = 0;
+        for (int index = 0; index < value.length(); index++) {
+            char current = value.charAt(index);
+            if (current < 0x80) {
+                length += 1;
+            }
+            else if (current < 0x800) {
+                length += 2;
+            }
+            else if (isSurrogatePair(value, index)) {
+                length += 4;
+                index++;
+            }
+            else if (isSurrogate(current)) {
+                length += 1;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index))
+                && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    private static boolean isSurrogate(char value) {
+        return value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE;
+    }
+
+    private static int getVarLongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static class Output {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Output(int length) {
+            this.bytes = new byte[length];
+        }
+
+        private void writeByte(int value) {
+            bytes[position++] = (byte) value;
+        }
+
+        /**
+         * Writes a string in UTF-8 encoding directly to the output without creating an
+         * intermediate byte array.
+         * @param value The written string.
+         */
+        private void writeUtf8(String value) {
+            for (int index = 0; index < value.length(); index++) {
+                char current = value.charAt(index);
+                if (current < 0x80) {
+                    writeByte(current);
+                }
+                else if (current < 0x800) {
+                    writeByte(0xC0 | (current >> 6));
+                    writeByte(0x80 | (current & 0x3F));
+                }
+                else if (isSurrogatePair(value, index)) {
+                    int codePoint = Character.toCodePoint(current, value.charAt(++index));
+                    writeByte(0xF0 | (codePoint >> 18));
+                    writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                    writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                    writeByte(0x80 | (codePoint & 0x3F));
+                }
+                else if (isSurrogate(current)) {
+                    writeByte('?');
+                }
+                else {
+                    writeByte(0xE0 | (current >> 12));
+                    writeByte(0x80 | ((current >> 6) & 0x3F));
+                    writeByte(0x80 | (current & 0x3F));
+                }
+            }
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+    }
+
+    private static class Input {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readByte() {
+            ensureAvailable(1);
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                int current = readByte();
+                value |= (long) (current & 0x7F) << shift;
+                if ((current & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Cannot deserialize contact. Malformed variable length integer.");
+        }
+
+        private String readString(int length) {
+            ensureAvailable(length);
+            String value = new String(bytes, position, length, UTF8);
+            position += length;
+            return value;
+        }
+
+        private void ensureAvailable(int length) {
+            if (length < 0 || position + length > bytes.length) {
+                throw new SerializationException("Cannot deserialize contact. Unexpected end of data.");
+            }
+        }
+    }
+}
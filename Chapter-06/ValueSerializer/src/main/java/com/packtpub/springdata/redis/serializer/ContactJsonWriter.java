@@ -0,0 +1,99 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes contacts which are read from Redis as JSON without creating contact objects.
+ * <p>
+ * If the contacts are stored as JSON, the stored bytes are written to the output as they
+ * are (compressed contacts are decompressed first), and a list of contacts is written as
+ * a JSON array whose elements are the stored bytes. If the contacts are stored by using
+ * some other format, each contact is deserialized and serialized again as JSON.
+ * @author Petri Kainulainen
+ */
+public class ContactJsonWriter {
+
+    private static final int ARRAY_START = '[';
+    private static final int ARRAY_END = ']';
+    private static final int ARRAY_SEPARATOR = ',';
+
+    private CompressingRedisSerializer<Contact> valueSerializer;
+
+    private RedisSerializer<Contact> jsonSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private boolean passThrough;
+
+    /**
+     * Creates a new contact JSON writer.
+     * @param valueSerializer   The serializer which is used to store the contacts.
+     * @param passThrough   Are the contacts stored as JSON.
+     */
+    public ContactJsonWriter(CompressingRedisSerializer<Contact> valueSerializer, boolean passThrough) {
+        this.valueSerializer = valueSerializer;
+        this.passThrough = passThrough;
+    }
+
+    /**
+     * Returns true if the stored bytes are written to the output as they are.
+     * @return
+     */
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    /**
+     * Returns true if the given value contains no contact.
+     * @param value The value which was read from Redis.
+     * @return
+     */
+    public boolean isEmpty(byte[] value) {
+        return valueSerializer.isEmpty(value);
+    }
+
+    /**
+     * Writes a contact as a JSON object.
+     * @param value The contact which was read from Redis.
+     * @param out   The stream to which the contact is written.
+     * @throws IOException if the contact cannot be written.
+     */
+    public void write(byte[] value, OutputStream out) throws IOException {
+        if (passThrough) {
+            valueSerializer.writeUnwrapped(value, out);
+        }
+        else {
+            out.write(jsonSerializer.serialize(valueSerializer.deserialize(value)));
+        }
+    }
+
+    /**
+     * Writes contacts as a JSON array.
+     * @param values    The contacts which were read from Redis. Null and empty values are ignored.
+     * @param out   The stream to which the contacts are written.
+     * @return  The number of written contacts.
+     * @throws IOException if the contacts cannot be written.
+     */
+    public int writeArray(List<byte[]> values, OutputStream out) throws IOException {
+        int written = 0;
+
+        out.write(ARRAY_START);
+        for (byte[] value: values) {
+            if (isEmpty(value)) {
+                continue;
+            }
+            if (written > 0) {
+                out.write(ARRAY_SEPARATOR);
+            }
+            write(value, out);
+            written++;
+        }
+        out.write(ARRAY_END);
+
+        return written;
+    }
+}
@@ -0,0 +1,18 @@
+package com.packtpub.springdata.redis.service;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+/**
+ * Writes the commands of a single item to a connection which is used by the batch writer.
+ * @author Petri Kainulainen
+ */
+public interface BatchWriteCallback<T> {
+
+    /**
+     * Writes the commands of the given item. The commands are queued to the transaction of
+     * the current batch, which means that their replies are not available.
+     * @param connection    The used Redis connection.
+     * @param item  The written item.
+     */
+    public void write(RedisConnection connection, T item);
+}
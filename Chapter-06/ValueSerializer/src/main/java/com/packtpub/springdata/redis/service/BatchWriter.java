@@ -0,0 +1,107 @@
+package com.packtpub.springdata.redis.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes large collections of items in bounded batches over a single connection. The
+ * commands of each batch are sent as one MULTI/EXEC transaction, which means that writing a
+ * batch costs one network round trip and a batch is never left half written. The size of a
+ * batch limits the memory which is used to buffer the commands and the replies.
+ * <p>
+ * The throughput of each batch is written to the log.
+ * @author Petri Kainulainen
+ */
+public class BatchWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchWriter.class);
+
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    private RedisTemplate redisTemplate;
+
+    private int batchSize;
+
+    public BatchWriter(RedisTemplate redisTemplate, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than zero. Was: " + batchSize);
+        }
+        this.redisTemplate = redisTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the maximum number of items which are written in one batch.
+     * @return
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Splits the given items into batches.
+     * @param items The split items.
+     * @return  A list of batches. Each batch contains at most batch size items.
+     */
+    public <T> List<List<T>> partition(Collection<T> items) {
+        List<T> itemList = new ArrayList<T>(items);
+        List<List<T>> batches = new ArrayList<List<T>>();
+
+        for (int from = 0; from < itemList.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, itemList.size());
+            batches.add(itemList.subList(from, to));
+        }
+
+        return batches;
+    }
+
+    /**
+     * Writes the given items.
+     * @param items The written items.
+     * @param callback  The callback which writes the commands of a single item.
+     */
+    public <T> void write(Collection<T> items, final BatchWriteCallback<T> callback) {
+        LOGGER.debug("Writing {} items in batches of {}", items.size(), batchSize);
+
+        if (items.isEmpty()) {
+            return;
+        }
+
+        final List<List<T>> batches = partition(items);
+
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (int index = 0; index < batches.size(); index++) {
+                    List<T> batch = batches.get(index);
+                    long start = System.currentTimeMillis();
+
+                    connection.multi();
+                    for (T item: batch) {
+                        callback.write(connection, item);
+                    }
+                    connection.exec();
+
+                    long elapsed = System.currentTimeMillis() - start;
+
+                    LOGGER.debug("Wrote batch {}/{} with {} items in {} ms ({} items/s)",
+                            new Object[] {index + 1, batches.size(), batch.size(), elapsed, getThroughput(batch.size(), elapsed)});
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private long getThroughput(int itemCount, long elapsedMillis) {
+        return itemCount * MILLIS_PER_SECOND / Math.max(elapsedMillis, 1);
+    }
+}
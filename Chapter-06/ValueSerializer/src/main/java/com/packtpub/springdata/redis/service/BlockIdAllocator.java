@@ -0,0 +1,92 @@
+package com.packtpub.springdata.redis.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hi/lo style id allocator. The allocator reserves a block of ids by incrementing a Redis
+ * counter with the size of the block (INCRBY) and hands out the ids of the reserved block
+ * from memory. This means that only one insert per block needs a network round trip.
+ * <p>
+ * Because each block is reserved atomically, the ids are unique across all application
+ * nodes which share the same counter. The ids are not contiguous, and the unused ids of a
+ * block are lost when the application is stopped.
+ * @author Petri Kainulainen
+ */
+public class BlockIdAllocator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockIdAllocator.class);
+
+    private RedisAtomicLong counter;
+
+    private int blockSize;
+
+    private long next;
+    private long last;
+
+    public BlockIdAllocator(RedisAtomicLong counter, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be greater than zero. Was: " + blockSize);
+        }
+        this.counter = counter;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Allocates a new id. A new block of ids is reserved from Redis if the current
+     * block is used up.
+     * @return  The allocated id.
+     */
+    public synchronized long incrementAndGet() {
+        if (next == 0 || next > last) {
+            reserveBlock();
+        }
+
+        return next++;
+    }
+
+    /**
+     * Allocates the given number of ids. The unused ids of the current block are handed out
+     * first, and the rest of the ids are reserved from Redis with a single INCRBY command.
+     * The reserved range is rounded up to a multiple of the block size, and the ids which
+     * are left over are handed out by the following calls.
+     * @param count The number of allocated ids.
+     * @return  The allocated ids.
+     */
+    public synchronized List<Long> allocate(int count) {
+        List<Long> ids = new ArrayList<Long>(count);
+
+        while (ids.size() < count && next != 0 && next <= last) {
+            ids.add(next++);
+        }
+
+        int remaining = count - ids.size();
+        if (remaining > 0) {
+            long blockCount = (remaining + blockSize - 1) / blockSize;
+            reserve(blockCount * blockSize);
+
+            while (ids.size() < count) {
+                ids.add(next++);
+            }
+        }
+
+        return ids;
+    }
+
+    private void reserveBlock() {
+        reserve(blockSize);
+    }
+
+    private void reserve(long size) {
+        LOGGER.debug("Reserving a block of {} ids", size);
+
+        last = counter.addAndGet(size);
+        next = last - size + 1;
+
+        LOGGER.debug("Reserved ids from {} to {}", next, last);
+    }
+}
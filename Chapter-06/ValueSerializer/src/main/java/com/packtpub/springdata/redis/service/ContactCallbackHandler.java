@@ -0,0 +1,16 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+
+/**
+ * Processes the contacts which are streamed by the export of the contact service.
+ * @author Petri Kainulainen
+ */
+public interface ContactCallbackHandler {
+
+    /**
+     * Processes an exported contact.
+     * @param contact   The exported contact.
+     */
+    public void processContact(Contact contact);
+}
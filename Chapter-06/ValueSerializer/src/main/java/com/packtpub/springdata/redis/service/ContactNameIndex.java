@@ -0,0 +1,312 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maintains the name indexes of contacts and finds contacts by using them. Each index is a
+ * sorted set in which every member has the same score, which means that Redis orders the
+ * members lexicographically. The members are built from the lowercased names of a contact
+ * and the id of the contact is the last part of each member.
+ * <p>
+ * The following indexes are maintained:
+ * <ul>
+ *     <li>The last name index contains members of the form 'lastName:firstName:id'.</li>
+ *     <li>The first name index contains members of the form 'firstName:lastName:id'.</li>
+ *     <li>The common name prefix index contains the longest common prefix of the first and
+ *     last name of a contact. It is used to count the contacts whose both names start with
+ *     the search term.</li>
+ * </ul>
+ * Redis 2.6 has no range-by-lex queries. The members which start with a search term are
+ * found by a Lua script which resolves their ranks with a binary search over each index and
+ * reads the members of the wanted page on the server. This means that a count or a search
+ * costs a single network round trip, that only the members of the page are sent to the
+ * client and that the searches never write to the indexes. The script runs atomically, so
+ * the indexes cannot change during a search. The members are compared as bytes in the same
+ * way than Redis compares them.
+ * @author Petri Kainulainen
+ */
+public class ContactNameIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactNameIndex.class);
+
+    protected static final String KEY_LAST_NAME_INDEX = "contactsByName";
+    protected static final String KEY_FIRST_NAME_INDEX = "contactsByFirstName";
+    protected static final String KEY_COMMON_NAME_PREFIX_INDEX = "contactsByCommonNamePrefix";
+
+    private static final String SEPARATOR = ":";
+    private static final double SCORE = 0;
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private RedisScript prefixSearchScript;
+
+    /**
+     * Creates a new contact name index.
+     * @param stringRedisTemplate   The template which is used to access the indexes.
+     * @param prefixSearchScript    The Lua script which finds the members which start with a prefix.
+     */
+    public ContactNameIndex(StringRedisTemplate stringRedisTemplate, RedisScript prefixSearchScript) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.prefixSearchScript = prefixSearchScript;
+    }
+
+    /**
+     * Adds the given contact to the name indexes.
+     * @param contact   The added contact.
+     */
+    public void add(Contact contact) {
+        update(null, contact);
+    }
+
+    /**
+     * Removes the given contact from the name indexes.
+     * @param contact   The removed contact.
+     */
+    public void remove(Contact contact) {
+        update(contact, null);
+    }
+
+    /**
+     * Replaces the old index members of a contact with new ones in a single transaction.
+     * @param old   The old information of the contact or null if the contact is added.
+     * @param updated   The new information of the contact or null if the contact is removed.
+     */
+    public void update(final Contact old, final Contact updated) {
+        stringRedisTemplate.execute(new RedisCallback<List<Object>>() {
+            @Override
+            public List<Object> doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.multi();
+
+                if (old != null) {
+                    remove(connection, old);
+                }
+                if (updated != null) {
+                    add(connection, updated);
+                }
+
+                return connection.exec();
+            }
+        });
+    }
+
+    /**
+     * Adds the given contact to the name indexes by using the given connection. This method
+     * can be used to update the indexes as a part of a larger transaction.
+     * @param connection    The used connection.
+     * @param contact   The added contact.
+     */
+    public void add(RedisConnection connection, Contact contact) {
+        for (Map.Entry<String, String> member: buildMembers(contact).entrySet()) {
+            connection.zAdd(serialize(member.getKey()), SCORE, serialize(member.getValue()));
+        }
+    }
+
+    /**
+     * Removes the given contact from the name indexes by using the given connection. This
+     * method can be used to update the indexes as a part of a larger transaction.
+     * @param connection    The used connection.
+     * @param contact   The removed contact.
+     */
+    public void remove(RedisConnection connection, Contact contact) {
+        for (Map.Entry<String, String> member: buildMembers(contact).entrySet()) {
+            connection.zRem(serialize(member.getKey()), serialize(member.getValue()));
+        }
+    }
+
+    /**
+     * Builds the index members of the given contact without the id of the contact.
+     * @param contact   The contact.
+     * @return  A map which contains the keys of the indexes and the beginnings of the members.
+     */
+    public Map<String, String> buildMemberPrefixes(Contact contact) {
+        String firstName = contact.getFirstName().toLowerCase(Locale.ENGLISH);
+        String lastName = contact.getLastName().toLowerCase(Locale.ENGLISH);
+
+        Map<String, String> prefixes = new LinkedHashMap<String, String>();
+        prefixes.put(KEY_LAST_NAME_INDEX, lastName + SEPARATOR + firstName + SEPARATOR);
+        prefixes.put(KEY_FIRST_NAME_INDEX, firstName + SEPARATOR + lastName + SEPARATOR);
+
+        String commonPrefix = getCommonPrefix(firstName, lastName);
+        if (!commonPrefix.isEmpty()) {
+            prefixes.put(KEY_COMMON_NAME_PREFIX_INDEX, commonPrefix + SEPARATOR);
+        }
+
+        return prefixes;
+    }
+
+    /**
+     * Builds the index members of the given contact.
+     * @param contact   The contact.
+     * @return  A map which contains the keys of the indexes and the members of the contact.
+     */
+    public Map<String, String> buildMembers(Contact contact) {
+        Map<String, String> members = buildMemberPrefixes(contact);
+
+        for (Map.Entry<String, String> member: members.entrySet()) {
+            member.setValue(member.getValue() + contact.getId());
+        }
+
+        return members;
+    }
+
+    /**
+     * Gets the count of indexed contacts.
+     * @return
+     */
+    public long count() {
+        LOGGER.debug("Getting the size of the name index");
+        return stringRedisTemplate.opsForZSet().size(KEY_LAST_NAME_INDEX);
+    }
+
+    /**
+     * Gets the count of contacts whose first or last name starts with the given search term.
+     * @param searchTerm    The search term.
+     * @return
+     */
+    public long count(String searchTerm) {
+        LOGGER.debug("Getting contact count with search term: {}", searchTerm);
+
+        String prefix = normalize(searchTerm);
+        if (prefix.isEmpty()) {
+            return count();
+        }
+        if (prefix.contains(SEPARATOR)) {
+            return 0;
+        }
+
+        List<Object> sizes = findPrefix(prefix, 0, 0, KEY_LAST_NAME_INDEX, KEY_FIRST_NAME_INDEX, KEY_COMMON_NAME_PREFIX_INDEX);
+
+        return (Long) sizes.get(0) + (Long) sizes.get(1) - (Long) sizes.get(2);
+    }
+
+    /**
+     * Finds the ids of the contacts which belong to the given page. The contacts are
+     * sorted by their last and first names.
+     * @param pageIndex The index of the page.
+     * @param pageSize  The number of contacts per page.
+     * @return
+     */
+    public List<Long> findIdsForPage(int pageIndex, int pageSize) {
+        LOGGER.debug("Finding ids for page {} with page size {}", pageIndex, pageSize);
+
+        long start = (long) pageIndex * pageSize;
+        long end = start + pageSize - 1;
+
+        Collection<String> members = stringRedisTemplate.opsForZSet().range(KEY_LAST_NAME_INDEX, start, end);
+
+        List<Long> ids = new ArrayList<Long>(members.size());
+        for (String member: members) {
+            ids.add(parseId(member));
+        }
+
+        return ids;
+    }
+
+    /**
+     * Finds the ids of the contacts whose first or last name starts with the given search term.
+     * The contacts are sorted by the matching name. If only one name of the matching contacts
+     * starts with the search term, the page is read from its start rank and the cost of the
+     * search is O(log N + P) where P is the size of the page. Otherwise the members of the
+     * previous pages are merged on the server to remove the duplicate contacts, which adds
+     * the members of the previous pages to the cost but not to the reply.
+     * <p>
+     * A search term which contains the separator of the index members matches no contacts.
+     * @param searchTerm    The search term.
+     * @param pageIndex The index of the page.
+     * @param pageSize  The number of contacts per page.
+     * @return
+     */
+    public List<Long> search(String searchTerm, int pageIndex, int pageSize) {
+        LOGGER.debug("Finding ids with search term: {} for page: {}", searchTerm, pageIndex);
+
+        String prefix = normalize(searchTerm);
+        if (prefix.isEmpty()) {
+            return findIdsForPage(pageIndex, pageSize);
+        }
+        if (prefix.contains(SEPARATOR)) {
+            return new ArrayList<Long>();
+        }
+
+        long offset = (long) pageIndex * pageSize;
+
+        List<Object> reply = findPrefix(prefix, offset, pageSize, KEY_LAST_NAME_INDEX, KEY_FIRST_NAME_INDEX);
+
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+
+        List<Long> ids = new ArrayList<Long>(reply.size() - 2);
+        for (Object member: reply.subList(2, reply.size())) {
+            ids.add(parseId(serializer.deserialize((byte[]) member)));
+        }
+
+        return ids;
+    }
+
+    /**
+     * Finds the members which start with the given prefix from the given indexes by running
+     * the prefix search script on the Redis server.
+     * @param prefix    The prefix.
+     * @param offset    The number of members which are skipped before the page.
+     * @param limit The maximum number of returned members. If it is 0, no members are returned.
+     * @param keys  The keys of the indexes.
+     * @return  The sizes of the matching ranges in the same order than the keys were given
+     *          followed by the members of the page.
+     */
+    private List<Object> findPrefix(final String prefix, final long offset, final int limit, final String... keys) {
+        List<Object> reply = stringRedisTemplate.execute(new RedisCallback<List<Object>>() {
+            @Override
+            public List<Object> doInRedis(RedisConnection connection) throws DataAccessException {
+                List<byte[]> rawKeys = new ArrayList<byte[]>(keys.length);
+                for (String key: keys) {
+                    rawKeys.add(serialize(key));
+                }
+
+                List<byte[]> args = Arrays.asList(serialize(prefix), serialize(Long.toString(offset)), serialize(Integer.toString(limit)));
+
+                return (List<Object>) prefixSearchScript.execute(connection, rawKeys, args);
+            }
+        });
+
+        LOGGER.debug("Found range sizes: {} for prefix: {}", reply.subList(0, keys.length), prefix);
+
+        return reply;
+    }
+
+    private String getCommonPrefix(String first, String second) {
+        int length = 0;
+        while (length < first.length() && length < second.length() && first.charAt(length) == second.charAt(length)) {
+            length++;
+        }
+        return first.substring(0, length);
+    }
+
+    private String normalize(String searchTerm) {
+        if (searchTerm == null) {
+            return "";
+        }
+        return searchTerm.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    private Long parseId(String member) {
+        String id = member.substring(member.lastIndexOf(SEPARATOR) + 1);
+        return Long.valueOf(id);
+    }
+
+    private byte[] serialize(String value) {
+        return stringRedisTemplate.getStringSerializer().serialize(value);
+    }
+}
@@ -1,7 +1,11 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
 import com.packtpub.springdata.redis.model.Contact;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,6 +21,27 @@ public interface ContactService {
      */
     public Contact add(Contact added);
 
+    /**
+     * Adds new contacts. The contacts are written in batches and the ids of the contacts
+     * are reserved in bulk.
+     * @param added The information of the added contacts.
+     * @return  The added contacts.
+     */
+    public List<Contact> addAll(Collection<Contact> added);
+
+    /**
+     * Gets the count of contacts.
+     * @return  The count of all contacts.
+     */
+    public long count();
+
+    /**
+     * Gets the count of contacts whose first or last name starts with the search term.
+     * @param dto   The search conditions
+     * @return  The count of contacts matching with the given search conditions.
+     */
+    public long count(SearchDTO dto);
+
     /**
      * Deletes a contact.
      * @param id    The id of the deleted contact.
@@ -25,12 +50,36 @@ public interface ContactService {
      */
     public Contact deleteById(Long id) throws NotFoundException;
 
+    /**
+     * Deletes contacts. The contacts are deleted in batches.
+     * @param ids   The ids of the deleted contacts.
+     * @return  The deleted contacts. Ids which do not point to a contact are ignored.
+     */
+    public List<Contact> deleteAll(Collection<Long> ids);
+
+    /**
+     * Streams all contacts to the given handler. The contacts are read in batches which
+     * are sorted by the last and first names of the contacts, which means that all contacts
+     * are never held in memory at the same time.
+     * @param handler   The handler which processes the exported contacts.
+     * @return  The number of exported contacts.
+     */
+    public long exportAll(ContactCallbackHandler handler);
+
     /**
      * Finds a all contacts.
      * @return  A list of contacts. If no contacts is found, this method returns an empty list.
      */
     public List<Contact> findAll();
 
+    /**
+     * Finds contacts for page. The contacts are sorted by their last and first names.
+     * @param pageIndex The index of the page.
+     * @param pageSize  The number of contacts per page.
+     * @return  A list of contacts for the given page.
+     */
+    public List<Contact> findAllForPage(int pageIndex, int pageSize);
+
     /**
      * Finds a contact.
      * @param id    The id of the wanted contact.
@@ -39,6 +88,34 @@ public interface ContactService {
      */
     public Contact findById(Long id) throws NotFoundException;
 
+    /**
+     * Writes the contacts of a page as a JSON array without creating contact objects when
+     * the contacts are stored as JSON. The contacts are sorted by their last and first names.
+     * @param pageIndex The index of the page.
+     * @param pageSize  The number of contacts per page.
+     * @param out   The stream to which the contacts are written.
+     * @return  The number of written contacts.
+     * @throws IOException  if the contacts cannot be written.
+     */
+    public int writeAllForPageAsJson(int pageIndex, int pageSize, OutputStream out) throws IOException;
+
+    /**
+     * Writes a contact as a JSON object without creating a contact object when the contacts
+     * are stored as JSON.
+     * @param id    The id of the wanted contact.
+     * @param out   The stream to which the contact is written.
+     * @throws NotFoundException    if no contact is found with the given id. Nothing is written to the stream.
+     * @throws IOException  if the contact cannot be written.
+     */
+    public void writeByIdAsJson(Long id, OutputStream out) throws NotFoundException, IOException;
+
+    /**
+     * Searches contacts whose first or last name starts with the search term.
+     * @param dto   The used search criteria.
+     * @return  A list of contacts. If no contacts is found, this method returns an empty list.
+     */
+    public List<Contact> search(SearchDTO dto);
+
     /**
      * Updates the information of a contact.
      * @param updated   The new information of a contact.
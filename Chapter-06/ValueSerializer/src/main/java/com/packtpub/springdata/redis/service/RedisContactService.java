@@ -1,20 +1,44 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
 import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.serializer.ContactJsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 
 /**
  * This implementation communicates with Redis by using the RedisTemplate class.
+ * <p>
+ * Each contact is stored only once as the value of the key 'contact[id]'. The contact set
+ * contains only the ids of the contacts, which means that it does not have to be changed
+ * when a contact is updated, and the contacts are read from the contact set by fetching
+ * their ids first and their values in batches with the MGET command.
+ * <p>
+ * A contact is updated by using optimistic locking. The key of the contact is watched
+ * while the old information of the contact is read, and the new information and the name
+ * index changes are written in one MULTI/EXEC transaction. If the contact is changed by
+ * another client before the transaction is executed, the transaction is discarded and the
+ * update is tried again.
+ * <p>
+ * The JSON read methods write the stored values to the output without deserializing them,
+ * so that the contacts which are stored as JSON are never converted into contact objects.
  * @author Petri Kainulainen
  */
 @Service
@@ -25,22 +49,70 @@ public class RedisContactService implements ContactService {
     private static final String KEY_CONTACT_PREFIX = "contact";
     protected static final String KEY_CONTACT_SET = "contacts";
 
+    protected static final int MAX_UPDATE_ATTEMPTS = 5;
+
+    @Resource
+    private BatchWriter batchWriter;
+
+    @Resource
+    private BlockIdAllocator contactIdCounter;
+
+    @Resource
+    private ContactJsonWriter contactJsonWriter;
+
     @Resource
-    private RedisAtomicLong contactIdCounter;
+    private ContactNameIndex contactNameIndex;
 
     @Resource
     private RedisTemplate<String, Contact> redisTemplate;
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
     @Override
     public Contact add(Contact added) {
         LOGGER.debug("Adding contact with information: {}", added);
 
         persist(added);
-        redisTemplate.opsForSet().add(KEY_CONTACT_SET, added);
+        stringRedisTemplate.opsForSet().add(KEY_CONTACT_SET, buildMember(added.getId()));
+        contactNameIndex.add(added);
 
         return added;
     }
 
+    @Override
+    public List<Contact> addAll(Collection<Contact> added) {
+        LOGGER.debug("Adding {} contacts", added.size());
+
+        List<Contact> contacts = new ArrayList<Contact>(added);
+        assignIds(contacts);
+
+        batchWriter.write(contacts, new BatchWriteCallback<Contact>() {
+            @Override
+            public void write(RedisConnection connection, Contact contact) {
+                connection.set(serializeKey(buildKey(contact.getId())), serializeValue(contact));
+                connection.sAdd(serializeString(KEY_CONTACT_SET), serializeString(buildMember(contact.getId())));
+                contactNameIndex.add(connection, contact);
+            }
+        });
+
+        LOGGER.debug("Added {} contacts", contacts.size());
+
+        return contacts;
+    }
+
+    @Override
+    public long count() {
+        LOGGER.debug("Getting contact count");
+        return contactNameIndex.count();
+    }
+
+    @Override
+    public long count(SearchDTO dto) {
+        LOGGER.debug("Getting contact count with search criteria: {}", dto);
+        return contactNameIndex.count(dto.getSearchTerm());
+    }
+
     @Override
     public Contact deleteById(Long id) throws NotFoundException {
         LOGGER.debug("Finding contact by id: {}", id);
@@ -51,20 +123,90 @@ public class RedisContactService implements ContactService {
         String key = buildKey(id);
         LOGGER.debug("Using key: {}", key);
 
-        redisTemplate.opsForSet().remove(KEY_CONTACT_SET, deleted);
-        redisTemplate.opsForValue().set(key, null);
+        stringRedisTemplate.opsForSet().remove(KEY_CONTACT_SET, buildMember(id));
+        contactNameIndex.remove(deleted);
+        redisTemplate.delete(key);
+
+        return deleted;
+    }
+
+    @Override
+    public List<Contact> deleteAll(Collection<Long> ids) {
+        LOGGER.debug("Deleting {} contacts", ids.size());
+
+        List<Contact> deleted = new ArrayList<Contact>(ids.size());
+        for (List<Long> batch: batchWriter.partition(ids)) {
+            deleted.addAll(findByIds(batch));
+        }
+
+        batchWriter.write(deleted, new BatchWriteCallback<Contact>() {
+            @Override
+            public void write(RedisConnection connection, Contact contact) {
+                connection.del(serializeKey(buildKey(contact.getId())));
+                connection.sRem(serializeString(KEY_CONTACT_SET), serializeString(buildMember(contact.getId())));
+                contactNameIndex.remove(connection, contact);
+            }
+        });
+
+        LOGGER.debug("Deleted {} contacts", deleted.size());
 
         return deleted;
     }
 
+    @Override
+    public long exportAll(ContactCallbackHandler handler) {
+        LOGGER.debug("Exporting all contacts");
+
+        long exported = 0;
+        int pageIndex = 0;
+
+        List<Long> ids = contactNameIndex.findIdsForPage(pageIndex, batchWriter.getBatchSize());
+        while (!ids.isEmpty()) {
+            for (Contact contact: findByIds(ids)) {
+                handler.processContact(contact);
+                exported++;
+            }
+
+            pageIndex++;
+            ids = contactNameIndex.findIdsForPage(pageIndex, batchWriter.getBatchSize());
+        }
+
+        LOGGER.debug("Exported {} contacts", exported);
+
+        return exported;
+    }
+
     @Override
     public List<Contact> findAll() {
         LOGGER.debug("Finding all contacts");
 
-        Collection<Contact> contacts = redisTemplate.opsForSet().members(KEY_CONTACT_SET);
+        Set<String> members = stringRedisTemplate.opsForSet().members(KEY_CONTACT_SET);
+
+        List<Long> ids = new ArrayList<Long>(members.size());
+        for (String member: members) {
+            ids.add(Long.valueOf(member));
+        }
+
+        List<Contact> contacts = new ArrayList<Contact>(ids.size());
+        for (List<Long> batch: batchWriter.partition(ids)) {
+            contacts.addAll(findByIds(batch));
+        }
+
         LOGGER.debug("Returning {} contacts", contacts.size());
 
-        return new ArrayList<Contact>(contacts);
+        return contacts;
+    }
+
+    @Override
+    public List<Contact> findAllForPage(int pageIndex, int pageSize) {
+        LOGGER.debug("Finding contacts for page {} with page size {}", pageIndex, pageSize);
+
+        List<Long> ids = contactNameIndex.findIdsForPage(pageIndex, pageSize);
+        List<Contact> contacts = findByIds(ids);
+
+        LOGGER.debug("Returning {} contacts", contacts.size());
+
+        return contacts;
     }
 
     @Override
@@ -84,18 +226,105 @@ public class RedisContactService implements ContactService {
         return found;
     }
 
+    @Override
+    public List<Contact> search(SearchDTO dto) {
+        LOGGER.debug("Searching contacts with search criteria: {}", dto);
+
+        List<Long> ids = contactNameIndex.search(dto.getSearchTerm(), dto.getPageIndex(), dto.getPageSize());
+        List<Contact> contacts = findByIds(ids);
+
+        LOGGER.debug("Found {} contacts", contacts.size());
+
+        return contacts;
+    }
+
+    @Override
+    public int writeAllForPageAsJson(int pageIndex, int pageSize, OutputStream out) throws IOException {
+        LOGGER.debug("Writing contacts for page {} with page size {} as JSON", pageIndex, pageSize);
+
+        List<Long> ids = contactNameIndex.findIdsForPage(pageIndex, pageSize);
+        int written = contactJsonWriter.writeArray(findValuesByIds(ids), out);
+
+        LOGGER.debug("Wrote {} contacts", written);
+
+        return written;
+    }
+
+    @Override
+    public void writeByIdAsJson(Long id, OutputStream out) throws NotFoundException, IOException {
+        LOGGER.debug("Writing contact with id: {} as JSON", id);
+
+        final byte[] key = serializeKey(buildKey(id));
+        byte[] value = redisTemplate.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.get(key);
+            }
+        });
+
+        if (contactJsonWriter.isEmpty(value)) {
+            LOGGER.debug("No contact found with id: {}", id);
+            throw new NotFoundException("No contact found with id: " + id);
+        }
+
+        contactJsonWriter.write(value, out);
+    }
+
     @Override
     public Contact update(Contact updated) throws NotFoundException {
         LOGGER.debug("Updating contact with information: {}", updated);
 
-        Contact old = findById(updated.getId());
+        for (int attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+            UpdateResult result = tryUpdate(updated);
 
-        persist(updated);
+            if (result == UpdateResult.NOT_FOUND) {
+                LOGGER.debug("No contact found with id: {}", updated.getId());
+                throw new NotFoundException("No contact found with id: " + updated.getId());
+            }
+            if (result == UpdateResult.UPDATED) {
+                return updated;
+            }
 
-        redisTemplate.opsForSet().remove(KEY_CONTACT_SET, old);
-        redisTemplate.opsForSet().add(KEY_CONTACT_SET, updated);
+            LOGGER.debug("Contact with id: {} was changed concurrently. Update attempt {} of {} failed.",
+                    new Object[] {updated.getId(), attempt, MAX_UPDATE_ATTEMPTS});
+        }
 
-        return updated;
+        throw new OptimisticLockingFailureException("Could not update contact with id: " + updated.getId()
+                + " because it was changed concurrently " + MAX_UPDATE_ATTEMPTS + " times");
+    }
+
+    /**
+     * Tries to update the information of a contact in a transaction which is discarded if
+     * the contact is changed after its old information was read.
+     * @param updated   The new information of the contact.
+     * @return  The result of the update attempt.
+     */
+    private UpdateResult tryUpdate(final Contact updated) {
+        final byte[] key = serializeKey(buildKey(updated.getId()));
+        final byte[] value = serializeValue(updated);
+
+        return redisTemplate.execute(new RedisCallback<UpdateResult>() {
+            @Override
+            public UpdateResult doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.watch(key);
+
+                Contact old = deserializeValue(connection.get(key));
+                if (old == null) {
+                    connection.unwatch();
+                    return UpdateResult.NOT_FOUND;
+                }
+
+                connection.multi();
+                connection.set(key, value);
+                contactNameIndex.remove(connection, old);
+                contactNameIndex.add(connection, updated);
+
+                if (connection.exec() == null) {
+                    return UpdateResult.CONFLICT;
+                }
+                return UpdateResult.UPDATED;
+            }
+        });
     }
 
     private void persist(Contact persisted) {
@@ -114,7 +343,110 @@ public class RedisContactService implements ContactService {
         redisTemplate.opsForValue().set(key, persisted);
     }
 
+    /**
+     * Assigns ids to the contacts which do not have an id. The ids are reserved from
+     * the id allocator in bulk.
+     * @param contacts  The contacts.
+     */
+    private void assignIds(List<Contact> contacts) {
+        List<Contact> withoutId = new ArrayList<Contact>();
+        for (Contact contact: contacts) {
+            if (contact.getId() == null) {
+                withoutId.add(contact);
+            }
+        }
+
+        if (withoutId.isEmpty()) {
+            return;
+        }
+
+        LOGGER.debug("Allocating ids for {} contacts", withoutId.size());
+
+        List<Long> ids = contactIdCounter.allocate(withoutId.size());
+        for (int index = 0; index < withoutId.size(); index++) {
+            withoutId.get(index).setId(ids.get(index));
+        }
+    }
+
     private String buildKey(Long contactId) {
         return KEY_CONTACT_PREFIX + contactId;
     }
+
+    private String buildMember(Long contactId) {
+        return contactId.toString();
+    }
+
+    /**
+     * Finds the contacts which have the given ids with a single MGET command.
+     * @param contactIds    The ids of the contacts.
+     * @return  The found contacts. Ids which do not point to a contact are ignored.
+     */
+    private List<Contact> findByIds(List<Long> contactIds) {
+        List<Contact> contacts = new ArrayList<Contact>(contactIds.size());
+        if (contactIds.isEmpty()) {
+            return contacts;
+        }
+
+        List<String> keys = new ArrayList<String>(contactIds.size());
+        for (Long contactId: contactIds) {
+            keys.add(buildKey(contactId));
+        }
+
+        for (Contact contact: redisTemplate.opsForValue().multiGet(keys)) {
+            if (contact != null) {
+                contacts.add(contact);
+            }
+        }
+
+        return contacts;
+    }
+
+    /**
+     * Reads the stored values of the contacts which have the given ids with a single MGET
+     * command without deserializing them.
+     * @param contactIds    The ids of the contacts.
+     * @return  The stored values. The value of an id which does not point to a contact is null.
+     */
+    private List<byte[]> findValuesByIds(List<Long> contactIds) {
+        if (contactIds.isEmpty()) {
+            return new ArrayList<byte[]>();
+        }
+
+        final byte[][] keys = new byte[contactIds.size()][];
+        for (int index = 0; index < contactIds.size(); index++) {
+            keys[index] = serializeKey(buildKey(contactIds.get(index)));
+        }
+
+        return redisTemplate.execute(new RedisCallback<List<byte[]>>() {
+            @Override
+            public List<byte[]> doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.mGet(keys);
+            }
+        });
+    }
+
+    private byte[] serializeKey(String key) {
+        RedisSerializer serializer = redisTemplate.getKeySerializer();
+        return serializer.serialize(key);
+    }
+
+    private byte[] serializeString(String value) {
+        return redisTemplate.getStringSerializer().serialize(value);
+    }
+
+    private byte[] serializeValue(Contact value) {
+        RedisSerializer serializer = redisTemplate.getValueSerializer();
+        return serializer.serialize(value);
+    }
+
+    private Contact deserializeValue(byte[] value) {
+        RedisSerializer serializer = redisTemplate.getValueSerializer();
+        return (Contact) serializer.deserialize(value);
+    }
+
+    private enum UpdateResult {
+        UPDATED,
+        CONFLICT,
+        NOT_FOUND
+    }
 }
@@ -12,6 +12,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.MutablePropertyValues;
 import org.springframework.context.MessageSource;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -25,12 +26,15 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributesModelMap;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 import static junit.framework.Assert.*;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -53,10 +57,14 @@ public class ContactControllerTest {
     private static final String FIELD_NAME_STATE = "address.state";
     private static final String FIELD_NAME_STREET_ADDRESS = "address.streetAddress";
 
+    private static final long CONTACT_COUNT = 4;
+
     private static final Long ID = Long.valueOf(3);
 
     private static final String INVALID_EMAIL_ADDRESS = "invalid";
 
+    private static final int PAGE_INDEX = 0;
+
     private ContactController controller;
 
     private MessageSource messageSourceMock;
@@ -192,6 +200,45 @@ public class ContactControllerTest {
         verifyZeroInteractions(messageSourceMock);
     }
 
+    @Test
+    public void getContactAsJson() throws NotFoundException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.getContactAsJson(ID, response);
+
+        verify(serviceMock, times(1)).writeByIdAsJson(eq(ID), any(OutputStream.class));
+        verifyNoMoreInteractions(serviceMock);
+
+        assertEquals(ContactController.CONTENT_TYPE_JSON, response.getContentType());
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void getContactAsJsonWhenContactIsNotFound() throws NotFoundException, IOException {
+        doThrow(new NotFoundException("")).when(serviceMock).writeByIdAsJson(eq(ID), any(OutputStream.class));
+
+        controller.getContactAsJson(ID, new MockHttpServletResponse());
+    }
+
+    @Test
+    public void getContactsAsJson() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.getContactsAsJson(PAGE_INDEX, response);
+
+        verify(serviceMock, times(1)).writeAllForPageAsJson(eq(PAGE_INDEX), eq(ContactController.HOME_PAGE_SIZE), any(OutputStream.class));
+        verifyNoMoreInteractions(serviceMock);
+
+        assertEquals(ContactController.CONTENT_TYPE_JSON, response.getContentType());
+    }
+
+    @Test
+    public void getContactsAsJsonWithNegativePageIndex() throws IOException {
+        controller.getContactsAsJson(-1, new MockHttpServletResponse());
+
+        verify(serviceMock, times(1)).writeAllForPageAsJson(eq(0), eq(ContactController.HOME_PAGE_SIZE), any(OutputStream.class));
+        verifyNoMoreInteractions(serviceMock);
+    }
+
     @Test
     public void showAddContactPage() {
         Model model = new BindingAwareModelMap();
@@ -246,16 +293,38 @@ public class ContactControllerTest {
     @Test
     public void showHomePage() {
         List<Contact> contacts = new ArrayList<Contact>();
-        when(serviceMock.findAll()).thenReturn(contacts);
+        when(serviceMock.count()).thenReturn(CONTACT_COUNT);
+        when(serviceMock.findAllForPage(PAGE_INDEX, ContactController.HOME_PAGE_SIZE)).thenReturn(contacts);
 
         Model model = new BindingAwareModelMap();
-        String view = controller.showHomePage(model);
+        String view = controller.showHomePage(PAGE_INDEX, model);
 
-        verify(serviceMock, times(1)).findAll();
+        verify(serviceMock, times(1)).count();
+        verify(serviceMock, times(1)).findAllForPage(PAGE_INDEX, ContactController.HOME_PAGE_SIZE);
         verifyNoMoreInteractions(serviceMock);
 
         assertEquals(ContactController.HOME_VIEW, view);
         assertEquals(contacts, model.asMap().get(ContactController.MODEL_ATTRIBUTE_CONTACTS));
+        assertEquals(1L, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_COUNT));
+        assertEquals(PAGE_INDEX, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_INDEX));
+    }
+
+    @Test
+    public void showHomePageWithNegativePageIndex() {
+        List<Contact> contacts = new ArrayList<Contact>();
+        when(serviceMock.count()).thenReturn(0L);
+        when(serviceMock.findAllForPage(0, ContactController.HOME_PAGE_SIZE)).thenReturn(contacts);
+
+        Model model = new BindingAwareModelMap();
+        String view = controller.showHomePage(-1, model);
+
+        verify(serviceMock, times(1)).count();
+        verify(serviceMock, times(1)).findAllForPage(0, ContactController.HOME_PAGE_SIZE);
+        verifyNoMoreInteractions(serviceMock);
+
+        assertEquals(ContactController.HOME_VIEW, view);
+        assertEquals(0L, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_COUNT));
+        assertEquals(0, model.asMap().get(ContactController.MODEL_ATTRIBUTE_PAGE_INDEX));
     }
 
     @Test
@@ -0,0 +1,270 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class CompressingRedisSerializerTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+
+    private static final int MAX_LENGTH = 65536;
+    private static final int THRESHOLD = 512;
+
+    private static final String SHORT_VALUE = "abc";
+
+    private static final String LONG_STREET_ADDRESS_PART = "Long Street Address ";
+    private static final int LONG_STREET_ADDRESS_REPEAT_COUNT = 50;
+
+    private RedisSerializer<Contact> jsonSerializer;
+
+    private CompressingRedisSerializer<Contact> serializer;
+
+    @Before
+    public void setUp() {
+        jsonSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+        serializer = new CompressingRedisSerializer<Contact>(jsonSerializer, THRESHOLD, MAX_LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithNegativeThreshold() {
+        new CompressingRedisSerializer<Contact>(jsonSerializer, -1, MAX_LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithMaxLengthSmallerThanThreshold() {
+        new CompressingRedisSerializer<Contact>(jsonSerializer, THRESHOLD, THRESHOLD - 1);
+    }
+
+    @Test
+    public void serializeSmallValue() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        byte[] bytes = serializer.serialize(contact);
+
+        assertEquals(CompressingRedisSerializer.HEADER_RAW, bytes[0]);
+        assertEquals(jsonSerializer.serialize(contact).length + 1, bytes.length);
+        assertEquals(0, serializer.getStatistics().getCompressedCount());
+
+        assertEquals(ContactTestUtil.FIRST_NAME, serializer.deserialize(bytes).getFirstName());
+    }
+
+    @Test
+    public void serializeLargeValue() {
+        Contact contact = createContactWithLongStreetAddress();
+
+        byte[] bytes = serializer.serialize(contact);
+        byte[] uncompressed = jsonSerializer.serialize(contact);
+
+        assertEquals(CompressingRedisSerializer.HEADER_COMPRESSED, bytes[0]);
+        assertTrue(bytes.length < uncompressed.length);
+
+        Contact deserialized = serializer.deserialize(bytes);
+        assertEquals(CONTACT_ID, deserialized.getId());
+        assertEquals(contact.getAddress().getStreetAddress(), deserialized.getAddress().getStreetAddress());
+
+        CompressionStatistics statistics = serializer.getStatistics();
+        assertEquals(1, statistics.getCompressedCount());
+        assertEquals(1, statistics.getDecompressedCount());
+        assertEquals(uncompressed.length, statistics.getUncompressedBytes());
+        assertEquals(bytes.length, statistics.getCompressedBytes());
+        assertTrue(statistics.getCompressionRatio() < 1.0);
+    }
+
+    @Test
+    public void serializeIsDeterministic() {
+        byte[] first = serializer.serialize(createContactWithLongStreetAddress());
+        byte[] second = serializer.serialize(createContactWithLongStreetAddress());
+
+        assertTrue(Arrays.equals(first, second));
+    }
+
+    @Test
+    public void serializeHighlyCompressibleValue() {
+        CompressingRedisSerializer<String> stringSerializer = new CompressingRedisSerializer<String>(new StringRedisSerializer(), THRESHOLD, MAX_LENGTH);
+        String value = createString(MAX_LENGTH);
+
+        byte[] bytes = stringSerializer.serialize(value);
+
+        assertEquals(CompressingRedisSerializer.HEADER_COMPRESSED, bytes[0]);
+        assertTrue(bytes.length * 4 < value.length());
+        assertEquals(value, stringSerializer.deserialize(bytes));
+    }
+
+    @Test
+    public void serializeValueLargerThanMaxLength() {
+        CompressingRedisSerializer<String> stringSerializer = new CompressingRedisSerializer<String>(new StringRedisSerializer(), THRESHOLD, THRESHOLD);
+        String value = createString(THRESHOLD + 1);
+
+        byte[] bytes = stringSerializer.serialize(value);
+
+        assertEquals(CompressingRedisSerializer.HEADER_RAW, bytes[0]);
+        assertEquals(value, stringSerializer.deserialize(bytes));
+    }
+
+    @Test
+    public void serializeValueWhichDoesNotGetSmaller() {
+        CompressingRedisSerializer<String> compressAll = new CompressingRedisSerializer<String>(new StringRedisSerializer(), 0, MAX_LENGTH);
+
+        byte[] bytes = compressAll.serialize(SHORT_VALUE);
+
+        assertEquals(CompressingRedisSerializer.HEADER_RAW, bytes[0]);
+        assertEquals(SHORT_VALUE.length() + 1, bytes.length);
+        assertEquals(SHORT_VALUE, compressAll.deserialize(bytes));
+    }
+
+    @Test
+    public void deserializeValueWrittenWithoutCompression() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+
+        Contact deserialized = serializer.deserialize(jsonSerializer.serialize(contact));
+
+        assertEquals(CONTACT_ID, deserialized.getId());
+        assertEquals(ContactTestUtil.FIRST_NAME, deserialized.getFirstName());
+    }
+
+    @Test
+    public void deserializeBinaryValueWrittenWithoutCompression() {
+        RedisSerializer<Contact> binarySerializer = new ContactBinaryRedisSerializer();
+        CompressingRedisSerializer<Contact> compressingBinarySerializer = new CompressingRedisSerializer<Contact>(binarySerializer, THRESHOLD, MAX_LENGTH);
+
+        Contact deserialized = compressingBinarySerializer.deserialize(binarySerializer.serialize(ContactTestUtil.createModel(CONTACT_ID)));
+
+        assertEquals(CONTACT_ID, deserialized.getId());
+    }
+
+    @Test
+    public void serializeNull() {
+        byte[] bytes = serializer.serialize(null);
+
+        assertEquals(0, bytes.length);
+        assertNull(serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void isEmpty() {
+        assertTrue(serializer.isEmpty(null));
+        assertTrue(serializer.isEmpty(new byte[0]));
+        assertTrue(serializer.isEmpty(new byte[] {CompressingRedisSerializer.HEADER_RAW}));
+        assertFalse(serializer.isEmpty(serializer.serialize(ContactTestUtil.createModel(CONTACT_ID))));
+        assertFalse(serializer.isEmpty(serializer.serialize(createContactWithLongStreetAddress())));
+    }
+
+    @Test
+    public void deserializeNull() {
+        assertNull(serializer.deserialize(null));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeTruncatedValue() {
+        byte[] bytes = serializer.serialize(createContactWithLongStreetAddress());
+
+        serializer.deserialize(Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueWithLengthLargerThanMaxLength() {
+        byte[] bytes = serializer.serialize(createContactWithLongStreetAddress());
+        setLength(bytes, Integer.MAX_VALUE);
+
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueLongerThanItsLength() {
+        byte[] bytes = serializer.serialize(createContactWithLongStreetAddress());
+        setLength(bytes, getLength(bytes) - 1);
+
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueShorterThanItsLength() {
+        byte[] bytes = serializer.serialize(createContactWithLongStreetAddress());
+        setLength(bytes, getLength(bytes) + 1);
+
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeValueWithTrailingData() {
+        byte[] bytes = serializer.serialize(createContactWithLongStreetAddress());
+
+        serializer.deserialize(Arrays.copyOf(bytes, bytes.length + 1));
+    }
+
+    @Test
+    public void unwrap() {
+        byte[] small = jsonSerializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+        byte[] large = jsonSerializer.serialize(createContactWithLongStreetAddress());
+
+        assertTrue(Arrays.equals(small, serializer.unwrap(serializer.serialize(ContactTestUtil.createModel(CONTACT_ID)))));
+        assertTrue(Arrays.equals(large, serializer.unwrap(serializer.serialize(createContactWithLongStreetAddress()))));
+        assertTrue(Arrays.equals(small, serializer.unwrap(small)));
+        assertNull(serializer.unwrap(null));
+    }
+
+    @Test
+    public void writeUnwrapped() throws IOException {
+        byte[] small = jsonSerializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+        byte[] large = jsonSerializer.serialize(createContactWithLongStreetAddress());
+
+        assertTrue(Arrays.equals(small, writeUnwrapped(serializer.serialize(ContactTestUtil.createModel(CONTACT_ID)))));
+        assertTrue(Arrays.equals(large, writeUnwrapped(serializer.serialize(createContactWithLongStreetAddress()))));
+        assertTrue(Arrays.equals(small, writeUnwrapped(small)));
+        assertEquals(0, writeUnwrapped(null).length);
+    }
+
+    private String createString(int length) {
+        StringBuilder value = new StringBuilder();
+        for (int index = 0; index < length; index++) {
+            value.append('a');
+        }
+        return value.toString();
+    }
+
+    private int getLength(byte[] bytes) {
+        return ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+    }
+
+    private void setLength(byte[] bytes, int length) {
+        bytes[1] = (byte) (length >>> 24);
+        bytes[2] = (byte) (length >>> 16);
+        bytes[3] = (byte) (length >>> 8);
+        bytes[4] = (byte) length;
+    }
+
+    private byte[] writeUnwrapped(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.writeUnwrapped(bytes, out);
+        return out.toByteArray();
+    }
+
+    private Contact createContactWithLongStreetAddress() {
+        StringBuilder streetAddress = new StringBuilder();
+        for (int index = 0; index < LONG_STREET_ADDRESS_REPEAT_COUNT; index++) {
+            streetAddress.append(LONG_STREET_ADDRESS_PART);
+        }
+
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+        contact.getAddress().setStreetAddress(streetAddress.toString());
+        return contact;
+    }
+}
@@ -0,0 +1,142 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Address;
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactBinaryRedisSerializerTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(300);
+
+    private ContactBinaryRedisSerializer serializer;
+
+    @Before
+    public void setUp() {
+        serializer = new ContactBinaryRedisSerializer();
+    }
+
+    @Test
+    public void serializeAndDeserialize() {
+        Contact serialized = ContactTestUtil.createModel(CONTACT_ID);
+
+        byte[] bytes = serializer.serialize(serialized);
+
+        assertEquals(ContactBinaryRedisSerializer.VERSION, bytes[0]);
+        assertContact(serialized, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void serializeAndDeserializeWithNullFields() {
+        Contact serialized = ContactTestUtil.createModel(null);
+        serialized.setPhoneNumber(null);
+        serialized.getAddress().setState(null);
+
+        Contact deserialized = serializer.deserialize(serializer.serialize(serialized));
+
+        assertContact(serialized, deserialized);
+        assertNull(deserialized.getId());
+        assertNull(deserialized.getPhoneNumber());
+        assertNull(deserialized.getAddress().getState());
+    }
+
+    @Test
+    public void serializeAndDeserializeWithoutAddress() {
+        Contact serialized = ContactTestUtil.createModel(CONTACT_ID);
+        serialized.setAddress(null);
+
+        Contact deserialized = serializer.deserialize(serializer.serialize(serialized));
+
+        assertEquals(CONTACT_ID, deserialized.getId());
+        assertEquals(ContactTestUtil.FIRST_NAME, deserialized.getFirstName());
+        assertNull(deserialized.getAddress());
+    }
+
+    @Test
+    public void serializeAndDeserializeWithNonAsciiCharacters() {
+        Contact serialized = ContactTestUtil.createModel(Long.MAX_VALUE, "J\u00f6rg", "\u6771\u4eac\ud83d\ude00");
+        serialized.setPhoneNumber("\ud83d");
+
+        Contact deserialized = serializer.deserialize(serializer.serialize(serialized));
+
+        assertEquals(Long.MAX_VALUE, deserialized.getId().longValue());
+        assertEquals("J\u00f6rg", deserialized.getFirstName());
+        assertEquals("\u6771\u4eac\ud83d\ude00", deserialized.getLastName());
+        assertEquals("?", deserialized.getPhoneNumber());
+    }
+
+    @Test
+    public void serializeIsDeterministic() {
+        byte[] first = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+        byte[] second = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+
+        assertTrue(Arrays.equals(first, second));
+    }
+
+    @Test
+    public void serializeIsSmallerThanJson() {
+        Contact serialized = ContactTestUtil.createModel(CONTACT_ID);
+        JacksonJsonRedisSerializer<Contact> jsonSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+        assertTrue(serializer.serialize(serialized).length < jsonSerializer.serialize(serialized).length);
+    }
+
+    @Test
+    public void serializeNull() {
+        assertEquals(0, serializer.serialize(null).length);
+    }
+
+    @Test
+    public void deserializeNull() {
+        assertNull(serializer.deserialize(null));
+    }
+
+    @Test
+    public void deserializeEmptyArray() {
+        assertNull(serializer.deserialize(new byte[0]));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeUnsupportedVersion() {
+        byte[] bytes = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+        bytes[0] = ContactBinaryRedisSerializer.VERSION + 1;
+
+        serializer.deserialize(bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void deserializeTruncatedData() {
+        byte[] bytes = serializer.serialize(ContactTestUtil.createModel(CONTACT_ID));
+
+        serializer.deserialize(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    private void assertContact(Contact expected, Contact actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getEmailAddress(), actual.getEmailAddress());
+        assertEquals(expected.getFirstName(), actual.getFirstName());
+        assertEquals(expected.getLastName(), actual.getLastName());
+        assertEquals(expected.getPhoneNumber(), actual.getPhoneNumber());
+
+        Address expectedAddress = expected.getAddress();
+        Address actualAddress = actual.getAddress();
+
+        assertEquals(expectedAddress.getStreetAddress(), actualAddress.getStreetAddress());
+        assertEquals(expectedAddress.getPostCode(), actualAddress.getPostCode());
+        assertEquals(expectedAddress.getPostOffice(), actualAddress.getPostOffice());
+        assertEquals(expectedAddress.getState(), actualAddress.getState());
+        assertEquals(expectedAddress.getCountry(), actualAddress.getCountry());
+    }
+}
@@ -0,0 +1,97 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactJsonWriterTest {
+
+    private static final Long FIRST_ID = Long.valueOf(1);
+    private static final Long SECOND_ID = Long.valueOf(2);
+
+    private static final int THRESHOLD = 512;
+    private static final int MAX_LENGTH = 1048576;
+
+    private RedisSerializer<Contact> jsonSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    @Test
+    public void writeWhenPassThroughIsEnabled() throws IOException {
+        CompressingRedisSerializer<Contact> valueSerializer = new CompressingRedisSerializer<Contact>(jsonSerializer, THRESHOLD, MAX_LENGTH);
+        ContactJsonWriter writer = new ContactJsonWriter(valueSerializer, true);
+
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(valueSerializer.serialize(contact), out);
+
+        assertEquals(toJson(contact), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeCompressedValueWhenPassThroughIsEnabled() throws IOException {
+        CompressingRedisSerializer<Contact> valueSerializer = new CompressingRedisSerializer<Contact>(jsonSerializer, 0, MAX_LENGTH);
+        ContactJsonWriter writer = new ContactJsonWriter(valueSerializer, true);
+
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(valueSerializer.serialize(contact), out);
+
+        assertEquals(toJson(contact), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeWhenPassThroughIsDisabled() throws IOException {
+        CompressingRedisSerializer<Contact> valueSerializer = new CompressingRedisSerializer<Contact>(new ContactBinaryRedisSerializer(), THRESHOLD, MAX_LENGTH);
+        ContactJsonWriter writer = new ContactJsonWriter(valueSerializer, false);
+
+        Contact contact = ContactTestUtil.createModel(FIRST_ID);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(valueSerializer.serialize(contact), out);
+
+        assertEquals(toJson(contact), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeArray() throws IOException {
+        CompressingRedisSerializer<Contact> valueSerializer = new CompressingRedisSerializer<Contact>(jsonSerializer, THRESHOLD, MAX_LENGTH);
+        ContactJsonWriter writer = new ContactJsonWriter(valueSerializer, true);
+
+        Contact first = ContactTestUtil.createModel(FIRST_ID);
+        Contact second = ContactTestUtil.createModel(SECOND_ID, "Second", "Contact");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int written = writer.writeArray(Arrays.asList(null, valueSerializer.serialize(first), valueSerializer.serialize(null), valueSerializer.serialize(second)), out);
+
+        assertEquals(2, written);
+        assertEquals("[" + toJson(first) + "," + toJson(second) + "]", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeEmptyArray() throws IOException {
+        CompressingRedisSerializer<Contact> valueSerializer = new CompressingRedisSerializer<Contact>(jsonSerializer, THRESHOLD, MAX_LENGTH);
+        ContactJsonWriter writer = new ContactJsonWriter(valueSerializer, true);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int written = writer.writeArray(Arrays.<byte[]>asList(), out);
+
+        assertEquals(0, written);
+        assertEquals("[]", out.toString("UTF-8"));
+    }
+
+    private String toJson(Contact contact) throws IOException {
+        return new String(jsonSerializer.serialize(contact), "UTF-8");
+    }
+}
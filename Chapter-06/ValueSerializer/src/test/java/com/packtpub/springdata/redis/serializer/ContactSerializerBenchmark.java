@@ -0,0 +1,189 @@
+package com.packtpub.springdata.redis.serializer;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the contact serializers by measuring the size of a serialized contact, the time
+ * which is used to serialize and deserialize a contact, and the number of bytes allocated
+ * per operation. Each serializer is measured with a normal contact and with a large contact
+ * which exceeds the threshold of the compressing serializers. The allocation rate is measured only if the JVM supports measuring the
+ * allocated memory of a thread.
+ * <p>
+ * Each measurement is preceded by a warm up round which gives the JIT compiler a chance to
+ * compile the measured code. The results are written to the log. The benchmark is not run
+ * as a part of the test suite, and it should be run by using the test class path of the
+ * project.
+ * @author Petri Kainulainen
+ */
+public class ContactSerializerBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactSerializerBenchmark.class);
+
+    private static final int WARM_UP_ITERATIONS = 200000;
+    private static final int MEASURED_ITERATIONS = 1000000;
+
+    private static final Long CONTACT_ID = Long.valueOf(123456);
+
+    private static final int COMPRESSION_THRESHOLD = 512;
+    private static final int COMPRESSION_MAX_LENGTH = 1048576;
+
+    private static final String LARGE_STREET_ADDRESS_PART = " Street Address Line ";
+    private static final int LARGE_STREET_ADDRESS_REPEAT_COUNT = 40;
+
+    /**
+     * Prevents the JIT compiler from removing the measured operations.
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        Map<String, RedisSerializer<Contact>> serializers = new LinkedHashMap<String, RedisSerializer<Contact>>();
+        serializers.put("jackson", new JacksonJsonRedisSerializer<Contact>(Contact.class));
+        serializers.put("binary", new ContactBinaryRedisSerializer());
+        serializers.put("jackson+deflate", new CompressingRedisSerializer<Contact>(
+                new JacksonJsonRedisSerializer<Contact>(Contact.class), COMPRESSION_THRESHOLD, COMPRESSION_MAX_LENGTH));
+        serializers.put("binary+deflate", new CompressingRedisSerializer<Contact>(
+                new ContactBinaryRedisSerializer(), COMPRESSION_THRESHOLD, COMPRESSION_MAX_LENGTH));
+
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+        Contact largeContact = createLargeContact();
+
+        for (Map.Entry<String, RedisSerializer<Contact>> serializer: serializers.entrySet()) {
+            run(serializer.getKey(), serializer.getValue(), contact);
+            run(serializer.getKey() + " (large)", serializer.getValue(), largeContact);
+        }
+    }
+
+    /**
+     * Creates a contact whose street address is long enough to be compressed.
+     * @return
+     */
+    private static Contact createLargeContact() {
+        StringBuilder streetAddress = new StringBuilder();
+        for (int index = 0; index < LARGE_STREET_ADDRESS_REPEAT_COUNT; index++) {
+            streetAddress.append(LARGE_STREET_ADDRESS_PART).append(index);
+        }
+
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID);
+        contact.getAddress().setStreetAddress(streetAddress.toString());
+        return contact;
+    }
+
+    private static void run(String name, RedisSerializer<Contact> serializer, Contact contact) {
+        byte[] serialized = serializer.serialize(contact);
+
+        serialize(serializer, contact, WARM_UP_ITERATIONS);
+        Measurement serialization = measure(new SerializeOperation(serializer, contact));
+
+        deserialize(serializer, serialized, WARM_UP_ITERATIONS);
+        Measurement deserialization = measure(new DeserializeOperation(serializer, serialized));
+
+        LOGGER.debug("{}: size: {} bytes, serialize: {}, deserialize: {}",
+                new Object[] {name, serialized.length, serialization, deserialization});
+    }
+
+    private static Measurement measure(Operation operation) {
+        long allocatedBefore = getAllocatedBytes();
+        long started = System.nanoTime();
+
+        operation.run(MEASURED_ITERATIONS);
+
+        long elapsed = System.nanoTime() - started;
+        long allocatedAfter = getAllocatedBytes();
+
+        long allocated = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / MEASURED_ITERATIONS;
+        return new Measurement(elapsed / MEASURED_ITERATIONS, allocated);
+    }
+
+    private static void serialize(RedisSerializer<Contact> serializer, Contact contact, int iterations) {
+        for (int index = 0; index < iterations; index++) {
+            sink += serializer.serialize(contact).length;
+        }
+    }
+
+    private static void deserialize(RedisSerializer<Contact> serializer, byte[] serialized, int iterations) {
+        for (int index = 0; index < iterations; index++) {
+            sink += serializer.deserialize(serialized).getId();
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread.
+     * @return  The number of allocated bytes or -1 if it cannot be measured.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private interface Operation {
+
+        void run(int iterations);
+    }
+
+    private static class SerializeOperation implements Operation {
+
+        private final RedisSerializer<Contact> serializer;
+        private final Contact contact;
+
+        private SerializeOperation(RedisSerializer<Contact> serializer, Contact contact) {
+            this.serializer = serializer;
+            this.contact = contact;
+        }
+
+        @Override
+        public void run(int iterations) {
+            serialize(serializer, contact, iterations);
+        }
+    }
+
+    private static class DeserializeOperation implements Operation {
+
+        private final RedisSerializer<Contact> serializer;
+        private final byte[] serialized;
+
+        private DeserializeOperation(RedisSerializer<Contact> serializer, byte[] serialized) {
+            this.serializer = serializer;
+            this.serialized = serialized;
+        }
+
+        @Override
+        public void run(int iterations) {
+            deserialize(serializer, serialized, iterations);
+        }
+    }
+
+    private static class Measurement {
+
+        private final long nanosPerOperation;
+        private final long bytesPerOperation;
+
+        private Measurement(long nanosPerOperation, long bytesPerOperation) {
+            this.nanosPerOperation = nanosPerOperation;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        @Override
+        public String toString() {
+            if (bytesPerOperation < 0) {
+                return nanosPerOperation + " ns/op";
+            }
+            return nanosPerOperation + " ns/op, " + bytesPerOperation + " B/op";
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.packtpub.springdata.redis.service;
+
+import com.packtpub.springdata.redis.model.Contact;
+import com.packtpub.springdata.redis.model.ContactTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ContactNameIndexTest {
+
+    private static final Long CONTACT_ID = Long.valueOf(1);
+
+    private static final String SEARCH_TERM = "Jo";
+    private static final String PREFIX = "jo";
+
+    private ContactNameIndex index;
+
+    private RedisConnection redisConnectionMock;
+
+    private StringRedisTemplate stringRedisTemplateMock;
+
+    private ZSetOperations zSetOperationsMock;
+
+    private RedisScript scriptMock;
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    @Before
+    public void setUp() {
+        redisConnectionMock = mock(RedisConnection.class);
+        stringRedisTemplateMock = mock(StringRedisTemplate.class);
+        zSetOperationsMock = mock(ZSetOperations.class);
+        scriptMock = mock(RedisScript.class);
+
+        when(stringRedisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(stringRedisTemplateMock.opsForZSet()).thenReturn(zSetOperationsMock);
+
+        index = new ContactNameIndex(stringRedisTemplateMock, scriptMock);
+    }
+
+    @Test
+    public void buildMembers() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID, "Foo", "Bar");
+
+        Map<String, String> members = index.buildMembers(contact);
+
+        assertEquals(2, members.size());
+        assertEquals("bar:foo:1", members.get(ContactNameIndex.KEY_LAST_NAME_INDEX));
+        assertEquals("foo:bar:1", members.get(ContactNameIndex.KEY_FIRST_NAME_INDEX));
+    }
+
+    @Test
+    public void buildMembersWhenNamesHaveCommonPrefix() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID, "John", "Johnson");
+
+        Map<String, String> members = index.buildMembers(contact);
+
+        assertEquals(3, members.size());
+        assertEquals("johnson:john:1", members.get(ContactNameIndex.KEY_LAST_NAME_INDEX));
+        assertEquals("john:johnson:1", members.get(ContactNameIndex.KEY_FIRST_NAME_INDEX));
+        assertEquals("john:1", members.get(ContactNameIndex.KEY_COMMON_NAME_PREFIX_INDEX));
+    }
+
+    @Test
+    public void addWithConnection() {
+        Contact contact = ContactTestUtil.createModel(CONTACT_ID, "Foo", "Bar");
+
+        index.add(redisConnectionMock, contact);
+
+        verify(redisConnectionMock, times(1)).zAdd(serialize(ContactNameIndex.KEY_LAST_NAME_INDEX), 0, serialize("bar:foo:1"));
+        verify(redisConnectionMock, times(1)).zAdd(serialize(ContactNameIndex.KEY_FIRST_NAME_INDEX), 0, serialize("foo:bar:1"));
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void update() {
+        Contact old = ContactTestUtil.createModel(CONTACT_ID, "Foo", "Bar");
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID, "Foo", "Baz");
+
+        index.update(old, updated);
+        executeRedisCallback();
+
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).zRem(serialize(ContactNameIndex.KEY_LAST_NAME_INDEX), serialize("bar:foo:1"));
+        verify(redisConnectionMock, times(1)).zRem(serialize(ContactNameIndex.KEY_FIRST_NAME_INDEX), serialize("foo:bar:1"));
+        verify(redisConnectionMock, times(1)).zAdd(serialize(ContactNameIndex.KEY_LAST_NAME_INDEX), 0, serialize("baz:foo:1"));
+        verify(redisConnectionMock, times(1)).zAdd(serialize(ContactNameIndex.KEY_FIRST_NAME_INDEX), 0, serialize("foo:baz:1"));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
+    }
+
+    @Test
+    public void count() {
+        when(zSetOperationsMock.size(ContactNameIndex.KEY_LAST_NAME_INDEX)).thenReturn(Long.valueOf(3));
+
+        long count = index.count();
+
+        verify(zSetOperationsMock, times(1)).size(ContactNameIndex.KEY_LAST_NAME_INDEX);
+        verifyNoMoreInteractions(zSetOperationsMock);
+
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void countWithSearchTerm() {
+        initScript(Arrays.<Object>asList(3L, 2L, 1L));
+
+        long count = index.count(SEARCH_TERM);
+
+        verifyScript(Arrays.asList(ContactNameIndex.KEY_LAST_NAME_INDEX, ContactNameIndex.KEY_FIRST_NAME_INDEX,
+                ContactNameIndex.KEY_COMMON_NAME_PREFIX_INDEX), PREFIX, 0, 0);
+
+        assertEquals(4, count);
+    }
+
+    @Test
+    public void countWithTurkishDefaultLocale() {
+        initScript(Arrays.<Object>asList(1L, 0L, 0L));
+
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            index.count("IVAN");
+        }
+        finally {
+            Locale.setDefault(defaultLocale);
+        }
+
+        verifyScript(Arrays.asList(ContactNameIndex.KEY_LAST_NAME_INDEX, ContactNameIndex.KEY_FIRST_NAME_INDEX,
+                ContactNameIndex.KEY_COMMON_NAME_PREFIX_INDEX), "ivan", 0, 0);
+    }
+
+    @Test
+    public void countWithEmptySearchTerm() {
+        when(zSetOperationsMock.size(ContactNameIndex.KEY_LAST_NAME_INDEX)).thenReturn(Long.valueOf(3));
+
+        long count = index.count(" ");
+
+        verify(zSetOperationsMock, times(1)).size(ContactNameIndex.KEY_LAST_NAME_INDEX);
+        verify(stringRedisTemplateMock, never()).execute(any(RedisCallback.class));
+        verifyZeroInteractions(scriptMock);
+
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void countWithSearchTermContainingSeparator() {
+        long count = index.count("foo:bar");
+
+        verify(stringRedisTemplateMock, never()).execute(any(RedisCallback.class));
+        verifyZeroInteractions(zSetOperationsMock, scriptMock);
+
+        assertEquals(0, count);
+    }
+
+    @Test
+    public void findIdsForPage() {
+        Set<String> members = new LinkedHashSet<String>(Arrays.asList("bar:foo:1", "baz:foo:2"));
+        when(zSetOperationsMock.range(ContactNameIndex.KEY_LAST_NAME_INDEX, 10, 19)).thenReturn(members);
+
+        List<Long> ids = index.findIdsForPage(1, 10);
+
+        verify(zSetOperationsMock, times(1)).range(ContactNameIndex.KEY_LAST_NAME_INDEX, 10, 19);
+        verifyNoMoreInteractions(zSetOperationsMock);
+
+        assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), ids);
+    }
+
+    @Test
+    public void search() {
+        initScript(Arrays.<Object>asList(2L, 3L, serialize("zed:jo:6"), serialize("joe:smith:3")));
+
+        List<Long> ids = index.search(SEARCH_TERM, 1, 2);
+
+        verifyScript(Arrays.asList(ContactNameIndex.KEY_LAST_NAME_INDEX, ContactNameIndex.KEY_FIRST_NAME_INDEX), PREFIX, 2, 2);
+        verifyZeroInteractions(zSetOperationsMock);
+
+        assertEquals(Arrays.asList(Long.valueOf(6), Long.valueOf(3)), ids);
+    }
+
+    @Test
+    public void searchWhenNothingIsFound() {
+        initScript(Arrays.<Object>asList(0L, 0L));
+
+        List<Long> ids = index.search("Xy", 0, 2);
+
+        verify(stringRedisTemplateMock, times(1)).execute(any(RedisCallback.class));
+        verifyScript(Arrays.asList(ContactNameIndex.KEY_LAST_NAME_INDEX, ContactNameIndex.KEY_FIRST_NAME_INDEX), "xy", 0, 2);
+
+        assertTrue(ids.isEmpty());
+    }
+
+    @Test
+    public void searchWithEmptySearchTerm() {
+        Set<String> members = new LinkedHashSet<String>(Arrays.asList("bar:foo:1"));
+        when(zSetOperationsMock.range(ContactNameIndex.KEY_LAST_NAME_INDEX, 0, 9)).thenReturn(members);
+
+        List<Long> ids = index.search(null, 0, 10);
+
+        verifyZeroInteractions(scriptMock);
+
+        assertEquals(Arrays.asList(Long.valueOf(1)), ids);
+    }
+
+    private void executeRedisCallback() {
+        ArgumentCaptor<RedisCallback> callbackArgument = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(stringRedisTemplateMock, atLeastOnce()).execute(callbackArgument.capture());
+        callbackArgument.getValue().doInRedis(redisConnectionMock);
+    }
+
+    /**
+     * Runs the Redis callbacks and returns the given reply from the prefix search script.
+     * @param reply The reply of the script.
+     */
+    private void initScript(List<Object> reply) {
+        when(stringRedisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+        when(scriptMock.execute(eq(redisConnectionMock), anyList(), anyList())).thenReturn(reply);
+    }
+
+    private void verifyScript(List<String> expectedKeys, String expectedPrefix, long expectedOffset, int expectedLimit) {
+        ArgumentCaptor<List> keysArgument = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List> argsArgument = ArgumentCaptor.forClass(List.class);
+        verify(scriptMock, times(1)).execute(eq(redisConnectionMock), keysArgument.capture(), argsArgument.capture());
+        verifyNoMoreInteractions(scriptMock);
+        verifyZeroInteractions(redisConnectionMock);
+
+        assertEquals(expectedKeys, deserialize(keysArgument.getValue()));
+        assertEquals(Arrays.asList(expectedPrefix, Long.toString(expectedOffset), Integer.toString(expectedLimit)),
+                deserialize(argsArgument.getValue()));
+    }
+
+    private List<String> deserialize(List<byte[]> values) {
+        List<String> deserialized = new ArrayList<String>(values.size());
+        for (byte[] value: values) {
+            deserialized.add(stringSerializer.deserialize(value));
+        }
+        return deserialized;
+    }
+
+    private byte[] serialize(String value) {
+        return stringSerializer.serialize(value);
+    }
+}
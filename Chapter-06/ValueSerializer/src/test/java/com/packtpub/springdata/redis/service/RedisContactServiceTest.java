@@ -1,19 +1,37 @@
 package com.packtpub.springdata.redis.service;
 
+import com.packtpub.springdata.redis.dto.SearchDTO;
 import com.packtpub.springdata.redis.model.Contact;
 import com.packtpub.springdata.redis.model.ContactTestUtil;
+import com.packtpub.springdata.redis.serializer.CompressingRedisSerializer;
+import com.packtpub.springdata.redis.serializer.ContactJsonWriter;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
-import org.springframework.data.redis.support.atomic.RedisAtomicLong;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -23,42 +41,76 @@ public class RedisContactServiceTest {
 
     private Long CONTACT_ID = Long.valueOf(1);
     private String CONTACT_KEY = "contact1";
+    private String CONTACT_MEMBER = "1";
+
+    private static final String SEARCH_TERM = "Foo";
+
+    private static final int COMPRESSION_THRESHOLD = 512;
+    private static final int COMPRESSION_MAX_LENGTH = 1048576;
 
     private RedisContactService service;
 
-    private RedisAtomicLong contactIdCounterMock;
+    private BatchWriter batchWriterMock;
+
+    private BlockIdAllocator contactIdCounterMock;
 
     private RedisTemplate<String, Contact> redisTemplateMock;
 
+    private StringRedisTemplate stringRedisTemplateMock;
+
     private SetOperations setOperationsMock;
 
     private ValueOperations valueOperationsMock;
 
+    private ContactNameIndex contactNameIndexMock;
+
+    private RedisConnection redisConnectionMock;
+
+    private RedisSerializer keySerializer = new JdkSerializationRedisSerializer();
+
+    private RedisSerializer valueSerializer = new JacksonJsonRedisSerializer<Contact>(Contact.class);
+
+    private RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+    private CompressingRedisSerializer<Contact> compressingSerializer = new CompressingRedisSerializer<Contact>(valueSerializer, COMPRESSION_THRESHOLD, COMPRESSION_MAX_LENGTH);
+
     @Before
     public void setUp() {
         service = new RedisContactService();
 
-        contactIdCounterMock = mock(RedisAtomicLong.class);
+        batchWriterMock = mock(BatchWriter.class);
+        ReflectionTestUtils.setField(service, "batchWriter", batchWriterMock);
+
+        contactIdCounterMock = mock(BlockIdAllocator.class);
         ReflectionTestUtils.setField(service, "contactIdCounter", contactIdCounterMock);
 
         redisTemplateMock = mock(RedisTemplate.class);
         ReflectionTestUtils.setField(service, "redisTemplate", redisTemplateMock);
 
+        stringRedisTemplateMock = mock(StringRedisTemplate.class);
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplateMock);
+
         setOperationsMock = mock(SetOperations.class);
         valueOperationsMock = mock(ValueOperations.class);
+
+        contactNameIndexMock = mock(ContactNameIndex.class);
+        ReflectionTestUtils.setField(service, "contactNameIndex", contactNameIndexMock);
+
+        ReflectionTestUtils.setField(service, "contactJsonWriter", new ContactJsonWriter(compressingSerializer, true));
+
+        redisConnectionMock = mock(RedisConnection.class);
     }
 
     @Test
     public void add() {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+        when(stringRedisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
         when(contactIdCounterMock.incrementAndGet()).thenReturn(CONTACT_ID);
 
         Contact added = ContactTestUtil.createModel();
         Contact actual = service.add(added);
 
         verify(redisTemplateMock, times(1)).opsForValue();
-        verify(redisTemplateMock, times(1)).opsForSet();
         verifyNoMoreInteractions(redisTemplateMock);
 
         verify(contactIdCounterMock, times(1)).incrementAndGet();
@@ -67,39 +119,130 @@ public class RedisContactServiceTest {
         verify(valueOperationsMock, times(1)).set(CONTACT_KEY, added);
         verifyNoMoreInteractions(valueOperationsMock);
 
-        verify(setOperationsMock, times(1)).add(RedisContactService.KEY_CONTACT_SET, added);
+        verify(setOperationsMock, times(1)).add(RedisContactService.KEY_CONTACT_SET, CONTACT_MEMBER);
         verifyNoMoreInteractions(setOperationsMock);
 
+        verify(contactNameIndexMock, times(1)).add(added);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
         assertEquals(CONTACT_ID, actual.getId());
         assertEquals(added, actual);
     }
 
+    @Test
+    public void addAll() {
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(valueSerializer);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(contactIdCounterMock.allocate(1)).thenReturn(Arrays.asList(CONTACT_ID));
+
+        Contact added = ContactTestUtil.createModel();
+        List<Contact> actual = service.addAll(Arrays.asList(added));
+
+        verify(contactIdCounterMock, times(1)).allocate(1);
+        verifyNoMoreInteractions(contactIdCounterMock);
+
+        executeBatchWriteCallback(actual);
+
+        verify(redisConnectionMock, times(1)).set(keySerializer.serialize(CONTACT_KEY), valueSerializer.serialize(added));
+        verify(redisConnectionMock, times(1)).sAdd(stringSerializer.serialize(RedisContactService.KEY_CONTACT_SET), stringSerializer.serialize(CONTACT_MEMBER));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(contactNameIndexMock, times(1)).add(redisConnectionMock, added);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(setOperationsMock, valueOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(CONTACT_ID, actual.get(0).getId());
+    }
+
+    @Test
+    public void count() {
+        when(contactNameIndexMock.count()).thenReturn(Long.valueOf(2));
+
+        long count = service.count();
+
+        verify(contactNameIndexMock, times(1)).count();
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void countWithSearchTerm() {
+        when(contactNameIndexMock.count(SEARCH_TERM)).thenReturn(Long.valueOf(2));
+
+        long count = service.count(createSearchDTO(SEARCH_TERM, 0, 10));
+
+        verify(contactNameIndexMock, times(1)).count(SEARCH_TERM);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
+
+        assertEquals(2, count);
+    }
+
     @Test
     public void deleteById() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+        when(stringRedisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
 
         Contact deleted = ContactTestUtil.createModel(CONTACT_ID);
         when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(deleted);
 
         Contact actual = service.deleteById(CONTACT_ID);
 
-        verify(redisTemplateMock, times(2)).opsForValue();
-        verify(redisTemplateMock, times(1)).opsForSet();
+        verify(redisTemplateMock, times(1)).opsForValue();
+        verify(redisTemplateMock, times(1)).delete(CONTACT_KEY);
         verifyNoMoreInteractions(redisTemplateMock);
 
         verify(valueOperationsMock, times(1)).get(CONTACT_KEY);
-        verify(valueOperationsMock, times(1)).set(CONTACT_KEY, null);
         verifyNoMoreInteractions(valueOperationsMock);
 
-        verify(setOperationsMock, times(1)).remove(RedisContactService.KEY_CONTACT_SET, deleted);
+        verify(setOperationsMock, times(1)).remove(RedisContactService.KEY_CONTACT_SET, CONTACT_MEMBER);
         verifyNoMoreInteractions(setOperationsMock);
 
+        verify(contactNameIndexMock, times(1)).remove(deleted);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
         verifyZeroInteractions(contactIdCounterMock);
 
         assertEquals(deleted, actual);
     }
 
+    @Test
+    public void deleteAll() {
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getStringSerializer()).thenReturn(stringSerializer);
+        when(batchWriterMock.partition(Arrays.asList(CONTACT_ID))).thenReturn(Arrays.asList(Arrays.asList(CONTACT_ID)));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+
+        Contact deleted = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(deleted));
+
+        List<Contact> actual = service.deleteAll(Arrays.asList(CONTACT_ID));
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        executeBatchWriteCallback(actual);
+
+        verify(redisConnectionMock, times(1)).del(keySerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).sRem(stringSerializer.serialize(RedisContactService.KEY_CONTACT_SET), stringSerializer.serialize(CONTACT_MEMBER));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verify(contactNameIndexMock, times(1)).remove(redisConnectionMock, deleted);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(deleted, actual.get(0));
+    }
+
     @Test(expected = NotFoundException.class)
     public void deleteByIdWhenContactIsNotFound() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
@@ -116,33 +259,140 @@ public class RedisContactServiceTest {
         verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
     }
 
+    @Test
+    public void exportAll() {
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+
+        when(batchWriterMock.getBatchSize()).thenReturn(10);
+        when(contactNameIndexMock.findIdsForPage(0, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(contactNameIndexMock.findIdsForPage(1, 10)).thenReturn(new ArrayList<Long>());
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(found));
+
+        ContactCallbackHandler handlerMock = mock(ContactCallbackHandler.class);
+
+        long exported = service.exportAll(handlerMock);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(0, 10);
+        verify(contactNameIndexMock, times(1)).findIdsForPage(1, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verify(handlerMock, times(1)).processContact(found);
+        verifyNoMoreInteractions(handlerMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, exported);
+    }
+
     @Test
     public void findAll() {
-        Set<Contact> found = new HashSet<Contact>();
-        found.add(ContactTestUtil.createModel(CONTACT_ID));
+        Set<String> members = new HashSet<String>();
+        members.add(CONTACT_MEMBER);
+
+        List<Long> ids = Arrays.asList(CONTACT_ID);
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
 
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
-        when(setOperationsMock.members(RedisContactService.KEY_CONTACT_SET)).thenReturn(found);
+        when(stringRedisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+        when(setOperationsMock.members(RedisContactService.KEY_CONTACT_SET)).thenReturn(members);
+        when(batchWriterMock.partition(ids)).thenReturn(Arrays.asList(ids));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(found));
 
         List<Contact> actual = service.findAll();
 
-        verify(redisTemplateMock, times(1)).opsForSet();
-        verifyNoMoreInteractions(redisTemplateMock);
+        verify(setOperationsMock, times(1)).members(RedisContactService.KEY_CONTACT_SET);
+        verifyNoMoreInteractions(setOperationsMock);
+
+        verify(batchWriterMock, times(1)).partition(ids);
+        verifyNoMoreInteractions(batchWriterMock);
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verifyZeroInteractions(contactIdCounterMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(found, actual.get(0));
+    }
+
+    @Test
+    public void findAllWhenNoContactsAreFound() {
+        when(stringRedisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+        when(setOperationsMock.members(RedisContactService.KEY_CONTACT_SET)).thenReturn(new HashSet<String>());
+        when(batchWriterMock.partition(new ArrayList<Long>())).thenReturn(new ArrayList<List<Long>>());
+
+        List<Contact> actual = service.findAll();
 
         verify(setOperationsMock, times(1)).members(RedisContactService.KEY_CONTACT_SET);
         verifyNoMoreInteractions(setOperationsMock);
 
-        verifyZeroInteractions(contactIdCounterMock, valueOperationsMock);
+        verifyZeroInteractions(contactIdCounterMock, redisTemplateMock, valueOperationsMock);
 
-        assertEquals(actual.size(), found.size());
+        assertTrue(actual.isEmpty());
+    }
 
-        for (Contact contact: found) {
-            assertTrue(actual.remove(contact));
-        }
+    @Test
+    public void findAllForPage() {
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+
+        when(contactNameIndexMock.findIdsForPage(1, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(found, null));
+
+        List<Contact> actual = service.findAllForPage(1, 10);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(1, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(found, actual.get(0));
+    }
+
+    @Test
+    public void findAllForPageWhenPageIsEmpty() {
+        when(contactNameIndexMock.findIdsForPage(0, 10)).thenReturn(new ArrayList<Long>());
+
+        List<Contact> actual = service.findAllForPage(0, 10);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(0, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, contactIdCounterMock);
 
         assertTrue(actual.isEmpty());
     }
 
+    @Test
+    public void search() {
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+
+        when(contactNameIndexMock.search(SEARCH_TERM, 1, 10)).thenReturn(Arrays.asList(CONTACT_ID));
+        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
+        when(valueOperationsMock.multiGet(Arrays.asList(CONTACT_KEY))).thenReturn(Arrays.asList(found));
+
+        List<Contact> actual = service.search(createSearchDTO(SEARCH_TERM, 1, 10));
+
+        verify(contactNameIndexMock, times(1)).search(SEARCH_TERM, 1, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verify(valueOperationsMock, times(1)).multiGet(Arrays.asList(CONTACT_KEY));
+        verifyNoMoreInteractions(valueOperationsMock);
+
+        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+
+        assertEquals(1, actual.size());
+        assertEquals(found, actual.get(0));
+    }
+
     @Test
     public void findById() throws NotFoundException {
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
@@ -180,47 +430,329 @@ public class RedisContactServiceTest {
     }
 
     @Test
-    public void update() throws NotFoundException {
+    public void writeAllForPageAsJson() throws IOException {
+        executeCallbacksWithConnectionMock();
+
+        Long secondId = Long.valueOf(2);
+        Long missingId = Long.valueOf(3);
+        when(contactNameIndexMock.findIdsForPage(0, 10)).thenReturn(Arrays.asList(CONTACT_ID, secondId, missingId));
+
+        Contact first = ContactTestUtil.createModel(CONTACT_ID);
+        Contact second = ContactTestUtil.createModel(secondId, "Second", "Contact");
+        when(redisConnectionMock.mGet(keySerializer.serialize(CONTACT_KEY), keySerializer.serialize("contact2"), keySerializer.serialize("contact3")))
+                .thenReturn(Arrays.asList(compressingSerializer.serialize(first), compressingSerializer.serialize(second), null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int actual = service.writeAllForPageAsJson(0, 10, out);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(0, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verify(redisConnectionMock, times(1)).mGet(keySerializer.serialize(CONTACT_KEY), keySerializer.serialize("contact2"), keySerializer.serialize("contact3"));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verifyZeroInteractions(valueOperationsMock);
+
+        String expected = "[" + new String(valueSerializer.serialize(first), "UTF-8") + "," + new String(valueSerializer.serialize(second), "UTF-8") + "]";
+        assertEquals(2, actual);
+        assertEquals(expected, out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeAllForPageAsJsonWhenPageIsEmpty() throws IOException {
+        when(contactNameIndexMock.findIdsForPage(0, 10)).thenReturn(new ArrayList<Long>());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int actual = service.writeAllForPageAsJson(0, 10, out);
+
+        verify(contactNameIndexMock, times(1)).findIdsForPage(0, 10);
+        verifyNoMoreInteractions(contactNameIndexMock);
+
+        verifyZeroInteractions(redisTemplateMock, redisConnectionMock);
+
+        assertEquals(0, actual);
+        assertEquals("[]", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeByIdAsJson() throws NotFoundException, IOException {
+        executeCallbacksWithConnectionMock();
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(redisConnectionMock.get(keySerializer.serialize(CONTACT_KEY))).thenReturn(compressingSerializer.serialize(found));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.writeByIdAsJson(CONTACT_ID, out);
+
+        verify(redisConnectionMock, times(1)).get(keySerializer.serialize(CONTACT_KEY));
+        verifyNoMoreInteractions(redisConnectionMock);
+
+        verifyZeroInteractions(contactNameIndexMock, valueOperationsMock);
+
+        assertTrue(Arrays.equals(valueSerializer.serialize(found), out.toByteArray()));
+    }
+
+    @Test
+    public void writeByIdAsJsonWhenContactIsNotFound() throws IOException {
+        executeCallbacksWithConnectionMock();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            service.writeByIdAsJson(CONTACT_ID, out);
+            fail("Should have thrown NotFoundException");
+        }
+        catch (NotFoundException ex) {
+            verify(redisConnectionMock, times(1)).get(keySerializer.serialize(CONTACT_KEY));
+            verifyNoMoreInteractions(redisConnectionMock);
+
+            assertEquals(0, out.size());
+        }
+    }
+
+    @Test
+    public void writeByIdAsJsonAfterContactIsDeleted() throws NotFoundException, IOException {
+        executeCallbacksWithConnectionMock();
         when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
-        when(redisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+        when(stringRedisTemplateMock.opsForSet()).thenReturn(setOperationsMock);
+
+        Contact deleted = ContactTestUtil.createModel(CONTACT_ID);
+        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(deleted);
+
+        final byte[][] stored = new byte[][] {compressingSerializer.serialize(deleted)};
+        when(redisConnectionMock.get(keySerializer.serialize(CONTACT_KEY))).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) throws Throwable {
+                return stored[0];
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                stored[0] = null;
+                return null;
+            }
+        }).when(redisTemplateMock).delete(CONTACT_KEY);
+
+        service.deleteById(CONTACT_ID);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            service.writeByIdAsJson(CONTACT_ID, out);
+            fail("Should have thrown NotFoundException");
+        }
+        catch (NotFoundException ex) {
+            assertEquals(0, out.size());
+        }
+    }
+
+    @Test
+    public void writeByIdAsJsonWhenValueIsEmpty() throws IOException {
+        executeCallbacksWithConnectionMock();
+
+        byte[] emptyValue = compressingSerializer.serialize(null);
+        byte[] headerWithoutValue = new byte[] {0x1E};
+
+        for (byte[] value: Arrays.asList(emptyValue, headerWithoutValue)) {
+            when(redisConnectionMock.get(keySerializer.serialize(CONTACT_KEY))).thenReturn(value);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                service.writeByIdAsJson(CONTACT_ID, out);
+                fail("Should have thrown NotFoundException");
+            }
+            catch (NotFoundException ex) {
+                assertEquals(0, out.size());
+            }
+        }
+    }
+
+    @Test
+    public void update() throws NotFoundException {
+        executeCallbacksWithConnectionMock();
 
         Contact found = ContactTestUtil.createModel(CONTACT_ID);
-        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(found);
+        when(redisConnectionMock.get(keySerializer.serialize(CONTACT_KEY))).thenReturn(valueSerializer.serialize(found));
+        when(redisConnectionMock.exec()).thenReturn(new ArrayList<Object>());
 
-        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID, "Updated", "Contact");
         Contact actual = service.update(updated);
 
-        verify(redisTemplateMock, times(2)).opsForValue();
-        verify(redisTemplateMock, times(2)).opsForSet();
-        verifyNoMoreInteractions(redisTemplateMock);
+        verifyUpdateAttempts(1);
 
-        verify(valueOperationsMock, times(1)).get(CONTACT_KEY);
-        verify(valueOperationsMock, times(1)).set(CONTACT_KEY, actual);
-        verifyNoMoreInteractions(valueOperationsMock);
+        verify(redisConnectionMock, times(1)).watch(keySerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).get(keySerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(1)).multi();
+        verify(redisConnectionMock, times(1)).set(keySerializer.serialize(CONTACT_KEY), valueSerializer.serialize(updated));
+        verify(redisConnectionMock, times(1)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
 
-        verify(setOperationsMock, times(1)).remove(RedisContactService.KEY_CONTACT_SET, found);
-        verify(setOperationsMock, times(1)).add(RedisContactService.KEY_CONTACT_SET, updated);
-        verifyNoMoreInteractions(setOperationsMock);
+        ArgumentCaptor<Contact> removedArgument = ArgumentCaptor.forClass(Contact.class);
+        verify(contactNameIndexMock, times(1)).remove(eq(redisConnectionMock), removedArgument.capture());
+        verify(contactNameIndexMock, times(1)).add(redisConnectionMock, updated);
+        verifyNoMoreInteractions(contactNameIndexMock);
 
-        verifyZeroInteractions(contactIdCounterMock);
+        assertEquals(ContactTestUtil.FIRST_NAME, removedArgument.getValue().getFirstName());
+        assertEquals(ContactTestUtil.LAST_NAME, removedArgument.getValue().getLastName());
+
+        verifyZeroInteractions(contactIdCounterMock, stringRedisTemplateMock, valueOperationsMock);
+
+        assertEquals(updated, actual);
+    }
+
+    @Test
+    public void updateWhenContactIsChangedConcurrently() throws NotFoundException {
+        executeCallbacksWithConnectionMock();
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(redisConnectionMock.get(keySerializer.serialize(CONTACT_KEY))).thenReturn(valueSerializer.serialize(found));
+        when(redisConnectionMock.exec()).thenReturn(null, new ArrayList<Object>());
+
+        Contact updated = ContactTestUtil.createModel(CONTACT_ID, "Updated", "Contact");
+        Contact actual = service.update(updated);
+
+        verifyUpdateAttempts(2);
+
+        verify(redisConnectionMock, times(2)).watch(keySerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(2)).get(keySerializer.serialize(CONTACT_KEY));
+        verify(redisConnectionMock, times(2)).multi();
+        verify(redisConnectionMock, times(2)).set(keySerializer.serialize(CONTACT_KEY), valueSerializer.serialize(updated));
+        verify(redisConnectionMock, times(2)).exec();
+        verifyNoMoreInteractions(redisConnectionMock);
 
         assertEquals(updated, actual);
     }
 
+    @Test(expected = OptimisticLockingFailureException.class)
+    public void updateWhenContactIsAlwaysChangedConcurrently() throws NotFoundException {
+        executeCallbacksWithConnectionMock();
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        when(redisConnectionMock.get(keySerializer.serialize(CONTACT_KEY))).thenReturn(valueSerializer.serialize(found));
+        when(redisConnectionMock.exec()).thenReturn(null);
+
+        try {
+            service.update(ContactTestUtil.createModel(CONTACT_ID));
+        }
+        finally {
+            verifyUpdateAttempts(RedisContactService.MAX_UPDATE_ATTEMPTS);
+        }
+    }
+
     @Test(expected = NotFoundException.class)
     public void updateWhenContactIsNotFound() throws NotFoundException {
-        when(redisTemplateMock.opsForValue()).thenReturn(valueOperationsMock);
-        when(valueOperationsMock.get(CONTACT_KEY)).thenReturn(null);
+        executeCallbacksWithConnectionMock();
 
-        Contact updated = ContactTestUtil.createModel(CONTACT_ID);
-        service.update(updated);
+        when(redisConnectionMock.get(keySerializer.serialize(CONTACT_KEY))).thenReturn(null);
 
-        verify(redisTemplateMock, times(1)).opsForValue();
-        verifyNoMoreInteractions(redisTemplateMock);
+        try {
+            service.update(ContactTestUtil.createModel(CONTACT_ID));
+        }
+        finally {
+            verifyUpdateAttempts(1);
 
-        verify(valueOperationsMock, times(1)).get(CONTACT_KEY);
-        verifyNoMoreInteractions(valueOperationsMock);
+            verify(redisConnectionMock, times(1)).watch(keySerializer.serialize(CONTACT_KEY));
+            verify(redisConnectionMock, times(1)).get(keySerializer.serialize(CONTACT_KEY));
+            verify(redisConnectionMock, times(1)).unwatch();
+            verifyNoMoreInteractions(redisConnectionMock);
 
-        verifyZeroInteractions(contactIdCounterMock, setOperationsMock);
+            verifyZeroInteractions(contactIdCounterMock, contactNameIndexMock, stringRedisTemplateMock);
+        }
+    }
+
+    @Test
+    public void updateWhenContactIsUpdatedConcurrently() throws Exception {
+        final int updaterCount = RedisContactService.MAX_UPDATE_ATTEMPTS;
+
+        TransactionalConnectionFactoryStub connectionFactory = new TransactionalConnectionFactoryStub(updaterCount);
+
+        RedisTemplate<String, Contact> redisTemplate = new RedisTemplate<String, Contact>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(keySerializer);
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.afterPropertiesSet();
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+
+        ContactNameIndex contactNameIndex = new ContactNameIndex(new StringRedisTemplate(), null);
+        ReflectionTestUtils.setField(service, "contactNameIndex", contactNameIndex);
+
+        Contact found = ContactTestUtil.createModel(CONTACT_ID);
+        connectionFactory.set(keySerializer.serialize(CONTACT_KEY), valueSerializer.serialize(found));
+        for (Map.Entry<String, String> member: contactNameIndex.buildMembers(found).entrySet()) {
+            connectionFactory.zAdd(member.getKey(), member.getValue());
+        }
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> updaters = new ArrayList<Thread>();
+
+        for (int index = 0; index < updaterCount; index++) {
+            final Contact updated = ContactTestUtil.createModel(CONTACT_ID, "First" + index, "Last" + index);
+            updaters.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        service.update(updated);
+                    }
+                    catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread updater: updaters) {
+            updater.start();
+        }
+        for (Thread updater: updaters) {
+            updater.join();
+        }
+
+        assertTrue("Concurrent updates failed: " + failures, failures.isEmpty());
+        assertEquals(updaterCount, connectionFactory.getCommittedTransactions());
+        assertTrue(connectionFactory.getDiscardedTransactions() >= updaterCount - 1);
+
+        Contact stored = (Contact) valueSerializer.deserialize(connectionFactory.get(keySerializer.serialize(CONTACT_KEY)));
+
+        Set<String> expectedMembers = new HashSet<String>();
+        for (Map.Entry<String, String> member: contactNameIndex.buildMembers(stored).entrySet()) {
+            expectedMembers.add(member.getKey() + " " + member.getValue());
+        }
+        assertEquals(expectedMembers, connectionFactory.getSortedSetMembers());
+    }
+
+    /**
+     * Configures the Redis template mock to run the given callbacks with the Redis connection
+     * mock and to return their results.
+     */
+    private void executeCallbacksWithConnectionMock() {
+        when(redisTemplateMock.getKeySerializer()).thenReturn(keySerializer);
+        when(redisTemplateMock.getValueSerializer()).thenReturn(valueSerializer);
+        when(redisTemplateMock.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RedisCallback callback = (RedisCallback) invocation.getArguments()[0];
+                return callback.doInRedis(redisConnectionMock);
+            }
+        });
+    }
+
+    private void verifyUpdateAttempts(int expectedAttempts) {
+        verify(redisTemplateMock, times(expectedAttempts)).execute(any(RedisCallback.class));
+    }
+
+    private void executeBatchWriteCallback(List<Contact> expectedItems) {
+        ArgumentCaptor<BatchWriteCallback> callbackArgument = ArgumentCaptor.forClass(BatchWriteCallback.class);
+        verify(batchWriterMock, times(1)).write(eq(expectedItems), callbackArgument.capture());
+
+        for (Contact item: expectedItems) {
+            callbackArgument.getValue().write(redisConnectionMock, item);
+        }
+    }
+
+    private SearchDTO createSearchDTO(String searchTerm, int pageIndex, int pageSize) {
+        SearchDTO dto = new SearchDTO();
+        dto.setSearchTerm(searchTerm);
+        dto.setPageIndex(pageIndex);
+        dto.setPageSize(pageSize);
+        return dto;
     }
 }
@@ -0,0 +1,90 @@
+package com.packtpub.springdata.redis.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.RedisConnection;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class RedisScriptTest {
+
+    private static final byte[] SCRIPT = "return 1".getBytes();
+    private static final byte[] SHA = "sha".getBytes();
+
+    private static final Long REPLY = Long.valueOf(1);
+
+    private RedisScript script;
+
+    private Client clientMock;
+
+    private Jedis jedisMock;
+
+    private RedisConnection redisConnectionMock;
+
+    @Before
+    public void setUp() throws IOException {
+        script = new RedisScript(new ByteArrayResource(SCRIPT));
+
+        clientMock = mock(Client.class);
+        jedisMock = mock(Jedis.class);
+        redisConnectionMock = mock(RedisConnection.class);
+
+        when(redisConnectionMock.getNativeConnection()).thenReturn(jedisMock);
+        when(jedisMock.getClient()).thenReturn(clientMock);
+        when(jedisMock.scriptLoad(SCRIPT)).thenReturn(SHA);
+    }
+
+    @Test
+    public void execute() {
+        when(clientMock.getOne()).thenReturn(REPLY);
+
+        Object first = executeScript();
+        Object second = executeScript();
+
+        verify(jedisMock, times(1)).scriptLoad(SCRIPT);
+        verify(clientMock, times(2)).evalsha(eq(SHA), any(byte[].class), any(byte[][].class));
+
+        assertEquals(REPLY, first);
+        assertEquals(REPLY, second);
+    }
+
+    @Test
+    public void executeWhenScriptIsNotCached() {
+        when(clientMock.getOne())
+                .thenThrow(new JedisDataException("NOSCRIPT No matching script. Please use EVAL."))
+                .thenReturn(REPLY);
+
+        Object reply = executeScript();
+
+        verify(jedisMock, times(2)).scriptLoad(SCRIPT);
+        verify(clientMock, times(2)).evalsha(eq(SHA), any(byte[].class), any(byte[][].class));
+
+        assertEquals(REPLY, reply);
+    }
+
+    @Test(expected = InvalidDataAccessApiUsageException.class)
+    public void executeWhenScriptFails() {
+        when(clientMock.getOne()).thenThrow(new JedisDataException("ERR Error running script"));
+
+        executeScript();
+    }
+
+    private Object executeScript() {
+        return script.execute(redisConnectionMock, Arrays.asList("key".getBytes()), new ArrayList<byte[]>());
+    }
+}
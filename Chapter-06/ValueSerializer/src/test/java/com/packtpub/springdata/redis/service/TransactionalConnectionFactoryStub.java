@@ -0,0 +1,217 @@
+package com.packtpub.springdata.redis.service;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A connection factory which stores the values and the sorted set members in memory and
+ * supports the WATCH, MULTI and EXEC commands in the same way than a Redis server: the
+ * commands of a transaction are queued and EXEC discards them if a watched key was written
+ * after it was watched. The connections can be used concurrently from several threads, which
+ * means that the optimistic locking of the contact service can be tested without a server.
+ * <p>
+ * Every GET waits until the given number of GET commands has been issued. This makes the
+ * first update attempts of the concurrent updates read the same value.
+ * @author Petri Kainulainen
+ */
+public class TransactionalConnectionFactoryStub implements RedisConnectionFactory {
+
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    private static final long READ_TIMEOUT_SECONDS = 10;
+
+    private final Map<String, byte[]> values = new HashMap<String, byte[]>();
+
+    private final Map<String, Long> versions = new HashMap<String, Long>();
+
+    private final Set<String> sortedSetMembers = new HashSet<String>();
+
+    private final CountDownLatch readLatch;
+
+    private int committedTransactions = 0;
+
+    private int discardedTransactions = 0;
+
+    /**
+     * Creates a new connection factory stub.
+     * @param concurrentReads   The number of GET commands which are waited for before any
+     *                          GET command returns.
+     */
+    public TransactionalConnectionFactoryStub(int concurrentReads) {
+        this.readLatch = new CountDownLatch(concurrentReads);
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+                new Class[] {RedisConnection.class},
+                new ConnectionHandler());
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return null;
+    }
+
+    /**
+     * Stores a value without a connection.
+     * @param key   The key of the value.
+     * @param value The value.
+     */
+    public synchronized void set(byte[] key, byte[] value) {
+        write(toString(key));
+        values.put(toString(key), value);
+    }
+
+    /**
+     * Gets a stored value.
+     * @param key   The key of the value.
+     * @return  The value or null if no value is found.
+     */
+    public synchronized byte[] get(byte[] key) {
+        return values.get(toString(key));
+    }
+
+    /**
+     * Adds a member to a sorted set without a connection.
+     * @param key   The key of the sorted set.
+     * @param member    The added member.
+     */
+    public synchronized void zAdd(String key, String member) {
+        sortedSetMembers.add(key + " " + member);
+    }
+
+    /**
+     * Gets the members of all sorted sets.
+     * @return  A set which contains the key and the member separated by a space.
+     */
+    public synchronized Set<String> getSortedSetMembers() {
+        return new HashSet<String>(sortedSetMembers);
+    }
+
+    public synchronized int getCommittedTransactions() {
+        return committedTransactions;
+    }
+
+    public synchronized int getDiscardedTransactions() {
+        return discardedTransactions;
+    }
+
+    private synchronized long getVersion(String key) {
+        Long version = versions.get(key);
+        return version == null ? 0 : version;
+    }
+
+    private synchronized List<Object> exec(Map<String, Long> watchedVersions, List<Object[]> queuedCommands) {
+        for (Map.Entry<String, Long> watched: watchedVersions.entrySet()) {
+            if (getVersion(watched.getKey()) != watched.getValue()) {
+                discardedTransactions++;
+                return null;
+            }
+        }
+
+        List<Object> results = new ArrayList<Object>();
+        for (Object[] command: queuedCommands) {
+            String name = (String) command[0];
+            Object[] args = (Object[]) command[1];
+
+            if (name.equals("set")) {
+                set((byte[]) args[0], (byte[]) args[1]);
+                results.add(null);
+            }
+            else if (name.equals("zAdd")) {
+                write(toString((byte[]) args[0]));
+                results.add(sortedSetMembers.add(toString((byte[]) args[0]) + " " + toString((byte[]) args[2])));
+            }
+            else if (name.equals("zRem")) {
+                write(toString((byte[]) args[0]));
+                results.add(sortedSetMembers.remove(toString((byte[]) args[0]) + " " + toString((byte[]) args[1])));
+            }
+            else {
+                throw new UnsupportedOperationException("Unsupported command in transaction: " + name);
+            }
+        }
+
+        committedTransactions++;
+        return results;
+    }
+
+    private void write(String key) {
+        versions.put(key, getVersion(key) + 1);
+    }
+
+    private String toString(byte[] bytes) {
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Handles the commands of a single connection. The watched keys and the queued commands
+     * belong to the connection in the same way than in Redis.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Map<String, Long> watchedVersions = new HashMap<String, Long>();
+
+        private List<Object[]> queuedCommands;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString")) {
+                return "TransactionalConnectionStub";
+            }
+            if (name.equals("watch")) {
+                for (byte[] key: (byte[][]) args[0]) {
+                    watchedVersions.put(TransactionalConnectionFactoryStub.this.toString(key),
+                            getVersion(TransactionalConnectionFactoryStub.this.toString(key)));
+                }
+                return null;
+            }
+            if (name.equals("unwatch")) {
+                watchedVersions.clear();
+                return null;
+            }
+            if (name.equals("multi")) {
+                queuedCommands = new ArrayList<Object[]>();
+                return null;
+            }
+            if (name.equals("exec")) {
+                List<Object> results = TransactionalConnectionFactoryStub.this.exec(watchedVersions, queuedCommands);
+                watchedVersions.clear();
+                queuedCommands = null;
+                return results;
+            }
+            if (queuedCommands != null) {
+                queuedCommands.add(new Object[] {name, args});
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+            }
+            if (name.equals("get")) {
+                readLatch.countDown();
+                readLatch.await(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return TransactionalConnectionFactoryStub.this.get((byte[]) args[0]);
+            }
+            if (name.equals("close") || name.equals("isPipelined") || name.equals("isQueueing")
+                    || name.equals("isClosed") || name.equals("getNativeConnection")) {
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+            }
+
+            throw new UnsupportedOperationException("Unsupported command: " + name);
+        }
+    }
+}